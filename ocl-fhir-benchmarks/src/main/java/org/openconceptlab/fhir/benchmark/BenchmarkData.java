@@ -0,0 +1,267 @@
+package org.openconceptlab.fhir.benchmark;
+
+import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.Collection;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.MappingRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.*;
+
+/**
+ * The BenchmarkData. Synthetic data generators shaped like the OCL schema. A fixed seed is used so that every run of a
+ * benchmark works on the same data.
+ * @author harpatel1
+ */
+public final class BenchmarkData {
+
+    public static final String BASE_URL = "http://localhost:8080/fhir";
+    public static final String OWNER = "OCL";
+    private static final String[] LOCALES = {"en", "es", "fr", "pt", "sw", "ar"};
+    private static final String[] MAP_TYPES = {"SAME-AS", "NARROWER-THAN", "BROADER-THAN", "equivalent", "wider", "Q-AND-A"};
+    private static final String[] RESOURCE_TYPES = {CODESYSTEM, VALUESET, CONCEPTMAP};
+
+    private final Random random;
+    private long conceptId = 1;
+    private long sourceId = 1;
+
+    public BenchmarkData() {
+        this(42L);
+    }
+
+    public BenchmarkData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Source source(String mnemonic, String version) {
+        Source source = new Source();
+        source.setId(sourceId++);
+        source.setMnemonic(mnemonic);
+        source.setVersion(version);
+        source.setName(mnemonic);
+        source.setFullName(mnemonic + " full name");
+        source.setCanonicalUrl("http://openconceptlab.org/fhir/CodeSystem/" + mnemonic);
+        source.setUri(FS + ORGS + FS + OWNER + FS + SOURCES + FS + mnemonic + FS + version + FS);
+        source.setDefaultLocale(EN_LOCALE);
+        source.setReleased(True);
+        source.setRetired(False);
+        source.setIsActive(True);
+        source.setPublicAccess(VIEW);
+        source.setPublisher("OCL");
+        source.setContentType("example");
+        source.setIdentifier(identifierJson(mnemonic, version));
+        source.setContact(contactJson());
+        source.setJurisdiction(jurisdictionJson());
+        source.setCreatedAt(new Timestamp(System.currentTimeMillis() - random.nextInt(1_000_000)));
+        source.setOrganization(organization());
+        return source;
+    }
+
+    public List<Source> sources(int count, String version) {
+        List<Source> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sources.add(source("SRC-" + i, version));
+        }
+        return sources;
+    }
+
+    public Organization organization() {
+        Organization organization = new Organization();
+        organization.setId(1L);
+        organization.setMnemonic(OWNER);
+        organization.setPublicAccess(VIEW);
+        return organization;
+    }
+
+    /**
+     * Concepts with a display name per locale, a single preferred name and a definition.
+     */
+    public List<Concept> concepts(Source source, int count, int locales) {
+        List<Concept> concepts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Concept concept = new Concept();
+            concept.setId(conceptId++);
+            concept.setMnemonic(code(i));
+            concept.setVersion(String.valueOf(concept.getId()));
+            concept.setConceptClass(random.nextBoolean() ? "Diagnosis" : "Procedure");
+            concept.setDatatype(random.nextBoolean() ? "N/A" : "Coded");
+            concept.setRetired(random.nextInt(20) == 0);
+            concept.setParent(source);
+            int preferred = random.nextInt(Math.max(1, locales));
+            for (int l = 0; l < locales; l++) {
+                String locale = LOCALES[l % LOCALES.length];
+                ConceptsName name = new ConceptsName();
+                name.setConcept(concept);
+                name.setLocalizedText(text(concept.getMnemonic() + " name " + locale, "Fully Specified", locale, l == preferred));
+                concept.getConceptsNames().add(name);
+            }
+            ConceptsDescription description = new ConceptsDescription();
+            description.setConcept(concept);
+            description.setLocalizedText(text("Definition of " + concept.getMnemonic(), DEFINITION, EN_LOCALE, True));
+            concept.getConceptsDescriptions().add(description);
+            concepts.add(concept);
+        }
+        return concepts;
+    }
+
+    /**
+     * The read-only rows the repositories project for the given concepts.
+     */
+    public List<ConceptRow> conceptRows(List<Concept> concepts) {
+        return concepts.stream().map(c -> new ConceptRow(c.getId(), c.getMnemonic(), c.getVersion(), c.getRetired(),
+                c.getConceptClass(), c.getDatatype())).collect(Collectors.toList());
+    }
+
+    public List<TextRow> nameRows(List<Concept> concepts) {
+        List<TextRow> rows = new ArrayList<>();
+        concepts.forEach(c -> c.getConceptsNames().forEach(n -> rows.add(textRow(c, n.getLocalizedText()))));
+        return rows;
+    }
+
+    public List<TextRow> descriptionRows(List<Concept> concepts) {
+        List<TextRow> rows = new ArrayList<>();
+        concepts.forEach(c -> c.getConceptsDescriptions().forEach(d -> rows.add(textRow(c, d.getLocalizedText()))));
+        return rows;
+    }
+
+    private TextRow textRow(Concept concept, LocalizedText text) {
+        return new TextRow(concept.getId(), text.getName(), text.getLocale(), text.getLocalePreferred(), text.getType());
+    }
+
+    public List<ConceptsSource> conceptsSources(Source source, List<Concept> concepts) {
+        List<ConceptsSource> conceptsSources = new ArrayList<>(concepts.size());
+        for (Concept concept : concepts) {
+            ConceptsSource cs = new ConceptsSource();
+            cs.setConcept(concept);
+            cs.setSource(source);
+            conceptsSources.add(cs);
+        }
+        return conceptsSources;
+    }
+
+    public LocalizedText text(String name, String type, String locale, boolean preferred) {
+        LocalizedText text = new LocalizedText();
+        text.setName(name);
+        text.setType(type);
+        text.setLocale(locale);
+        text.setLocalePreferred(preferred);
+        return text;
+    }
+
+    /**
+     * Collection reference expressions pointing at random concepts of the given sources, e.g.
+     * /orgs/OCL/sources/SRC-0/v1.0/concepts/C000042/
+     */
+    public List<String> expressions(List<Source> sources, int count, int conceptsPerSource) {
+        List<String> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Source source = sources.get(random.nextInt(sources.size()));
+            expressions.add(FS + ORGS + FS + OWNER + FS + SOURCES + FS + source.getMnemonic() + FS + source.getVersion() + FS
+                    + CONCEPTS + FS + code(random.nextInt(conceptsPerSource)) + FS);
+        }
+        return expressions;
+    }
+
+    public Collection collection(List<String> expressions) {
+        Collection collection = new Collection();
+        collection.setId(1L);
+        collection.setMnemonic("VS-1");
+        collection.setVersion("v1.0");
+        collection.setCanonicalUrl("http://openconceptlab.org/fhir/ValueSet/VS-1");
+        collection.setUri(FS + ORGS + FS + OWNER + FS + COLLECTIONS + FS + "VS-1" + FS + "v1.0" + FS);
+        collection.setReleased(True);
+        collection.setRetired(False);
+        collection.setOrganization(organization());
+        List<CollectionsReference> references = new ArrayList<>(expressions.size());
+        for (String expression : expressions) {
+            CollectionReference reference = new CollectionReference();
+            reference.setExpression(expression);
+            CollectionsReference collectionsReference = new CollectionsReference();
+            collectionsReference.setCollectionReference(reference);
+            collectionsReference.setCollection(collection);
+            references.add(collectionsReference);
+        }
+        collection.setCollectionsReferences(references);
+        return collection;
+    }
+
+    /**
+     * Mappings between {@code systems} code systems, the from codes are drawn from {@code codes} distinct values so
+     * that every from code has several targets.
+     */
+    public List<Mapping> mappings(int count, int systems, int codes) {
+        List<Mapping> mappings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = random.nextInt(systems);
+            int to = random.nextInt(systems);
+            Mapping mapping = new Mapping();
+            mapping.setId((long) i + 1);
+            mapping.setFromSourceUrl("http://openconceptlab.org/fhir/CodeSystem/SRC-" + from);
+            mapping.setFromSourceVersion(random.nextBoolean() ? "v1.0" : null);
+            mapping.setToSourceUrl("http://openconceptlab.org/fhir/CodeSystem/SRC-" + to);
+            mapping.setToSourceVersion(random.nextBoolean() ? "v2.0" : null);
+            mapping.setFromConceptCode(code(random.nextInt(codes)));
+            mapping.setFromConceptName("from name " + i);
+            mapping.setToConceptCode(code(random.nextInt(codes)));
+            mapping.setToConceptName("to name " + i);
+            mapping.setMapType(MAP_TYPES[random.nextInt(MAP_TYPES.length)]);
+            mappings.add(mapping);
+        }
+        return mappings;
+    }
+
+    public List<MappingRow> mappingRows(List<Mapping> mappings) {
+        return mappings.stream().map(m -> new MappingRow(m.getFromSourceUrl(), null, m.getToSourceUrl(), null,
+                m.getFromConceptCode(), null, m.getToConceptCode(), null, m.getFromConceptName(), m.getToConceptName(),
+                m.getMapType(), m.getFromSourceVersion(), m.getToSourceVersion())).collect(Collectors.toList());
+    }
+
+    /**
+     * Accession ids in all the shapes accepted on POST/PUT, with and without the "version" segment and slashes.
+     */
+    public List<String> accessionIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String ownerType = random.nextBoolean() ? ORGS : USERS;
+            String resourceType = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)];
+            String id = ownerType + FS + "owner" + i + FS + resourceType + FS + "Res" + i + FS;
+            switch (random.nextInt(3)) {
+                case 0:
+                    id = id + "v" + i + FS;
+                    break;
+                case 1:
+                    id = id + VERSION + FS + "v" + i + FS;
+                    break;
+                default:
+                    break;
+            }
+            ids.add(random.nextBoolean() ? FS + id : id);
+        }
+        return ids;
+    }
+
+    public String identifierJson(String mnemonic, String version) {
+        return "[{\"use\": \"official\", \"type\": {\"text\": \"Accession ID\", \"coding\": [{\"code\": \"ACSN\", " +
+                "\"system\": \"http://hl7.org/fhir/v2/0203\", \"display\": \"Accession ID\"}]}, " +
+                "\"value\": \"/orgs/OCL/CodeSystem/" + mnemonic + "/version/" + version + "/\", " +
+                "\"system\": \"http://localhost:8080\"}]";
+    }
+
+    public String contactJson() {
+        return "[{\"name\": \"Jon Doe\", \"telecom\": [{\"use\": \"work\", \"rank\": 1, \"value\": \"jondoe@gmail.com\", " +
+                "\"period\": {\"end\": \"2025-10-29T10:26:15-04:00\", \"start\": \"2020-10-29T10:26:15-04:00\"}, \"system\": \"email\"}]}]";
+    }
+
+    public String jurisdictionJson() {
+        return "[{\"coding\": [{\"code\": \"USA\", \"system\": \"http://unstats.un.org/unsd/methods/m49/m49.htm\", " +
+                "\"display\": \"United States of America\"}]}]";
+    }
+
+    public static String code(int i) {
+        return String.format("C%06d", i);
+    }
+}
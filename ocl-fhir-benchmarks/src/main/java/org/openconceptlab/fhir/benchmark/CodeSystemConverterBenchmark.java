@@ -0,0 +1,66 @@
+package org.openconceptlab.fhir.benchmark;
+
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.openconceptlab.fhir.converter.CodeSystemConverter;
+import org.openconceptlab.fhir.model.Concept;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
+import org.openconceptlab.fhir.repository.ConceptRepository;
+import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CodeSystemConverterBenchmark. Measures building a CodeSystem with a page of concept definitions, i.e. display and
+ * definition lookup per locale, designations and properties.
+ * @author harpatel1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeSystemConverterBenchmark {
+
+    @Param({"100", "1000"})
+    public int pageSize;
+
+    @Param({"1", "6"})
+    public int locales;
+
+    private CodeSystemConverter converter;
+    private List<Source> sources;
+
+    @Setup
+    public void setup() {
+        BenchmarkData data = new BenchmarkData();
+        Source source = data.source("SRC-0", "v1.0");
+        List<Concept> concepts = data.concepts(source, pageSize, locales);
+        List<ConceptRow> rows = data.conceptRows(concepts);
+        List<TextRow> names = data.nameRows(concepts);
+        List<TextRow> descriptions = data.descriptionRows(concepts);
+        ConceptRepository conceptRepository = StubRepositories.stub(ConceptRepository.class)
+                .answer("findConceptCountInSource", args -> concepts.size())
+                .answer("findConceptRows", args -> new PageImpl<>(rows, (Pageable) args[1], rows.size()))
+                .answer("findNameRows", args -> names)
+                .answer("findDescriptionRows", args -> descriptions)
+                .build();
+        OclFhirUtil oclFhirUtil = new OclFhirUtil(null, conceptRepository, null);
+        oclFhirUtil.setBaseUrl(BenchmarkData.BASE_URL);
+        converter = new CodeSystemConverter(null, conceptRepository, oclFhirUtil, null, null, null, null, null, null, null,
+                null, null);
+        sources = Collections.singletonList(source);
+    }
+
+    @Benchmark
+    public List<CodeSystem> convertToCodeSystem() {
+        return converter.convertToCodeSystem(sources, true, 0, new StringBuilder());
+    }
+}
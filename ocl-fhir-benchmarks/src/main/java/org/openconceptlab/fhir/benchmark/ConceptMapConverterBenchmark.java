@@ -0,0 +1,56 @@
+package org.openconceptlab.fhir.benchmark;
+
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.openconceptlab.fhir.converter.ConceptMapConverter;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.MappingRow;
+import org.openconceptlab.fhir.repository.MappingRepository;
+import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ConceptMapConverterBenchmark. Measures the grouping of a page of mappings into ConceptMap groups and elements.
+ * @author harpatel1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConceptMapConverterBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int mappings;
+
+    @Param({"2", "10"})
+    public int systems;
+
+    private ConceptMapConverter converter;
+    private List<Source> sources;
+
+    @Setup
+    public void setup() {
+        BenchmarkData data = new BenchmarkData();
+        List<MappingRow> page = data.mappingRows(data.mappings(mappings, systems, Math.max(1, mappings / 4)));
+        MappingRepository mappingRepository = StubRepositories.stub(MappingRepository.class)
+                .answer("findMappingRows", args -> new PageImpl<>(page, (Pageable) args[1], page.size()))
+                .build();
+        OclFhirUtil oclFhirUtil = new OclFhirUtil();
+        oclFhirUtil.setBaseUrl(BenchmarkData.BASE_URL);
+        converter = new ConceptMapConverter(null, null, oclFhirUtil, null, null, null, null, null, null, null, null,
+                mappingRepository);
+        sources = Collections.singletonList(data.source("MAP-0", "v1.0"));
+    }
+
+    @Benchmark
+    public List<ConceptMap> convertToConceptMap() {
+        return converter.convertToConceptMap(sources, true, 0, new StringBuilder());
+    }
+}
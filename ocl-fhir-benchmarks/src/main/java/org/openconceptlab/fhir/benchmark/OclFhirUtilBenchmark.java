@@ -0,0 +1,76 @@
+package org.openconceptlab.fhir.benchmark;
+
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OclFhirUtilBenchmark. Measures the accession id and expression helpers that run for every reference expression
+ * and every POST/PUT, and the json to FHIR conversion of identifier, contact and jurisdiction.
+ * @author harpatel1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OclFhirUtilBenchmark {
+
+    private List<String> accessionIds;
+    private List<String> expressions;
+    private String identifier;
+    private String contact;
+    private String jurisdiction;
+
+    @Setup
+    public void setup() {
+        new OclFhirUtil().setBaseUrl(BenchmarkData.BASE_URL);
+        BenchmarkData data = new BenchmarkData();
+        accessionIds = data.accessionIds(1000);
+        expressions = data.expressions(data.sources(10, "v1.0"), 1000, 5000);
+        identifier = data.identifierJson("SRC-0", "v1.0");
+        contact = data.contactJson();
+        jurisdiction = data.jurisdictionJson();
+    }
+
+    @Benchmark
+    public void formatExpression(Blackhole bh) {
+        for (String expression : expressions) {
+            bh.consume(OclFhirUtil.formatExpression(expression));
+        }
+    }
+
+    @Benchmark
+    public void toOclUri(Blackhole bh) {
+        for (String id : accessionIds) {
+            bh.consume(OclFhirUtil.toOclUri(id));
+        }
+    }
+
+    @Benchmark
+    public void validateAccessionId(Blackhole bh) {
+        for (String id : accessionIds) {
+            bh.consume(OclFhirUtil.validateAccessionId(id));
+        }
+    }
+
+    @Benchmark
+    public CodeSystem addJsonFieldsCodeSystem() {
+        CodeSystem codeSystem = new CodeSystem();
+        OclFhirUtil.addJsonFields(codeSystem, identifier, contact, jurisdiction);
+        return codeSystem;
+    }
+
+    @Benchmark
+    public ValueSet addJsonFieldsValueSet() {
+        ValueSet valueSet = new ValueSet();
+        OclFhirUtil.addJsonFields(valueSet, identifier, contact, jurisdiction);
+        return valueSet;
+    }
+}
@@ -0,0 +1,57 @@
+package org.openconceptlab.fhir.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The StubRepositories. Creates in-memory stand-ins for the spring data repositories so that converter hot paths can
+ * be measured without a database. Only the methods that are registered are answered, any other call fails fast.
+ * @author harpatel1
+ */
+public final class StubRepositories {
+
+    private StubRepositories() {
+    }
+
+    public static <T> Builder<T> stub(Class<T> repository) {
+        return new Builder<>(repository);
+    }
+
+    public static final class Builder<T> {
+
+        private final Class<T> repository;
+        private final Map<String, Function<Object[], Object>> answers = new HashMap<>();
+
+        private Builder(Class<T> repository) {
+            this.repository = repository;
+        }
+
+        public Builder<T> answer(String method, Function<Object[], Object> answer) {
+            answers.put(method, answer);
+            return this;
+        }
+
+        public T build() {
+            Object proxy = Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository},
+                    (p, method, args) -> {
+                        Function<Object[], Object> answer = answers.get(method.getName());
+                        if (answer != null)
+                            return answer.apply(args);
+                        switch (method.getName()) {
+                            case "toString":
+                                return "Stub" + repository.getSimpleName();
+                            case "hashCode":
+                                return System.identityHashCode(p);
+                            case "equals":
+                                return p == args[0];
+                            default:
+                                throw new UnsupportedOperationException(repository.getSimpleName() + "." + method.getName()
+                                        + " is not stubbed.");
+                        }
+                    });
+            return repository.cast(proxy);
+        }
+    }
+}
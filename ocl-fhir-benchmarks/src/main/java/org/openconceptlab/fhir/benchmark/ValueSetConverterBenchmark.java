@@ -0,0 +1,97 @@
+package org.openconceptlab.fhir.benchmark;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.IntegerType;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.openconceptlab.fhir.converter.ValueSetConverter;
+import org.openconceptlab.fhir.model.Collection;
+import org.openconceptlab.fhir.model.Concept;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
+import org.openconceptlab.fhir.repository.ConceptRepository;
+import org.openconceptlab.fhir.repository.ConceptsSourceRepository;
+import org.openconceptlab.fhir.repository.SourceRepository;
+import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The ValueSetConverterBenchmark. Runs $expand against in-memory repositories, which covers the reference expression
+ * parsing, the per source concept resolution and the final sort of the expansion.
+ * @author harpatel1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueSetConverterBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int members;
+
+    @Param({"false", "true"})
+    public boolean includeDesignations;
+
+    private static final int SOURCES = 5;
+    private static final int CONCEPTS_PER_SOURCE = 5000;
+
+    private ValueSetConverter converter;
+    private Collection collection;
+
+    @Setup
+    public void setup() {
+        BenchmarkData data = new BenchmarkData();
+        List<Source> sources = data.sources(SOURCES, "v1.0");
+        Map<String, Source> sourceByMnemonic = new HashMap<>();
+        Map<Long, List<TextRow>> namesById = new HashMap<>();
+        Map<Long, Map<String, ConceptRow>> rowsBySource = new HashMap<>();
+        for (Source source : sources) {
+            sourceByMnemonic.put(source.getMnemonic() + "|" + source.getVersion(), source);
+            List<Concept> concepts = data.concepts(source, CONCEPTS_PER_SOURCE, 3);
+            data.nameRows(concepts).forEach(n -> namesById.computeIfAbsent(n.getConceptId(), k -> new ArrayList<>()).add(n));
+            rowsBySource.put(source.getId(), data.conceptRows(concepts).stream()
+                    .collect(Collectors.toMap(ConceptRow::getCode, r -> r)));
+        }
+
+        SourceRepository sourceRepository = StubRepositories.stub(SourceRepository.class)
+                .answer("findFirstByMnemonicAndVersionAndOrganizationMnemonicAndPublicAccessIn",
+                        args -> sourceByMnemonic.get(args[0] + "|" + args[1]))
+                .build();
+        ConceptRepository conceptRepository = StubRepositories.stub(ConceptRepository.class)
+                .answer("findNameRows", args -> {
+                    @SuppressWarnings("unchecked")
+                    List<Long> ids = (List<Long>) args[0];
+                    return ids.stream().flatMap(id -> namesById.getOrDefault(id, Collections.emptyList()).stream())
+                            .collect(Collectors.toList());
+                })
+                .build();
+        ConceptsSourceRepository conceptsSourceRepository = StubRepositories.stub(ConceptsSourceRepository.class)
+                .answer("findConceptRows", args -> {
+                    Map<String, ConceptRow> map = rowsBySource.getOrDefault((Long) args[0], Collections.emptyMap());
+                    @SuppressWarnings("unchecked")
+                    List<String> codes = (List<String>) args[1];
+                    return codes.stream().map(map::get).filter(Objects::nonNull)
+                            .sorted(Comparator.comparing(ConceptRow::getId).reversed())
+                            .collect(Collectors.toList());
+                })
+                .build();
+
+        OclFhirUtil oclFhirUtil = new OclFhirUtil(sourceRepository, conceptRepository, conceptsSourceRepository);
+        oclFhirUtil.setBaseUrl(BenchmarkData.BASE_URL);
+        converter = new ValueSetConverter(sourceRepository, conceptRepository, oclFhirUtil, null, conceptsSourceRepository,
+                null, null, null, null, null, null, null);
+        collection = data.collection(data.expressions(sources, members, CONCEPTS_PER_SOURCE));
+    }
+
+    @Benchmark
+    public ValueSet expand() {
+        return converter.expand(collection, new IntegerType(0), new IntegerType(members), new BooleanType(includeDesignations),
+                new BooleanType(false), new BooleanType(false), null, new ArrayList<>(), new ArrayList<>(), null);
+    }
+}
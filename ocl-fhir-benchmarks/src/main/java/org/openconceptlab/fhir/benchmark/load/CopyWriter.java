@@ -0,0 +1,77 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The CopyWriter. Streams rows into a table with {@code COPY ... FROM STDIN} in text format, buffering them so that
+ * the server sees large writes instead of one round trip per row.
+ * @author harpatel1
+ */
+class CopyWriter implements AutoCloseable {
+
+    private static final int FLUSH_SIZE = 1 << 20;
+
+    private final CopyIn copyIn;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 8192);
+    private long rows;
+
+    CopyWriter(Connection connection, String table, String... columns) throws SQLException {
+        this.copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("copy " + table + " (" + String.join(", ", columns) + ") from stdin");
+    }
+
+    void row(Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) buffer.append('\t');
+            append(values[i]);
+        }
+        buffer.append('\n');
+        rows++;
+        if (buffer.length() >= FLUSH_SIZE) flush();
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    private void append(Object value) {
+        if (value == null) {
+            buffer.append("\\N");
+        } else if (value instanceof Boolean) {
+            buffer.append((Boolean) value ? 't' : 'f');
+        } else if (value instanceof Number) {
+            buffer.append(value);
+        } else {
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char ch = text.charAt(i);
+                switch (ch) {
+                    case '\\': buffer.append("\\\\"); break;
+                    case '\t': buffer.append("\\t"); break;
+                    case '\n': buffer.append("\\n"); break;
+                    case '\r': buffer.append("\\r"); break;
+                    default: buffer.append(ch);
+                }
+            }
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.length() == 0) return;
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!copyIn.isActive()) return;
+        flush();
+        copyIn.endCopy();
+    }
+}
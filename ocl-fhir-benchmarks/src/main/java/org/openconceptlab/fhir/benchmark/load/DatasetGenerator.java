@@ -0,0 +1,563 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.openconceptlab.fhir.benchmark.BenchmarkData.code;
+
+/**
+ * The DatasetGenerator. Writes a synthetic OCL terminology dataset straight into the tables mapped by the
+ * {@code model} package using {@code COPY}, at a configurable scale:
+ * <ul>
+ *     <li>sources with a HEAD and {@code versions} released versions, whose concepts change between releases</li>
+ *     <li>concepts with one fully specified name per locale and a definition</li>
+ *     <li>value set collections whose references point at specific source versions and concept versions</li>
+ *     <li>mappings from every source to concepts of the other sources</li>
+ * </ul>
+ * The data is derived from the seed only, so the same options always produce the same dataset. Ids continue after
+ * the ones already present, so the generator can be run against a populated database.
+ *
+ * Options: --jdbc-url (required), --username, --password, --create-schema and the {@link Scale} options.
+ * @author harpatel1
+ */
+public class DatasetGenerator {
+
+    private static final Log log = LogFactory.getLog(DatasetGenerator.class);
+
+    public static final String BASE_URL = "http://synthetic.openconceptlab.org/";
+
+    private static final String[] CONCEPT_CLASSES = {"Diagnosis", "Symptom", "Finding", "Test", "Procedure", "Drug", "Misc"};
+    private static final String[] DATATYPES = {"N/A", "N/A", "N/A", "Numeric", "Coded", "Text"};
+    private static final String[] MAP_TYPES = {"SAME-AS", "SAME-AS", "NARROWER-THAN", "BROADER-THAN", "ASSOCIATED-WITH"};
+    private static final String[] WORDS = {"acute", "chronic", "renal", "hepatic", "cardiac", "pulmonary", "failure",
+            "infection", "disorder", "syndrome", "lesion", "deficiency", "primary", "secondary", "left", "right",
+            "upper", "lower", "congenital", "viral", "bacterial", "neoplasm", "injury", "pain", "fever", "test",
+            "serum", "level", "count", "dose", "tablet", "injection"};
+
+    // salts that keep the independent pseudo random choices apart
+    private static final int CHURN = 1;
+    private static final int RETIRED = 2;
+    private static final int CLASS = 3;
+    private static final int NAME = 4;
+    private static final int REFERENCE = 5;
+    private static final int MAPPING = 6;
+
+    private final Scale scale;
+    private final Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    private long adminId;
+    private long organizationId;
+    private long sourceBase;
+    private long conceptBase;
+    private long textBase;
+    private long collectionBase;
+    private long referenceBase;
+    private long mappingBase;
+    // id of the versioned object of every concept, indexed by source * concepts + concept
+    private long[] versionedObjectIds;
+
+    public DatasetGenerator(Scale scale) {
+        this.scale = scale;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadHarness.parseOptions(args);
+        String url = options.get("jdbc-url");
+        if (url == null) {
+            throw new IllegalArgumentException("--jdbc-url is required.");
+        }
+        try (Connection connection = DriverManager.getConnection(url, options.getOrDefault("username", "postgres"),
+                options.getOrDefault("password", "postgres"))) {
+            if (options.containsKey("create-schema")) {
+                DatasetLoader.createSchema(connection);
+            }
+            new DatasetGenerator(Scale.from(options)).generate(connection);
+        }
+    }
+
+    public void generate(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            long start = System.currentTimeMillis();
+            adminId = ensureAdmin(connection);
+            organizationId = ensureOrganization(connection);
+            sourceBase = nextId(connection, "sources");
+            conceptBase = nextId(connection, "concepts");
+            textBase = nextId(connection, "localized_texts");
+            collectionBase = nextId(connection, "collections");
+            referenceBase = nextId(connection, "collection_references");
+            mappingBase = nextId(connection, "mappings");
+            layoutConcepts();
+
+            copySources(connection);
+            copyConcepts(connection);
+            copyConceptsSources(connection);
+            copyLocalizedTexts(connection);
+            copyConceptsNamesAndDescriptions(connection);
+            copyCollections(connection);
+            copyCollectionReferences(connection);
+            copyMappings(connection);
+            DatasetLoader.resetSequences(connection);
+            connection.commit();
+            log.info(String.format("Generated the %s dataset in %d ms", scale.owner, System.currentTimeMillis() - start));
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private long ensureAdmin(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into user_profiles (username, is_active, is_staff, " +
+                "is_superuser, public_access, created_at, updated_at, extras) values ('ocladmin', true, true, true, 'View', ?, ?, '{}') " +
+                "on conflict (username) do nothing")) {
+            ps.setTimestamp(1, now);
+            ps.setTimestamp(2, now);
+            ps.executeUpdate();
+        }
+        return singleLong(connection, "select id from user_profiles where username = 'ocladmin'");
+    }
+
+    private long ensureOrganization(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into organizations (mnemonic, name, is_active, " +
+                "public_access, created_at, updated_at, uri, extras, created_by_id, updated_by_id) " +
+                "values (?, ?, true, 'View', ?, ?, ?, '{}', ?, ?) on conflict (mnemonic) do nothing")) {
+            ps.setString(1, scale.owner);
+            ps.setString(2, scale.owner);
+            ps.setTimestamp(3, now);
+            ps.setTimestamp(4, now);
+            ps.setString(5, "/orgs/" + scale.owner + "/");
+            ps.setLong(6, adminId);
+            ps.setLong(7, adminId);
+            ps.executeUpdate();
+        }
+        return singleLong(connection, "select id from organizations where mnemonic = '" + scale.owner.replace("'", "''") + "'");
+    }
+
+    private long nextId(Connection connection, String table) throws SQLException {
+        return singleLong(connection, "select coalesce(max(id), 0) + 1 from " + table);
+    }
+
+    private long singleLong(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Concept rows are laid out per source and concept as the versioned object followed by one row per release in
+     * which the concept changed, so only the versioned object ids need to be remembered.
+     */
+    private void layoutConcepts() {
+        versionedObjectIds = new long[scale.sources * scale.concepts];
+        long id = conceptBase;
+        for (int s = 0; s < scale.sources; s++) {
+            for (int c = 0; c < scale.concepts; c++) {
+                versionedObjectIds[s * scale.concepts + c] = id;
+                id += 1 + changesUpTo(s, c, scale.versions);
+            }
+        }
+    }
+
+    private void copySources(Connection connection) throws SQLException {
+        String supportedLocales = json(scale.locales);
+        try (CopyWriter writer = new CopyWriter(connection, "sources", "id", "mnemonic", "name", "full_name",
+                "description", "version", "canonical_url", "uri", "default_locale", "supported_locales", "source_type",
+                "content_type", "public_access", "released", "retired", "is_active", "is_latest_version", "created_at",
+                "updated_at", "revision_date", "identifier", "extras", "organization_id", "created_by_id", "updated_by_id")) {
+            for (int s = 0; s < scale.sources; s++) {
+                for (int r = 0; r <= scale.versions; r++) {
+                    Timestamp createdAt = releasedAt(r);
+                    writer.row(sourceId(s, r), sourceMnemonic(s), sourceMnemonic(s), "Synthetic source " + s,
+                            "Synthetic terminology generated for benchmarks", versionName(r), sourceUrl(s),
+                            sourceUri(s, r), scale.locales.get(0), supportedLocales, "Dictionary", "complete", "View",
+                            r > 0, false, true, r == scale.versions, createdAt, createdAt, createdAt, "{}", "{}",
+                            organizationId, adminId, adminId);
+                }
+            }
+            log.info("Copied " + writer.rows() + " sources");
+        }
+    }
+
+    private void copyConcepts(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "concepts", "id", "mnemonic", "name", "version",
+                "concept_class", "datatype", "default_locale", "public_access", "released", "retired", "is_active",
+                "is_latest_version", "created_at", "updated_at", "uri", "extras", "versioned_object_id", "parent_id",
+                "created_by_id", "updated_by_id")) {
+            forEachConceptRow((s, c, id, versionedObjectId, release, until) -> {
+                boolean latest = release > 0 && until > scale.versions;
+                boolean retired = latest && retired(s, c);
+                String uri = sourceUri(s, 0) + "concepts/" + code(c) + "/" + (release > 0 ? id + "/" : "");
+                Timestamp createdAt = releasedAt(release);
+                writer.row(id, code(c), code(c), String.valueOf(id), pick(CONCEPT_CLASSES, s, c), pick(DATATYPES, c, s),
+                        scale.locales.get(0), "View", release > 0, retired, true, latest, createdAt, createdAt, uri,
+                        "{}", versionedObjectId, sourceId(s, 0), adminId, adminId);
+            });
+            log.info("Copied " + writer.rows() + " concepts");
+        }
+    }
+
+    private void copyConceptsSources(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "concepts_sources", "concept_id", "source_id")) {
+            forEachConceptRow((s, c, id, versionedObjectId, release, until) -> {
+                if (release == 0) {
+                    writer.row(id, sourceId(s, 0));
+                }
+                for (int r = release; r > 0 && r < until; r++) {
+                    writer.row(id, sourceId(s, r));
+                }
+            });
+            log.info("Copied " + writer.rows() + " concepts_sources");
+        }
+    }
+
+    /**
+     * The names and the definition of a concept are shared by all of its rows.
+     */
+    private void copyLocalizedTexts(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "localized_texts", "id", "name", "type", "locale",
+                "locale_preferred", "created_at")) {
+            for (int s = 0; s < scale.sources; s++) {
+                for (int c = 0; c < scale.concepts; c++) {
+                    for (int l = 0; l < scale.locales.size(); l++) {
+                        writer.row(textId(s, c, l), conceptName(s, c, l), "Fully Specified", scale.locales.get(l), true, now);
+                    }
+                    writer.row(textId(s, c, scale.locales.size()), "Definition of " + conceptName(s, c, 0), "Definition",
+                            scale.locales.get(0), false, now);
+                }
+            }
+            log.info("Copied " + writer.rows() + " localized_texts");
+        }
+    }
+
+    private void copyConceptsNamesAndDescriptions(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "concepts_names", "concept_id", "localizedtext_id")) {
+            forEachConceptRow((s, c, id, versionedObjectId, release, until) -> {
+                for (int l = 0; l < scale.locales.size(); l++) {
+                    writer.row(id, textId(s, c, l));
+                }
+            });
+            log.info("Copied " + writer.rows() + " concepts_names");
+        }
+        try (CopyWriter writer = new CopyWriter(connection, "concepts_descriptions", "concept_id", "localizedtext_id")) {
+            forEachConceptRow((s, c, id, versionedObjectId, release, until) ->
+                    writer.row(id, textId(s, c, scale.locales.size())));
+            log.info("Copied " + writer.rows() + " concepts_descriptions");
+        }
+    }
+
+    /**
+     * Every collection has a HEAD and a released v1 version sharing the same references.
+     */
+    private void copyCollections(Connection connection) throws SQLException {
+        String supportedLocales = json(scale.locales);
+        try (CopyWriter writer = new CopyWriter(connection, "collections", "id", "mnemonic", "name", "full_name",
+                "version", "canonical_url", "uri", "default_locale", "supported_locales", "collection_type",
+                "public_access", "immutable", "released", "retired", "is_active", "is_latest_version", "created_at",
+                "updated_at", "revision_date", "identifier", "extras", "organization_id", "created_by_id", "updated_by_id")) {
+            for (int k = 0; k < scale.collections; k++) {
+                for (int r = 0; r <= 1; r++) {
+                    String mnemonic = String.format("COL%03d", k);
+                    writer.row(collectionId(k, r), mnemonic, mnemonic, "Synthetic value set " + k, versionName(r),
+                            BASE_URL + "ValueSet/" + mnemonic,
+                            "/orgs/" + scale.owner + "/collections/" + mnemonic + "/" + (r > 0 ? versionName(r) + "/" : ""),
+                            scale.locales.get(0), supportedLocales, "Value Set", "View", false, r > 0, false, true,
+                            r > 0, now, now, now, "{}", "{}", organizationId, adminId, adminId);
+                }
+            }
+            log.info("Copied " + writer.rows() + " collections");
+        }
+    }
+
+    /**
+     * Reference {@code j} of collection {@code k} points at a concept of a released source version, every other one
+     * pinned to the concept version that was current in that release.
+     */
+    private void copyCollectionReferences(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "collection_references", "id", "expression", "created_at",
+                "updated_at", "last_resolved_at")) {
+            for (int k = 0; k < scale.collections; k++) {
+                for (int j = 0; j < scale.references; j++) {
+                    int s = referenceSource(j), c = referenceConcept(k, j), r = referenceRelease(k, j);
+                    String expression = sourceUri(s, r) + "concepts/" + code(c) + "/" +
+                            ((j & 1) == 0 ? conceptVersionId(s, c, r) + "/" : "");
+                    writer.row(referenceId(k, j), expression, now, now, now);
+                }
+            }
+            log.info("Copied " + writer.rows() + " collection_references");
+        }
+        try (CopyWriter writer = new CopyWriter(connection, "collections_references", "collection_id",
+                "collectionreference_id")) {
+            for (int k = 0; k < scale.collections; k++) {
+                for (int r = 0; r <= 1; r++) {
+                    for (int j = 0; j < scale.references; j++) {
+                        writer.row(collectionId(k, r), referenceId(k, j));
+                    }
+                }
+            }
+            log.info("Copied " + writer.rows() + " collections_references");
+        }
+        try (CopyWriter writer = new CopyWriter(connection, "collections_concepts", "collection_id", "concept_id")) {
+            for (int k = 0; k < scale.collections; k++) {
+                for (int r = 0; r <= 1; r++) {
+                    for (int j = 0; j < scale.references; j++) {
+                        int s = referenceSource(j), c = referenceConcept(k, j);
+                        writer.row(collectionId(k, r), conceptVersionId(s, c, referenceRelease(k, j)));
+                    }
+                }
+            }
+            log.info("Copied " + writer.rows() + " collections_concepts");
+        }
+    }
+
+    /**
+     * Mapping {@code m} of source {@code s} goes from one of its concepts (two targets per concept) to a concept of
+     * another source, and is part of the HEAD and of every release from the one it was added in.
+     */
+    private void copyMappings(Connection connection) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(connection, "mappings", "id", "map_type", "from_source_url",
+                "from_concept_code", "from_concept_name", "to_source_url", "to_concept_code", "to_concept_name",
+                "from_concept_id", "to_concept_id", "from_source_id", "to_source_id", "public_access", "released",
+                "retired", "is_active", "is_latest_version", "created_at", "updated_at", "extras", "uri", "version",
+                "versioned_object_id", "parent_id", "created_by_id", "updated_by_id")) {
+            for (int s = 0; s < scale.sources; s++) {
+                for (int m = 0; m < scale.mappings; m++) {
+                    long id = mappingId(s, m);
+                    int from = mappingFrom(m), t = mappingTargetSource(s, m), to = mappingTarget(s, m);
+                    Timestamp createdAt = releasedAt(mappingRelease(s, m));
+                    writer.row(id, pick(MAP_TYPES, s, m), sourceUrl(s), code(from), conceptName(s, from, 0),
+                            sourceUrl(t), code(to), conceptName(t, to, 0), conceptVersionId(s, from, scale.versions),
+                            conceptVersionId(t, to, scale.versions), sourceId(s, 0), sourceId(t, 0), "View", true,
+                            false, true, true, createdAt, createdAt, "{}", sourceUri(s, 0) + "mappings/" + id + "/",
+                            String.valueOf(id), id, sourceId(s, 0), adminId, adminId);
+                }
+            }
+            log.info("Copied " + writer.rows() + " mappings");
+        }
+        try (CopyWriter writer = new CopyWriter(connection, "mappings_sources", "mapping_id", "source_id")) {
+            for (int s = 0; s < scale.sources; s++) {
+                for (int m = 0; m < scale.mappings; m++) {
+                    long id = mappingId(s, m);
+                    writer.row(id, sourceId(s, 0));
+                    for (int r = mappingRelease(s, m); r <= scale.versions; r++) {
+                        writer.row(id, sourceId(s, r));
+                    }
+                }
+            }
+            log.info("Copied " + writer.rows() + " mappings_sources");
+        }
+    }
+
+    private interface ConceptRowVisitor {
+        /**
+         * @param release 0 for the versioned object, otherwise the release that introduced this concept version
+         * @param until the first release that no longer contains this concept version
+         */
+        void visit(int source, int concept, long id, long versionedObjectId, int release, int until) throws SQLException;
+    }
+
+    private void forEachConceptRow(ConceptRowVisitor visitor) throws SQLException {
+        for (int s = 0; s < scale.sources; s++) {
+            for (int c = 0; c < scale.concepts; c++) {
+                long versionedObjectId = versionedObjectIds[s * scale.concepts + c];
+                long id = versionedObjectId;
+                visitor.visit(s, c, id++, versionedObjectId, 0, 0);
+                for (int release = 1; release <= scale.versions; ) {
+                    int until = nextChange(s, c, release);
+                    visitor.visit(s, c, id++, versionedObjectId, release, until);
+                    release = until;
+                }
+            }
+        }
+    }
+
+    private boolean changed(int source, int concept, int release) {
+        return release == 1 || Math.floorMod(mix(CHURN, source, concept, release), 100) < scale.churn;
+    }
+
+    private int changesUpTo(int source, int concept, int release) {
+        int changes = 0;
+        for (int r = 1; r <= release; r++) {
+            if (changed(source, concept, r)) changes++;
+        }
+        return changes;
+    }
+
+    private int nextChange(int source, int concept, int release) {
+        for (int r = release + 1; r <= scale.versions; r++) {
+            if (changed(source, concept, r)) return r;
+        }
+        return scale.versions + 1;
+    }
+
+    private long conceptVersionId(int source, int concept, int release) {
+        return versionedObjectIds[source * scale.concepts + concept] + changesUpTo(source, concept, release);
+    }
+
+    private boolean retired(int source, int concept) {
+        return Math.floorMod(mix(RETIRED, source, concept, 0), 100) < 2;
+    }
+
+    private String conceptName(int source, int concept, int locale) {
+        long h = mix(NAME, source, concept, 0);
+        String name = WORDS[(int) Math.floorMod(h, WORDS.length)] + " " + WORDS[(int) Math.floorMod(h >>> 16, WORDS.length)] +
+                " " + WORDS[(int) Math.floorMod(h >>> 32, WORDS.length)] + " " + code(concept);
+        return locale == 0 ? name : name + " (" + scale.locales.get(locale) + ")";
+    }
+
+    private int referenceSource(int reference) {
+        return reference % scale.sources;
+    }
+
+    private int referenceConcept(int collection, int reference) {
+        return (int) ((reference / scale.sources + collection * 7919L) % scale.concepts);
+    }
+
+    private int referenceRelease(int collection, int reference) {
+        return 1 + (int) Math.floorMod(mix(REFERENCE, collection, reference, 0), scale.versions);
+    }
+
+    private int mappingFrom(int mapping) {
+        return (mapping / 2) % scale.concepts;
+    }
+
+    private int mappingTargetSource(int source, int mapping) {
+        if (scale.sources == 1) return source;
+        return (source + 1 + (int) Math.floorMod(mix(MAPPING, source, mapping, 0), scale.sources - 1)) % scale.sources;
+    }
+
+    private int mappingTarget(int source, int mapping) {
+        return (int) Math.floorMod(mix(MAPPING, source, mapping, 1), scale.concepts);
+    }
+
+    private int mappingRelease(int source, int mapping) {
+        return 1 + (int) Math.floorMod(mix(MAPPING, source, mapping, 2), scale.versions);
+    }
+
+    private long sourceId(int source, int release) {
+        return sourceBase + (long) source * (scale.versions + 1) + release;
+    }
+
+    private long textId(int source, int concept, int text) {
+        return textBase + ((long) source * scale.concepts + concept) * (scale.locales.size() + 1) + text;
+    }
+
+    private long collectionId(int collection, int release) {
+        return collectionBase + collection * 2L + release;
+    }
+
+    private long referenceId(int collection, int reference) {
+        return referenceBase + (long) collection * scale.references + reference;
+    }
+
+    private long mappingId(int source, int mapping) {
+        return mappingBase + (long) source * scale.mappings + mapping;
+    }
+
+    private String sourceMnemonic(int source) {
+        return String.format("SRC%03d", source);
+    }
+
+    private String sourceUrl(int source) {
+        return BASE_URL + "CodeSystem/" + sourceMnemonic(source);
+    }
+
+    private String sourceUri(int source, int release) {
+        return "/orgs/" + scale.owner + "/sources/" + sourceMnemonic(source) + "/" +
+                (release > 0 ? versionName(release) + "/" : "");
+    }
+
+    private String versionName(int release) {
+        return release == 0 ? "HEAD" : "v" + release;
+    }
+
+    /**
+     * HEAD is the oldest version and every release is a day younger than the previous one, so the last release is
+     * the most recent released version.
+     */
+    private Timestamp releasedAt(int release) {
+        return new Timestamp(now.getTime() - TimeUnit.DAYS.toMillis(scale.versions - release + 1L));
+    }
+
+    private String pick(String[] values, int a, int b) {
+        return values[(int) Math.floorMod(mix(CLASS, a, b, 0), values.length)];
+    }
+
+    private static String json(List<String> values) {
+        return "[\"" + String.join("\", \"", values) + "\"]";
+    }
+
+    private long mix(int salt, long a, long b, long c) {
+        long h = scale.seed ^ (salt * 0x9E3779B97F4A7C15L) ^ (a * 0xC2B2AE3D27D4EB4FL) ^ (b * 0x165667B19E3779F9L)
+                ^ (c * 0xD6E8FEB86659FD93L);
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * The size and shape of the generated dataset.
+     */
+    public static class Scale {
+        final String owner;
+        final int sources;
+        final int versions;
+        final int concepts;
+        final List<String> locales;
+        final int churn;
+        final int collections;
+        final int references;
+        final int mappings;
+        final long seed;
+
+        public Scale(String owner, int sources, int versions, int concepts, List<String> locales, int churn,
+                     int collections, int references, int mappings, long seed) {
+            if (sources < 1 || versions < 1 || concepts < 1 || locales.isEmpty()) {
+                throw new IllegalArgumentException("At least one source, version, concept and locale is required.");
+            }
+            this.owner = owner;
+            this.sources = sources;
+            this.versions = versions;
+            this.concepts = concepts;
+            this.locales = locales;
+            this.churn = churn;
+            this.collections = collections;
+            this.references = references;
+            this.mappings = mappings;
+            this.seed = seed;
+        }
+
+        /**
+         * Reads --owner=SYNTH, --sources=10, --versions=3, --concepts=100000 (per source), --locales=en,es,fr,
+         * --churn=10 (percent of concepts changed per release), --collections=5, --references=10000 (per collection),
+         * --mappings=50000 (per source) and --seed=42.
+         */
+        public static Scale from(Map<String, String> options) {
+            return new Scale(options.getOrDefault("owner", "SYNTH"),
+                    Integer.parseInt(options.getOrDefault("sources", "10")),
+                    Integer.parseInt(options.getOrDefault("versions", "3")),
+                    Integer.parseInt(options.getOrDefault("concepts", "100000")),
+                    Arrays.asList(options.getOrDefault("locales", "en,es,fr").split(",")),
+                    Integer.parseInt(options.getOrDefault("churn", "10")),
+                    Integer.parseInt(options.getOrDefault("collections", "5")),
+                    Integer.parseInt(options.getOrDefault("references", "10000")),
+                    Integer.parseInt(options.getOrDefault("mappings", "50000")),
+                    Long.parseLong(options.getOrDefault("seed", "42")));
+        }
+    }
+}
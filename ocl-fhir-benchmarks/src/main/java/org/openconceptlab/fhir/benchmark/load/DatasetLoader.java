@@ -0,0 +1,311 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Objects;
+
+import static org.openconceptlab.fhir.benchmark.BenchmarkData.code;
+
+/**
+ * The DatasetLoader. Loads the fixed dataset the load harness drives: one code system with {@code concepts} concepts,
+ * a value set referencing {@code valueSetMembers} of them and a concept map with {@code mappings} mappings.
+ * @author harpatel1
+ */
+public class DatasetLoader {
+
+    private static final Log log = LogFactory.getLog(DatasetLoader.class);
+
+    public static final String OWNER = "OCL";
+    public static final String VERSION = "v1.0";
+    public static final String CODE_SYSTEM = "LOAD-CS";
+    public static final String VALUE_SET = "LOAD-VS";
+    public static final String CONCEPT_MAP = "LOAD-CM";
+    public static final String CODE_SYSTEM_URL = "http://load.openconceptlab.org/CodeSystem/" + CODE_SYSTEM;
+    public static final String VALUE_SET_URL = "http://load.openconceptlab.org/ValueSet/" + VALUE_SET;
+    public static final String CONCEPT_MAP_URL = "http://load.openconceptlab.org/ConceptMap/" + CONCEPT_MAP;
+    public static final String TARGET_URL = "http://load.openconceptlab.org/CodeSystem/TARGET";
+
+    private static final int BATCH_SIZE = 5000;
+    private static final long ADMIN_ID = 1;
+    private static final long ORG_ID = 1;
+    private static final long CODE_SYSTEM_ID = 1;
+    private static final long CONCEPT_MAP_ID = 2;
+    private static final long VALUE_SET_ID = 1;
+
+    private final int concepts;
+    private final int valueSetMembers;
+    private final int mappings;
+    private final Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    public DatasetLoader(int concepts, int valueSetMembers, int mappings) {
+        this.concepts = concepts;
+        this.valueSetMembers = Math.min(valueSetMembers, concepts);
+        this.mappings = mappings;
+    }
+
+    public void load(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            long start = System.currentTimeMillis();
+            loadOwner(connection);
+            loadSource(connection, CODE_SYSTEM_ID, CODE_SYSTEM, CODE_SYSTEM_URL);
+            loadSource(connection, CONCEPT_MAP_ID, CONCEPT_MAP, CONCEPT_MAP_URL);
+            loadConcepts(connection);
+            loadCollection(connection);
+            loadMappings(connection);
+            resetSequences(connection);
+            connection.commit();
+            log.info(String.format("Loaded %d concepts, %d value set members and %d mappings in %d ms", concepts,
+                    valueSetMembers, mappings, System.currentTimeMillis() - start));
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void loadOwner(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into user_profiles (id, username, is_active, is_staff, " +
+                "is_superuser, public_access, created_at, updated_at, extras) values (?, 'ocladmin', true, true, true, 'View', ?, ?, '{}')")) {
+            ps.setLong(1, ADMIN_ID);
+            ps.setTimestamp(2, now);
+            ps.setTimestamp(3, now);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("insert into authtoken_token (key, created, user_id) values (?, ?, ?)")) {
+            ps.setString(1, "load-harness-token");
+            ps.setTimestamp(2, now);
+            ps.setLong(3, ADMIN_ID);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("insert into organizations (id, mnemonic, name, is_active, " +
+                "public_access, created_at, updated_at, uri, extras, created_by_id, updated_by_id) values (?, ?, ?, true, 'View', ?, ?, ?, '{}', ?, ?)")) {
+            ps.setLong(1, ORG_ID);
+            ps.setString(2, OWNER);
+            ps.setString(3, OWNER);
+            ps.setTimestamp(4, now);
+            ps.setTimestamp(5, now);
+            ps.setString(6, "/orgs/" + OWNER + "/");
+            ps.setLong(7, ADMIN_ID);
+            ps.setLong(8, ADMIN_ID);
+            ps.executeUpdate();
+        }
+    }
+
+    private void loadSource(Connection connection, long id, String mnemonic, String url) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into sources (id, mnemonic, name, version, canonical_url, " +
+                "uri, default_locale, public_access, released, retired, is_active, is_latest_version, created_at, updated_at, " +
+                "identifier, extras, organization_id, created_by_id, updated_by_id) " +
+                "values (?, ?, ?, ?, ?, ?, 'en', 'View', true, false, true, true, ?, ?, '{}', '{}', ?, ?, ?)")) {
+            ps.setLong(1, id);
+            ps.setString(2, mnemonic);
+            ps.setString(3, mnemonic);
+            ps.setString(4, VERSION);
+            ps.setString(5, url);
+            ps.setString(6, "/orgs/" + OWNER + "/sources/" + mnemonic + "/" + VERSION + "/");
+            ps.setTimestamp(7, now);
+            ps.setTimestamp(8, now);
+            ps.setLong(9, ORG_ID);
+            ps.setLong(10, ADMIN_ID);
+            ps.setLong(11, ADMIN_ID);
+            ps.executeUpdate();
+        }
+    }
+
+    private void loadConcepts(Connection connection) throws SQLException {
+        try (PreparedStatement concept = connection.prepareStatement("insert into concepts (id, mnemonic, name, version, " +
+                "concept_class, datatype, default_locale, public_access, released, retired, is_active, is_latest_version, " +
+                "created_at, updated_at, uri, extras, versioned_object_id, parent_id, created_by_id, updated_by_id) " +
+                "values (?, ?, ?, ?, 'Diagnosis', 'N/A', 'en', 'View', true, false, true, true, ?, ?, ?, '{}', ?, ?, ?, ?)");
+             PreparedStatement conceptsSource = connection.prepareStatement("insert into concepts_sources (concept_id, source_id) values (?, ?)");
+             PreparedStatement text = connection.prepareStatement("insert into localized_texts (id, name, type, locale, " +
+                     "locale_preferred, created_at) values (?, ?, ?, ?, ?, ?)");
+             PreparedStatement name = connection.prepareStatement("insert into concepts_names (concept_id, localizedtext_id) values (?, ?)");
+             PreparedStatement description = connection.prepareStatement("insert into concepts_descriptions (concept_id, localizedtext_id) values (?, ?)");
+             PreparedStatement display = connection.prepareStatement("insert into concepts_displays (concept_id, locale, display) values (?, ?, ?)")) {
+            long textId = 1;
+            for (int i = 0; i < concepts; i++) {
+                long id = i + 1;
+                String code = code(i);
+                concept.setLong(1, id);
+                concept.setString(2, code);
+                concept.setString(3, code);
+                concept.setString(4, String.valueOf(id));
+                concept.setTimestamp(5, now);
+                concept.setTimestamp(6, now);
+                concept.setString(7, "/orgs/" + OWNER + "/sources/" + CODE_SYSTEM + "/concepts/" + code + "/" + id + "/");
+                concept.setLong(8, id);
+                concept.setLong(9, CODE_SYSTEM_ID);
+                concept.setLong(10, ADMIN_ID);
+                concept.setLong(11, ADMIN_ID);
+                concept.addBatch();
+
+                conceptsSource.setLong(1, id);
+                conceptsSource.setLong(2, CODE_SYSTEM_ID);
+                conceptsSource.addBatch();
+
+                addText(text, textId, code + " name", "Fully Specified", "en", true);
+                addLink(name, id, textId++);
+                addText(text, textId, code + " nombre", "Fully Specified", "es", false);
+                addLink(name, id, textId++);
+                addText(text, textId, "Definition of " + code, "definition", "en", true);
+                addLink(description, id, textId++);
+                addDisplay(display, id, "en", code + " name");
+                addDisplay(display, id, "es", code + " nombre");
+
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    executeBatches(concept, conceptsSource, text, name, description, display);
+                }
+            }
+            executeBatches(concept, conceptsSource, text, name, description, display);
+        }
+    }
+
+    private void loadCollection(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("insert into collections (id, mnemonic, name, version, canonical_url, " +
+                "uri, default_locale, public_access, released, retired, is_active, is_latest_version, created_at, updated_at, " +
+                "identifier, extras, organization_id, created_by_id, updated_by_id) " +
+                "values (?, ?, ?, ?, ?, ?, 'en', 'View', true, false, true, true, ?, ?, '{}', '{}', ?, ?, ?)")) {
+            ps.setLong(1, VALUE_SET_ID);
+            ps.setString(2, VALUE_SET);
+            ps.setString(3, VALUE_SET);
+            ps.setString(4, VERSION);
+            ps.setString(5, VALUE_SET_URL);
+            ps.setString(6, "/orgs/" + OWNER + "/collections/" + VALUE_SET + "/" + VERSION + "/");
+            ps.setTimestamp(7, now);
+            ps.setTimestamp(8, now);
+            ps.setLong(9, ORG_ID);
+            ps.setLong(10, ADMIN_ID);
+            ps.setLong(11, ADMIN_ID);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement reference = connection.prepareStatement("insert into collection_references (id, expression, " +
+                "created_at, updated_at, last_resolved_at) values (?, ?, ?, ?, ?)");
+             PreparedStatement collectionsReference = connection.prepareStatement("insert into collections_references " +
+                     "(collection_id, collectionreference_id) values (?, ?)");
+             PreparedStatement collectionsConcept = connection.prepareStatement("insert into collections_concepts " +
+                     "(collection_id, concept_id) values (?, ?)")) {
+            for (int i = 0; i < valueSetMembers; i++) {
+                long id = i + 1;
+                reference.setLong(1, id);
+                reference.setString(2, "/orgs/" + OWNER + "/sources/" + CODE_SYSTEM + "/" + VERSION + "/concepts/" + code(i) + "/");
+                reference.setTimestamp(3, now);
+                reference.setTimestamp(4, now);
+                reference.setTimestamp(5, now);
+                reference.addBatch();
+                addLink(collectionsReference, VALUE_SET_ID, id);
+                addLink(collectionsConcept, VALUE_SET_ID, id);
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    executeBatches(reference, collectionsReference, collectionsConcept);
+                }
+            }
+            executeBatches(reference, collectionsReference, collectionsConcept);
+        }
+    }
+
+    private void loadMappings(Connection connection) throws SQLException {
+        try (PreparedStatement mapping = connection.prepareStatement("insert into mappings (id, map_type, from_source_url, " +
+                "from_source_version, from_concept_code, from_concept_name, to_source_url, to_concept_code, to_concept_name, " +
+                "public_access, released, retired, is_active, is_latest_version, created_at, updated_at, extras, version, " +
+                "versioned_object_id, parent_id, created_by_id, updated_by_id) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, 'View', true, false, true, true, ?, ?, '{}', ?, ?, ?, ?, ?)");
+             PreparedStatement mappingsSource = connection.prepareStatement("insert into mappings_sources (mapping_id, source_id) values (?, ?)")) {
+            for (int i = 0; i < mappings; i++) {
+                long id = i + 1;
+                // every from code gets two targets
+                String fromCode = code((i / 2) % Math.max(1, concepts));
+                mapping.setLong(1, id);
+                mapping.setString(2, i % 2 == 0 ? "SAME-AS" : "NARROWER-THAN");
+                mapping.setString(3, CODE_SYSTEM_URL);
+                mapping.setString(4, VERSION);
+                mapping.setString(5, fromCode);
+                mapping.setString(6, fromCode + " name");
+                mapping.setString(7, TARGET_URL);
+                mapping.setString(8, "T" + code(i));
+                mapping.setString(9, "target " + i);
+                mapping.setTimestamp(10, now);
+                mapping.setTimestamp(11, now);
+                mapping.setString(12, String.valueOf(id));
+                mapping.setLong(13, id);
+                mapping.setLong(14, CONCEPT_MAP_ID);
+                mapping.setLong(15, ADMIN_ID);
+                mapping.setLong(16, ADMIN_ID);
+                mapping.addBatch();
+                addLink(mappingsSource, id, CONCEPT_MAP_ID);
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    executeBatches(mapping, mappingsSource);
+                }
+            }
+            executeBatches(mapping, mappingsSource);
+        }
+    }
+
+    /**
+     * Creates the tables and indexes from {@code ocl-schema.sql} if they do not exist yet.
+     */
+    public static void createSchema(Connection connection) throws IOException, SQLException {
+        String schema;
+        try (InputStream in = DatasetLoader.class.getResourceAsStream("/ocl-schema.sql")) {
+            schema = new String(Objects.requireNonNull(in).readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : schema.replaceAll("(?m)^--.*$", "").split(";")) {
+                if (!sql.isBlank()) statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Moves the id sequences past the explicitly inserted ids and refreshes the planner statistics.
+     */
+    static void resetSequences(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"user_profiles", "organizations", "sources", "concepts", "localized_texts",
+                    "collections", "collection_references", "mappings"}) {
+                statement.execute(String.format("select setval(pg_get_serial_sequence('%s', 'id'), " +
+                        "coalesce((select max(id) from %s), 0) + 1, false)", table, table));
+            }
+            statement.execute("analyze");
+        }
+    }
+
+    private void addText(PreparedStatement ps, long id, String name, String type, String locale, boolean preferred) throws SQLException {
+        ps.setLong(1, id);
+        ps.setString(2, name);
+        ps.setString(3, type);
+        ps.setString(4, locale);
+        ps.setBoolean(5, preferred);
+        ps.setTimestamp(6, now);
+        ps.addBatch();
+    }
+
+    private void addLink(PreparedStatement ps, long first, long second) throws SQLException {
+        ps.setLong(1, first);
+        ps.setLong(2, second);
+        ps.addBatch();
+    }
+
+    private void addDisplay(PreparedStatement ps, long conceptId, String locale, String display) throws SQLException {
+        ps.setLong(1, conceptId);
+        ps.setString(2, locale);
+        ps.setString(3, display);
+        ps.addBatch();
+    }
+
+    private void executeBatches(PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+    }
+}
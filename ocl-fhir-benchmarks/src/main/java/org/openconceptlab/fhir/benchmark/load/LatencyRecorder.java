@@ -0,0 +1,94 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LatencyRecorder. Collects response times of a single scenario, every worker thread writes to its own buffer and
+ * buffers are merged once the run is over.
+ * @author harpatel1
+ */
+public class LatencyRecorder {
+
+    private final ThreadLocal<Buffer> buffers;
+    private final List<Buffer> all = new CopyOnWriteArrayList<>();
+    private final AtomicLong errors = new AtomicLong();
+
+    public LatencyRecorder() {
+        this.buffers = ThreadLocal.withInitial(() -> {
+            Buffer buffer = new Buffer();
+            all.add(buffer);
+            return buffer;
+        });
+    }
+
+    public void record(long nanos) {
+        buffers.get().add(nanos);
+    }
+
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    public Summary summarize(String name, long elapsedNanos) {
+        int size = all.stream().mapToInt(b -> b.size).sum();
+        long[] values = new long[size];
+        int offset = 0;
+        for (Buffer buffer : all) {
+            System.arraycopy(buffer.values, 0, values, offset, buffer.size);
+            offset += buffer.size;
+        }
+        Arrays.sort(values);
+        return new Summary(name, values, errors.get(), elapsedNanos);
+    }
+
+    private static class Buffer {
+        private long[] values = new long[1024];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    public static class Summary {
+
+        private final String name;
+        private final long[] sorted;
+        private final long errors;
+        private final long elapsedNanos;
+
+        Summary(String name, long[] sorted, long errors, long elapsedNanos) {
+            this.name = name;
+            this.sorted = sorted;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double percentileMillis(double percentile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+        }
+
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : sorted.length / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        public static String header() {
+            return String.format("%-16s %10s %8s %10s %9s %9s %9s %9s %9s", "scenario", "requests", "errors", "req/s",
+                    "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f", name, sorted.length, errors,
+                    throughput(), percentileMillis(50), percentileMillis(90), percentileMillis(99),
+                    percentileMillis(99.9), percentileMillis(100));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openconceptlab.fhir.OclFhirApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LoadHarness. Starts PostgreSQL (embedded unless --jdbc-url is given), creates the OCL schema, loads a generated
+ * dataset, boots the terminology service against it and drives the FHIR endpoints at a fixed concurrency, reporting
+ * throughput and latency percentiles per scenario.
+ *
+ * Options (all optional): --jdbc-url, --username, --password, --skip-load, --concepts=500000,
+ * --value-set-members=50000, --mappings=200000, --concurrency=8, --warmup=10, --duration=30,
+ * --scenarios=lookup,validate-code,expand,translate,search
+ * @author harpatel1
+ */
+public class LoadHarness {
+
+    private static final Log log = LogFactory.getLog(LoadHarness.class);
+
+    private final Map<String, String> options;
+
+    public LoadHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadHarness(parseOptions(args)).run();
+        System.exit(0);
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] ar = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(ar[0], ar.length == 2 ? ar[1] : "true");
+        }
+        return options;
+    }
+
+    public void run() throws Exception {
+        int concepts = intOption("concepts", 500_000);
+        int valueSetMembers = intOption("value-set-members", 50_000);
+        int mappings = intOption("mappings", 200_000);
+        EmbeddedPostgres postgres = null;
+        ConfigurableApplicationContext context = null;
+        try {
+            String url = options.get("jdbc-url");
+            String username = options.getOrDefault("username", "postgres");
+            String password = options.getOrDefault("password", "postgres");
+            if (url == null) {
+                postgres = EmbeddedPostgres.builder().start();
+                url = postgres.getJdbcUrl("postgres", "postgres");
+                log.info("Started embedded PostgreSQL at " + url);
+            }
+            if (!options.containsKey("skip-load")) {
+                try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                    DatasetLoader.createSchema(connection);
+                    new DatasetLoader(concepts, valueSetMembers, mappings).load(connection);
+                }
+            }
+            int port = freePort();
+            context = startService(url, username, password, port);
+            report(drive("http://localhost:" + port + "/fhir", new LoadScenario.Sizes(concepts, valueSetMembers, mappings)));
+        } finally {
+            if (context != null) context.close();
+            if (postgres != null) postgres.close();
+        }
+    }
+
+    private ConfigurableApplicationContext startService(String url, String username, String password, int port) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("DATABASE_URL", url);
+        properties.put("DATABASE_USERNAME", username);
+        properties.put("DATABASE_PASSWORD", password);
+        properties.put("DATABASE_DIALECT", "org.hibernate.dialect.PostgreSQL10Dialect");
+        properties.put("SERVER_PORT", port);
+        properties.put("OCL_SERVLET_BASEURL", "http://localhost:" + port + "/fhir");
+        // indexing calls to oclapi are not part of the read paths, an unreachable host is fine
+        properties.put("OCLAPI_HOST", "localhost");
+        properties.put("OCLAPI_PORT", 1);
+        return new SpringApplicationBuilder(OclFhirApplication.class).properties(properties).run();
+    }
+
+    private List<LatencyRecorder.Summary> drive(String baseUrl, LoadScenario.Sizes sizes) throws InterruptedException {
+        int concurrency = intOption("concurrency", 8);
+        int warmup = intOption("warmup", 10);
+        int duration = intOption("duration", 30);
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .build();
+        List<LatencyRecorder.Summary> summaries = new ArrayList<>();
+        for (String id : options.getOrDefault("scenarios", "lookup,validate-code,expand,translate,search").split(",")) {
+            LoadScenario scenario = LoadScenario.of(id);
+            log.info(String.format("Running %s, concurrency %d, warmup %ds, duration %ds", scenario.id(), concurrency,
+                    warmup, duration));
+            runFor(client, baseUrl, scenario, sizes, concurrency, warmup, new LatencyRecorder());
+            LatencyRecorder recorder = new LatencyRecorder();
+            long elapsed = runFor(client, baseUrl, scenario, sizes, concurrency, duration, recorder);
+            summaries.add(recorder.summarize(scenario.id(), elapsed));
+        }
+        return summaries;
+    }
+
+    private long runFor(HttpClient client, String baseUrl, LoadScenario scenario, LoadScenario.Sizes sizes,
+                        int concurrency, int seconds, LatencyRecorder recorder) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + scenario.path(sizes, random)))
+                            .header("Accept", "application/fhir+json")
+                            .timeout(Duration.ofSeconds(60))
+                            .GET()
+                            .build();
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() == 200) {
+                            recorder.record(System.nanoTime() - t0);
+                        } else {
+                            recorder.error();
+                        }
+                    } catch (IOException e) {
+                        recorder.error();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 120L, TimeUnit.SECONDS);
+        return System.nanoTime() - start;
+    }
+
+    private void report(List<LatencyRecorder.Summary> summaries) {
+        System.out.println();
+        System.out.println(LatencyRecorder.Summary.header());
+        summaries.forEach(System.out::println);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.openconceptlab.fhir.benchmark.load;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.openconceptlab.fhir.benchmark.BenchmarkData.code;
+import static org.openconceptlab.fhir.benchmark.load.DatasetLoader.*;
+
+/**
+ * The LoadScenario. The FHIR interactions driven by the load harness, each one builds a request path against the
+ * dataset written by {@link DatasetLoader}.
+ * @author harpatel1
+ */
+public enum LoadScenario {
+
+    LOOKUP("lookup") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            return "/CodeSystem/$lookup?system=" + encode(CODE_SYSTEM_URL) + "&version=" + VERSION
+                    + "&code=" + code(random.nextInt(sizes.concepts));
+        }
+    },
+    VALIDATE_CODE("validate-code") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            String code = code(random.nextInt(sizes.concepts));
+            return "/CodeSystem/$validate-code?url=" + encode(CODE_SYSTEM_URL) + "&code=" + code
+                    + "&display=" + encode(code + " name");
+        }
+    },
+    EXPAND("expand") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            int pages = Math.max(1, sizes.valueSetMembers / 100);
+            return "/ValueSet/$expand?url=" + encode(VALUE_SET_URL) + "&valueSetVersion=" + VERSION
+                    + "&count=100&offset=" + random.nextInt(pages) * 100;
+        }
+    },
+    TRANSLATE("translate") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            int codes = Math.max(1, Math.min(sizes.concepts, sizes.mappings / 2));
+            return "/ConceptMap/$translate?url=" + encode(CONCEPT_MAP_URL) + "&system=" + encode(CODE_SYSTEM_URL)
+                    + "&code=" + code(random.nextInt(codes));
+        }
+    },
+    SEARCH("search") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            int pages = Math.max(1, sizes.concepts / 100);
+            return "/CodeSystem?url=" + encode(CODE_SYSTEM_URL) + "&page=" + (random.nextInt(pages) + 1);
+        }
+    },
+    SEARCH_ALL("search-all") {
+        @Override
+        String path(Sizes sizes, ThreadLocalRandom random) {
+            return "/CodeSystem";
+        }
+    };
+
+    private final String id;
+
+    LoadScenario(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    abstract String path(Sizes sizes, ThreadLocalRandom random);
+
+    public static LoadScenario of(String id) {
+        for (LoadScenario scenario : values()) {
+            if (scenario.id.equals(id.trim()))
+                return scenario;
+        }
+        throw new IllegalArgumentException("Unknown scenario " + id);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    public static class Sizes {
+        final int concepts;
+        final int valueSetMembers;
+        final int mappings;
+
+        public Sizes(int concepts, int valueSetMembers, int mappings) {
+            this.concepts = Math.max(1, concepts);
+            this.valueSetMembers = Math.max(1, valueSetMembers);
+            this.mappings = Math.max(1, mappings);
+        }
+    }
+}
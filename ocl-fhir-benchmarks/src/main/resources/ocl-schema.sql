@@ -0,0 +1,286 @@
+-- Subset of the oclapi2 schema that is mapped by org.openconceptlab.fhir.model, used by the load harness.
+-- Columns and indexes mirror the ones created by the oclapi2 migrations for these tables.
+
+create table if not exists user_profiles (
+    id bigserial primary key,
+    company varchar(255),
+    created_at timestamptz,
+    date_joined timestamptz,
+    email varchar(254),
+    extras jsonb,
+    first_name varchar(30),
+    internal_reference_id varchar(255),
+    is_active boolean,
+    is_staff boolean,
+    is_superuser boolean,
+    last_login timestamptz,
+    last_name varchar(150),
+    location varchar(255),
+    password varchar(128),
+    preferred_locale varchar(20),
+    public_access varchar(16),
+    updated_at timestamptz,
+    uri text,
+    username varchar(150) unique,
+    created_by_id bigint,
+    updated_by_id bigint
+);
+
+create table if not exists authtoken_token (
+    key varchar(40) primary key,
+    created timestamptz,
+    user_id bigint unique references user_profiles (id)
+);
+
+create table if not exists organizations (
+    id bigserial primary key,
+    company varchar(255),
+    created_at timestamptz,
+    extras jsonb,
+    internal_reference_id varchar(255),
+    is_active boolean,
+    location varchar(255),
+    mnemonic varchar(255) unique,
+    name varchar(255),
+    public_access varchar(16),
+    updated_at timestamptz,
+    uri text,
+    website varchar(255),
+    created_by_id bigint references user_profiles (id),
+    updated_by_id bigint references user_profiles (id)
+);
+
+create table if not exists user_profiles_organizations (
+    id serial primary key,
+    userprofile_id bigint references user_profiles (id),
+    organization_id bigint references organizations (id)
+);
+
+create table if not exists sources (
+    id bigserial primary key,
+    identifier jsonb,
+    publisher text,
+    contact jsonb,
+    jurisdiction jsonb,
+    purpose text,
+    copyright text,
+    content_type varchar(255),
+    revision_date timestamptz,
+    created_at timestamptz,
+    custom_validation_schema varchar(255),
+    default_locale varchar(20),
+    description text,
+    external_id text,
+    extras jsonb,
+    full_name text,
+    internal_reference_id varchar(255),
+    is_active boolean,
+    is_latest_version boolean,
+    mnemonic varchar(255),
+    name text,
+    public_access varchar(16),
+    released boolean,
+    retired boolean,
+    source_type varchar(255),
+    supported_locales jsonb,
+    updated_at timestamptz,
+    uri text,
+    version varchar(255),
+    website text,
+    canonical_url text,
+    organization_id bigint references organizations (id),
+    user_id bigint references user_profiles (id),
+    created_by_id bigint references user_profiles (id),
+    updated_by_id bigint references user_profiles (id)
+);
+create index if not exists sources_mnemonic on sources (mnemonic);
+create index if not exists sources_canonical_url on sources (canonical_url);
+create index if not exists sources_organization_id on sources (organization_id);
+
+create table if not exists concepts (
+    id bigserial primary key,
+    comment text,
+    concept_class varchar(255),
+    created_at timestamptz,
+    datatype varchar(255),
+    default_locale varchar(20),
+    description text,
+    external_id text,
+    extras jsonb,
+    full_name text,
+    internal_reference_id varchar(255),
+    is_active boolean,
+    is_latest_version boolean,
+    mnemonic varchar(255),
+    name text,
+    public_access varchar(16),
+    released boolean,
+    retired boolean,
+    supported_locales jsonb,
+    updated_at timestamptz,
+    uri text,
+    version varchar(255),
+    website text,
+    versioned_object_id bigint,
+    parent_id bigint references sources (id),
+    created_by_id bigint references user_profiles (id),
+    updated_by_id bigint references user_profiles (id)
+);
+create index if not exists concepts_mnemonic on concepts (mnemonic);
+create index if not exists concepts_parent_id on concepts (parent_id);
+
+create table if not exists concepts_sources (
+    id serial primary key,
+    concept_id bigint references concepts (id),
+    source_id bigint references sources (id)
+);
+create index if not exists concepts_sources_source_id on concepts_sources (source_id);
+create index if not exists concepts_sources_concept_id on concepts_sources (concept_id);
+
+create table if not exists localized_texts (
+    id bigserial primary key,
+    created_at timestamptz,
+    external_id text,
+    internal_reference_id varchar(255),
+    locale varchar(20),
+    locale_preferred boolean,
+    name text,
+    type varchar(255)
+);
+
+create table if not exists concepts_names (
+    id serial primary key,
+    concept_id bigint references concepts (id),
+    localizedtext_id bigint references localized_texts (id)
+);
+create index if not exists concepts_names_concept_id on concepts_names (concept_id);
+
+create table if not exists concepts_descriptions (
+    id serial primary key,
+    concept_id bigint references concepts (id),
+    localizedtext_id bigint references localized_texts (id)
+);
+create index if not exists concepts_descriptions_concept_id on concepts_descriptions (concept_id);
+
+-- Not part of oclapi2, owned by the FHIR service, same as ocl-fhir-ts/src/main/resources/db/concepts_displays.sql.
+create table if not exists concepts_displays (
+    concept_id bigint not null,
+    locale varchar(20) not null,
+    display text not null,
+    primary key (concept_id, locale)
+);
+
+create table if not exists mappings (
+    id bigserial primary key,
+    comment text,
+    created_at timestamptz,
+    custom_validation_schema varchar(255),
+    external_id text,
+    extras jsonb,
+    internal_reference_id varchar(255),
+    is_active boolean,
+    is_latest_version boolean,
+    map_type varchar(255),
+    public_access varchar(16),
+    released boolean,
+    retired boolean,
+    to_concept_code text,
+    from_concept_code text,
+    to_concept_name text,
+    from_concept_name text,
+    updated_at timestamptz,
+    uri text,
+    version varchar(255),
+    from_source_url text,
+    to_source_url text,
+    from_source_version text,
+    to_source_version text,
+    from_concept_id bigint references concepts (id),
+    to_concept_id bigint references concepts (id),
+    versioned_object_id bigint,
+    parent_id bigint references sources (id),
+    to_source_id bigint references sources (id),
+    from_source_id bigint references sources (id),
+    created_by_id bigint references user_profiles (id),
+    updated_by_id bigint references user_profiles (id)
+);
+create index if not exists mappings_from_concept_code on mappings (from_concept_code);
+
+create table if not exists mappings_sources (
+    id serial primary key,
+    mapping_id bigint references mappings (id),
+    source_id bigint references sources (id)
+);
+create index if not exists mappings_sources_source_id on mappings_sources (source_id);
+
+create table if not exists collections (
+    id bigserial primary key,
+    identifier jsonb,
+    publisher text,
+    contact jsonb,
+    jurisdiction jsonb,
+    purpose text,
+    copyright text,
+    immutable boolean,
+    revision_date timestamptz,
+    collection_type varchar(255),
+    created_at timestamptz,
+    custom_resources_linked_source varchar(255),
+    custom_validation_schema varchar(255),
+    default_locale varchar(20),
+    description text,
+    external_id text,
+    extras jsonb,
+    full_name text,
+    internal_reference_id varchar(255),
+    is_active boolean,
+    is_latest_version boolean,
+    mnemonic varchar(255),
+    name text,
+    preferred_source varchar(255),
+    public_access varchar(16),
+    released boolean,
+    repository_type varchar(255),
+    retired boolean,
+    supported_locales jsonb,
+    updated_at timestamptz,
+    uri text,
+    version varchar(255),
+    website text,
+    canonical_url text,
+    organization_id bigint references organizations (id),
+    user_id bigint references user_profiles (id),
+    created_by_id bigint references user_profiles (id),
+    updated_by_id bigint references user_profiles (id)
+);
+create index if not exists collections_mnemonic on collections (mnemonic);
+create index if not exists collections_canonical_url on collections (canonical_url);
+
+create table if not exists collection_references (
+    id bigserial primary key,
+    created_at timestamptz,
+    expression text,
+    internal_reference_id varchar(255),
+    last_resolved_at timestamptz,
+    updated_at timestamptz
+);
+
+create table if not exists collections_references (
+    id serial primary key,
+    collection_id bigint references collections (id),
+    collectionreference_id bigint references collection_references (id)
+);
+create index if not exists collections_references_collection_id on collections_references (collection_id);
+
+create table if not exists collections_concepts (
+    id serial primary key,
+    collection_id bigint references collections (id),
+    concept_id bigint references concepts (id)
+);
+create index if not exists collections_concepts_collection_id on collections_concepts (collection_id);
+
+create table if not exists collections_mappings (
+    id serial primary key,
+    collection_id bigint references collections (id),
+    mapping_id bigint references mappings (id)
+);
@@ -3,13 +3,16 @@ package org.openconceptlab.fhir;
 import org.openconceptlab.fhir.config.Config;
 import org.openconceptlab.fhir.controller.OclFhirController;
 import org.openconceptlab.fhir.converter.CodeSystemConverter;
+import org.openconceptlab.fhir.index.IndexService;
 import org.openconceptlab.fhir.interceptor.OclFhirLoggingInterceptor;
+import org.openconceptlab.fhir.job.ExportJobService;
 import org.openconceptlab.fhir.model.BaseOclEntity;
 import org.openconceptlab.fhir.model.UserProfile;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.repository.BaseOclRepository;
 import org.openconceptlab.fhir.repository.ConceptRepository;
 import org.openconceptlab.fhir.repository.UserRepository;
+import org.openconceptlab.fhir.snapshot.SnapshotService;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
@@ -36,6 +39,9 @@ import javax.annotation.PostConstruct;
         CodeSystemResourceProvider.class,
         OclFhirRestfulServer.class,
         CodeSystemConverter.class,
+        ExportJobService.class,
+        IndexService.class,
+        SnapshotService.class,
         OclFhirUtil.class
 })
 @EnableJpaRepositories(basePackageClasses = {ConceptRepository.class})
@@ -3,8 +3,10 @@ package org.openconceptlab.fhir;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.ResponseHighlighterInterceptor;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor;
 import org.openconceptlab.fhir.interceptor.OclFhirAuthorizationInterceptor;
 import org.openconceptlab.fhir.interceptor.OclFhirLoggingInterceptor;
+import org.openconceptlab.fhir.interceptor.OclFhirQueryTimeoutInterceptor;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.ConceptMapResourceProvider;
 import org.openconceptlab.fhir.provider.OclCapabilityStatementProvider;
@@ -29,6 +31,8 @@ public class OclFhirRestfulServer extends RestfulServer {
 	private OclCapabilityStatementProvider oclCapabilityStatementProvider;
 	private OclFhirAuthorizationInterceptor oclFhirAuthorizationInterceptor;
 	private OclFhirLoggingInterceptor oclFhirLoggingInterceptor;
+	private OclFhirAdmissionInterceptor oclFhirAdmissionInterceptor;
+	private OclFhirQueryTimeoutInterceptor oclFhirQueryTimeoutInterceptor;
 
 	@Autowired
 	public OclFhirRestfulServer(CodeSystemResourceProvider codeSystemResourceProvider,
@@ -36,13 +40,17 @@ public class OclFhirRestfulServer extends RestfulServer {
 								ConceptMapResourceProvider conceptMapResourceProvider,
 								OclCapabilityStatementProvider oclCapabilityStatementProvider,
 								OclFhirAuthorizationInterceptor oclFhirAuthorizationInterceptor,
-								OclFhirLoggingInterceptor oclFhirLoggingInterceptor) {
+								OclFhirLoggingInterceptor oclFhirLoggingInterceptor,
+								OclFhirAdmissionInterceptor oclFhirAdmissionInterceptor,
+								OclFhirQueryTimeoutInterceptor oclFhirQueryTimeoutInterceptor) {
 		this.codeSystemResourceProvider = codeSystemResourceProvider;
 		this.valueSetResourceProvider = valueSetResourceProvider;
 		this.conceptMapResourceProvider = conceptMapResourceProvider;
 		this.oclCapabilityStatementProvider = oclCapabilityStatementProvider;
 		this.oclFhirAuthorizationInterceptor = oclFhirAuthorizationInterceptor;
 		this.oclFhirLoggingInterceptor = oclFhirLoggingInterceptor;
+		this.oclFhirAdmissionInterceptor = oclFhirAdmissionInterceptor;
+		this.oclFhirQueryTimeoutInterceptor = oclFhirQueryTimeoutInterceptor;
 	}
 
 //	@Value("${ocl.servlet.baseurl}")
@@ -64,6 +72,8 @@ public class OclFhirRestfulServer extends RestfulServer {
 		setServerConformanceProvider(oclCapabilityStatementProvider);
 		
 		// Register interceptors
+		registerInterceptor(oclFhirAdmissionInterceptor);
+		registerInterceptor(oclFhirQueryTimeoutInterceptor);
 		registerInterceptor(new ResponseHighlighterInterceptor());
 		registerInterceptor(oclFhirAuthorizationInterceptor);
 		registerInterceptor(oclFhirLoggingInterceptor);
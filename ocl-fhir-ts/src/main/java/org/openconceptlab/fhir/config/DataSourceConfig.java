@@ -0,0 +1,76 @@
+package org.openconceptlab.fhir.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * The DataSourceConfig. Sets up two independently sized pools on the primary database, one for interactive requests
+ * ({@code spring.datasource.hikari}) and one for imports and other write transactions ({@code ocl.datasource.write}),
+ * an optional read replica pool ({@code ocl.datasource.replica}) and the data source used by JPA and JDBC, which routes
+ * each connection to one of them and registers its statements with the {@link QueryScope} of the request. Session
+ * locks that are held for the duration of an import use unpooled connections of their own.
+ * @author harpatel1
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource readDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("read");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConfigurationProperties("ocl.datasource.write")
+    public HikariDataSource writeDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("write");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public TransactionRoutingDataSource routingDataSource(HikariDataSource writeDataSource, HikariDataSource readDataSource,
+                                                          @Value("${ocl.datasource.replica.url:}") String url,
+                                                          @Value("${ocl.datasource.replica.username:}") String username,
+                                                          @Value("${ocl.datasource.replica.password:}") String password,
+                                                          @Value("${ocl.datasource.replica.maximum-pool-size:10}") int poolSize,
+                                                          @Value("${ocl.datasource.replica.max-lag-ms:5000}") long maxLagMillis,
+                                                          @Value("${ocl.datasource.replica.lag-check-interval-ms:1000}") long lagCheckIntervalMillis) {
+        HikariDataSource replica = null;
+        if (StringUtils.isNotBlank(url)) {
+            replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(url);
+            replica.setUsername(StringUtils.defaultIfBlank(username, readDataSource.getUsername()));
+            replica.setPassword(StringUtils.defaultIfBlank(password, readDataSource.getPassword()));
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+        }
+        return new TransactionRoutingDataSource(writeDataSource, readDataSource, replica, maxLagMillis, lagCheckIntervalMillis);
+    }
+
+    @Bean
+    public DataSource sessionLockDataSource(HikariDataSource writeDataSource) {
+        // a held lock keeps its connection for as long as the import runs, which a pool would lack for its batches
+        return new DriverManagerDataSource(writeDataSource.getJdbcUrl(), writeDataSource.getUsername(),
+                writeDataSource.getPassword());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(TransactionRoutingDataSource routingDataSource) {
+        return new QueryScopeDataSource(new LazyConnectionDataSourceProxy(routingDataSource));
+    }
+}
@@ -0,0 +1,131 @@
+package org.openconceptlab.fhir.config;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The QueryScope. Bounds the JDBC statements that a request runs on its thread by a deadline. The statements created
+ * through {@link QueryScopeDataSource} while the scope is open are registered and cancelled together when the deadline
+ * passes or the scope is cancelled, which also covers cursors that are read after the statement has been executed.
+ * Statements created after the cancellation fail without reaching the database. Work that a request hands off to a
+ * pool is bound to the scope of the request with {@link #bind(Callable)}.
+ * @author harpatel1
+ */
+public final class QueryScope implements AutoCloseable {
+
+    private static final ThreadLocal<QueryScope> current = new ThreadLocal<>();
+    private static final ScheduledExecutorService deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "query-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int PURGE_THRESHOLD = 64;
+
+    private final long timeoutMillis;
+    private final long openedAt = System.nanoTime();
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private final ScheduledFuture<?> deadline;
+    private volatile boolean cancelled;
+
+    private QueryScope(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = timeoutMillis > 0 ? deadlines.schedule(this::cancel, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+    }
+
+    /**
+     * Opens a scope on the current thread, a timeout of 0 or less only allows an explicit {@link #cancel()}.
+     */
+    public static QueryScope open(long timeoutMillis) {
+        QueryScope scope = new QueryScope(timeoutMillis);
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * Returns the scope of the current thread, null outside of a scope.
+     */
+    public static QueryScope current() {
+        return current.get();
+    }
+
+    /**
+     * Returns a task that runs within this scope on the thread that executes it, its statements are cancelled with
+     * those of the request.
+     */
+    public <T> Callable<T> bind(Callable<T> task) {
+        return () -> {
+            QueryScope previous = current.get();
+            current.set(this);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) current.remove();
+                else current.set(previous);
+            }
+        };
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Returns the time left until the deadline, {@link Long#MAX_VALUE} if the scope has no timeout.
+     */
+    public long getRemainingMillis() {
+        if (timeoutMillis <= 0) return Long.MAX_VALUE;
+        return Math.max(0, timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt));
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the statements of the scope that are running, may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // the statement has been closed in the meantime
+            }
+        }
+    }
+
+    void register(Statement statement) throws SQLException {
+        if (statements.size() >= PURGE_THRESHOLD) statements.removeIf(QueryScope::isClosed);
+        statements.add(statement);
+        // checked after adding, a concurrent cancel either sees the statement or is seen here
+        if (cancelled) {
+            statements.remove(statement);
+            statement.close();
+            throw new SQLTimeoutException("The request was cancelled after " + timeoutMillis + " ms.");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (deadline != null) deadline.cancel(false);
+        statements.clear();
+        if (current.get() == this) current.remove();
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.openconceptlab.fhir.config;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The QueryScopeDataSource. Registers every statement created on its connections with the {@link QueryScope} of the
+ * current thread, if any, so that the statements of a request can be cancelled. Connections used outside of a scope
+ * behave as those of the target data source.
+ * @author harpatel1
+ */
+public class QueryScopeDataSource extends DelegatingDataSource {
+
+    public QueryScopeDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private static Connection proxy(Connection target) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class}, new ScopedConnectionInvocationHandler(target));
+    }
+
+    private static class ScopedConnectionInvocationHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        ScopedConnectionInvocationHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getTargetConnection":
+                    return target;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return true;
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            if (result instanceof Statement) {
+                QueryScope scope = QueryScope.current();
+                if (scope != null) scope.register((Statement) result);
+            }
+            return result;
+        }
+    }
+}
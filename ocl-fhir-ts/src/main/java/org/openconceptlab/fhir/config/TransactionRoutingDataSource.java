@@ -0,0 +1,131 @@
+package org.openconceptlab.fhir.config;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TransactionRoutingDataSource. Picks the pool of a connection based on the current transaction:
+ * <ul>
+ *     <li>read-write transactions, i.e. imports, use the write pool so they can not exhaust the pool of interactive
+ *     requests,</li>
+ *     <li>read-only transactions use the replica, if one is configured and usable, else the read pool,</li>
+ *     <li>everything else uses the read pool.</li>
+ * </ul>
+ * The replica is skipped while its replication lag is above {@code maxLagMillis}, while it can not be reached
+ * and for {@code maxLagMillis} after the last write transaction, so that a read following a write sees that write.
+ * The time of the last write is kept once for the JVM, not per source or client, so a write to any source keeps all
+ * read-only transactions off the replica for that time. Frequent writes therefore leave the replica mostly unused.
+ *
+ * The routing key is evaluated when the physical connection is fetched, therefore this data source must be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, otherwise the connection is obtained before
+ * the transaction is marked read-only.
+ * @author harpatel1
+ */
+public class TransactionRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(TransactionRoutingDataSource.class);
+
+    private static final String LAG_QUERY = "select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, 0) end";
+
+    public enum Route { WRITE, READ, REPLICA }
+
+    private final DataSource replica;
+    private final long maxLagMillis;
+    private final ScheduledExecutorService lagMonitor;
+    private volatile boolean replicaUsable;
+    private volatile long lastWriteAt;
+
+    public TransactionRoutingDataSource(DataSource write, DataSource read, DataSource replica, long maxLagMillis,
+                                        long lagCheckIntervalMillis) {
+        this.replica = replica;
+        this.maxLagMillis = maxLagMillis;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Route.WRITE, write);
+        targets.put(Route.READ, read);
+        if (replica != null)
+            targets.put(Route.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(read);
+        if (replica != null) {
+            lagMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "replica-lag-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagMonitor.scheduleWithFixedDelay(this::checkReplicaLag, 0, lagCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            lagMonitor = null;
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive())
+            return Route.READ;
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            registerWrite();
+            return Route.WRITE;
+        }
+        if (replica == null || !replicaUsable || System.currentTimeMillis() - lastWriteAt < maxLagMillis)
+            return Route.READ;
+        return Route.REPLICA;
+    }
+
+    private void registerWrite() {
+        lastWriteAt = System.currentTimeMillis();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // the window starts again at completion, a long import would otherwise be past it when it commits
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lastWriteAt = System.currentTimeMillis();
+                }
+            });
+        }
+    }
+
+    private void checkReplicaLag() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+            long lag = rs.next() ? rs.getLong(1) : Long.MAX_VALUE;
+            boolean usable = lag <= maxLagMillis;
+            if (usable != replicaUsable)
+                log.info("Replica " + (usable ? "enabled" : "disabled") + " for read-only transactions, lag " + lag + " ms.");
+            replicaUsable = usable;
+        } catch (Exception e) {
+            if (replicaUsable)
+                log.warn("Replica disabled for read-only transactions: " + e.getMessage());
+            replicaUsable = false;
+        }
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    /**
+     * Stops the lag monitor and closes the replica, the write and read pools are left to their owner.
+     */
+    @Override
+    public void close() throws Exception {
+        if (lagMonitor != null)
+            lagMonitor.shutdownNow();
+        if (replica instanceof AutoCloseable)
+            ((AutoCloseable) replica).close();
+    }
+}
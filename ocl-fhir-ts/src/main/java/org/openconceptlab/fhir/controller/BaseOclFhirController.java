@@ -1,25 +1,50 @@
 package org.openconceptlab.fhir.controller;
 
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
 import ca.uhn.fhir.rest.gclient.IQuery;
 import ca.uhn.fhir.rest.gclient.StringClientParam;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hl7.fhir.r4.model.*;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.OperationClass;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.Permit;
+import org.openconceptlab.fhir.interceptor.OclFhirQueryTimeoutInterceptor;
+import org.openconceptlab.fhir.job.ExportJob;
+import org.openconceptlab.fhir.job.ExportJobService;
+import org.openconceptlab.fhir.job.ImportJob;
+import org.openconceptlab.fhir.job.ImportJobService;
 import org.openconceptlab.fhir.model.Source;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,21 +59,44 @@ public class BaseOclFhirController {
     CodeSystemResourceProvider codeSystemResourceProvider;
     ValueSetResourceProvider valueSetResourceProvider;
     OclFhirUtil oclFhirUtil;
+    ExportJobService exportJobService;
+    ImportJobService importJobService;
+
+    OclFhirAdmissionInterceptor admissionInterceptor;
+    OclFhirQueryTimeoutInterceptor queryTimeoutInterceptor;
 
     @Autowired
     public BaseOclFhirController(CodeSystemResourceProvider codeSystemResourceProvider,
                              ValueSetResourceProvider valueSetResourceProvider,
-                             OclFhirUtil oclFhirUtil) {
+                             OclFhirUtil oclFhirUtil,
+                             ExportJobService exportJobService,
+                             ImportJobService importJobService) {
         this.codeSystemResourceProvider = codeSystemResourceProvider;
         this.valueSetResourceProvider = valueSetResourceProvider;
         this.oclFhirUtil = oclFhirUtil;
+        this.exportJobService = exportJobService;
+        this.importJobService = importJobService;
+    }
+
+    @Autowired(required = false)
+    public void setAdmissionInterceptor(OclFhirAdmissionInterceptor admissionInterceptor) {
+        this.admissionInterceptor = admissionInterceptor;
+    }
+
+    @Autowired(required = false)
+    public void setQueryTimeoutInterceptor(OclFhirQueryTimeoutInterceptor queryTimeoutInterceptor) {
+        this.queryTimeoutInterceptor = queryTimeoutInterceptor;
     }
 
     protected ResponseEntity<String> handleSearchResource(final Class<? extends MetadataResource> resourceClass, final String... args) {
+        HttpHeaders headers = new HttpHeaders();
         try {
-            String resource = searchResource(resourceClass, args);
+            String resource = searchResource(resourceClass, headers, args);
             log.info("Finished searching " + resourceClass + ".");
-            return ResponseEntity.ok(resource);
+            return ResponseEntity.ok().headers(headers).body(resource);
+        } catch (NotModifiedException e) {
+            log.info(resourceClass + " not modified.");
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
         } catch (BaseServerResponseException e) {
             log.error("BaseServerResponseException - " + e.getMessage());
             log.error("BaseServerResponseException - " + e);
@@ -60,6 +108,69 @@ public class BaseOclFhirController {
         }
     }
 
+    /**
+     * Streams the concepts of a CodeSystem version as NDJSON directly to the response, errors raised before the first
+     * concept is written are returned as usual. The export is admitted and timed like the requests of the FHIR server.
+     */
+    protected void handleExportCodeSystem(final String owner, final String id, final Optional<String> version,
+                                          final HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id
+                + version.map(v -> "-" + v).orElse(EMPTY) + ".ndjson\"");
+        HttpServletRequest request = currentRequest();
+        QueryScope scope = null;
+        try (Permit permit = admissionInterceptor != null && request != null
+                ? admissionInterceptor.admit(OperationClass.EXPORT, request) : null) {
+            scope = queryTimeoutInterceptor != null ? queryTimeoutInterceptor.open(OperationClass.EXPORT) : null;
+            PrintWriter writer = response.getWriter();
+            long count = codeSystemResourceProvider.exportCodeSystem(newStringType(owner), newStringType(id),
+                    newStringType(version.orElse(EMPTY)), writer);
+            writer.flush();
+            log.info("Finished exporting " + count + " concepts of CodeSystem " + id + ".");
+        } catch (RuntimeException e) {
+            BaseServerResponseException failure = scope != null
+                    ? queryTimeoutInterceptor.timedOut(scope, "the export of CodeSystem " + id) : null;
+            if (failure == null && e instanceof BaseServerResponseException) failure = (BaseServerResponseException) e;
+            if (failure == null) throw e;
+            log.error("BaseServerResponseException - " + failure.getMessage());
+            if (response.isCommitted()) throw failure;
+            response.reset();
+            response.setStatus(failure.getStatusCode());
+            if (failure.hasResponseHeaders())
+                failure.getResponseHeaders().forEach((name, values) -> values.forEach(v -> response.addHeader(name, v)));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            if (failure.getResponseBody() != null) response.getWriter().write(failure.getResponseBody());
+        } finally {
+            if (scope != null) scope.close();
+        }
+    }
+
+    /**
+     * Kick-off response of the FHIR asynchronous request pattern, the Content-Location points to the status of the job.
+     */
+    protected ResponseEntity<String> acceptExport(final ExportJob job, final HttpServletRequest request) {
+        String statusUrl = ServletUriComponentsBuilder.fromContextPath(request).path(FS + EXPORT_POLL_STATUS + FS)
+                .path(job.getId()).toUriString();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).header(HttpHeaders.CONTENT_LOCATION, statusUrl).build();
+    }
+
+    /**
+     * Creates the CodeSystem, or with {@code Prefer: respond-async} validates it, commits its source and returns 202
+     * while the concepts are imported in the background. The Content-Location points to the progress of the import.
+     */
+    protected ResponseEntity<String> handleCreateCodeSystem(final CodeSystem system, final String auth, final String prefer,
+                                                            final HttpServletRequest request) {
+        if (prefer != null && prefer.contains(RESPOND_ASYNC)) {
+            ImportJob job = importJobService.submitCodeSystemImport(system, auth, getRequestUrl(request));
+            String statusUrl = ServletUriComponentsBuilder.fromContextPath(request).path(FS + IMPORT_POLL_STATUS + FS)
+                    .path(job.getId()).toUriString();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).header(HttpHeaders.CONTENT_LOCATION, statusUrl).build();
+        }
+        performCreate(system, auth);
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
     protected ResponseEntity<String> handleDeleteResource(final Class<? extends MetadataResource> resourceClass, final String id,
                                                           final String version, final String owner, final String auth) {
         try {
@@ -92,7 +203,19 @@ public class BaseOclFhirController {
     }
 
     protected String searchResource(final Class<? extends MetadataResource> resourceClass, final String... filters) {
-        IQuery q = oclFhirUtil.getClient().search().forResource(resourceClass);
+        return searchResource(resourceClass, new HttpHeaders(), filters);
+    }
+
+    /**
+     * Searches the resource and passes the conditional headers of the current request on to the provider, the ETag and
+     * Last-Modified of the provider response are copied to {@code responseHeaders}. A matching condition surfaces as
+     * {@link NotModifiedException}.
+     */
+    protected String searchResource(final Class<? extends MetadataResource> resourceClass, final HttpHeaders responseHeaders,
+                                    final String... filters) {
+        IGenericClient client = client();
+        client.registerInterceptor(new ValidatorHeadersInterceptor(responseHeaders));
+        IQuery q = client.search().forResource(resourceClass);
         if (filters.length % 2 == 0) {
             for (int i = 0; i < filters.length; i += 2) {
                 if (i == 0) {
@@ -102,6 +225,13 @@ public class BaseOclFhirController {
                 }
             }
         }
+        HttpServletRequest request = currentRequest();
+        if (request != null) {
+            for (String header : List.of(Constants.HEADER_IF_NONE_MATCH, Constants.HEADER_IF_MODIFIED_SINCE)) {
+                String value = request.getHeader(header);
+                if (isValid(value)) q = (IQuery) q.withAdditionalHeader(header, value);
+            }
+        }
         log.info("Query built and executing the request.");
         Bundle bundle = (Bundle) q.execute();
         log.info("Request executed successfully.");
@@ -109,7 +239,7 @@ public class BaseOclFhirController {
     }
 
     protected Parameters performFhirOperation(Parameters parameters, Class<? extends Resource> type, String operation) {
-        return oclFhirUtil.getClient()
+        return client()
                 .operation()
                 .onType(type)
                 .named(operation)
@@ -118,14 +248,14 @@ public class BaseOclFhirController {
     }
 
     protected void performCreate(MetadataResource resource, String auth) {
-        oclFhirUtil.getClient()
+        client()
                 .create()
                 .resource(resource).withAdditionalHeader(AUTHORIZATION, auth)
                 .execute();
     }
 
     protected void performUpdate(MetadataResource resource, String auth, IdType idType, String owner) {
-        oclFhirUtil.getClient()
+        client()
                 .update()
                 .resource(resource)
                 .withId(idType)
@@ -135,7 +265,7 @@ public class BaseOclFhirController {
     }
 
     protected void performDelete(String type, String id, String version, String owner, String auth) {
-        oclFhirUtil.getClient()
+        client()
                 .delete()
                 .resourceById(new IdType(type + FS + "1"))
                 .withAdditionalHeader(ID, id)
@@ -291,5 +421,71 @@ public class BaseOclFhirController {
         return false;
     }
 
-}
 
+    /**
+     * Returns a client of the FHIR server that passes the address of the current request on, so that the admission
+     * limits of the server apply to the original client rather than to this application. The client also tells the
+     * server how long it waits for a response, so that the server cancels the queries of a request this application
+     * has given up on.
+     */
+    private IGenericClient client() {
+        IGenericClient client = oclFhirUtil.getClient();
+        HttpServletRequest request = currentRequest();
+        int waitSeconds = client.getFhirContext().getRestfulClientFactory().getSocketTimeout() / 1000;
+        client.registerInterceptor(new ForwardingInterceptor(request != null ? request.getRemoteAddr() : null, waitSeconds));
+        return client;
+    }
+
+    private static HttpServletRequest currentRequest() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes
+                ? ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest() : null;
+    }
+
+    /**
+     * Adds the address of the original client and the time the client waits for a response to its requests.
+     */
+    private static class ForwardingInterceptor implements IClientInterceptor {
+
+        private final String address;
+        private final int waitSeconds;
+
+        ForwardingInterceptor(String address, int waitSeconds) {
+            this.address = address;
+            this.waitSeconds = waitSeconds;
+        }
+
+        @Override
+        public void interceptRequest(IHttpRequest request) {
+            if (isValid(address)) request.addHeader(OclFhirAdmissionInterceptor.X_FORWARDED_FOR, address);
+            if (waitSeconds > 0) request.addHeader(PREFER, "wait=" + waitSeconds);
+        }
+
+        @Override
+        public void interceptResponse(IHttpResponse response) {
+        }
+    }
+
+    /**
+     * Copies the ETag and Last-Modified of a provider response, including a 304 response.
+     */
+    private static class ValidatorHeadersInterceptor implements IClientInterceptor {
+
+        private final HttpHeaders headers;
+
+        ValidatorHeadersInterceptor(HttpHeaders headers) {
+            this.headers = headers;
+        }
+
+        @Override
+        public void interceptRequest(IHttpRequest request) {
+        }
+
+        @Override
+        public void interceptResponse(IHttpResponse response) {
+            for (String header : List.of(Constants.HEADER_ETAG, Constants.HEADER_LAST_MODIFIED)) {
+                List<String> values = response.getHeaders(header);
+                if (values != null && !values.isEmpty()) headers.set(header, values.get(0));
+            }
+        }
+    }
+}
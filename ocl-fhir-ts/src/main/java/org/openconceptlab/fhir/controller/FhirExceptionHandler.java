@@ -1,12 +1,16 @@
 package org.openconceptlab.fhir.controller;
 
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import java.util.List;
+
 import static org.openconceptlab.fhir.util.OclFhirUtil.badRequestRawMsg;
 
 @ControllerAdvice
@@ -14,10 +18,23 @@ public class FhirExceptionHandler {
 
     private static final Log log = LogFactory.getLog(FhirExceptionHandler.class);
 
+    private final OclFhirAdmissionInterceptor admissionInterceptor;
+
+    public FhirExceptionHandler(OclFhirAdmissionInterceptor admissionInterceptor) {
+        this.admissionInterceptor = admissionInterceptor;
+    }
+
     @ExceptionHandler(value = {BaseServerResponseException.class})
     public ResponseEntity<Object> handleBaseServerResponseException(BaseServerResponseException bsre) {
         log.error("BaseServerResponseException - " + bsre.getMessage());
-        return ResponseEntity.status(bsre.getStatusCode()).body(bsre.getResponseBody());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(bsre.getStatusCode());
+        if (bsre.getStatusCode() == OclFhirAdmissionInterceptor.STATUS_TOO_MANY_REQUESTS) {
+            // the FHIR client does not keep the response headers of a rejected request
+            List<String> retryAfter = bsre.hasResponseHeaders() ? bsre.getResponseHeaders().get(Constants.HEADER_RETRY_AFTER) : null;
+            response.header(Constants.HEADER_RETRY_AFTER, retryAfter != null && !retryAfter.isEmpty() ? retryAfter.get(0)
+                    : String.valueOf(admissionInterceptor.getRetryAfterSeconds()));
+        }
+        return response.body(bsre.getResponseBody());
     }
 
     @ExceptionHandler(value = {Exception.class})
@@ -1,10 +1,30 @@
 package org.openconceptlab.fhir.controller;
 
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.openconceptlab.fhir.job.ExportJob;
+import org.openconceptlab.fhir.job.ExportJobService;
+import org.openconceptlab.fhir.job.ImportJob;
+import org.openconceptlab.fhir.job.ImportJobService;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
 import org.openconceptlab.fhir.util.OclFhirUtil;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.*;
+import static org.openconceptlab.fhir.util.OclFhirUtil.getError;
 
 /**
  * The OclFhirController class. This is used to support base ocl end points.
@@ -17,9 +37,120 @@ public class OclFhirController extends BaseOclFhirController{
 
     public OclFhirController(CodeSystemResourceProvider codeSystemResourceProvider,
                              ValueSetResourceProvider valueSetResourceProvider,
-                             OclFhirUtil oclFhirUtil) {
-        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil);
+                             OclFhirUtil oclFhirUtil,
+                             ExportJobService exportJobService,
+                             ImportJobService importJobService) {
+        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil, exportJobService, importJobService);
     }
 
-}
+    /**
+     * Status of a bulk export, 202 while the job runs, the manifest with the file url once it is complete and the
+     * error outcome if it failed.
+     */
+    @GetMapping(path = {"/" + EXPORT_POLL_STATUS + "/{job}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> getExportStatus(@PathVariable(name = JOB) String jobId, HttpServletRequest request) {
+        Optional<ExportJob> jobOpt = exportJobService.getJob(jobId);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        ExportJob job = jobOpt.get();
+        switch (job.getStatus()) {
+            case COMPLETED:
+                return ResponseEntity.ok(manifest(job, request));
+            case FAILED:
+                Exception e = job.getError();
+                int status = e instanceof BaseServerResponseException ? ((BaseServerResponseException) e).getStatusCode()
+                        : HttpStatus.INTERNAL_SERVER_ERROR.value();
+                return ResponseEntity.status(status).body(oclFhirUtil.getResourceAsString(
+                        getError(OperationOutcome.IssueType.EXCEPTION, e.getMessage())));
+            default:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).header("X-Progress", job.getStatus().name()).build();
+        }
+    }
+
+    @DeleteMapping(path = {"/" + EXPORT_POLL_STATUS + "/{job}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> deleteExport(@PathVariable(name = JOB) String jobId) {
+        return exportJobService.delete(jobId) ? ResponseEntity.status(HttpStatus.ACCEPTED).build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping(path = {"/" + EXPORT_FILE + "/{job}"}, produces = {APPLICATION_NDJSON})
+    public ResponseEntity<Resource> getExportFile(@PathVariable(name = JOB) String jobId) {
+        Optional<ExportJob> jobOpt = exportJobService.getJob(jobId).filter(j -> j.getStatus() == ExportJob.Status.COMPLETED);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        ExportJob job = jobOpt.get();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getFile().getFileName() + "\"")
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(new FileSystemResource(job.getFile()));
+    }
+
+    /**
+     * Progress of an asynchronous import: 202 while it runs, 200 once all batches are committed and the status of the
+     * error if it failed. The body reports the batches and concepts written so far in all cases.
+     */
+    @GetMapping(path = {"/" + IMPORT_POLL_STATUS + "/{job}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> getImportStatus(@PathVariable(name = JOB) String jobId) {
+        Optional<ImportJob> jobOpt = importJobService.getJob(jobId);
+        if (jobOpt.isEmpty()) return ResponseEntity.notFound().build();
+        return importStatus(jobOpt.get());
+    }
+
+    /**
+     * Resumes a failed import from its first uncommitted batch.
+     */
+    @PostMapping(path = {"/" + IMPORT_POLL_STATUS + "/{job}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> resumeImport(@PathVariable(name = JOB) String jobId) {
+        if (importJobService.getJob(jobId).isEmpty()) return ResponseEntity.notFound().build();
+        return importJobService.resume(jobId).map(this::importStatus)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.CONFLICT).build());
+    }
+
+    @DeleteMapping(path = {"/" + IMPORT_POLL_STATUS + "/{job}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> deleteImport(@PathVariable(name = JOB) String jobId) {
+        return importJobService.delete(jobId) ? ResponseEntity.status(HttpStatus.ACCEPTED).build()
+                : ResponseEntity.notFound().build();
+    }
 
+    private ResponseEntity<String> importStatus(ImportJob job) {
+        JsonObject progress = new JsonObject();
+        progress.addProperty("transactionTime", job.getTransactionTime().toString());
+        progress.addProperty("request", job.getRequest());
+        progress.addProperty("type", job.getType());
+        progress.addProperty("status", job.getStatus().name());
+        progress.addProperty("source", job.getSourceMnemonic());
+        progress.addProperty("batchesDone", job.getBatchesDone());
+        progress.addProperty("batchesTotal", job.getTotalBatches());
+        progress.addProperty("conceptsWritten", job.getConceptsWritten());
+        progress.addProperty("conceptsTotal", job.getTotalConcepts());
+        progress.addProperty("conceptsPerSecond", Math.round(job.getConceptsPerSecond()));
+        switch (job.getStatus()) {
+            case COMPLETED:
+                return ResponseEntity.ok(progress.toString());
+            case FAILED:
+                Exception e = job.getError();
+                progress.addProperty("error", e.getMessage());
+                int status = e instanceof BaseServerResponseException ? ((BaseServerResponseException) e).getStatusCode()
+                        : HttpStatus.INTERNAL_SERVER_ERROR.value();
+                return ResponseEntity.status(status).body(progress.toString());
+            default:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).header("X-Progress", job.getBatchesDone() + "/"
+                        + job.getTotalBatches() + " batches").body(progress.toString());
+        }
+    }
+
+    private static String manifest(ExportJob job, HttpServletRequest request) {
+        JsonObject manifest = new JsonObject();
+        manifest.addProperty("transactionTime", job.getTransactionTime().toString());
+        manifest.addProperty("request", job.getRequest());
+        manifest.addProperty("requiresAccessToken", false);
+        JsonObject file = new JsonObject();
+        file.addProperty("type", job.getType());
+        file.addProperty(URL, ServletUriComponentsBuilder.fromContextPath(request).path(FS + EXPORT_FILE + FS)
+                .path(job.getId()).toUriString());
+        file.addProperty(COUNT, job.getCount());
+        JsonArray output = new JsonArray();
+        output.add(file);
+        manifest.add("output", output);
+        manifest.add("error", new JsonArray());
+        return manifest.toString();
+    }
+}
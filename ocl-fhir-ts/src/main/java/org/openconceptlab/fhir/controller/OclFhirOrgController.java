@@ -1,6 +1,8 @@
 package org.openconceptlab.fhir.controller;
 
 import org.hl7.fhir.r4.model.*;
+import org.openconceptlab.fhir.job.ExportJobService;
+import org.openconceptlab.fhir.job.ImportJobService;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
 import org.openconceptlab.fhir.util.OclFhirUtil;
@@ -10,6 +12,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Optional;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
@@ -21,22 +25,25 @@ public class OclFhirOrgController extends BaseOclFhirController {
 
     public OclFhirOrgController(CodeSystemResourceProvider codeSystemResourceProvider,
                                 ValueSetResourceProvider valueSetResourceProvider,
-                                OclFhirUtil oclFhirUtil) {
-        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil);
+                                OclFhirUtil oclFhirUtil,
+                                ExportJobService exportJobService,
+                                ImportJobService importJobService) {
+        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil, exportJobService, importJobService);
     }
 
     @PostMapping(path = {"/{org}/CodeSystem"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> createCodeSystemForOrg(@PathVariable(name = ORG) String org,
                                                          @RequestBody String codeSystem,
-                                                         @RequestHeader(name = AUTHORIZATION) String auth) {
+                                                         @RequestHeader(name = AUTHORIZATION) String auth,
+                                                         @RequestHeader(name = PREFER, required = false) String prefer,
+                                                         HttpServletRequest request) {
         CodeSystem system = (CodeSystem) parser.parseResource(codeSystem);
         Optional<Identifier> acsnOpt = hasAccessionIdentifier(system.getIdentifier());
         ResponseEntity<String> response = validate(system.getIdElement().getIdPart(), acsnOpt, ORGS, org);
         if (response != null) return response;
         if (acsnOpt.isEmpty()) addIdentifier(system.getIdentifier(), ORGS, org, CODESYSTEM, system.getIdElement().getIdPart(), system.getVersion());
 
-        performCreate(system, auth);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        return handleCreateCodeSystem(system, auth, prefer, request);
     }
 
     @GetMapping(path = {"/{org}/CodeSystem/{id}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
@@ -60,6 +67,15 @@ public class OclFhirOrgController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{org}/CodeSystem/{id}/$export", "/{org}/CodeSystem/{id}/version/{version}/$export"},
+            produces = {APPLICATION_NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    public void exportCodeSystemByOrg(@PathVariable(name = ORG) String org,
+                                      @PathVariable(name = ID) String id,
+                                      @PathVariable(name = VERSION) Optional<String> version,
+                                      HttpServletResponse response) throws IOException {
+        handleExportCodeSystem(formatOrg(org), id, version, response);
+    }
+
     @GetMapping(path = {"/{org}/CodeSystem"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchCodeSystemsByOrg(@PathVariable String org,
                                                          @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -194,6 +210,19 @@ public class OclFhirOrgController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{org}/ValueSet/{id}/$export", "/{org}/ValueSet/{id}/version/{version}/$export"},
+            produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> exportValueSetByOrg(@PathVariable(name = ORG) String org,
+                                                      @PathVariable(name = ID) String id,
+                                                      @PathVariable(name = VERSION) Optional<String> version,
+                                                      @RequestParam(name = INCLUDE_DESIGNATIONS, defaultValue = "true") Boolean includeDesignations,
+                                                      @RequestParam(name = ACTIVE_ONLY, defaultValue = "true") Boolean activeOnly,
+                                                      @RequestParam(name = DISPLAY_LANGUAGE, required = false) String displayLanguage,
+                                                      HttpServletRequest request) {
+        return acceptExport(exportJobService.submitValueSetExport(formatOrg(org), id, version, includeDesignations,
+                activeOnly, displayLanguage, getRequestUrl(request)), request);
+    }
+
     @GetMapping(path = {"/{org}/ValueSet"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchValueSetsByOrg(@PathVariable String org,
                                                        @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -268,6 +297,16 @@ public class OclFhirOrgController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{org}/ConceptMap/{id}/$export", "/{org}/ConceptMap/{id}/version/{version}/$export"},
+            produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> exportConceptMapByOrg(@PathVariable(name = ORG) String org,
+                                                        @PathVariable(name = ID) String id,
+                                                        @PathVariable(name = VERSION) Optional<String> version,
+                                                        HttpServletRequest request) {
+        return acceptExport(exportJobService.submitConceptMapExport(formatOrg(org), id, version, getRequestUrl(request)),
+                request);
+    }
+
     @GetMapping(path = {"/{org}/ConceptMap"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchConceptMapsByOrg(@PathVariable String org,
                                                          @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -1,6 +1,8 @@
 package org.openconceptlab.fhir.controller;
 
 import org.hl7.fhir.r4.model.*;
+import org.openconceptlab.fhir.job.ExportJobService;
+import org.openconceptlab.fhir.job.ImportJobService;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
 import org.openconceptlab.fhir.util.OclFhirUtil;
@@ -10,6 +12,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Optional;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
@@ -21,14 +25,18 @@ public class OclFhirUserController extends BaseOclFhirController {
 
     public OclFhirUserController(CodeSystemResourceProvider codeSystemResourceProvider,
                                  ValueSetResourceProvider valueSetResourceProvider,
-                                 OclFhirUtil oclFhirUtil) {
-        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil);
+                                 OclFhirUtil oclFhirUtil,
+                                 ExportJobService exportJobService,
+                                ImportJobService importJobService) {
+        super(codeSystemResourceProvider, valueSetResourceProvider, oclFhirUtil, exportJobService, importJobService);
     }
 
     @PostMapping(path = {"/{user}/CodeSystem"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> createCodeSystemForUser(@PathVariable(name = USER) String user,
                                                           @RequestBody String codeSystem,
-                                                          @RequestHeader(name = AUTHORIZATION) String auth) {
+                                                          @RequestHeader(name = AUTHORIZATION) String auth,
+                                                          @RequestHeader(name = PREFER, required = false) String prefer,
+                                                          HttpServletRequest request) {
         CodeSystem system = (CodeSystem) parser.parseResource(codeSystem);
         Optional<Identifier> acsnOpt = hasAccessionIdentifier(system.getIdentifier());
         ResponseEntity<String> response = validate(system.getIdElement().getIdPart(), acsnOpt, USERS, user);
@@ -36,8 +44,7 @@ public class OclFhirUserController extends BaseOclFhirController {
         if (acsnOpt.isEmpty()) addIdentifier(
                 system.getIdentifier(), USERS, user, CODESYSTEM, system.getIdElement().getIdPart(), system.getVersion());
 
-        performCreate(system, auth);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        return handleCreateCodeSystem(system, auth, prefer, request);
     }
 
     @PutMapping(path = {"/{user}/CodeSystem/{id}/version/{version}"}, produces = {MediaType.APPLICATION_JSON_VALUE})
@@ -87,6 +94,15 @@ public class OclFhirUserController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{user}/CodeSystem/{id}/$export", "/{user}/CodeSystem/{id}/version/{version}/$export"},
+            produces = {APPLICATION_NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    public void exportCodeSystemByUser(@PathVariable(name = USER) String user,
+                                       @PathVariable(name = ID) String id,
+                                       @PathVariable(name = VERSION) Optional<String> version,
+                                       HttpServletResponse response) throws IOException {
+        handleExportCodeSystem(formatUser(user), id, version, response);
+    }
+
     @GetMapping(path = {"/{user}/CodeSystem"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchCodeSystemsByUser(@PathVariable String user,
                                                           @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -194,6 +210,19 @@ public class OclFhirUserController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{user}/ValueSet/{id}/$export", "/{user}/ValueSet/{id}/version/{version}/$export"},
+            produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> exportValueSetByUser(@PathVariable(name = USER) String user,
+                                                       @PathVariable(name = ID) String id,
+                                                       @PathVariable(name = VERSION) Optional<String> version,
+                                                       @RequestParam(name = INCLUDE_DESIGNATIONS, defaultValue = "true") Boolean includeDesignations,
+                                                       @RequestParam(name = ACTIVE_ONLY, defaultValue = "true") Boolean activeOnly,
+                                                       @RequestParam(name = DISPLAY_LANGUAGE, required = false) String displayLanguage,
+                                                       HttpServletRequest request) {
+        return acceptExport(exportJobService.submitValueSetExport(formatUser(user), id, version, includeDesignations,
+                activeOnly, displayLanguage, getRequestUrl(request)), request);
+    }
+
     @GetMapping(path = {"/{user}/ValueSet"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchValueSetsByUser(@PathVariable String user,
                                                         @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -267,6 +296,16 @@ public class OclFhirUserController extends BaseOclFhirController {
                 PAGE, page.orElse("1"), OWNER_URL, getRequestUrl(request));
     }
 
+    @GetMapping(path = {"/{user}/ConceptMap/{id}/$export", "/{user}/ConceptMap/{id}/version/{version}/$export"},
+            produces = {MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<String> exportConceptMapByUser(@PathVariable(name = USER) String user,
+                                                         @PathVariable(name = ID) String id,
+                                                         @PathVariable(name = VERSION) Optional<String> version,
+                                                         HttpServletRequest request) {
+        return acceptExport(exportJobService.submitConceptMapExport(formatUser(user), id, version, getRequestUrl(request)),
+                request);
+    }
+
     @GetMapping(path = {"/{user}/ConceptMap"}, produces = {MediaType.APPLICATION_JSON_VALUE})
     public ResponseEntity<String> searchConceptMapsByUser(@PathVariable String user,
                                                           @RequestParam(name = PAGE, required = false) Optional<String> page,
@@ -54,11 +54,20 @@ public class BaseConverter {
     protected SimpleJdbcInsert insertCollectionReference;
     protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     protected MappingRepository mappingRepository;
+    protected ConceptDisplayRepository conceptDisplayRepository;
+    protected IdSequenceRepository idSequenceRepository;
+    protected ResourceLockRepository resourceLockRepository;
 
     protected static final String insertConceptNamesSql = "insert into concepts_names (localizedtext_id,concept_id) values (?,?)";
     protected static final String insertConceptDescSql = "insert into concepts_descriptions (localizedtext_id,concept_id) values (?,?)";
     protected static final String updateConceptVersionSql = "update concepts set version = ? where id = ?";
     protected static final String insertConceptsSources = "insert into concepts_sources (concept_id,source_id) values (?,?)";
+    private static final String insertConceptWithIdSql = "insert into concepts (id, versioned_object_id, version, " +
+            "public_access, is_active, extras, uri, mnemonic, released, retired, is_latest_version, name, full_name, " +
+            "default_locale, concept_class, datatype, comment, created_by_id, updated_by_id, parent_id, created_at, " +
+            "updated_at) values (?,?,?,?,?,cast(? as jsonb),?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String insertLocalizedTextWithIdSql = "insert into localized_texts (id, name, type, locale, " +
+            "locale_preferred, created_at) values (?,?,?,?,?,?)";
     private static final Log log = LogFactory.getLog(BaseConverter.class);
 
     @Autowired
@@ -81,12 +90,63 @@ public class BaseConverter {
         this.mappingRepository = mappingRepository;
     }
 
+    @Autowired(required = false)
+    public void setConceptDisplayRepository(ConceptDisplayRepository conceptDisplayRepository) {
+        this.conceptDisplayRepository = conceptDisplayRepository;
+    }
+
+    @Autowired(required = false)
+    public void setIdSequenceRepository(IdSequenceRepository idSequenceRepository) {
+        this.idSequenceRepository = idSequenceRepository;
+    }
+
+    @Autowired(required = false)
+    public void setResourceLockRepository(ResourceLockRepository resourceLockRepository) {
+        this.resourceLockRepository = resourceLockRepository;
+    }
+
+    /**
+     * Takes the exclusive write lock of a source or collection version for the rest of the current transaction.
+     */
+    protected void lockResource(String resourceKey) {
+        if (resourceLockRepository != null)
+            resourceLockRepository.lock(resourceKey);
+    }
+
+    /**
+     * Takes a shared write lock of a source or collection version, used by writes that may run in parallel with each
+     * other but not with an exclusive writer, such as the batches of one import.
+     */
+    protected void lockResourceShared(String resourceKey) {
+        if (resourceLockRepository != null)
+            resourceLockRepository.lockShared(resourceKey);
+    }
+
+    protected static String resourceKey(String resourceType, String ownerType, String owner, String id, String version) {
+        return FS + ownerType + FS + owner + FS + toOclResource(resourceType) + FS + id + FS + version + FS;
+    }
+
+    protected static String resourceKey(Source source) {
+        return source.getOrganization() != null
+                ? resourceKey(CODESYSTEM, ORGS, source.getOrganization().getMnemonic(), source.getMnemonic(), source.getVersion())
+                : resourceKey(CODESYSTEM, USERS, source.getUserId().getUsername(), source.getMnemonic(), source.getVersion());
+    }
+
+    /**
+     * Whether new concepts get their ids before they are inserted. Their version is then written with the row and
+     * needs no {@link #batchUpdateConceptVersion(List)} afterwards.
+     */
+    protected boolean preallocatesIds() {
+        return idSequenceRepository != null && idSequenceRepository.isAvailable();
+    }
+
     @PostConstruct
     public void init() {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
-        insertLocalizedText = new SimpleJdbcInsert(jdbcTemplate).withTableName("localized_texts");
-        insertConcept = new SimpleJdbcInsert(jdbcTemplate).withTableName("concepts");
+        insertLocalizedText = new SimpleJdbcInsert(jdbcTemplate).withTableName("localized_texts")
+                .usingGeneratedKeyColumns("id");
+        insertConcept = new SimpleJdbcInsert(jdbcTemplate).withTableName("concepts").usingGeneratedKeyColumns("id");
     }
 
     protected BaseOclEntity validateOwner(String org, String username) {
@@ -239,13 +299,19 @@ public class BaseConverter {
     }
 
     protected void batchConcepts(List<Concept> concepts, List<Integer> conceptIds) {
+        if (preallocatesIds()) {
+            batchConceptsWithIds(concepts, conceptIds);
+            return;
+        }
+        Map<Long, Map<String, String>> displaysById = new HashMap<>();
         concepts.forEach(c -> {
             Integer conceptId = insert(insertConcept, toMap(c)).intValue();
             if (!c.getConceptsNames().isEmpty()) {
-                List<Long> nameIds = insertRows(
-                        c.getConceptsNames().stream().filter(Objects::nonNull).filter(f -> f.getLocalizedText() != null).map(ConceptsName::getLocalizedText).collect(Collectors.toList())
-                );
+                List<LocalizedText> names = c.getConceptsNames().stream().filter(Objects::nonNull).filter(f -> f.getLocalizedText() != null).map(ConceptsName::getLocalizedText).collect(Collectors.toList());
+                List<Long> nameIds = insertRows(names);
                 batchInsertConceptNames(insertConceptNamesSql, nameIds, conceptId);
+                // the preferred display per locale is computed here once instead of on every read
+                displaysById.put(conceptId.longValue(), getDisplaysByLocale(names));
             }
             if (!c.getConceptsDescriptions().isEmpty()) {
                 List<Long> descIds = insertRows(
@@ -255,6 +321,75 @@ public class BaseConverter {
             }
             conceptIds.add(conceptId);
         });
+        if (conceptDisplayRepository != null)
+            conceptDisplayRepository.saveDisplays(displaysById);
+    }
+
+    /**
+     * Same as {@link #batchConcepts(List, List)} with ids allocated up front: one query per table for the ids, then
+     * one JDBC batch each for the concepts, texts and join rows. The version and versioned object of a new concept are
+     * its own id.
+     */
+    private void batchConceptsWithIds(List<Concept> concepts, List<Integer> conceptIds) {
+        List<List<LocalizedText>> names = new ArrayList<>(concepts.size());
+        List<List<LocalizedText>> descriptions = new ArrayList<>(concepts.size());
+        int texts = 0;
+        for (Concept c : concepts) {
+            List<LocalizedText> n = c.getConceptsNames().stream().filter(Objects::nonNull).map(ConceptsName::getLocalizedText)
+                    .filter(Objects::nonNull).collect(Collectors.toList());
+            List<LocalizedText> d = c.getConceptsDescriptions().stream().filter(Objects::nonNull)
+                    .map(ConceptsDescription::getLocalizedText).filter(Objects::nonNull).collect(Collectors.toList());
+            names.add(n);
+            descriptions.add(d);
+            texts += n.size() + d.size();
+        }
+        Iterator<Long> ids = idSequenceRepository.nextIds(IdSequenceRepository.CONCEPTS, concepts.size()).iterator();
+        Iterator<Long> textIds = idSequenceRepository.nextIds(IdSequenceRepository.LOCALIZED_TEXTS, texts).iterator();
+
+        List<Object[]> conceptRows = new ArrayList<>(concepts.size());
+        List<Object[]> textRows = new ArrayList<>(texts);
+        List<Object[]> nameRows = new ArrayList<>();
+        List<Object[]> descriptionRows = new ArrayList<>();
+        Map<Long, Map<String, String>> displaysById = new HashMap<>();
+        for (int i = 0; i < concepts.size(); i++) {
+            Long id = ids.next();
+            conceptRows.add(toRow(concepts.get(i), id));
+            for (LocalizedText name : names.get(i)) {
+                Long textId = textIds.next();
+                textRows.add(toRow(name, textId));
+                nameRows.add(new Object[]{textId, id});
+            }
+            for (LocalizedText description : descriptions.get(i)) {
+                Long textId = textIds.next();
+                textRows.add(toRow(description, textId));
+                descriptionRows.add(new Object[]{textId, id});
+            }
+            if (!names.get(i).isEmpty())
+                displaysById.put(id, getDisplaysByLocale(names.get(i)));
+            conceptIds.add(id.intValue());
+        }
+        jdbcTemplate.batchUpdate(insertConceptWithIdSql, conceptRows);
+        if (!textRows.isEmpty())
+            jdbcTemplate.batchUpdate(insertLocalizedTextWithIdSql, textRows);
+        if (!nameRows.isEmpty())
+            jdbcTemplate.batchUpdate(insertConceptNamesSql, nameRows);
+        if (!descriptionRows.isEmpty())
+            jdbcTemplate.batchUpdate(insertConceptDescSql, descriptionRows);
+        if (conceptDisplayRepository != null)
+            conceptDisplayRepository.saveDisplays(displaysById);
+    }
+
+    private Object[] toRow(Concept obj, Long id) {
+        return new Object[]{id, id, String.valueOf(id), obj.getPublicAccess(), obj.getIsActive(), obj.getExtras(),
+                obj.getUri(), obj.getMnemonic(), obj.getReleased(), obj.getRetired(), obj.getIsLatestVersion(),
+                obj.getName(), obj.getFullName(), obj.getDefaultLocale(), obj.getConceptClass(), obj.getDatatype(),
+                obj.getComment(), obj.getCreatedBy().getId(), obj.getUpdatedBy().getId(), obj.getParent().getId(),
+                obj.getParent().getCreatedAt(), obj.getParent().getUpdatedAt()};
+    }
+
+    private Object[] toRow(LocalizedText text, Long id) {
+        return new Object[]{id, text.getName(), text.getType(), text.getLocale(), text.getLocalePreferred(),
+                text.getCreatedAt()};
     }
 
     protected List<Long> insertRows(List<LocalizedText> texts) {
@@ -301,8 +436,6 @@ public class BaseConverter {
     }
 
     protected Long insert(SimpleJdbcInsert insert, Map<String, Object> parameters) {
-        if (!insert.isCompiled())
-            insert.usingGeneratedKeyColumns("id");
         Number n = insert.executeAndReturnKeyHolder(parameters).getKey();
         if (n instanceof Long)
             return n.longValue();
@@ -381,6 +514,7 @@ public class BaseConverter {
         private BaseOclEntity owner;
         private UserProfile userProfile;
         private String accessionId;
+        private String resourceKey;
 
         public OclEntity(MetadataResource resource, String accessionId, String authToken, boolean validateIfExists) {
             // we'll support two type of accession id patterns as input
@@ -424,7 +558,12 @@ public class BaseConverter {
             BaseOclEntity owner = validateOwner(org, username);
             AuthtokenToken token = validateToken(authToken);
             authenticate(token, username, org);
+            this.resourceKey = resourceKey(resource.getClass().getSimpleName(), org.isEmpty() ? USERS : ORGS,
+                    org.isEmpty() ? username : org, resourceId, resource.getVersion());
             if (validateIfExists) {
+                // a create holds the lock of the new version until it commits, so that a concurrent create of the
+                // same version sees it in the checks below
+                lockResource(resourceKey);
                 validateId(username, org, resourceId, resource.getVersion(), resource.getClass().getSimpleName());
                 validateCanonicalUrl(username, org, resource.getUrl(), resource.getVersion(), resource.getClass().getSimpleName());
             }
@@ -444,6 +583,10 @@ public class BaseConverter {
         public String getAccessionId() {
             return accessionId;
         }
+
+        public String getResourceKey() {
+            return resourceKey;
+        }
     }
 
     protected Parameters.ParametersParameterComponent getParameter(String name, Type value) {
@@ -2,6 +2,9 @@ package org.openconceptlab.fhir.converter;
 
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -11,22 +14,31 @@ import org.hl7.fhir.r4.model.CodeSystem.ConceptPropertyComponent;
 import org.hl7.fhir.r4.model.codesystems.PublicationStatus;
 import org.openconceptlab.fhir.model.Organization;
 import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
 import org.openconceptlab.fhir.repository.*;
+import org.openconceptlab.fhir.repository.ResourceLockRepository.SessionLock;
 import org.openconceptlab.fhir.util.OclFhirConstants;
 import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,6 +55,46 @@ public class CodeSystemConverter extends BaseConverter {
 
 	public static final String DEFAULT_RES_VERSION = "0.1";
 	private static final Log log = LogFactory.getLog(CodeSystemConverter.class);
+	private static final int EXPORT_FETCH_SIZE = 1000;
+	private static final String NAME_ROW = "N";
+	// latest version of each concept in the source followed by its names and then its descriptions
+	private static final String exportConceptsSql = "select c.id, c.mnemonic, c.retired, c.concept_class, c.datatype, t.kind, " +
+			"lt.name, lt.locale, lt.locale_preferred, lt.type from concepts c " +
+			"inner join (select max(cs.concept_id) as concept_id from concepts_sources cs inner join concepts c1 on c1.id = cs.concept_id " +
+			"where cs.source_id = ? group by c1.mnemonic) latest on latest.concept_id = c.id " +
+			"left join (select concept_id, localizedtext_id, 'N' as kind from concepts_names " +
+			"union all select concept_id, localizedtext_id, 'D' as kind from concepts_descriptions) t on t.concept_id = c.id " +
+			"left join localized_texts lt on lt.id = t.localizedtext_id " +
+			"order by c.mnemonic, c.id, t.kind desc, lt.id";
+	private static final String STAGED_CONCEPTS = "staged_concepts";
+	private static final int STAGE_BATCH_SIZE = 1000;
+	private static final String createStagedConceptsSql = "create temporary table if not exists " + STAGED_CONCEPTS +
+			" (mnemonic varchar(255) primary key, fingerprint char(32)) on commit drop";
+	private static final String insertStagedConceptSql = "insert into " + STAGED_CONCEPTS + " (mnemonic, fingerprint) values (?, ?)";
+	// anti-join of the staged codes against the concepts of the source
+	private static final String newConceptsSql = "select t.mnemonic from " + STAGED_CONCEPTS + " t where not exists (" +
+			"select 1 from concepts_sources cs inner join concepts c on c.id = cs.concept_id " +
+			"where cs.source_id = ? and c.mnemonic = t.mnemonic)";
+	// same lines as CodeSystemConverter#namesFingerprint, sorted by their bytes
+	private static final String NAMES_FINGERPRINT = "(select md5(coalesce(string_agg(coalesce(lt.locale, '') || '|' || " +
+			"coalesce(lt.type, '') || '|' || case when lt.locale_preferred then '1' else '0' end || '|' || coalesce(lt.name, ''), " +
+			"E'\\n' order by coalesce(lt.locale, '') || '|' || coalesce(lt.type, '') || '|' || " +
+			"case when lt.locale_preferred then '1' else '0' end || '|' || coalesce(lt.name, '') collate \"C\"), '')) " +
+			"from concepts_names cn inner join localized_texts lt on lt.id = cn.localizedtext_id where cn.concept_id = latest.concept_id)";
+	private static final String changedConceptsSql = "select latest.concept_id, latest.mnemonic from (" +
+			"select c.mnemonic, max(c.id) as concept_id from concepts_sources cs inner join concepts c on c.id = cs.concept_id " +
+			"inner join " + STAGED_CONCEPTS + " t on t.mnemonic = c.mnemonic where cs.source_id = ? group by c.mnemonic) latest " +
+			"inner join " + STAGED_CONCEPTS + " t on t.mnemonic = latest.mnemonic where t.fingerprint <> " + NAMES_FINGERPRINT;
+
+	// a new concept version continues the versioned object of the version it replaces
+	private static final String linkConceptVersionSql = "update concepts c set versioned_object_id = p.versioned_object_id " +
+			"from concepts p where p.id = ? and c.id = ?";
+	private static final String unsetLatestVersionSql = "update concepts set is_latest_version = false where id = any(?)";
+	private static final String unlinkConceptsSql = "delete from concepts_sources where source_id = ? and concept_id = any(?)";
+
+	@Value("${ocl.codesystem.update-changed-names:false}")
+	private boolean updateChangedNames;
+
 	public CodeSystemConverter(SourceRepository sourceRepository, ConceptRepository conceptRepository, OclFhirUtil oclFhirUtil,
 							   UserProfile oclUser, ConceptsSourceRepository conceptsSourceRepository, DataSource dataSource,
 							   AuthtokenRepository authtokenRepository, UserProfilesOrganizationRepository userProfilesOrganizationRepository,
@@ -161,52 +213,160 @@ public class CodeSystemConverter extends BaseConverter {
 	}
 
 	private void addConceptsToCodeSystem(final CodeSystem codeSystem, final Source source, int page, StringBuilder hasNext) {
-		Page<Concept> concepts = conceptRepository.findConcepts(source.getId(), PageRequest.of(page, 100));
+		Page<ConceptRow> concepts = conceptRepository.findConceptRows(source.getId(), PageRequest.of(page, 100));
 		if (page < concepts.getTotalPages() - 1) hasNext.append(True);
-		for (Concept concept : concepts.getContent()) {
-			CodeSystem.ConceptDefinitionComponent definitionComponent = new CodeSystem.ConceptDefinitionComponent();
-			// code
-			definitionComponent.setCode(concept.getMnemonic());
-			// display
-			List<LocalizedText> names = concept.getConceptsNames().stream()
-					.filter(c -> c.getLocalizedText() != null)
-					.map(ConceptsName::getLocalizedText)
-					.collect(Collectors.toList());
-			Optional<String> display = oclFhirUtil.getDisplayForLanguage(names, source.getDefaultLocale());
-			definitionComponent.setDisplay(display.orElse(EMPTY));
+		// load names and descriptions of the whole page as rows, nothing is attached to the persistence context
+		List<Long> conceptIds = concepts.getContent().stream().map(ConceptRow::getId).collect(Collectors.toList());
+		Map<Long, List<LocalizedText>> namesById = conceptIds.isEmpty() ? Collections.emptyMap()
+				: toLocalizedTextById(conceptRepository.findNameRows(conceptIds));
+		Map<Long, List<LocalizedText>> descriptionsById = conceptIds.isEmpty() ? Collections.emptyMap()
+				: toLocalizedTextById(conceptRepository.findDescriptionRows(conceptIds));
+		for (ConceptRow concept : concepts.getContent()) {
+			// add concept in CodeSystem
+			codeSystem.getConcept().add(toConceptDefinition(concept, namesById.getOrDefault(concept.getId(), Collections.emptyList()),
+					descriptionsById.getOrDefault(concept.getId(), Collections.emptyList()), source));
+		}
+	}
 
-			// definition
-			List<LocalizedText> definitions = concept.getConceptsDescriptions().stream()
-					.filter(c -> c.getLocalizedText() != null)
-					.filter(c -> isValid(c.getLocalizedText().getType()) && DEFINITION.equalsIgnoreCase(c.getLocalizedText().getType()))
-					.map(ConceptsDescription::getLocalizedText)
-					.collect(Collectors.toList());
-			Optional<String> definition = oclFhirUtil.getDisplayForLanguage(definitions, source.getDefaultLocale());
-			definitionComponent.setDefinition(definition.orElse(EMPTY));
+	private CodeSystem.ConceptDefinitionComponent toConceptDefinition(final ConceptRow concept, final List<LocalizedText> names,
+																	  final List<LocalizedText> descriptions, final Source source) {
+		CodeSystem.ConceptDefinitionComponent definitionComponent = new CodeSystem.ConceptDefinitionComponent();
+		// code
+		definitionComponent.setCode(concept.getCode());
+		// display
+		Optional<String> display = oclFhirUtil.getDisplayForLanguage(names, source.getDefaultLocale());
+		definitionComponent.setDisplay(display.orElse(EMPTY));
+
+		// definition
+		List<LocalizedText> definitions = descriptions.stream()
+				.filter(c -> isValid(c.getType()) && DEFINITION.equalsIgnoreCase(c.getType()))
+				.collect(Collectors.toList());
+		Optional<String> definition = oclFhirUtil.getDisplayForLanguage(definitions, source.getDefaultLocale());
+		definitionComponent.setDefinition(definition.orElse(EMPTY));
+
+		// designation
+		addConceptDesignation(names, definitionComponent);
+
+		// property - concept_class, data_type, ,inactive
+		definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(OclFhirConstants.CONCEPTCLASS),
+				new StringType(concept.getConceptClass())));
+		definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(OclFhirConstants.DATATYPE),
+				new StringType(concept.getDatatype())));
+		definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(INACTIVE),
+				new BooleanType(concept.getRetired())));
+		return definitionComponent;
+	}
 
-			// designation
-			addConceptDesignation(concept, definitionComponent);
-
-			// property - concept_class, data_type, ,inactive
-			definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(OclFhirConstants.CONCEPTCLASS),
-					new StringType(concept.getConceptClass())));
-			definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(OclFhirConstants.DATATYPE),
-					new StringType(concept.getDatatype())));
-			definitionComponent.getProperty().add(new ConceptPropertyComponent(new CodeType(INACTIVE),
-					new BooleanType(concept.getRetired())));
-			// add concept in CodeSystem
-			codeSystem.getConcept().add(definitionComponent);
+	private Map<Long, List<LocalizedText>> toLocalizedTextById(List<TextRow> rows) {
+		return rows.stream().collect(Collectors.groupingBy(TextRow::getConceptId,
+				Collectors.mapping(TextRow::toLocalizedText, Collectors.toList())));
+	}
+
+	/**
+	 * Writes every concept of the given source version as one NDJSON line, shaped like a CodeSystem concept. The concepts
+	 * and their names and descriptions are read with a single query through a server side cursor, only the rows of the
+	 * current concept are held in memory. Must run within a read-only transaction so that the cursor is kept open.
+	 * @return the number of exported concepts
+	 */
+	public long exportConcepts(final Source source, final Writer writer) {
+		JdbcTemplate template = new JdbcTemplate(dataSource);
+		template.setFetchSize(EXPORT_FETCH_SIZE);
+		ConceptExport export = new ConceptExport(source, writer);
+		template.query(exportConceptsSql, export, source.getId());
+		export.flush();
+		log.info("Exported " + export.count + " concepts of source " + source.getMnemonic() + " " + source.getVersion() + ".");
+		return export.count;
+	}
+
+	/**
+	 * Collects the consecutive rows of a concept and writes it once the next concept starts.
+	 */
+	private class ConceptExport implements RowCallbackHandler {
+
+		private final Source source;
+		private final Writer writer;
+		private ConceptRow concept;
+		private final List<LocalizedText> names = new ArrayList<>();
+		private final List<LocalizedText> descriptions = new ArrayList<>();
+		private long count;
+
+		ConceptExport(Source source, Writer writer) {
+			this.source = source;
+			this.writer = writer;
+		}
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			long id = rs.getLong("id");
+			if (concept == null || concept.getId() != id) {
+				flush();
+				concept = new ConceptRow(id, rs.getString("mnemonic"), null, rs.getBoolean("retired"),
+						rs.getString("concept_class"), rs.getString("datatype"));
+			}
+			String kind = rs.getString("kind");
+			if (kind != null) {
+				LocalizedText text = new TextRow(id, rs.getString("name"), rs.getString("locale"),
+						(Boolean) rs.getObject("locale_preferred"), rs.getString("type")).toLocalizedText();
+				(NAME_ROW.equals(kind) ? names : descriptions).add(text);
+			}
+		}
+
+		void flush() {
+			if (concept == null) return;
+			try {
+				writer.write(toJson(toConceptDefinition(concept, names, descriptions, source)).toString());
+				writer.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			count++;
+			concept = null;
+			names.clear();
+			descriptions.clear();
 		}
 	}
 
+	private static JsonObject toJson(final CodeSystem.ConceptDefinitionComponent component) {
+		JsonObject json = new JsonObject();
+		json.addProperty(CODE, component.getCode());
+		json.addProperty(DISPLAY, component.getDisplay());
+		if (isValid(component.getDefinition()))
+			json.addProperty(DEFINITION, component.getDefinition());
+		JsonArray designations = new JsonArray();
+		component.getDesignation().forEach(d -> {
+			JsonObject designation = new JsonObject();
+			if (isValid(d.getLanguage())) designation.addProperty(LANGUAGE, d.getLanguage());
+			if (isValid(d.getUse().getCode())) {
+				JsonObject use = new JsonObject();
+				use.addProperty(CODE, d.getUse().getCode());
+				designation.add("use", use);
+			}
+			designation.addProperty(value, d.getValue());
+			designations.add(designation);
+		});
+		if (designations.size() > 0) json.add(DESIGNATION, designations);
+		JsonArray properties = new JsonArray();
+		component.getProperty().forEach(p -> {
+			JsonObject property = new JsonObject();
+			property.addProperty(CODE, p.getCode());
+			if (p.getValue() instanceof BooleanType) {
+				property.addProperty("valueBoolean", ((BooleanType) p.getValue()).booleanValue());
+			} else {
+				property.addProperty("valueString", p.getValue().primitiveValue());
+			}
+			properties.add(property);
+		});
+		json.add(PROPERTY, properties);
+		return json;
+	}
+
     public Parameters getLookupParameters(final Source source, final CodeType code, final CodeType displayLanguage) {
-		Optional<Concept> conceptOpt = oclFhirUtil.getSourceConcept(source, code.getCode(), EMPTY);
-		if (conceptOpt.isPresent()) {
-			Concept concept = conceptOpt.get();
+		Optional<List<LocalizedText>> namesOpt = oclFhirUtil.getSourceConceptNames(source, code.getCode());
+		if (namesOpt.isPresent()) {
 			Parameters parameters = new Parameters();
 			parameters.addParameter(getParameter(OclFhirConstants.NAME, source.getName()));
 			parameters.addParameter(getParameter(OclFhirConstants.VERSION, source.getVersion()));
-			List<LocalizedText> names = oclFhirUtil.getNames(concept);
+			List<LocalizedText> names = namesOpt.get();
 			getDisplayForLookUp(names, isValid(displayLanguage) ? displayLanguage.getCode() : EMPTY, source.getDefaultLocale())
 					.ifPresent(display -> parameters.addParameter(getParameter(DISPLAY, display)));
 			addDesignationParameters(parameters, names, getCode(displayLanguage));
@@ -244,12 +404,12 @@ public class CodeSystemConverter extends BaseConverter {
 		Parameters parameters = new Parameters();
 		BooleanType result = new BooleanType(False);
 		parameters.addParameter().setName(RESULT).setValue(result);
-		Optional<Concept> conceptOpt = oclFhirUtil.getSourceConcept(source, code, EMPTY);
-		if (conceptOpt.isPresent()) {
+		Optional<List<LocalizedText>> namesOpt = oclFhirUtil.getSourceConceptNames(source, code);
+		if (namesOpt.isPresent()) {
 			if (isValid(display)) {
 				StringType updated = newStringType(display.getValue().replaceAll("^\"", "")
 						.replaceAll("\"$", ""));
-				List<LocalizedText> names = oclFhirUtil.getNames(conceptOpt.get());
+				List<LocalizedText> names = namesOpt.get();
 				boolean match = oclFhirUtil.validateDisplay(names, updated, displayLanguage);
 				if (!match) {
 					parameters.addParameter().setName(MESSAGE).setValue(newStringType("Invalid display."));
@@ -296,7 +456,80 @@ public class CodeSystemConverter extends BaseConverter {
 		saveConcepts(source.getId(), concepts);
 	}
 
-	private void saveConcepts(Long sourceId, List<Concept> concepts) {
+	/**
+	 * Validates the CodeSystem and saves its source like {@link #createCodeSystem(CodeSystem, String, String)}, the
+	 * concepts are converted and split into batches that are written one by one through
+	 * {@link #importConceptBatch(ConceptImport, int)}.
+	 */
+	public ConceptImport prepareCodeSystemImport(CodeSystem codeSystem, String accessionId, String authToken, int batchSize) {
+		OclEntity oclEntity = new OclEntity(codeSystem, accessionId, authToken, true);
+		UserProfile user = oclEntity.getUserProfile();
+		Source source = toBaseSource(codeSystem, user, oclEntity.getAccessionId());
+		addParent(source, oclEntity.getOwner());
+		addJsonStrings(codeSystem, source);
+		List<Concept> concepts = toConcepts(codeSystem.getConcept(), codeSystem.getLanguage());
+		populateBaseConceptField(concepts, source, oclEntity.getUserProfile());
+
+		sourceRepository.saveAndFlush(source);
+		log.info("saved source - " + source.getMnemonic() + ", importing " + concepts.size() + " concepts");
+		// taken while the lock of the new version is held, an update sees the import once it can lock the source
+		SessionLock importLock = lockImport(source.getId());
+		return new ConceptImport(source.getId(), source.getMnemonic(), oclEntity.getResourceKey(),
+				ListUtils.partition(concepts, batchSize), concepts.size(), importLock);
+	}
+
+	/**
+	 * Writes one batch of a prepared import: the concepts with their names and descriptions, their version and their
+	 * link to the source. A batch is complete on its own, so an import can continue with the next batch after a commit.
+	 * @return the number of concepts written
+	 */
+	public int importConceptBatch(ConceptImport conceptImport, int batch) {
+		List<Integer> conceptIds = new ArrayList<>();
+		// batches of one import run in parallel, an update of the source waits for them
+		lockResourceShared(conceptImport.getSourceKey());
+		batchConcepts(conceptImport.getBatches().get(batch), conceptIds);
+		if (!preallocatesIds())
+			batchUpdateConceptVersion(conceptIds);
+		batchUpdateConceptSources(conceptIds, conceptImport.getSourceId());
+		// the ETag and the snapshot key of the source change with every batch that adds concepts to it
+		touchSource(conceptImport.getSourceId());
+		return conceptIds.size();
+	}
+
+	/**
+	 * Updates the source of an import once all of its batches are committed, so that its last update follows the
+	 * last batch.
+	 */
+	public void completeImport(ConceptImport conceptImport) {
+		touchSource(conceptImport.getSourceId());
+	}
+
+	private void touchSource(Long sourceId) {
+		// through the repository, so that the cached source is updated as well
+		sourceRepository.findById(sourceId.intValue()).ifPresent(source -> {
+			source.setUpdatedAt(new Timestamp(System.currentTimeMillis()));
+			sourceRepository.save(source);
+		});
+	}
+
+	/**
+	 * Takes the import lock of the new source, released again if the source is not committed.
+	 */
+	private SessionLock lockImport(Long sourceId) {
+		if (resourceLockRepository == null) return null;
+		SessionLock importLock = resourceLockRepository.lockImport(sourceId);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status != STATUS_COMMITTED) importLock.close();
+				}
+			});
+		}
+		return importLock;
+	}
+
+	private List<Integer> saveConcepts(Long sourceId, List<Concept> concepts) {
 		List<Integer> conceptIds = new CopyOnWriteArrayList<>();
 		// save concept
 		persistConcepts(concepts, conceptIds);
@@ -304,6 +537,8 @@ public class CodeSystemConverter extends BaseConverter {
 		List<List<Integer>> conceptIdBatches = updateConceptsVersion(conceptIds);
 		// save concepts sources
 		saveConceptsSources(sourceId, conceptIds, conceptIdBatches);
+		// in the order of the given concepts
+		return conceptIds;
 	}
 
 	private void persistConcepts(List<Concept> concepts, List<Integer> conceptIds) {
@@ -318,9 +553,10 @@ public class CodeSystemConverter extends BaseConverter {
 	}
 
 	private List<List<Integer>> updateConceptsVersion(List<Integer> conceptIds) {
-		// update concept version = concept id
+		// update concept version = concept id, unless it was written with the concept
 		List<List<Integer>> conceptIdBatches = ListUtils.partition(conceptIds, 1000);
-		conceptIdBatches.forEach(this::batchUpdateConceptVersion);
+		if (!preallocatesIds())
+			conceptIdBatches.forEach(this::batchUpdateConceptVersion);
 		return conceptIdBatches;
 	}
 
@@ -531,6 +767,13 @@ public class CodeSystemConverter extends BaseConverter {
 
 	public void updateCodeSystem(final CodeSystem codeSystem, final Source source, final String accessionId, final String authToken) {
 		final OclEntity oclEntity = new OclEntity(codeSystem, accessionId, authToken, false);
+		// concurrent updates of the source are serialized, the concepts are compared after the lock is held
+		lockResource(resourceKey(source));
+		// the batches of an import only lock the source while each of them is written, concepts that an update adds
+		// in between would be written again by the remaining batches
+		if (resourceLockRepository != null && resourceLockRepository.isImporting(source.getId()))
+			throw new ResourceVersionConflictException(String.format("The CodeSystem %s of version %s is being imported, " +
+					"it can be updated once the import has completed or is deleted.", source.getMnemonic(), source.getVersion()));
 		// we don't allow updating id, version and canonical_url(TODO - ?)
 		// update status
 		if (codeSystem.getStatus() != null) {
@@ -580,19 +823,159 @@ public class CodeSystemConverter extends BaseConverter {
 		sourceRepository.saveAndFlush(source);
 		updateIndex(SOURCES, source.getMnemonic());
 
-		// We create new concepts if provided
+		// We create new concepts if provided, the incoming codes are compared with the source in the database
 		List<Concept> concepts = toConcepts(codeSystem.getConcept(), codeSystem.getLanguage());
-		List<List<Concept>> conceptBatches = ListUtils.partition(concepts, 25000);
-		for (List<Concept> batch : conceptBatches) {
-			List<String> existingConcepts = getExistingConcepts(batch.stream().map(Concept::getMnemonic)
-					.distinct()
-					.collect(Collectors.toList()), source.getId());
-			List<Concept> newConcepts = batch.stream().filter(f -> !existingConcepts.contains(f.getMnemonic())).collect(Collectors.toList());
-			if (!newConcepts.isEmpty()) {
-				populateBaseConceptField(newConcepts, source, oclEntity.getUserProfile());
-				saveConcepts(source.getId(), newConcepts);
-				populateIndex(CONCEPTS);
-			}
+		if (concepts.isEmpty()) return;
+		Map<String, Concept> conceptsByCode = concepts.stream()
+				.collect(Collectors.toMap(Concept::getMnemonic, c -> c, (a, b) -> a, LinkedHashMap::new));
+		stageConcepts(conceptsByCode.values());
+		Set<String> newCodes = new LinkedHashSet<>(findNewConcepts(source.getId()));
+		List<Concept> newConcepts = newCodes.stream().map(conceptsByCode::get).collect(Collectors.toList());
+		// released versions are immutable, changed names are compared with and written to the HEAD version only. A code
+		// that is new to the updated version is written once, as a new concept, even if HEAD has it with other names
+		Source head = updateChangedNames ? getHeadSource(source) : null;
+		Map<Long, Concept> changedConcepts = head != null ? findChangedConcepts(head.getId()).entrySet().stream()
+				.filter(e -> !newCodes.contains(e.getValue()))
+				.collect(Collectors.toMap(Map.Entry::getKey, e -> conceptsByCode.get(e.getValue()), (a, b) -> a,
+						LinkedHashMap::new)) : Collections.emptyMap();
+		log.info("Updating source " + source.getMnemonic() + " " + source.getVersion() + " - " + conceptsByCode.size()
+				+ " concepts, " + newConcepts.size() + " new" + (updateChangedNames ? ", " + changedConcepts.size() + " with changed names" : ""));
+		if (!newConcepts.isEmpty()) {
+			populateBaseConceptField(newConcepts, source, oclEntity.getUserProfile());
+			saveConcepts(source.getId(), newConcepts);
+			populateIndex(CONCEPTS);
+		}
+		if (!changedConcepts.isEmpty()) {
+			saveConceptVersions(head, changedConcepts, oclEntity.getUserProfile());
+		}
+	}
+
+	private Source getHeadSource(Source source) {
+		if (HEAD.equals(source.getVersion())) return source;
+		return source.getOrganization() != null
+				? sourceRepository.findFirstByMnemonicAndVersionAndOrganizationMnemonic(source.getMnemonic(), HEAD,
+						source.getOrganization().getMnemonic())
+				: sourceRepository.findFirstByMnemonicAndVersionAndUserIdUsername(source.getMnemonic(), HEAD,
+						source.getUserId().getUsername());
+	}
+
+	/**
+	 * Loads the codes of the incoming concepts and the fingerprint of their names into a temporary table that is
+	 * dropped at the end of the transaction.
+	 */
+	private void stageConcepts(java.util.Collection<Concept> concepts) {
+		jdbcTemplate.execute(createStagedConceptsSql);
+		jdbcTemplate.execute("truncate " + STAGED_CONCEPTS);
+		List<Object[]> rows = concepts.stream().map(c -> new Object[]{c.getMnemonic(), namesFingerprint(c)})
+				.collect(Collectors.toList());
+		for (List<Object[]> batch : ListUtils.partition(rows, STAGE_BATCH_SIZE)) {
+			jdbcTemplate.batchUpdate(insertStagedConceptSql, batch);
+		}
+		jdbcTemplate.execute("analyze " + STAGED_CONCEPTS);
+	}
+
+	/**
+	 * The staged codes that have no concept in the source yet.
+	 */
+	private List<String> findNewConcepts(Long sourceId) {
+		return jdbcTemplate.queryForList(newConceptsSql, String.class, sourceId);
+	}
+
+	/**
+	 * The latest concept id of the staged codes whose names differ from the ones in the source, mapped to the code.
+	 */
+	private Map<Long, String> findChangedConcepts(Long sourceId) {
+		Map<Long, String> changed = new LinkedHashMap<>();
+		jdbcTemplate.query(changedConceptsSql, (RowCallbackHandler) rs -> changed.put(rs.getLong(1), rs.getString(2)), sourceId);
+		return changed;
+	}
+
+	/**
+	 * Writes the changed concepts as new versions of the concepts they replace, keyed by the id of the replaced version.
+	 * The new versions are linked to the HEAD source in place of the replaced ones, which stay unchanged in the
+	 * released versions that contain them.
+	 */
+	private void saveConceptVersions(Source head, Map<Long, Concept> concepts, UserProfile user) {
+		List<Long> previousIds = new ArrayList<>(concepts.keySet());
+		List<Concept> versions = new ArrayList<>(concepts.values());
+		populateBaseConceptField(versions, head, user);
+		List<Integer> versionIds = saveConcepts(head.getId(), versions);
+		List<Object[]> rows = new ArrayList<>();
+		for (int i = 0; i < previousIds.size(); i++) {
+			rows.add(new Object[]{previousIds.get(i), versionIds.get(i)});
+		}
+		for (List<Object[]> batch : ListUtils.partition(rows, STAGE_BATCH_SIZE)) {
+			jdbcTemplate.batchUpdate(linkConceptVersionSql, batch);
+		}
+		for (List<Long> batch : ListUtils.partition(previousIds, STAGE_BATCH_SIZE)) {
+			Long[] ids = batch.toArray(new Long[0]);
+			jdbcTemplate.update(unsetLatestVersionSql, (Object) ids);
+			jdbcTemplate.update(unlinkConceptsSql, head.getId(), ids);
+		}
+		populateIndex(CONCEPTS);
+	}
+
+	/**
+	 * md5 of the sorted name lines of the concept, computed the same way as {@link #NAMES_FINGERPRINT} in the database.
+	 */
+	private static String namesFingerprint(Concept concept) {
+		String lines = concept.getConceptsNames().stream()
+				.map(ConceptsName::getLocalizedText)
+				.filter(Objects::nonNull)
+				.map(t -> StringUtils.defaultString(t.getLocale()) + "|" + StringUtils.defaultString(t.getType()) + "|"
+						+ (Boolean.TRUE.equals(t.getLocalePreferred()) ? "1" : "0") + "|" + StringUtils.defaultString(t.getName()))
+				.map(l -> l.getBytes(StandardCharsets.UTF_8))
+				.sorted(Arrays::compareUnsigned)
+				.map(b -> new String(b, StandardCharsets.UTF_8))
+				.collect(Collectors.joining("\n"));
+		return DigestUtils.md5DigestAsHex(lines.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The converted concepts of a CodeSystem import, split into batches, the id of the saved source and the import lock
+	 * that keeps the source from being updated until the import is done.
+	 */
+	public static final class ConceptImport {
+
+		private final Long sourceId;
+		private final String sourceMnemonic;
+		private final String sourceKey;
+		private final List<List<Concept>> batches;
+		private final int size;
+		private final SessionLock importLock;
+
+		public ConceptImport(Long sourceId, String sourceMnemonic, String sourceKey, List<List<Concept>> batches, int size,
+							 SessionLock importLock) {
+			this.sourceId = sourceId;
+			this.sourceMnemonic = sourceMnemonic;
+			this.sourceKey = sourceKey;
+			this.batches = batches;
+			this.size = size;
+			this.importLock = importLock;
+		}
+
+		public Long getSourceId() {
+			return sourceId;
+		}
+
+		public String getSourceMnemonic() {
+			return sourceMnemonic;
+		}
+
+		public String getSourceKey() {
+			return sourceKey;
+		}
+
+		public List<List<Concept>> getBatches() {
+			return batches;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public SessionLock getImportLock() {
+			return importLock;
 		}
 	}
 
@@ -617,18 +1000,5 @@ public class CodeSystemConverter extends BaseConverter {
 		});
 	}
 
-	private List<String> getExistingConcepts(List<String> concepts, Long sourceId) {
-		MapSqlParameterSource s = new MapSqlParameterSource();
-		s.addValue("sourceId", sourceId);
-		s.addValue("mnemonic", concepts);
-		return namedParameterJdbcTemplate.query("select c.mnemonic from concepts_sources cs inner join concepts c on cs.concept_id = c.id " +
-				" where cs.source_id = :sourceId and c.mnemonic in (mnemonic)", s, new RowMapper<String>() {
-			@Override
-			public String mapRow(ResultSet rs, int rowNum) throws SQLException {
-				return rs.getString(1);
-			}
-		});
-	}
-
 }
 
@@ -1,11 +1,13 @@
 package org.openconceptlab.fhir.converter;
 
+import com.google.gson.JsonObject;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.*;
-import org.openconceptlab.fhir.model.Concept;
+import org.openconceptlab.fhir.index.MappingIndex;
 import org.openconceptlab.fhir.model.Mapping;
 import org.openconceptlab.fhir.model.Source;
 import org.openconceptlab.fhir.model.UserProfile;
+import org.openconceptlab.fhir.model.projection.MappingRow;
 import org.openconceptlab.fhir.repository.*;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.data.domain.Page;
@@ -13,8 +15,12 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
 import static org.openconceptlab.fhir.util.OclFhirUtil.*;
@@ -100,17 +106,15 @@ public class ConceptMapConverter extends BaseConverter {
     }
 
     private void addMappingsToConceptMap(final ConceptMap conceptMap, final Long sourceId, int page, StringBuilder hasNext) {
-        Page<Mapping> mappings = mappingRepository.findMappings(sourceId, PageRequest.of(page, 100));
+        Page<MappingRow> mappings = mappingRepository.findMappingRows(sourceId, PageRequest.of(page, 100));
         if (page < mappings.getTotalPages() - 1) hasNext.append(True);
         if (!mappings.getContent().isEmpty()) addMappings(conceptMap, mappings.getContent());
     }
 
-    private void addMappings(final ConceptMap conceptMap, final List<Mapping> mappings) {
+    private void addMappings(final ConceptMap conceptMap, final List<MappingRow> mappings) {
         // creates ConceptMapGroups by grouping source/sourceversion/target/targetversion
         Map<Object, List<ConceptMapGroup>> map = mappings.stream().map(ConceptMapGroup::new)
-        .filter(m -> isValid(m.getFromSystemUrl()) && isValid(m.getFromCode()) &&
-                isValid(m.getToSystemUrl()) && isValid(m.getToCode()) &&
-                isValid(m.getEquivalence()))
+        .filter(ConceptMapGroup::isComplete)
         .collect(Collectors.groupingBy(m -> m.getFromSystemUrl() + m.getFromSystemVersion() + m.getToSystemUrl() + m.getToSystemVersion()));
         map.forEach((k,groups) -> {
             Optional<ConceptMap.ConceptMapGroupComponent> component = toConceptMapGroupComponent(groups);
@@ -118,6 +122,39 @@ public class ConceptMapConverter extends BaseConverter {
         });
     }
 
+    /**
+     * Writes every valid mapping of the given source as one NDJSON line with its source and target system, code,
+     * display and equivalence. Mappings are read through a cursor, must run within a read-only transaction.
+     * @return the number of exported mappings
+     */
+    public long exportMappings(final Source source, final Writer writer) {
+        long count = 0;
+        try (Stream<MappingRow> rows = mappingRepository.streamMappingRows(source.getId())) {
+            Iterator<MappingRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                ConceptMapGroup group = new ConceptMapGroup(iterator.next());
+                if (!group.isComplete())
+                    continue;
+                JsonObject json = new JsonObject();
+                json.addProperty("source", group.getFromSystemUrl());
+                if (isValid(group.getFromSystemVersion())) json.addProperty("sourceVersion", group.getFromSystemVersion());
+                json.addProperty("target", group.getToSystemUrl());
+                if (isValid(group.getToSystemVersion())) json.addProperty("targetVersion", group.getToSystemVersion());
+                json.addProperty(CODE, group.getFromCode());
+                if (isValid(group.getFromDisplay())) json.addProperty(DISPLAY, group.getFromDisplay());
+                json.addProperty("targetCode", group.getToCode());
+                if (isValid(group.getToDisplay())) json.addProperty("targetDisplay", group.getToDisplay());
+                json.addProperty("equivalence", group.getEquivalence());
+                writer.write(json.toString());
+                writer.write('\n');
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
     private Optional<ConceptMap.ConceptMapGroupComponent> toConceptMapGroupComponent(List<ConceptMapGroup> conceptMapGroups) {
         if (conceptMapGroups != null && !conceptMapGroups.isEmpty()) {
             // all conceptMapGroups are for a single parent group
@@ -179,43 +216,15 @@ public class ConceptMapConverter extends BaseConverter {
         private String toDisplay;
         private String equivalence;
 
-        public ConceptMapGroup(final Mapping mapping) {
-            String fromSourceUrl = mapping.getFromSourceUrl();
-            if (!isValid(fromSourceUrl)) {
-                Source source = mapping.getFromSource();
-                if (source != null)
-                    this.fromSystemUrl = source.getCanonicalUrl();
-            } else {
-                this.fromSystemUrl = fromSourceUrl;
-            }
-
-            String toSourceUrl = mapping.getToSourceUrl();
-            if (!isValid(toSourceUrl)) {
-                Source source = mapping.getToSource();
-                if (source != null)
-                    this.toSystemUrl = source.getCanonicalUrl();
-            } else {
-                this.toSystemUrl = toSourceUrl;
-            }
-
-            String fromConceptCode = mapping.getFromConceptCode();
-            if (!isValid(fromConceptCode)) {
-                Concept fromConcept = mapping.getFromConcept();
-                if (fromConcept != null)
-                    this.fromCode = fromConcept.getMnemonic();
-            } else {
-                this.fromCode = fromConceptCode;
-            }
-
-            String toConceptCode = mapping.getToConceptCode();
-            if (!isValid(toConceptCode)) {
-                Concept toConcept = mapping.getToConcept();
-                if (toConcept != null)
-                    this.toCode = toConcept.getMnemonic();
-            } else {
-                this.toCode = toConceptCode;
-            }
-
+        public ConceptMapGroup(final MappingRow mapping) {
+            this.fromSystemUrl = isValid(mapping.getFromSourceUrl()) ? mapping.getFromSourceUrl()
+                    : mapping.getFromSourceCanonicalUrl();
+            this.toSystemUrl = isValid(mapping.getToSourceUrl()) ? mapping.getToSourceUrl()
+                    : mapping.getToSourceCanonicalUrl();
+            this.fromCode = isValid(mapping.getFromConceptCode()) ? mapping.getFromConceptCode()
+                    : mapping.getFromConceptMnemonic();
+            this.toCode = isValid(mapping.getToConceptCode()) ? mapping.getToConceptCode()
+                    : mapping.getToConceptMnemonic();
             this.fromDisplay = mapping.getFromConceptName();
             this.toDisplay = mapping.getToConceptName();
             this.equivalence = mapping.getMapType();
@@ -223,6 +232,11 @@ public class ConceptMapConverter extends BaseConverter {
             this.toSystemVersion = mapping.getToSourceVersion();
         }
 
+        public boolean isComplete() {
+            return isValid(fromSystemUrl) && isValid(fromCode) && isValid(toSystemUrl) && isValid(toCode)
+                    && isValid(equivalence);
+        }
+
         public String getFromSystemUrl() {
             return fromSystemUrl;
         }
@@ -303,8 +317,17 @@ public class ConceptMapConverter extends BaseConverter {
         // 2. given concept code
         // 3. Local toSource uri OR given toSource canonical url
         // 4. fromSource version if given else any/empty version
-        List<Mapping> matches = mappingRepository.findMappingsForCode(source.getId(), localFromSourceUri, fromSourceUrl, getCode(sourceCode))
-                .stream()
+        // Released ConceptMaps are answered from the in-memory mapping index
+        final String finalLocalFromSourceUri = localFromSourceUri;
+        Optional<MappingIndex> index = oclFhirUtil.getMappingIndex(source);
+        List<MappingRow> candidates = index.isPresent()
+                ? index.get().find(getCode(sourceCode)).stream()
+                        .filter(f -> fromSourceUrl.equals(f.getFromSourceUrl()) ||
+                                (finalLocalFromSourceUri != null && finalLocalFromSourceUri.equals(f.getFromSourceUrl())))
+                        .collect(Collectors.toList())
+                : mappingRepository.findMappingsForCode(source.getId(), localFromSourceUri, fromSourceUrl, getCode(sourceCode))
+                        .stream().map(this::toMappingRow).collect(Collectors.toList());
+        List<MappingRow> matches = candidates.stream()
                 .filter(f -> !isValid(sourceVersion) || sourceVersion.getValue().equals(f.getFromSourceVersion()))
                 .filter(f -> isValid(f.getToSourceUrl()))
                 .filter(f -> !isValid(targetSystem) || f.getToSourceUrl().equals(finalToSourceUrl) || f.getToSourceUrl().equals(finalLocalToSourceUri))
@@ -321,6 +344,12 @@ public class ConceptMapConverter extends BaseConverter {
         return parameters;
     }
 
+    private MappingRow toMappingRow(Mapping mapping) {
+        return new MappingRow(mapping.getFromSourceUrl(), null, mapping.getToSourceUrl(), null, mapping.getFromConceptCode(),
+                null, mapping.getToConceptCode(), null, mapping.getFromConceptName(), mapping.getToConceptName(),
+                mapping.getMapType(), mapping.getFromSourceVersion(), mapping.getToSourceVersion());
+    }
+
     private String toLocalUri(Source source) {
         if (source == null) return EMPTY;
         String ownerType = source.getOrganization() != null ? ORGS : USERS;
@@ -1,26 +1,45 @@
 package org.openconceptlab.fhir.converter;
 
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.collections4.ListUtils;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.codesystems.PublicationStatus;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.index.ValueSetMembership;
 import org.openconceptlab.fhir.model.Collection;
 import org.openconceptlab.fhir.model.Organization;
 import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.SourceRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
 import org.openconceptlab.fhir.repository.*;
+import org.openconceptlab.fhir.snapshot.SourceSnapshot;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
@@ -36,16 +55,24 @@ public class ValueSetConverter extends BaseConverter {
     @Value("${ocl.servlet.baseurl}")
     private String baseUrl;
 
-    private String validateConceptIdSql =
-            "select c1.id, c1.mnemonic from concepts c1 " +
-                    "inner join (" +
-                    "select c2.mnemonic as mnemonic, max(c2.created_at) as created_at from concepts c2 " +
-                    "inner join concepts_sources cs on c2.id = cs.concept_id " +
-                    "inner join sources s ON s.id = cs.source_id " +
-                    "where cs.source_id = :sourceId and c2.mnemonic in (:conceptIds) group by c2.mnemonic) c3 " +
-                    "on c1.mnemonic = c3.mnemonic and c1.created_at = c3.created_at";
+    @Value("${ocl.valueset.validation-threads:4}")
+    private int validationThreads;
 
-    private static final Map<String,Object> collReferenceParamMap = new HashMap<>();
+    // the latest concept version of each code in the source, the codes are bound as one array parameter
+    private static final String validateConceptIdSql =
+            "select distinct on (c.mnemonic) c.id, c.mnemonic from concepts c " +
+                    "inner join concepts_sources cs on c.id = cs.concept_id " +
+                    "where cs.source_id = ? and c.mnemonic = any(?) " +
+                    "order by c.mnemonic, c.created_at desc, c.id desc";
+    private static final int VALIDATION_BATCH_SIZE = 10000;
+
+    private ExecutorService validationExecutor;
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    private static final int REFERENCE_BATCH_SIZE = 1000;
+    private static final String insertCollectionReferencesPrefix = "insert into collection_references " +
+            "(expression, created_at, updated_at, last_resolved_at) values ";
+    private static final String insertCollectionReferencesRow = "(?,?,?,?)";
     private static final String insertCollectionsReferences = "insert into collections_references (collection_id,collectionreference_id) values (?,?)";
     private static final String insertCollectionsConcepts = "insert into collections_concepts (collection_id,concept_id) values (?,?)";
 
@@ -60,7 +87,20 @@ public class ValueSetConverter extends BaseConverter {
 
     @PostConstruct
     public void initValueSetConverter() {
-        this.insertCollectionReference = new SimpleJdbcInsert(jdbcTemplate).withTableName("collection_references");
+        this.insertCollectionReference = new SimpleJdbcInsert(jdbcTemplate).withTableName("collection_references")
+                .usingGeneratedKeyColumns("id");
+        AtomicInteger counter = new AtomicInteger();
+        this.validationExecutor = Executors.newFixedThreadPool(Math.max(1, validationThreads), r -> {
+            Thread thread = new Thread(r, "valueset-validation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void closeValueSetConverter() {
+        if (validationExecutor != null)
+            validationExecutor.shutdownNow();
     }
 
     public List<ValueSet> convertToValueSet(List<Collection> collections, boolean includeCompose, Integer page, StringBuilder hasNext) {
@@ -156,6 +196,7 @@ public class ValueSetConverter extends BaseConverter {
 
         // for each source let's evaluate expressions for concept and concept version and populate compose
         sources.forEach(source -> {
+            List<Concept> concepts = new ArrayList<>();
             expressions.stream().map(m -> formatExpression(m).split(FS))
                     .filter(m -> source.getMnemonic().equals(getSourceId(m)) && source.getVersion().equals(getSourceVersion(m)))
                     .forEachOrdered(m -> {
@@ -165,12 +206,17 @@ public class ValueSetConverter extends BaseConverter {
                             // we can not simply get concepts list from the source considering huge number of concepts, this is alternate
                             // way to get only concepts that we care about and not retrieve whole list. This has improved performance and consumes less memory
                             Optional<Concept> conceptOpt = oclFhirUtil.getSourceConcept(source, conceptId, conceptVersion);
-                            conceptOpt.ifPresent(c -> {
-                                populateCompose(valueSet, includeConceptDesignation, c, isValid(source.getCanonicalUrl()) ? source.getCanonicalUrl() : source.getUri()
-                                        , source.getVersion(), source.getDefaultLocale());
-                            });
+                            conceptOpt.ifPresent(concepts::add);
                         }
                     });
+            // the stored displays of the source's concepts are read at once, they save loading the names when no
+            // designations are needed
+            Map<Long, String> displays = includeConceptDesignation || concepts.isEmpty() ? Collections.emptyMap()
+                    : findDisplays(concepts.stream().map(Concept::getId).distinct().collect(Collectors.toList()),
+                    source.getDefaultLocale());
+            concepts.forEach(c -> populateCompose(valueSet, includeConceptDesignation, c, displays.get(c.getId()),
+                    isValid(source.getCanonicalUrl()) ? source.getCanonicalUrl() : source.getUri(),
+                    source.getVersion(), source.getDefaultLocale()));
         });
     }
 
@@ -266,8 +312,8 @@ public class ValueSetConverter extends BaseConverter {
         return expressions;
     }
 
-    private void populateCompose(ValueSet valueSet, boolean includeConceptDesignation, Concept concept, String sourceCanonicalUrl,
-                                 String sourceVersion, String sourceDefaultLocale) {
+    private void populateCompose(ValueSet valueSet, boolean includeConceptDesignation, Concept concept, String display,
+                                 String sourceCanonicalUrl, String sourceVersion, String sourceDefaultLocale) {
         // compose.include
         if (isValid(sourceCanonicalUrl)) {
             Optional<ValueSet.ConceptSetComponent> includeComponent = valueSet.getCompose().getInclude().parallelStream()
@@ -276,15 +322,13 @@ public class ValueSetConverter extends BaseConverter {
             if (includeComponent.isPresent()) {
                 ValueSet.ConceptSetComponent include = includeComponent.get();
                 // compose.include.concept
-                addConceptReference(include, concept.getMnemonic(), concept.getName(), concept.getConceptsNames(),
-                        sourceDefaultLocale, includeConceptDesignation);
+                addConceptReference(include, concept, display, sourceDefaultLocale, includeConceptDesignation);
             } else {
                 ValueSet.ConceptSetComponent include = new ValueSet.ConceptSetComponent();
                 include.setSystem(sourceCanonicalUrl);
                 include.setVersion(sourceVersion);
                 // compose.include.concept
-                addConceptReference(include, concept.getMnemonic(), concept.getName(), concept.getConceptsNames(),
-                        sourceDefaultLocale, includeConceptDesignation);
+                addConceptReference(include, concept, display, sourceDefaultLocale, includeConceptDesignation);
                 valueSet.getCompose().addInclude(include);
             }
             // compose.inactive
@@ -294,21 +338,30 @@ public class ValueSetConverter extends BaseConverter {
         }
     }
 
-    private void addConceptReference(ValueSet.ConceptSetComponent includeComponent, String code, String display,
-                                     List<ConceptsName> names, String dictDefaultLocale, boolean includeConceptDesignation) {
+    private void addConceptReference(ValueSet.ConceptSetComponent includeComponent, Concept concept, String display,
+                                     String dictDefaultLocale, boolean includeConceptDesignation) {
         ValueSet.ConceptReferenceComponent referenceComponent = new ValueSet.ConceptReferenceComponent();
         // code
-        referenceComponent.setCode(code);
-        // display
-        List<LocalizedText> lts = names.stream().filter(c -> c.getLocalizedText() != null).map(ConceptsName::getLocalizedText)
-                .collect(Collectors.toList());
-        referenceComponent.setDisplay(oclFhirUtil.getDisplayForLanguage(lts, dictDefaultLocale).orElse(""));
-        // designation
-        if (includeConceptDesignation)
-            addConceptReferenceDesignation(lts, referenceComponent);
+        referenceComponent.setCode(concept.getMnemonic());
+        // display, the stored one if there is one
+        if (display != null) {
+            referenceComponent.setDisplay(display);
+        } else {
+            List<LocalizedText> lts = concept.getConceptsNames().stream().filter(c -> c.getLocalizedText() != null)
+                    .map(ConceptsName::getLocalizedText).collect(Collectors.toList());
+            referenceComponent.setDisplay(oclFhirUtil.getDisplayForLanguage(lts, dictDefaultLocale).orElse(""));
+            // designation
+            if (includeConceptDesignation)
+                addConceptReferenceDesignation(lts, referenceComponent);
+        }
         includeComponent.getConcept().add(referenceComponent);
     }
 
+    private Map<Long, String> findDisplays(List<Long> conceptIds, String locale) {
+        return conceptDisplayRepository == null || !isValid(locale) ? Collections.emptyMap()
+                : conceptDisplayRepository.findDisplays(conceptIds, locale);
+    }
+
     private void addConceptReferenceDesignation(List<LocalizedText> names, ValueSet.ConceptReferenceComponent referenceComponent) {
         names.parallelStream().forEach(lt -> {
             ValueSet.ConceptReferenceDesignationComponent component = toConceptRefDesignationComp(lt);
@@ -350,17 +403,18 @@ public class ValueSetConverter extends BaseConverter {
         Source source = oclFhirUtil.getSourceByOwnerAndUrl(owner, newStringType(system.getValue()), systemVersion, access);
         // determine expression
         String expression = buildExpression(source.getMnemonic(), source.getVersion(), code, ownerType, ownerId);
-        Optional<CollectionReference> reference = collection.getCollectionsReferences().parallelStream()
+        Optional<ValueSetMembership> membership = oclFhirUtil.getMembership(collection);
+        boolean referenced = membership.isPresent() ? membership.get().contains(expression)
+                : collection.getCollectionsReferences().parallelStream()
                 .map(CollectionsReference::getCollectionReference)
-                .filter(f -> f.getExpression().contains(expression))
-                .findAny();
-        if (reference.isPresent()) {
+                .anyMatch(f -> f.getExpression().contains(expression));
+        if (referenced) {
             if (isValid(display)) {
                 StringType updated = newStringType(display.getValue().replaceAll("^\"", "")
                         .replaceAll("\"$", ""));
-                Optional<Concept> conceptOpt = oclFhirUtil.getSourceConcept(source, code, EMPTY);
-                if (conceptOpt.isPresent()) {
-                    List<LocalizedText> names = oclFhirUtil.getNames(conceptOpt.get());
+                Optional<List<LocalizedText>> namesOpt = oclFhirUtil.getSourceConceptNames(source, code);
+                if (namesOpt.isPresent()) {
+                    List<LocalizedText> names = namesOpt.get();
                     boolean match = oclFhirUtil.validateDisplay(names, updated, displayLanguage);
                     if (!match) {
                         parameters.addParameter().setName(MESSAGE).setValue(newStringType("Invalid display."));
@@ -454,47 +508,77 @@ public class ValueSetConverter extends BaseConverter {
                 .filter(m -> m.length == 2)
                 .collect(Collectors.toMap(m -> m[0], m->m[1]));
         sources.forEach(source -> {
-            expressions.stream().map(m -> formatExpression(m).split(FS))
+            List<String[]> sourceExpressions = expressions.stream().map(m -> formatExpression(m).split(FS))
                     .filter(m -> {
                         if (map.containsKey(source.getCanonicalUrl()))
                             return map.get(source.getCanonicalUrl()).equals(source.getVersion());
                         return source.getMnemonic().equals(getSourceId(m)) && source.getVersion().equals(getSourceVersion(m));
                     })
-                    .forEachOrdered(m -> {
-                        String conceptId = getConceptId(m);
-                        String conceptVersion = getConceptVersion(m);
-                        if (isValid(conceptId)) {
-                            Optional<Concept> conceptOpt = oclFhirUtil.getSourceConcept(source, conceptId, conceptVersion);
-                             conceptOpt.ifPresent(c -> {
-                                // only return non retired concepts when activeOnly is True
-                                if (c.getRetired() && activeOnly.booleanValue()) {
-                                    return;
-                                }
-                                // apply concept code filter if provided
-                                if (!filters.isEmpty()) {
-                                    if (filters.parallelStream().noneMatch(conceptId::contains))
-                                        return;
-                                }
-                                ValueSet.ValueSetExpansionContainsComponent component = new ValueSet.ValueSetExpansionContainsComponent();
-                                component.setSystem(source.getCanonicalUrl());
-                                component.setVersion(source.getVersion());
-                                component.setInactive(c.getRetired());
-                                component.setCode(c.getMnemonic());
-                                List<LocalizedText> names = oclFhirUtil.getNames(c);
-                                if (isValid(displayLanguage)) {
-                                    oclFhirUtil.getDisplayForLanguage(names, displayLanguage.getCode())
-                                            .ifPresent(component::setDisplay);
-                                } else {
-                                    oclFhirUtil.getDisplayForLanguage(names, source.getDefaultLocale())
-                                            .ifPresent(component::setDisplay);
-                                }
-                                if (includeDesignations.getValue()) {
-                                    addConceptReferenceDesignation(names, component);
-                                }
-                                expansion.getContains().add(component);
-                            });
-                        }
-                    });
+                    .filter(m -> isValid(getConceptId(m)))
+                    .collect(Collectors.toList());
+            if (sourceExpressions.isEmpty())
+                return;
+            // resolve all referenced concepts of the source with one query, versions are ordered most recent first.
+            // The snapshot of a released source only holds the latest concept versions, so it is used when no
+            // expression asks for a specific concept version.
+            List<String> codes = sourceExpressions.stream().map(this::getConceptId).distinct().collect(Collectors.toList());
+            Optional<SourceSnapshot> snapshot = sourceExpressions.stream().anyMatch(m -> isValid(getConceptVersion(m)))
+                    ? Optional.empty() : oclFhirUtil.getSnapshot(source);
+            Map<Long, List<LocalizedText>> snapshotNames = new HashMap<>();
+            Map<String, List<ConceptRow>> rowsByCode;
+            if (snapshot.isPresent()) {
+                rowsByCode = new HashMap<>();
+                codes.forEach(code -> snapshot.get().find(code).ifPresent(c -> {
+                    rowsByCode.put(code, Collections.singletonList(c.getRow()));
+                    snapshotNames.put(c.getRow().getId(), c.getNames());
+                }));
+            } else {
+                rowsByCode = conceptsSourceRepository.findConceptRows(source.getId(), codes)
+                        .stream().collect(Collectors.groupingBy(ConceptRow::getCode));
+            }
+            List<ConceptRow> concepts = new ArrayList<>();
+            sourceExpressions.forEach(m -> {
+                String conceptId = getConceptId(m);
+                String conceptVersion = getConceptVersion(m);
+                rowsByCode.getOrDefault(conceptId, Collections.emptyList()).stream()
+                        .filter(c -> !isValid(conceptVersion) || conceptVersion.equals(c.getVersion()))
+                        .findFirst()
+                        // only return non retired concepts when activeOnly is True
+                        .filter(c -> !(c.getRetired() && activeOnly.booleanValue()))
+                        // apply concept code filter if provided
+                        .filter(c -> filters.isEmpty() || filters.parallelStream().anyMatch(conceptId::contains))
+                        .ifPresent(concepts::add);
+            });
+            if (concepts.isEmpty())
+                return;
+            String locale = isValid(displayLanguage) ? displayLanguage.getCode() : source.getDefaultLocale();
+            List<Long> ids = concepts.stream().map(ConceptRow::getId).distinct().collect(Collectors.toList());
+            // without designations only the display is needed, use the displays stored on write and load the names
+            // only for the concepts that have none
+            Map<Long, String> displays = snapshot.isPresent() || includeDesignations.getValue()
+                    ? Collections.emptyMap() : findDisplays(ids, locale);
+            List<Long> nameIds = ids.stream().filter(id -> !displays.containsKey(id)).collect(Collectors.toList());
+            Map<Long, List<LocalizedText>> namesById = snapshot.isPresent() ? snapshotNames
+                    : nameIds.isEmpty() ? Collections.emptyMap() : conceptRepository.findNameRows(nameIds)
+                    .stream().collect(Collectors.groupingBy(TextRow::getConceptId,
+                            Collectors.mapping(TextRow::toLocalizedText, Collectors.toList())));
+            concepts.forEach(c -> {
+                ValueSet.ValueSetExpansionContainsComponent component = new ValueSet.ValueSetExpansionContainsComponent();
+                component.setSystem(source.getCanonicalUrl());
+                component.setVersion(source.getVersion());
+                component.setInactive(c.getRetired());
+                component.setCode(c.getCode());
+                List<LocalizedText> names = namesById.getOrDefault(c.getId(), Collections.emptyList());
+                if (displays.containsKey(c.getId())) {
+                    component.setDisplay(displays.get(c.getId()));
+                } else {
+                    oclFhirUtil.getDisplayForLanguage(names, locale).ifPresent(component::setDisplay);
+                }
+                if (includeDesignations.getValue()) {
+                    addConceptReferenceDesignation(names, component);
+                }
+                expansion.getContains().add(component);
+            });
         });
         // sort based on canonical_url,version desc and code asc
         List<ValueSet.ValueSetExpansionContainsComponent> sorted = expansion.getContains().stream()
@@ -509,6 +593,58 @@ public class ValueSetConverter extends BaseConverter {
         return valueSet;
     }
 
+    /**
+     * Writes the full expansion of the collection as NDJSON, one line per expansion entry. The collection references
+     * are expanded {@value #EXPORT_PAGE_SIZE} at a time so that only one page of concepts is held in memory.
+     * @return the number of exported entries
+     */
+    public long exportExpansion(Collection collection, BooleanType includeDesignations, BooleanType activeOnly,
+                                CodeType displayLanguage, Writer writer) {
+        int total = getAllExpressions(collection).size();
+        long count = 0;
+        for (int offset = 0; offset < total; offset += EXPORT_PAGE_SIZE) {
+            ValueSet valueSet = expand(collection, new IntegerType(offset), new IntegerType(EXPORT_PAGE_SIZE),
+                    includeDesignations, new BooleanType(false), activeOnly, displayLanguage, new ArrayList<>(),
+                    new ArrayList<>(), null);
+            for (ValueSet.ValueSetExpansionContainsComponent component : valueSet.getExpansion().getContains()) {
+                try {
+                    writer.write(toJson(component).toString());
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static JsonObject toJson(ValueSet.ValueSetExpansionContainsComponent component) {
+        JsonObject json = new JsonObject();
+        json.addProperty(SYSTEM, component.getSystem());
+        json.addProperty(VERSION, component.getVersion());
+        json.addProperty(CODE, component.getCode());
+        if (isValid(component.getDisplay()))
+            json.addProperty(DISPLAY, component.getDisplay());
+        json.addProperty(INACTIVE, component.getInactive());
+        if (component.hasDesignation()) {
+            JsonArray designations = new JsonArray();
+            component.getDesignation().forEach(d -> {
+                JsonObject designation = new JsonObject();
+                if (isValid(d.getLanguage())) designation.addProperty(LANGUAGE, d.getLanguage());
+                if (isValid(d.getUse().getCode())) {
+                    JsonObject use = new JsonObject();
+                    use.addProperty(CODE, d.getUse().getCode());
+                    designation.add("use", use);
+                }
+                designation.addProperty(value, d.getValue());
+                designations.add(designation);
+            });
+            json.add(DESIGNATION, designations);
+        }
+        return json;
+    }
+
     private String canonical(String url, String version) {
         return url + "|" + version;
     }
@@ -580,53 +716,47 @@ public class ValueSetConverter extends BaseConverter {
         // add identifier, contact and jurisdiction
         addJsonStrings(valueSet, collection);
         // add concepts
-        Map<Source,List<String>> sourceToConceptMap = toConcepts(valueSet.getCompose(), valueSet.getLanguage());
+        Map<SourceRow,List<String>> sourceToConceptMap = toConcepts(valueSet.getCompose(), valueSet.getLanguage());
         Map<Long,String> validatedConceptIds = new HashMap<>();
         Set<String> expressions = new HashSet<>();
-        sourceToConceptMap.forEach((source,conceptIds) -> {
-            // validate source-concept relationship and build reference expressions
-            String ownerType = source.getOrganization() != null ? ORGS : USERS;
-            String owner = source.getOrganization() != null ? source.getOrganization().getMnemonic() :
-                    source.getUserId().getUsername();
-            Map<Long,String> validated = getValidatedConceptIds(source.getId(), conceptIds);
+        // validate source-concept relationship of all sources concurrently
+        Map<SourceRow,Map<Long,String>> validatedBySource = validateConceptIds(sourceToConceptMap);
+        validatedBySource.forEach((source,validated) -> {
+            // build reference expressions
             validatedConceptIds.putAll(validated);
-            expressions.addAll(toExpression(ownerType, owner, source.getMnemonic(), source.getVersion(), validated.values()));
+            expressions.addAll(toExpression(source.getOwnerType(), source.getOwner(), source.getMnemonic(),
+                    source.getVersion(), validated.values()));
         });
         // save collection
         collectionRepository.saveAndFlush(collection);
         // save collection reference
-        List<Integer> referenceIds = expressions.stream().map(m -> insert(insertCollectionReference, toMap(m)))
-                .map(Long::intValue)
-                .collect(Collectors.toList());
+        List<Long> referenceIds = insertCollectionReferences(new ArrayList<>(expressions));
         // save collections references
-        batchInsert(insertCollectionsReferences, collection.getId().intValue(), referenceIds);
+        batchInsert(insertCollectionsReferences, collection.getId(), referenceIds);
         // save collections concepts
-        batchInsert(insertCollectionsConcepts, collection.getId().intValue(),
-                validatedConceptIds.keySet().stream().map(Long::intValue).collect(Collectors.toList()));
+        batchInsert(insertCollectionsConcepts, collection.getId(), new ArrayList<>(validatedConceptIds.keySet()));
         // clear data
         sourceToConceptMap.clear();
         validatedConceptIds.clear();
         expressions.clear();
     }
 
-    private Map<Source,List<String>> toConcepts(ValueSet.ValueSetComposeComponent component, String defaultLocale) {
-        Map<Source,List<String>> map = new HashMap<>();
+    private Map<SourceRow,List<String>> toConcepts(ValueSet.ValueSetComposeComponent component, String defaultLocale) {
+        Map<SourceRow,List<String>> map = new LinkedHashMap<>();
         component.getInclude().forEach(c -> {
             // validate CodeSystem
-            Source source;
+            SourceRow source;
             String system = c.getSystem();
             String version = c.getVersion();
             if (!isValid(system))
                 throw new InvalidRequestException("Field 'system' of compose.include.* is required.");
             if (isValid(version)) {
-                source = sourceRepository.findFirstByCanonicalUrlAndVersionAndPublicAccessIn(system, version, publicAccess);
+                source = first(sourceRepository.findSourceRows(system, version, publicAccess, PageRequest.of(0, 1)));
             } else {
-                source = sourceRepository.findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(
-                        system, True, publicAccess
-                );
-                // we need to update source version for later use. If version if not provided then we don't want to store
-                // source version info in expressions. This won't be persisted in db, it is for internal user only.
-                source.setVersion(EMPTY);
+                source = first(sourceRepository.findReleasedSourceRows(system, publicAccess, PageRequest.of(0, 1)));
+                // If version is not provided then we don't want to store source version info in expressions.
+                if (source != null)
+                    source = source.withVersion(EMPTY);
             }
             if (source == null)
                 throw new InvalidRequestException(String.format("The CodeSystem %s|%s does not exist.", system, version));
@@ -635,26 +765,57 @@ public class ValueSetConverter extends BaseConverter {
                     .filter(f -> isValid(f.getCode()))
                     .map(ValueSet.ConceptReferenceComponent::getCode)
                     .collect(Collectors.toList());
-            // clear extra source data
-            source.getConcepts().clear();
-            source.getMappings().clear();
-            source.getConceptsSources().clear();
-            source.getMappingsSources().clear();
-
             map.put(source, conceptIds);
         });
         return map;
     }
 
+    private static SourceRow first(List<SourceRow> rows) {
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Validates the concepts of each source on the validation executor. The tasks run outside of the caller's
+     * transaction, on connections of their own, and only read concepts that are already committed. They run within the
+     * query scope of the caller, so that its timeout also cancels their statements.
+     */
+    private Map<SourceRow,Map<Long,String>> validateConceptIds(Map<SourceRow,List<String>> sourceToConceptMap) {
+        Map<SourceRow,Map<Long,String>> validated = new LinkedHashMap<>();
+        if (validationExecutor == null || sourceToConceptMap.size() < 2) {
+            sourceToConceptMap.forEach((source, conceptIds) ->
+                    validated.put(source, getValidatedConceptIds(source.getId(), conceptIds)));
+            return validated;
+        }
+        QueryScope scope = QueryScope.current();
+        Map<SourceRow,Future<Map<Long,String>>> futures = new LinkedHashMap<>();
+        sourceToConceptMap.forEach((source, conceptIds) -> {
+            Callable<Map<Long,String>> task = () -> getValidatedConceptIds(source.getId(), conceptIds);
+            futures.put(source, validationExecutor.submit(scope == null ? task : scope.bind(task)));
+        });
+        try {
+            for (Map.Entry<SourceRow,Future<Map<Long,String>>> entry : futures.entrySet()) {
+                validated.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while validating the concepts of the ValueSet.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new InternalErrorException("Could not validate the concepts of the ValueSet.", e.getCause());
+        } finally {
+            futures.values().forEach(f -> f.cancel(true));
+        }
+        return validated;
+    }
+
     protected Map<Long,String> getValidatedConceptIds(Long sourceId, List<String> conceptIds) {
-        MapSqlParameterSource parameters = new MapSqlParameterSource();
-        parameters.addValue("sourceId", sourceId);
-        parameters.addValue("conceptIds", conceptIds);
         Map<Long,String> map = new HashMap<>();
-        namedParameterJdbcTemplate.query(validateConceptIdSql, parameters, (RowMapper<Void>) (rs, rowNum) -> {
-            map.put(rs.getLong(1), rs.getString(2));
-            return null;
-        });
+        for (List<String> batch : ListUtils.partition(conceptIds, VALIDATION_BATCH_SIZE)) {
+            jdbcTemplate.query(validateConceptIdSql, rs -> {
+                map.put(rs.getLong(1), rs.getString(2));
+            }, sourceId, batch.toArray(new String[0]));
+        }
         return map;
     }
 
@@ -743,25 +904,42 @@ public class ValueSetConverter extends BaseConverter {
         }
     }
 
-    private static Map<String,Object> toMap(String expression) {
+    /**
+     * Inserts the collection references with one multi-row insert per batch and returns their generated ids. All
+     * state is local to the call so concurrent creates do not share parameters.
+     */
+    private List<Long> insertCollectionReferences(List<String> expressions) {
+        List<Long> ids = new ArrayList<>(expressions.size());
         Timestamp timestamp = new Timestamp(System.currentTimeMillis());
-        collReferenceParamMap.put(EXPRESSION, expression);
-        collReferenceParamMap.put(CREATED_AT, timestamp);
-        collReferenceParamMap.put(UPDATED_AT, timestamp);
-        collReferenceParamMap.put(LAST_RESOLVED_AT, timestamp);
-        return collReferenceParamMap;
-    }
-
-    private void batchInsert(String sql, Integer collectionId, List<Integer> integerList) {
-        this.jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            public void setValues(PreparedStatement ps, int i)
-                    throws SQLException {
-                ps.setInt(1, collectionId);
-                ps.setInt(2, integerList.get(i));
-            }
-            public int getBatchSize() {
-                return integerList.size();
-            }
-        });
+        for (List<String> batch : ListUtils.partition(expressions, REFERENCE_BATCH_SIZE)) {
+            String sql = insertCollectionReferencesPrefix +
+                    String.join(",", Collections.nCopies(batch.size(), insertCollectionReferencesRow)) + " returning id";
+            List<Long> batchIds = this.jdbcTemplate.query(sql, ps -> {
+                int i = 1;
+                for (String expression : batch) {
+                    ps.setString(i++, expression);
+                    ps.setTimestamp(i++, timestamp);
+                    ps.setTimestamp(i++, timestamp);
+                    ps.setTimestamp(i++, timestamp);
+                }
+            }, (rs, rowNum) -> rs.getLong(1));
+            if (batchIds != null) ids.addAll(batchIds);
+        }
+        return ids;
+    }
+
+    private void batchInsert(String sql, Long collectionId, List<Long> ids) {
+        for (List<Long> batch : ListUtils.partition(ids, REFERENCE_BATCH_SIZE)) {
+            this.jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                public void setValues(PreparedStatement ps, int i)
+                        throws SQLException {
+                    ps.setLong(1, collectionId);
+                    ps.setLong(2, batch.get(i));
+                }
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            });
+        }
     }
 }
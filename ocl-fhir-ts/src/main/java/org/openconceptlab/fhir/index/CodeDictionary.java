@@ -0,0 +1,126 @@
+package org.openconceptlab.fhir.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The CodeDictionary. Interns strings such as concept codes and source urls to dense int ids, 0 to size - 1. The
+ * strings are kept as UTF-8 in one byte array and looked up through an open addressing table of ids, so an entry costs
+ * its bytes plus about 16 bytes instead of the String, boxed value and map entry objects of a {@code HashMap}.
+ * <p>
+ * A dictionary is filled by a single thread and is safe to read from any number of threads once it is published.
+ * @author harpatel1
+ */
+public final class CodeDictionary {
+
+    public static final int ABSENT = -1;
+
+    private byte[] bytes;
+    private int length;
+    private int[] offsets;
+    private int[] hashes;
+    private int[] table;
+    private int size;
+
+    public CodeDictionary() {
+        this(1024);
+    }
+
+    public CodeDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.bytes = new byte[capacity * 8];
+        this.offsets = new int[capacity + 1];
+        this.hashes = new int[capacity];
+        this.table = new int[tableSize(capacity)];
+        Arrays.fill(table, ABSENT);
+    }
+
+    /**
+     * Returns the id of the given string, adding it when it is not known yet. Null is never interned.
+     */
+    public int intern(String value) {
+        if (value == null) return ABSENT;
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(utf8);
+        int slot = slot(utf8, hash);
+        if (table[slot] != ABSENT) return table[slot];
+        if (size == hashes.length) {
+            int capacity = Math.max(16, size * 2);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        if (length + utf8.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + utf8.length));
+        }
+        System.arraycopy(utf8, 0, bytes, length, utf8.length);
+        length += utf8.length;
+        int id = size++;
+        offsets[size] = length;
+        hashes[id] = hash;
+        table[slot] = id;
+        if (size * 2 > table.length) rehash();
+        return id;
+    }
+
+    /**
+     * Returns the id of the given string or {@link #ABSENT}.
+     */
+    public int id(String value) {
+        if (value == null) return ABSENT;
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        return table[slot(utf8, hash(utf8))];
+    }
+
+    public String get(int id) {
+        if (id == ABSENT) return null;
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Releases the spare capacity once the dictionary is complete.
+     */
+    public void trim() {
+        bytes = Arrays.copyOf(bytes, length);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        hashes = Arrays.copyOf(hashes, size);
+    }
+
+    private int slot(byte[] utf8, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != ABSENT && !matches(table[slot], utf8, hash)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean matches(int id, byte[] utf8, int hash) {
+        return hashes[id] == hash && Arrays.equals(bytes, offsets[id], offsets[id + 1], utf8, 0, utf8.length);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, ABSENT);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != ABSENT) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    private static int hash(byte[] utf8) {
+        int hash = Arrays.hashCode(utf8);
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+}
@@ -0,0 +1,118 @@
+package org.openconceptlab.fhir.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openconceptlab.fhir.model.Collection;
+import org.openconceptlab.fhir.model.CollectionReference;
+import org.openconceptlab.fhir.model.CollectionsReference;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.MappingRow;
+import org.openconceptlab.fhir.repository.MappingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.HEAD;
+
+/**
+ * The IndexService. Holds the in-memory {@link ValueSetMembership} of collection versions and {@link MappingIndex} of
+ * ConceptMap source versions, built on first use and kept in small LRU caches. The cache keys include the last update
+ * of the collection or source so that an edited version is indexed again. HEAD and unreleased versions are still
+ * changing and are always answered from the database.
+ * @author harpatel1
+ */
+@Component
+public class IndexService {
+
+    private static final Log log = LogFactory.getLog(IndexService.class);
+
+    private final MappingRepository mappingRepository;
+    private final boolean enabled;
+    private final Map<String, ValueSetMembership> memberships;
+    private final Map<String, MappingIndex> mappingIndexes;
+
+    public IndexService(MappingRepository mappingRepository,
+                        @Value("${ocl.index.enabled:true}") boolean enabled,
+                        @Value("${ocl.index.max-entries:64}") int maxEntries) {
+        this.mappingRepository = mappingRepository;
+        this.enabled = enabled;
+        this.memberships = lru(maxEntries);
+        this.mappingIndexes = lru(maxEntries);
+    }
+
+    /**
+     * Returns the membership index of a released collection version.
+     */
+    public Optional<ValueSetMembership> getMembership(Collection collection) {
+        if (!enabled || collection == null || !isIndexed(collection.getReleased(), collection.getVersion())) {
+            return Optional.empty();
+        }
+        return Optional.of(get(memberships, key(collection.getId(), collection.getUpdatedAt()), () -> {
+            List<String> expressions = collection.getCollectionsReferences().stream()
+                    .map(CollectionsReference::getCollectionReference)
+                    .filter(Objects::nonNull)
+                    .map(CollectionReference::getExpression)
+                    .collect(Collectors.toList());
+            return ValueSetMembership.of(expressions);
+        }));
+    }
+
+    /**
+     * Returns the mapping index of a released ConceptMap source version. Building the index reads all mappings of
+     * the source through a cursor and must run within a read-only transaction.
+     */
+    public Optional<MappingIndex> getMappingIndex(Source source) {
+        if (!enabled || source == null || !isIndexed(source.getReleased(), source.getVersion())) {
+            return Optional.empty();
+        }
+        return Optional.of(get(mappingIndexes, key(source.getId(), source.getUpdatedAt()), () -> {
+            try (Stream<MappingRow> rows = mappingRepository.streamMappingRows(source.getId())) {
+                MappingIndex index = MappingIndex.of(rows.iterator());
+                log.info("Indexed " + index.size() + " mappings of source " + source.getMnemonic() + " "
+                        + source.getVersion() + ".");
+                return index;
+            }
+        }));
+    }
+
+    private <T> T get(Map<String, T> cache, String key, Supplier<T> builder) {
+        T value;
+        synchronized (cache) {
+            value = cache.get(key);
+        }
+        if (value == null) {
+            // built outside of the lock, concurrent first requests for the same key may build it twice
+            value = builder.get();
+            synchronized (cache) {
+                cache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    private boolean isIndexed(Boolean released, String version) {
+        return Boolean.TRUE.equals(released) && !HEAD.equals(version);
+    }
+
+    private String key(Long id, Timestamp updatedAt) {
+        return id + "-" + (updatedAt != null ? updatedAt.getTime() : 0);
+    }
+
+    private static <T> Map<String, T> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
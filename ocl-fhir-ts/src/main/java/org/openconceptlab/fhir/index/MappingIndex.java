@@ -0,0 +1,103 @@
+package org.openconceptlab.fhir.index;
+
+import org.openconceptlab.fhir.model.projection.MappingRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The MappingIndex. The latest mappings of a ConceptMap source version grouped by from concept code, as used by
+ * $translate. Codes and all other strings are interned in two {@link CodeDictionary} instances and each mapping is a
+ * row of int ids in one flat array, the rows of a from code are contiguous and located through an offsets array.
+ * Only the columns read by $translate are kept: from url and version, to url, version, code and name and the map type.
+ * @author harpatel1
+ */
+public final class MappingIndex {
+
+    private static final int FROM_URL = 0;
+    private static final int FROM_VERSION = 1;
+    private static final int TO_URL = 2;
+    private static final int TO_VERSION = 3;
+    private static final int TO_CODE = 4;
+    private static final int TO_NAME = 5;
+    private static final int MAP_TYPE = 6;
+    private static final int COLUMNS = 7;
+
+    private final CodeDictionary codes;
+    private final CodeDictionary values;
+    private final int[] offsets;
+    private final int[] rows;
+
+    private MappingIndex(CodeDictionary codes, CodeDictionary values, int[] offsets, int[] rows) {
+        this.codes = codes;
+        this.values = values;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    public static MappingIndex of(Iterator<MappingRow> mappings) {
+        CodeDictionary codes = new CodeDictionary();
+        CodeDictionary values = new CodeDictionary();
+        int[] fromCodes = new int[1024];
+        int[] columns = new int[1024 * COLUMNS];
+        int n = 0;
+        while (mappings.hasNext()) {
+            MappingRow mapping = mappings.next();
+            if (mapping.getFromConceptCode() == null) continue;
+            if (n == fromCodes.length) {
+                fromCodes = Arrays.copyOf(fromCodes, n * 2);
+                columns = Arrays.copyOf(columns, n * 2 * COLUMNS);
+            }
+            fromCodes[n] = codes.intern(mapping.getFromConceptCode());
+            int row = n * COLUMNS;
+            columns[row + FROM_URL] = values.intern(mapping.getFromSourceUrl());
+            columns[row + FROM_VERSION] = values.intern(mapping.getFromSourceVersion());
+            columns[row + TO_URL] = values.intern(mapping.getToSourceUrl());
+            columns[row + TO_VERSION] = values.intern(mapping.getToSourceVersion());
+            columns[row + TO_CODE] = values.intern(mapping.getToConceptCode());
+            columns[row + TO_NAME] = values.intern(mapping.getToConceptName());
+            columns[row + MAP_TYPE] = values.intern(mapping.getMapType());
+            n++;
+        }
+        codes.trim();
+        values.trim();
+        // counting sort of the rows by from code, keeping the order of the rows within a code
+        int[] offsets = new int[codes.size() + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[fromCodes[i] + 1]++;
+        }
+        for (int i = 0; i < codes.size(); i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, codes.size());
+        int[] rows = new int[n * COLUMNS];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(columns, i * COLUMNS, rows, next[fromCodes[i]]++ * COLUMNS, COLUMNS);
+        }
+        return new MappingIndex(codes, values, offsets, rows);
+    }
+
+    /**
+     * Returns the mappings of the given from concept code. The concept names of the from side and the canonical urls
+     * are not kept and are null in the returned rows.
+     */
+    public List<MappingRow> find(String fromCode) {
+        int code = codes.id(fromCode);
+        if (code == CodeDictionary.ABSENT) return Collections.emptyList();
+        List<MappingRow> mappings = new ArrayList<>(offsets[code + 1] - offsets[code]);
+        for (int i = offsets[code]; i < offsets[code + 1]; i++) {
+            int row = i * COLUMNS;
+            mappings.add(new MappingRow(values.get(rows[row + FROM_URL]), null, values.get(rows[row + TO_URL]), null,
+                    fromCode, null, values.get(rows[row + TO_CODE]), null, null, values.get(rows[row + TO_NAME]),
+                    values.get(rows[row + MAP_TYPE]), values.get(rows[row + FROM_VERSION]), values.get(rows[row + TO_VERSION])));
+        }
+        return mappings;
+    }
+
+    public int size() {
+        return rows.length / COLUMNS;
+    }
+}
@@ -0,0 +1,73 @@
+package org.openconceptlab.fhir.index;
+
+import java.util.Arrays;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.CONCEPTS;
+import static org.openconceptlab.fhir.util.OclFhirConstants.FS;
+import static org.openconceptlab.fhir.util.OclFhirUtil.formatExpression;
+
+/**
+ * The ValueSetMembership. The concept references of a collection version as a sorted array of (source, code) pairs,
+ * both interned in a {@link CodeDictionary} and packed into one long. A reference expression such as
+ * /orgs/OCL/sources/SRC/v1.0/concepts/C1/ is split into its source part /orgs/OCL/sources/SRC/v1.0/ and the code C1,
+ * any concept version after the code is ignored.
+ * @author harpatel1
+ */
+public final class ValueSetMembership {
+
+    private static final String CONCEPTS_SEGMENT = FS + CONCEPTS + FS;
+
+    private final CodeDictionary dictionary;
+    private final long[] members;
+
+    private ValueSetMembership(CodeDictionary dictionary, long[] members) {
+        this.dictionary = dictionary;
+        this.members = members;
+    }
+
+    public static ValueSetMembership of(java.util.Collection<String> expressions) {
+        CodeDictionary dictionary = new CodeDictionary(expressions.size() + 16);
+        long[] members = new long[expressions.size()];
+        int n = 0;
+        for (String expression : expressions) {
+            String[] parts = split(expression);
+            if (parts == null) continue;
+            members[n++] = pack(dictionary.intern(parts[0]), dictionary.intern(parts[1]));
+        }
+        dictionary.trim();
+        long[] sorted = Arrays.copyOf(members, n);
+        Arrays.sort(sorted);
+        return new ValueSetMembership(dictionary, sorted);
+    }
+
+    /**
+     * Whether the collection references the concept of the given reference expression.
+     */
+    public boolean contains(String expression) {
+        String[] parts = split(expression);
+        if (parts == null) return false;
+        int source = dictionary.id(parts[0]);
+        int code = dictionary.id(parts[1]);
+        if (source == CodeDictionary.ABSENT || code == CodeDictionary.ABSENT) return false;
+        return Arrays.binarySearch(members, pack(source, code)) >= 0;
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    private static String[] split(String expression) {
+        if (expression == null) return null;
+        String formatted = formatExpression(expression);
+        int concepts = formatted.indexOf(CONCEPTS_SEGMENT);
+        if (concepts < 0) return null;
+        int start = concepts + CONCEPTS_SEGMENT.length();
+        int end = formatted.indexOf(FS, start);
+        if (end <= start) return null;
+        return new String[]{formatted.substring(0, concepts + 1), formatted.substring(start, end)};
+    }
+
+    private static long pack(int source, int code) {
+        return ((long) source << 32) | (code & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,226 @@
+package org.openconceptlab.fhir.interceptor;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import com.google.common.hash.Hashing;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.AUTHORIZATION;
+import static org.openconceptlab.fhir.util.OclFhirConstants.EXPAND;
+import static org.openconceptlab.fhir.util.OclFhirUtil.isValid;
+
+/**
+ * The OclFhirAdmissionInterceptor class. Bounds the number of requests of each operation class that are handled at the
+ * same time, and the number of concurrent requests of a single client, so that a few clients running imports or
+ * large expansions can not take all Tomcat threads and database connections from cheap lookups. A request over a limit
+ * is rejected with 429 and a Retry-After header before any provider code runs. Exports that the controllers stream
+ * without passing through the FHIR server are admitted with {@link #admit(OperationClass, HttpServletRequest)}.
+ * @author harpatel1
+ */
+@Component
+public class OclFhirAdmissionInterceptor {
+
+    private static final Log log = LogFactory.getLog(OclFhirAdmissionInterceptor.class);
+    private static final String PERMIT = OclFhirAdmissionInterceptor.class.getName() + ".permit";
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+    public static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    public enum OperationClass { IMPORT, EXPORT, EXPAND, SEARCH, LOOKUP }
+
+    private final boolean enabled;
+    private final Map<OperationClass, Semaphore> limits = new EnumMap<>(OperationClass.class);
+    private final int perClient;
+    private final long maxWaitMillis;
+    private final int retryAfterSeconds;
+    private final Map<String, Integer> clients = new ConcurrentHashMap<>();
+
+    public OclFhirAdmissionInterceptor(@Value("${ocl.admission.enabled:true}") boolean enabled,
+                                       @Value("${ocl.admission.import:2}") int importLimit,
+                                       @Value("${ocl.admission.export:2}") int exportLimit,
+                                       @Value("${ocl.admission.expand:8}") int expandLimit,
+                                       @Value("${ocl.admission.search:16}") int searchLimit,
+                                       @Value("${ocl.admission.lookup:64}") int lookupLimit,
+                                       @Value("${ocl.admission.per-client:8}") int perClient,
+                                       @Value("${ocl.admission.max-wait-ms:50}") long maxWaitMillis,
+                                       @Value("${ocl.admission.retry-after-seconds:2}") int retryAfterSeconds) {
+        this.enabled = enabled;
+        this.limits.put(OperationClass.IMPORT, new Semaphore(importLimit));
+        this.limits.put(OperationClass.EXPORT, new Semaphore(exportLimit));
+        this.limits.put(OperationClass.EXPAND, new Semaphore(expandLimit));
+        this.limits.put(OperationClass.SEARCH, new Semaphore(searchLimit));
+        this.limits.put(OperationClass.LOOKUP, new Semaphore(lookupLimit));
+        this.perClient = perClient;
+        this.maxWaitMillis = maxWaitMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void admit(RequestDetails details, RestOperationTypeEnum operationType) {
+        if (!enabled) return;
+        OperationClass operationClass = classify(operationType, details.getOperation());
+        if (operationClass == null) return;
+        details.getUserData().put(PERMIT, acquire(operationClass, client(details), details.getCompleteUrl()));
+    }
+
+    /**
+     * Admits work of the given class that the controllers handle without the FHIR server.
+     * @return the permit to close once the work is done, null if admission control is disabled
+     */
+    public Permit admit(OperationClass operationClass, HttpServletRequest request) {
+        if (!enabled) return null;
+        return acquire(operationClass, client(request.getHeader(AUTHORIZATION), request.getRemoteAddr(),
+                request.getHeader(X_FORWARDED_FOR)), request.getRequestURI());
+    }
+
+    @Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+    public void release(RequestDetails details) {
+        Permit permit = (Permit) details.getUserData().remove(PERMIT);
+        if (permit != null) permit.close();
+    }
+
+    private Permit acquire(OperationClass operationClass, String client, String request) {
+        if (client != null && !acquireClient(client)) {
+            throw tooManyRequests("Too many concurrent requests of this client, retry later.");
+        }
+        boolean admitted = false;
+        try {
+            // a short wait absorbs bursts, requests are rejected only when the class stays saturated
+            admitted = limits.get(operationClass).tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!admitted && client != null) releaseClient(client);
+        }
+        if (!admitted) {
+            log.info("Rejected " + operationClass + " request " + request + ", the limit is reached.");
+            throw tooManyRequests("Too many concurrent " + operationClass.name().toLowerCase() + " requests, retry later.");
+        }
+        return new Permit(operationClass, client);
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Returns the operation class of the request, or null for requests that are not limited such as the capability
+     * statement.
+     */
+    static OperationClass classify(RestOperationTypeEnum operationType, String operation) {
+        if (operationType == null) return null;
+        switch (operationType) {
+            case CREATE:
+            case UPDATE:
+            case DELETE:
+            case PATCH:
+            case TRANSACTION:
+                return OperationClass.IMPORT;
+            case EXTENDED_OPERATION_SERVER:
+            case EXTENDED_OPERATION_TYPE:
+            case EXTENDED_OPERATION_INSTANCE:
+                return EXPAND.equals(operation) ? OperationClass.EXPAND : OperationClass.LOOKUP;
+            case READ:
+            case VREAD:
+            case SEARCH_TYPE:
+            case SEARCH_SYSTEM:
+            case HISTORY_TYPE:
+            case HISTORY_INSTANCE:
+            case HISTORY_SYSTEM:
+                return OperationClass.SEARCH;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the client of the request, identified by its token and otherwise by its address. Requests that the
+     * controllers pass on from the loopback address are identified by the forwarded address of the original client,
+     * internal requests without one are not limited per client.
+     */
+    private static String client(RequestDetails details) {
+        String address = details instanceof ServletRequestDetails
+                ? ((ServletRequestDetails) details).getServletRequest().getRemoteAddr() : null;
+        return client(details.getHeader(AUTHORIZATION), address, details.getHeader(X_FORWARDED_FOR));
+    }
+
+    private static String client(String token, String address, String forwarded) {
+        if (isValid(token)) {
+            // tokens are not kept in memory
+            return "token:" + Hashing.murmur3_128().hashString(token, StandardCharsets.UTF_8);
+        }
+        if (address == null) return null;
+        if (isLoopback(address)) {
+            return isValid(forwarded) ? "address:" + forwarded.split(",")[0].trim() : null;
+        }
+        return "address:" + address;
+    }
+
+    private boolean acquireClient(String client) {
+        boolean[] admitted = {false};
+        clients.compute(client, (k, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= perClient) return count;
+            admitted[0] = true;
+            return current + 1;
+        });
+        return admitted[0];
+    }
+
+    private void releaseClient(String client) {
+        clients.computeIfPresent(client, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private BaseServerResponseException tooManyRequests(String message) {
+        return new UnclassifiedServerFailureException(STATUS_TOO_MANY_REQUESTS, message)
+                .addResponseHeader(Constants.HEADER_RETRY_AFTER, String.valueOf(retryAfterSeconds));
+    }
+
+    private static boolean isLoopback(String address) {
+        try {
+            return address != null && InetAddress.getByName(address).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The admission of a request, releases its limits once when closed.
+     */
+    public final class Permit implements AutoCloseable {
+        private final OperationClass operationClass;
+        private final String client;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(OperationClass operationClass, String client) {
+            this.operationClass = operationClass;
+            this.client = client;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) return;
+            limits.get(operationClass).release();
+            if (client != null) releaseClient(client);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.openconceptlab.fhir.interceptor;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.OperationClass;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.PREFER;
+
+/**
+ * The OclFhirQueryTimeoutInterceptor class. Runs the database statements of each request within a {@link QueryScope}
+ * with the timeout of its operation class, shortened to the {@code Prefer: wait=n} time of the client for reads. Once
+ * the time is up the running statements are cancelled, so that a request the client no longer waits for stops holding
+ * a connection, and the request fails with 503. Exports that the controllers stream without passing through the FHIR
+ * server open their scope with {@link #open(OperationClass)}.
+ * @author harpatel1
+ */
+@Component
+public class OclFhirQueryTimeoutInterceptor {
+
+    private static final Log log = LogFactory.getLog(OclFhirQueryTimeoutInterceptor.class);
+    private static final String SCOPE = OclFhirQueryTimeoutInterceptor.class.getName() + ".scope";
+    private static final String WAIT = "wait=";
+    private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+
+    private final boolean enabled;
+    private final Map<OperationClass, Long> timeouts = new EnumMap<>(OperationClass.class);
+
+    public OclFhirQueryTimeoutInterceptor(@Value("${ocl.query.timeout.enabled:true}") boolean enabled,
+                                          @Value("${ocl.query.timeout.import-ms:1800000}") long importMillis,
+                                          @Value("${ocl.query.timeout.export-ms:600000}") long exportMillis,
+                                          @Value("${ocl.query.timeout.expand-ms:60000}") long expandMillis,
+                                          @Value("${ocl.query.timeout.search-ms:30000}") long searchMillis,
+                                          @Value("${ocl.query.timeout.lookup-ms:10000}") long lookupMillis) {
+        this.enabled = enabled;
+        this.timeouts.put(OperationClass.IMPORT, importMillis);
+        this.timeouts.put(OperationClass.EXPORT, exportMillis);
+        this.timeouts.put(OperationClass.EXPAND, expandMillis);
+        this.timeouts.put(OperationClass.SEARCH, searchMillis);
+        this.timeouts.put(OperationClass.LOOKUP, lookupMillis);
+    }
+
+    @Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+    public void open(RequestDetails details, RestOperationTypeEnum operationType) {
+        if (!enabled) return;
+        OperationClass operationClass = OclFhirAdmissionInterceptor.classify(operationType, details.getOperation());
+        if (operationClass == null) return;
+        long timeout = timeouts.get(operationClass);
+        // an abandoned write still rolls back completely, it is only bounded by its own timeout
+        if (operationClass != OperationClass.IMPORT) {
+            long wait = getPreferredWaitMillis(details.getHeader(PREFER));
+            if (wait > 0 && (timeout <= 0 || wait < timeout)) timeout = wait;
+        }
+        details.getUserData().put(SCOPE, QueryScope.open(timeout));
+    }
+
+    /**
+     * Opens the scope of work of the given class that the controllers handle without the FHIR server.
+     * @return the scope to close once the work is done, null if query timeouts are disabled
+     */
+    public QueryScope open(OperationClass operationClass) {
+        return enabled ? QueryScope.open(timeouts.get(operationClass)) : null;
+    }
+
+    @Hook(Pointcut.SERVER_PRE_PROCESS_OUTGOING_EXCEPTION)
+    public BaseServerResponseException timedOut(RequestDetails details, Throwable exception) {
+        return timedOut((QueryScope) details.getUserData().get(SCOPE), details.getCompleteUrl());
+    }
+
+    /**
+     * Returns the 503 response of a request whose scope has been cancelled, or null if it has not.
+     */
+    public BaseServerResponseException timedOut(QueryScope scope, String request) {
+        if (scope == null || !scope.isCancelled()) return null;
+        log.warn("Cancelled the statements of " + request + " after " + scope.getTimeoutMillis() + " ms.");
+        return new UnclassifiedServerFailureException(STATUS_SERVICE_UNAVAILABLE,
+                "The request did not complete within " + scope.getTimeoutMillis() + " ms and was cancelled.");
+    }
+
+    @Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+    public void close(RequestDetails details) {
+        QueryScope scope = (QueryScope) details.getUserData().remove(SCOPE);
+        if (scope != null) scope.close();
+    }
+
+    /**
+     * Returns the wait preference of RFC 7240 in milliseconds, or 0 if there is none.
+     */
+    static long getPreferredWaitMillis(String prefer) {
+        if (prefer == null) return 0;
+        for (String preference : prefer.split("[,;]")) {
+            String value = preference.trim();
+            if (value.regionMatches(true, 0, WAIT, 0, WAIT.length())) {
+                try {
+                    return Math.max(0, Long.parseLong(value.substring(WAIT.length()).trim())) * 1000;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,96 @@
+package org.openconceptlab.fhir.job;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * The ExportJob. State of an asynchronous bulk export, the output is written to a single NDJSON file.
+ * @author harpatel1
+ */
+public class ExportJob {
+
+    public enum Status { ACCEPTED, IN_PROGRESS, COMPLETED, FAILED }
+
+    private final String id;
+    private final String type;
+    private final String request;
+    private final Instant transactionTime = Instant.now();
+    private final Path file;
+    private volatile Status status = Status.ACCEPTED;
+    private volatile long count;
+    private volatile Exception error;
+    private volatile Instant completedAt;
+    private volatile Future<?> future;
+
+    public ExportJob(String id, String type, String request, Path file) {
+        this.id = id;
+        this.type = type;
+        this.request = request;
+        this.file = file;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public Instant getTransactionTime() {
+        return transactionTime;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void started() {
+        this.status = Status.IN_PROGRESS;
+    }
+
+    void completed(long count) {
+        this.count = count;
+        this.completedAt = Instant.now();
+        this.status = Status.COMPLETED;
+    }
+
+    void failed(Exception error) {
+        this.error = error;
+        this.completedAt = Instant.now();
+        this.status = Status.FAILED;
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+}
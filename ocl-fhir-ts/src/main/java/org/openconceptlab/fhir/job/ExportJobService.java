@@ -0,0 +1,177 @@
+package org.openconceptlab.fhir.job;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.CodeType;
+import org.hl7.fhir.r4.model.ConceptMap;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.provider.ConceptMapResourceProvider;
+import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.STATUS_TOO_MANY_REQUESTS;
+import static org.openconceptlab.fhir.util.OclFhirUtil.newStringType;
+
+/**
+ * The ExportJobService. Runs bulk exports of ValueSet expansions and ConceptMap mappings on a small dedicated pool so
+ * that interactive requests only kick off and poll the job. Each job writes one NDJSON file to the export directory,
+ * finished jobs and their files are removed after the retention period.
+ * <p>
+ * The export pool bounds the exports that run at the same time, and at most {@code ocl.export.max-pending} exports are
+ * running or queued, further requests are rejected with 429. Each export runs within a {@link QueryScope} of
+ * {@code ocl.query.timeout.export-ms}, its statements are cancelled once the time is up and the job fails.
+ * @author harpatel1
+ */
+@Component
+public class ExportJobService {
+
+    private static final Log log = LogFactory.getLog(ExportJobService.class);
+    private static final String NDJSON = ".ndjson";
+
+    private final ValueSetResourceProvider valueSetResourceProvider;
+    private final ConceptMapResourceProvider conceptMapResourceProvider;
+    private final Path directory;
+    private final Duration retention;
+    private final int maxPending;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    public ExportJobService(ValueSetResourceProvider valueSetResourceProvider,
+                            ConceptMapResourceProvider conceptMapResourceProvider,
+                            @Value("${ocl.export.dir:${java.io.tmpdir}/ocl-fhir-export}") String directory,
+                            @Value("${ocl.export.threads:2}") int threads,
+                            @Value("${ocl.export.retention-hours:24}") long retentionHours,
+                            @Value("${ocl.export.max-pending:8}") int maxPending,
+                            @Value("${ocl.query.timeout.export-ms:600000}") long timeoutMillis) {
+        this.valueSetResourceProvider = valueSetResourceProvider;
+        this.conceptMapResourceProvider = conceptMapResourceProvider;
+        this.directory = Paths.get(directory);
+        this.retention = Duration.ofHours(retentionHours);
+        this.maxPending = maxPending;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "export-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ExportJob submitValueSetExport(String owner, String id, Optional<String> version, Boolean includeDesignations,
+                                          Boolean activeOnly, String displayLanguage, String request) {
+        return submit(ValueSet.class.getSimpleName(), request, writer -> valueSetResourceProvider.exportValueSet(
+                newStringType(owner), newStringType(id), newStringType(version.orElse(null)),
+                new BooleanType(includeDesignations), new BooleanType(activeOnly),
+                displayLanguage == null ? null : new CodeType(displayLanguage), writer));
+    }
+
+    public ExportJob submitConceptMapExport(String owner, String id, Optional<String> version, String request) {
+        return submit(ConceptMap.class.getSimpleName(), request, writer -> conceptMapResourceProvider.exportConceptMap(
+                newStringType(owner), newStringType(id), newStringType(version.orElse(null)), writer));
+    }
+
+    public Optional<ExportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels a running job, or deletes the file of a finished one.
+     */
+    public boolean delete(String id) {
+        ExportJob job = jobs.remove(id);
+        if (job == null) return false;
+        if (job.getFuture() != null) job.getFuture().cancel(true);
+        deleteFiles(job);
+        return true;
+    }
+
+    private ExportJob submit(String type, String request, Function<Writer, Long> export) {
+        purgeExpired();
+        String id = UUID.randomUUID().toString();
+        ExportJob job = new ExportJob(id, type, request, directory.resolve(id + NDJSON));
+        synchronized (jobs) {
+            if (jobs.values().stream().filter(j -> !j.isDone()).count() >= maxPending) {
+                log.info("Rejected " + type + " export for " + request + ", " + maxPending + " exports are pending.");
+                throw new UnclassifiedServerFailureException(STATUS_TOO_MANY_REQUESTS,
+                        "Too many exports in progress, retry later.");
+            }
+            jobs.put(id, job);
+        }
+        job.setFuture(executor.submit(() -> run(job, export)));
+        log.info("Accepted " + type + " export " + id + " for " + request + ".");
+        return job;
+    }
+
+    private void run(ExportJob job, Function<Writer, Long> export) {
+        job.started();
+        Path part = partFile(job);
+        try (QueryScope scope = QueryScope.open(timeoutMillis)) {
+            Files.createDirectories(directory);
+            long count;
+            try (Writer writer = Files.newBufferedWriter(part, StandardCharsets.UTF_8)) {
+                count = export.apply(writer);
+            } catch (RuntimeException e) {
+                if (!scope.isCancelled()) throw e;
+                throw new IllegalStateException("The export did not complete within " + timeoutMillis
+                        + " ms and was cancelled.", e);
+            }
+            Files.move(part, job.getFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.completed(count);
+            log.info("Finished " + job.getType() + " export " + job.getId() + " with " + count + " entries.");
+        } catch (IOException | RuntimeException e) {
+            log.error("Export " + job.getId() + " failed - " + e.getMessage());
+            deleteFiles(job);
+            job.failed(e);
+        }
+    }
+
+    private void purgeExpired() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().stream()
+                .filter(j -> j.isDone() && j.getCompletedAt().isBefore(expiry))
+                .map(ExportJob::getId)
+                .forEach(this::delete);
+    }
+
+    private void deleteFiles(ExportJob job) {
+        try {
+            Files.deleteIfExists(partFile(job));
+            Files.deleteIfExists(job.getFile());
+        } catch (IOException e) {
+            log.warn("Could not delete the file of export " + job.getId() + " - " + e.getMessage());
+        }
+    }
+
+    private Path partFile(ExportJob job) {
+        return directory.resolve(job.getId() + NDJSON + ".part");
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
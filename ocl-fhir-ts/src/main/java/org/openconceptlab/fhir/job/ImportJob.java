@@ -0,0 +1,212 @@
+package org.openconceptlab.fhir.job;
+
+import org.openconceptlab.fhir.converter.CodeSystemConverter.ConceptImport;
+import org.openconceptlab.fhir.repository.ResourceLockRepository.SessionLock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The ImportJob. State and progress of an asynchronous CodeSystem import, the concepts are written in batches that are
+ * committed independently and possibly out of order. A failed job keeps its concepts and writes the batches that were
+ * not committed when resumed. The job holds the import lock of its source until it completes or, once no batch is
+ * running, is deleted.
+ * @author harpatel1
+ */
+public class ImportJob {
+
+    public enum Status { ACCEPTED, IN_PROGRESS, COMPLETED, FAILED }
+
+    private final String id;
+    private final String type;
+    private final String request;
+    private final Instant transactionTime = Instant.now();
+    private final Long sourceId;
+    private final String sourceMnemonic;
+    private final String sourceKey;
+    private final int totalBatches;
+    private final int totalConcepts;
+    private volatile ConceptImport conceptImport;
+    private volatile Status status = Status.ACCEPTED;
+    private final BitSet committed = new BitSet();
+    private volatile int batchesDone;
+    private volatile long conceptsWritten;
+    private volatile Instant startedAt;
+    private volatile long runMillis;
+    private volatile Exception error;
+    private volatile Instant completedAt;
+    private volatile Future<?> future;
+    // guarded by this
+    private SessionLock importLock;
+    private boolean running;
+    private boolean deleted;
+
+    public ImportJob(String id, String type, String request, ConceptImport conceptImport) {
+        this.id = id;
+        this.type = type;
+        this.request = request;
+        this.conceptImport = conceptImport;
+        this.sourceId = conceptImport.getSourceId();
+        this.sourceMnemonic = conceptImport.getSourceMnemonic();
+        this.sourceKey = conceptImport.getSourceKey();
+        this.totalBatches = conceptImport.getBatches().size();
+        this.totalConcepts = conceptImport.getSize();
+        this.importLock = conceptImport.getImportLock();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public Instant getTransactionTime() {
+        return transactionTime;
+    }
+
+    public Long getSourceId() {
+        return sourceId;
+    }
+
+    public String getSourceMnemonic() {
+        return sourceMnemonic;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    public int getTotalBatches() {
+        return totalBatches;
+    }
+
+    public int getTotalConcepts() {
+        return totalConcepts;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getBatchesDone() {
+        return batchesDone;
+    }
+
+    public long getConceptsWritten() {
+        return conceptsWritten;
+    }
+
+    /**
+     * Concepts written per second while the job was running, over all of its runs.
+     */
+    public double getConceptsPerSecond() {
+        long millis = runMillis + (status == Status.IN_PROGRESS && startedAt != null
+                ? Duration.between(startedAt, Instant.now()).toMillis() : 0);
+        return millis > 0 ? conceptsWritten * 1000d / millis : 0;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    ConceptImport getConceptImport() {
+        return conceptImport;
+    }
+
+    Future<?> getFuture() {
+        return future;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void started() {
+        this.error = null;
+        this.completedAt = null;
+        this.startedAt = Instant.now();
+        this.status = Status.IN_PROGRESS;
+    }
+
+    /**
+     * The batches that are not committed yet, in order.
+     */
+    synchronized List<Integer> getPendingBatches() {
+        return IntStream.range(0, totalBatches).filter(b -> !committed.get(b)).boxed().collect(Collectors.toList());
+    }
+
+    synchronized void batchCommitted(int batch, int concepts) {
+        this.committed.set(batch);
+        this.conceptsWritten += concepts;
+        this.batchesDone = committed.cardinality();
+    }
+
+    /**
+     * Marks the start of a run, false if the job has been deleted in the meantime.
+     */
+    synchronized boolean enter() {
+        if (deleted) return false;
+        running = true;
+        return true;
+    }
+
+    /**
+     * Marks the end of a run, its batches have all finished.
+     */
+    synchronized void exit() {
+        running = false;
+        if (deleted || status == Status.COMPLETED) releaseImportLock();
+    }
+
+    /**
+     * Releases the import lock once no batch is running, a running job releases it when it exits.
+     */
+    synchronized void deleted() {
+        deleted = true;
+        if (!running) releaseImportLock();
+    }
+
+    private void releaseImportLock() {
+        if (importLock != null) {
+            importLock.close();
+            importLock = null;
+        }
+    }
+
+    void completed() {
+        stopped();
+        // the concepts are no longer needed once all batches are committed
+        this.conceptImport = null;
+        this.status = Status.COMPLETED;
+    }
+
+    void failed(Exception error) {
+        stopped();
+        this.error = error;
+        this.status = Status.FAILED;
+    }
+
+    private void stopped() {
+        this.runMillis += Duration.between(startedAt, Instant.now()).toMillis();
+        this.completedAt = Instant.now();
+    }
+}
@@ -0,0 +1,223 @@
+package org.openconceptlab.fhir.job;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.openconceptlab.fhir.converter.CodeSystemConverter.ConceptImport;
+import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ImportJobService. Runs large CodeSystem imports in the background so that the request only validates the
+ * CodeSystem, commits its source and returns. The concepts are then written on a small dedicated pool, each batch in
+ * its own transaction, so a failure only rolls back the batch it happened in and the job can be resumed from there.
+ * <p>
+ * Batches do not depend on each other and are written concurrently by the batch pool, each on its own connection of
+ * the write pool. The batch pool is shared by all jobs and bounds the connections used by imports, a job has at most
+ * {@code ocl.import.max-in-flight} batches queued or running at a time.
+ * Until a job has completed or is deleted its source can not be updated, from any instance, as the job holds the import
+ * lock of the source. A failed job keeps the lock so that it can be resumed.
+ * Jobs are kept in memory, an import that was interrupted by a restart has to be submitted again.
+ * @author harpatel1
+ */
+@Component
+public class ImportJobService {
+
+    private static final Log log = LogFactory.getLog(ImportJobService.class);
+
+    private final CodeSystemResourceProvider codeSystemResourceProvider;
+    private final int batchSize;
+    private final Duration retention;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final ExecutorService batchExecutor;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ImportJobService(CodeSystemResourceProvider codeSystemResourceProvider,
+                            @Value("${ocl.import.threads:2}") int threads,
+                            @Value("${ocl.import.batch-size:1000}") int batchSize,
+                            @Value("${ocl.import.retention-hours:24}") long retentionHours,
+                            @Value("${ocl.import.connections:3}") int connections,
+                            @Value("${ocl.import.max-in-flight:4}") int maxInFlight) {
+        this.codeSystemResourceProvider = codeSystemResourceProvider;
+        this.batchSize = batchSize;
+        this.retention = Duration.ofHours(retentionHours);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "import-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger batchCounter = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, connections), r -> {
+            Thread thread = new Thread(r, "import-batch-" + batchCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Validates the CodeSystem and commits its source in the calling thread, errors are therefore raised to the
+     * caller, and queues the import of its concepts.
+     */
+    public ImportJob submitCodeSystemImport(CodeSystem codeSystem, String authToken, String request) {
+        purgeExpired();
+        ConceptImport conceptImport = codeSystemResourceProvider.prepareCodeSystemImport(codeSystem, authToken, batchSize);
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), CodeSystem.class.getSimpleName(), request, conceptImport);
+        jobs.put(job.getId(), job);
+        job.setFuture(executor.submit(() -> run(job)));
+        log.info("Accepted " + job.getType() + " import " + job.getId() + " of source " + job.getSourceMnemonic()
+                + " with " + job.getTotalConcepts() + " concepts in " + job.getTotalBatches() + " batches.");
+        return job;
+    }
+
+    public Optional<ImportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Continues a failed job from its first uncommitted batch.
+     * @return the job, empty if there is no failed job of this id
+     */
+    public Optional<ImportJob> resume(String id) {
+        ImportJob job = jobs.get(id);
+        if (job == null) return Optional.empty();
+        synchronized (job) {
+            if (job.getStatus() != ImportJob.Status.FAILED) return Optional.empty();
+            job.started();
+            job.setFuture(executor.submit(() -> run(job)));
+        }
+        log.info("Resuming " + job.getType() + " import " + job.getId() + " with " + job.getBatchesDone() + " of "
+                + job.getTotalBatches() + " batches committed.");
+        return Optional.of(job);
+    }
+
+    /**
+     * Cancels a running job after its current batches, or forgets a finished one. Committed batches are kept, the
+     * source can be updated again once no batch of the job is running.
+     */
+    public boolean delete(String id) {
+        ImportJob job = jobs.remove(id);
+        if (job == null) return false;
+        job.deleted();
+        if (job.getFuture() != null) job.getFuture().cancel(true);
+        return true;
+    }
+
+    private void run(ImportJob job) {
+        if (!job.enter()) return;
+        try {
+            runBatches(job);
+        } finally {
+            job.exit();
+        }
+    }
+
+    private void runBatches(ImportJob job) {
+        job.started();
+        ConceptImport conceptImport = job.getConceptImport();
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(batchExecutor);
+        Iterator<Integer> pending = job.getPendingBatches().iterator();
+        int inFlight = 0;
+        RuntimeException error = null;
+        try {
+            while (inFlight < maxInFlight && pending.hasNext()) {
+                submitBatch(completion, job, conceptImport, pending.next());
+                inFlight++;
+            }
+            while (inFlight > 0) {
+                Future<Integer> done = completion.take();
+                inFlight--;
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    // the batches in flight are left to finish so that their commits are recorded
+                    if (error == null)
+                        error = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                                : new IllegalStateException(e.getCause());
+                }
+                if (error == null && pending.hasNext()) {
+                    submitBatch(completion, job, conceptImport, pending.next());
+                    inFlight++;
+                }
+            }
+        } catch (InterruptedException e) {
+            error = new IllegalStateException("Import " + job.getId() + " was cancelled.");
+            // a batch in flight may still commit, the import lock is held until it has finished
+            awaitBatches(completion, inFlight);
+            Thread.currentThread().interrupt();
+        }
+        if (error == null) {
+            try {
+                codeSystemResourceProvider.completeCodeSystemImport(conceptImport);
+            } catch (RuntimeException e) {
+                // a resume completes the job without writing any batch
+                error = e;
+            }
+        }
+        if (error != null) {
+            log.error("Import " + job.getId() + " failed with " + job.getBatchesDone() + " of " + job.getTotalBatches()
+                    + " batches committed - " + error.getMessage());
+            job.failed(error);
+        } else {
+            job.completed();
+            log.info("Finished " + job.getType() + " import " + job.getId() + " with " + job.getConceptsWritten()
+                    + " concepts.");
+        }
+    }
+
+    private static void awaitBatches(CompletionService<Integer> completion, int inFlight) {
+        while (inFlight > 0) {
+            try {
+                completion.take();
+                inFlight--;
+            } catch (InterruptedException e) {
+                // interrupted again by the cancel, keep waiting
+            }
+        }
+    }
+
+    private void submitBatch(CompletionService<Integer> completion, ImportJob job, ConceptImport conceptImport, int batch) {
+        completion.submit(() -> {
+            if (!jobs.containsKey(job.getId()))
+                throw new IllegalStateException("Import " + job.getId() + " was cancelled.");
+            int written = codeSystemResourceProvider.importConceptBatch(conceptImport, batch);
+            job.batchCommitted(batch, written);
+            log.info("Imported batch " + (batch + 1) + " of " + job.getTotalBatches() + " of source "
+                    + job.getSourceMnemonic() + ", " + job.getBatchesDone() + " batches committed.");
+            return written;
+        });
+    }
+
+    private void purgeExpired() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().stream()
+                .filter(j -> j.isDone() && j.getCompletedAt().isBefore(expiry))
+                .map(ImportJob::getId)
+                .forEach(this::delete);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        batchExecutor.shutdownNow();
+    }
+}
@@ -1,5 +1,7 @@
 package org.openconceptlab.fhir.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.*;
@@ -15,6 +17,8 @@ import java.util.List;
  */
 @Entity
 @Table(name="collections")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "collections")
 public class Collection extends BaseOclEntity implements Serializable {
 	private static final long serialVersionUID = 1L;
 
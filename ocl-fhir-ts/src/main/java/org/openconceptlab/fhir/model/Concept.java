@@ -90,7 +90,7 @@ public class Concept extends BaseOclEntity implements Serializable {
 	@Column
 	private String website;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="versioned_object_id")
 	private Concept versionedObject;
 
@@ -17,7 +17,7 @@ public class ConceptsDescription extends BaseOclEntity implements Serializable {
 	@GeneratedValue(strategy=GenerationType.IDENTITY)
 	private Integer id;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Concept concept;
 
 	@ManyToOne
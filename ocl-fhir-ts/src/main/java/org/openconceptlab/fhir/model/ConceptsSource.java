@@ -17,10 +17,10 @@ public class ConceptsSource extends BaseOclEntity implements Serializable {
 	@GeneratedValue(strategy=GenerationType.IDENTITY)
 	private Integer id;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Concept concept;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Source source;
 
 	public ConceptsSource() {
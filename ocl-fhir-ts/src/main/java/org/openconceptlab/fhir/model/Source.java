@@ -2,6 +2,8 @@ package org.openconceptlab.fhir.model;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.*;
@@ -18,6 +20,8 @@ import java.util.List;
  */
 @Entity
 @Table(name="sources")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "sources")
 public class Source extends BaseOclEntity implements Serializable {
 	private static final long serialVersionUID = 1L;
 
@@ -132,7 +136,7 @@ public class Source extends BaseOclEntity implements Serializable {
 	@OneToMany(mappedBy="source", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
 	private List<MappingsSource> mappingsSources;
 
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
 	private Organization organization;
 
 	@ManyToOne(fetch = FetchType.LAZY)
@@ -1,5 +1,7 @@
 package org.openconceptlab.fhir.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.*;
@@ -14,6 +16,8 @@ import java.util.List;
  */
 @Entity
 @Table(name="user_profiles")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
 public class UserProfile extends BaseOclEntity implements Serializable {
 	private static final long serialVersionUID = 1L;
 
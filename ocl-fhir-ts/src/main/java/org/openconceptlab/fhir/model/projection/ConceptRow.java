@@ -0,0 +1,50 @@
+package org.openconceptlab.fhir.model.projection;
+
+/**
+ * The flat, read-only view of a concept version as needed by the read paths. Instances are created by
+ * JPQL constructor expressions and are never attached to the persistence context.
+ * @author harpatel1
+ */
+public final class ConceptRow {
+
+	private final Long id;
+	private final String code;
+	private final String version;
+	private final boolean retired;
+	private final String conceptClass;
+	private final String datatype;
+
+	public ConceptRow(Long id, String code, String version, Boolean retired, String conceptClass, String datatype) {
+		this.id = id;
+		this.code = code;
+		this.version = version;
+		this.retired = Boolean.TRUE.equals(retired);
+		this.conceptClass = conceptClass;
+		this.datatype = datatype;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public String getCode() {
+		return this.code;
+	}
+
+	public String getVersion() {
+		return this.version;
+	}
+
+	public boolean getRetired() {
+		return this.retired;
+	}
+
+	public String getConceptClass() {
+		return this.conceptClass;
+	}
+
+	public String getDatatype() {
+		return this.datatype;
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.openconceptlab.fhir.model.projection;
+
+/**
+ * The flat, read-only view of a mapping. Besides the denormalized urls and codes stored on the mapping it carries the
+ * canonical url and mnemonic of the referenced sources and concepts, which are used when the former are blank.
+ * @author harpatel1
+ */
+public final class MappingRow {
+
+	private final String fromSourceUrl;
+	private final String fromSourceCanonicalUrl;
+	private final String toSourceUrl;
+	private final String toSourceCanonicalUrl;
+	private final String fromConceptCode;
+	private final String fromConceptMnemonic;
+	private final String toConceptCode;
+	private final String toConceptMnemonic;
+	private final String fromConceptName;
+	private final String toConceptName;
+	private final String mapType;
+	private final String fromSourceVersion;
+	private final String toSourceVersion;
+
+	public MappingRow(String fromSourceUrl, String fromSourceCanonicalUrl, String toSourceUrl, String toSourceCanonicalUrl,
+					  String fromConceptCode, String fromConceptMnemonic, String toConceptCode, String toConceptMnemonic,
+					  String fromConceptName, String toConceptName, String mapType, String fromSourceVersion,
+					  String toSourceVersion) {
+		this.fromSourceUrl = fromSourceUrl;
+		this.fromSourceCanonicalUrl = fromSourceCanonicalUrl;
+		this.toSourceUrl = toSourceUrl;
+		this.toSourceCanonicalUrl = toSourceCanonicalUrl;
+		this.fromConceptCode = fromConceptCode;
+		this.fromConceptMnemonic = fromConceptMnemonic;
+		this.toConceptCode = toConceptCode;
+		this.toConceptMnemonic = toConceptMnemonic;
+		this.fromConceptName = fromConceptName;
+		this.toConceptName = toConceptName;
+		this.mapType = mapType;
+		this.fromSourceVersion = fromSourceVersion;
+		this.toSourceVersion = toSourceVersion;
+	}
+
+	public String getFromSourceUrl() {
+		return this.fromSourceUrl;
+	}
+
+	public String getFromSourceCanonicalUrl() {
+		return this.fromSourceCanonicalUrl;
+	}
+
+	public String getToSourceUrl() {
+		return this.toSourceUrl;
+	}
+
+	public String getToSourceCanonicalUrl() {
+		return this.toSourceCanonicalUrl;
+	}
+
+	public String getFromConceptCode() {
+		return this.fromConceptCode;
+	}
+
+	public String getFromConceptMnemonic() {
+		return this.fromConceptMnemonic;
+	}
+
+	public String getToConceptCode() {
+		return this.toConceptCode;
+	}
+
+	public String getToConceptMnemonic() {
+		return this.toConceptMnemonic;
+	}
+
+	public String getFromConceptName() {
+		return this.fromConceptName;
+	}
+
+	public String getToConceptName() {
+		return this.toConceptName;
+	}
+
+	public String getMapType() {
+		return this.mapType;
+	}
+
+	public String getFromSourceVersion() {
+		return this.fromSourceVersion;
+	}
+
+	public String getToSourceVersion() {
+		return this.toSourceVersion;
+	}
+
+}
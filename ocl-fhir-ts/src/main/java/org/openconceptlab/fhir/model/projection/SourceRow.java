@@ -0,0 +1,75 @@
+package org.openconceptlab.fhir.model.projection;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.ORGS;
+import static org.openconceptlab.fhir.util.OclFhirConstants.USERS;
+
+/**
+ * The flat, read-only view of a source version, with the columns needed to resolve a ValueSet compose include and to
+ * build its reference expressions. Unlike the {@link org.openconceptlab.fhir.model.Source} entity it has no concept or
+ * mapping collections that could be initialized by accident.
+ * @author harpatel1
+ */
+public final class SourceRow {
+
+	private final Long id;
+	private final String mnemonic;
+	private final String version;
+	private final String canonicalUrl;
+	private final String organization;
+	private final String username;
+	private final String defaultLocale;
+
+	public SourceRow(Long id, String mnemonic, String version, String canonicalUrl, String organization, String username,
+					 String defaultLocale) {
+		this.id = id;
+		this.mnemonic = mnemonic;
+		this.version = version;
+		this.canonicalUrl = canonicalUrl;
+		this.organization = organization;
+		this.username = username;
+		this.defaultLocale = defaultLocale;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public String getMnemonic() {
+		return this.mnemonic;
+	}
+
+	public String getVersion() {
+		return this.version;
+	}
+
+	public String getCanonicalUrl() {
+		return this.canonicalUrl;
+	}
+
+	/**
+	 * Returns {@code orgs} or {@code users}, as used in reference expressions.
+	 */
+	public String getOwnerType() {
+		return this.organization != null ? ORGS : USERS;
+	}
+
+	/**
+	 * Returns the organization mnemonic or the username of the owner.
+	 */
+	public String getOwner() {
+		return this.organization != null ? this.organization : this.username;
+	}
+
+	public String getDefaultLocale() {
+		return this.defaultLocale;
+	}
+
+	/**
+	 * Returns a copy of this row with the given version.
+	 */
+	public SourceRow withVersion(String version) {
+		return new SourceRow(this.id, this.mnemonic, version, this.canonicalUrl, this.organization, this.username,
+				this.defaultLocale);
+	}
+
+}
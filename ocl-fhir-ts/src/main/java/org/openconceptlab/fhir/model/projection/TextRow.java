@@ -0,0 +1,58 @@
+package org.openconceptlab.fhir.model.projection;
+
+import org.openconceptlab.fhir.model.LocalizedText;
+
+/**
+ * The flat, read-only view of a concept name or description, keyed by the owning concept id.
+ * @author harpatel1
+ */
+public final class TextRow {
+
+	private final Long conceptId;
+	private final String name;
+	private final String locale;
+	private final Boolean localePreferred;
+	private final String type;
+
+	public TextRow(Long conceptId, String name, String locale, Boolean localePreferred, String type) {
+		this.conceptId = conceptId;
+		this.name = name;
+		this.locale = locale;
+		this.localePreferred = localePreferred != null ? localePreferred : Boolean.FALSE;
+		this.type = type;
+	}
+
+	public Long getConceptId() {
+		return this.conceptId;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getLocale() {
+		return this.locale;
+	}
+
+	public Boolean getLocalePreferred() {
+		return this.localePreferred;
+	}
+
+	public String getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns a transient {@link LocalizedText} carrying the same values, so the row can be passed to the existing
+	 * display and designation helpers.
+	 */
+	public LocalizedText toLocalizedText() {
+		LocalizedText text = new LocalizedText();
+		text.setName(this.name);
+		text.setLocale(this.locale);
+		text.setLocalePreferred(this.localePreferred);
+		text.setType(this.type);
+		return text;
+	}
+
+}
@@ -1,9 +1,15 @@
 package org.openconceptlab.fhir.provider;
 
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.StringType;
 import org.openconceptlab.fhir.converter.CodeSystemConverter;
 import org.openconceptlab.fhir.converter.ConceptMapConverter;
@@ -13,11 +19,22 @@ import org.openconceptlab.fhir.model.Source;
 import org.openconceptlab.fhir.repository.CollectionRepository;
 import org.openconceptlab.fhir.repository.SourceRepository;
 import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.openconceptlab.fhir.util.RequestCoalescer;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.HEAD;
@@ -32,6 +49,7 @@ public class BaseProvider {
     ValueSetConverter valueSetConverter;
     ConceptMapConverter conceptMapConverter;
     OclFhirUtil oclFhirUtil;
+    RequestCoalescer requestCoalescer;
 
     @Autowired
     public BaseProvider(SourceRepository sourceRepository, CodeSystemConverter codeSystemConverter,
@@ -45,6 +63,22 @@ public class BaseProvider {
         this.oclFhirUtil = oclFhirUtil;
     }
 
+    @Autowired(required = false)
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Computes the resource once for all identical requests that are in flight at the same time, the requests are
+     * identical when the operation and the given parameters are equal.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T extends Resource> T coalesce(String operation, Supplier<T> computation, Object... parameters) {
+        if (requestCoalescer == null) return computation.get();
+        return requestCoalescer.coalesce(RequestCoalescer.key(operation, parameters), computation,
+                resource -> (T) resource.copy());
+    }
+
     protected List<Source> getSources(List<String> access) {
         return sourceRepository.findAllMostRecentReleased(access).stream().sorted(Comparator.comparing(Source::getMnemonic))
                 .collect(Collectors.toList());
@@ -130,4 +164,67 @@ public class BaseProvider {
     protected List<Collection> filterCollectionHead(List<Collection> collections) {
         return collections.stream().filter(s -> !HEAD.equals(s.getVersion())).collect(Collectors.toList());
     }
+
+    /**
+     * Conditional read for the given sources, see {@link #checkNotModified(List, Function, Function, RequestDetails)}.
+     */
+    protected void checkSourcesNotModified(List<Source> sources, RequestDetails details) {
+        checkNotModified(sources, s -> s.getId() + "|" + s.getVersion(), Source::getUpdatedAt, details);
+    }
+
+    /**
+     * Conditional read for the given collections, see {@link #checkNotModified(List, Function, Function, RequestDetails)}.
+     */
+    protected void checkCollectionsNotModified(List<Collection> collections, RequestDetails details) {
+        checkNotModified(collections, c -> c.getId() + "|" + c.getVersion(), Collection::getUpdatedAt, details);
+    }
+
+    /**
+     * Computes a weak ETag from the request url and the id, version and updated_at of every resolved resource, and the
+     * Last-Modified as the latest updated_at. Throws {@link NotModifiedException} when the If-None-Match or, without it,
+     * the If-Modified-Since request header still matches, so that the caller returns 304 before loading any concepts.
+     * Otherwise both validators are added to the response.
+     */
+    private <T> void checkNotModified(List<T> resources, Function<T, String> key, Function<T, Timestamp> updatedAt,
+                                      RequestDetails details) {
+        if (details == null) return;
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putString(String.valueOf(details.getCompleteUrl()), StandardCharsets.UTF_8);
+        resources.forEach(r -> hasher.putString(key.apply(r), StandardCharsets.UTF_8)
+                .putLong(updatedAt.apply(r) == null ? 0L : updatedAt.apply(r).getTime()));
+        String etag = "W/\"" + hasher.hash() + "\"";
+        Instant lastModified = resources.stream().map(updatedAt).filter(Objects::nonNull).map(Timestamp::toInstant)
+                .max(Instant::compareTo).orElse(null);
+
+        String ifNoneMatch = details.getHeader(Constants.HEADER_IF_NONE_MATCH);
+        String ifModifiedSince = details.getHeader(Constants.HEADER_IF_MODIFIED_SINCE);
+        boolean notModified;
+        if (isValid(ifNoneMatch)) {
+            notModified = ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*");
+        } else {
+            notModified = isValid(ifModifiedSince) && lastModified != null
+                    && !lastModified.isAfter(parseHttpDate(ifModifiedSince).plusMillis(999));
+        }
+        String lastModifiedValue = lastModified == null ? null
+                : DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(lastModified, ZoneOffset.UTC));
+        if (notModified) {
+            NotModifiedException e = new NotModifiedException("Not Modified");
+            e.addResponseHeader(Constants.HEADER_ETAG, etag);
+            if (lastModifiedValue != null) e.addResponseHeader(Constants.HEADER_LAST_MODIFIED, lastModifiedValue);
+            throw e;
+        }
+        if (details.getResponse() != null) {
+            details.getResponse().addHeader(Constants.HEADER_ETAG, etag);
+            if (lastModifiedValue != null) details.getResponse().addHeader(Constants.HEADER_LAST_MODIFIED, lastModifiedValue);
+        }
+    }
+
+    private static Instant parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            // an invalid date is ignored
+            return Instant.MIN;
+        }
+    }
 }
@@ -5,11 +5,13 @@ import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
 import org.openconceptlab.fhir.converter.CodeSystemConverter;
+import org.openconceptlab.fhir.converter.CodeSystemConverter.ConceptImport;
 import org.openconceptlab.fhir.converter.ConceptMapConverter;
 import org.openconceptlab.fhir.converter.ValueSetConverter;
 import org.openconceptlab.fhir.model.Source;
@@ -17,9 +19,11 @@ import org.openconceptlab.fhir.repository.CollectionRepository;
 import org.openconceptlab.fhir.repository.SourceRepository;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.io.Writer;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
 import static org.openconceptlab.fhir.util.OclFhirUtil.*;
@@ -47,6 +51,32 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
     @Create
     @Transactional
     public MethodOutcome createCodeSystem(@ResourceParam CodeSystem codeSystem, RequestDetails requestDetails) {
+        String accessionId = validateCreate(codeSystem);
+        codeSystemConverter.createCodeSystem(codeSystem, accessionId, requestDetails.getHeader(AUTHORIZATION));
+        return new MethodOutcome();
+    }
+
+    /**
+     * First step of an asynchronous CodeSystem import, validates the CodeSystem and commits its source. The concepts
+     * are written by {@link #importConceptBatch(ConceptImport, int)}, each batch in its own transaction.
+     */
+    @Transactional
+    public ConceptImport prepareCodeSystemImport(CodeSystem codeSystem, String authToken, int batchSize) {
+        String accessionId = validateCreate(codeSystem);
+        return codeSystemConverter.prepareCodeSystemImport(codeSystem, accessionId, authToken, batchSize);
+    }
+
+    @Transactional
+    public int importConceptBatch(ConceptImport conceptImport, int batch) {
+        return codeSystemConverter.importConceptBatch(conceptImport, batch);
+    }
+
+    @Transactional
+    public void completeCodeSystemImport(ConceptImport conceptImport) {
+        codeSystemConverter.completeImport(conceptImport);
+    }
+
+    private String validateCreate(CodeSystem codeSystem) {
         if (codeSystem == null) {
             throw new InvalidRequestException("The CodeSystem can not be empty");
         }
@@ -57,8 +87,7 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
         if (!isValid(codeSystem.getUrl())) {
             throw new InvalidRequestException("The CodeSystem.url can not be empty. Please provide canonical url.");
         }
-        codeSystemConverter.createCodeSystem(codeSystem, accessionId, requestDetails.getHeader(AUTHORIZATION));
-        return new MethodOutcome();
+        return accessionId;
     }
 
     @Update
@@ -83,6 +112,7 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
         }
         String accessionId = buildAccessionId(idType, owner);
         codeSystemConverter.updateCodeSystem(codeSystem, sources.get(0), accessionId, requestDetails.getHeader(AUTHORIZATION));
+        oclFhirUtil.invalidateSnapshot(sources.get(0));
         return new MethodOutcome();
     }
 
@@ -102,11 +132,12 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search()
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchCodeSystems(@OptionalParam(name = PAGE) StringType page,
                                     @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                     RequestDetails details) {
         List<Source> sources = filterSourceHead(getSources(publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         List<CodeSystem> codeSystems = codeSystemConverter.convertToCodeSystem(sources, false,
                 getPage(page), hasNext);
@@ -122,20 +153,27 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchCodeSystemByUrl(@RequiredParam(name = CodeSystem.SP_URL) StringType url,
                                         @OptionalParam(name = VERSION) StringType version,
                                         @OptionalParam(name = PAGE) StringType page,
                                         @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                         RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByUrl(url, version, publicAccess));
+        checkSourcesNotModified(sources, details);
         boolean includeConcepts = !isValid(version) || !isVersionAll(version);
-        StringBuilder hasNext = new StringBuilder();
-        List<CodeSystem> codeSystems = codeSystemConverter.convertToCodeSystem(sources, includeConcepts,
-                getPage(page), hasNext);
-        log.info("Found " + codeSystems.size() + " CodeSystems.");
-        return OclFhirUtil.getBundle(codeSystems, isValid(ownerUrl) ? ownerUrl.getValue() : details.getCompleteUrl(),
-                getPrevPage(page), getNextPage(page, hasNext));
+        String bundleUrl = isValid(ownerUrl) ? ownerUrl.getValue() : details.getCompleteUrl();
+        // identical pages of the same source versions are converted once
+        List<String> sourceVersions = sources.stream()
+                .map(s -> s.getId() + "-" + (s.getUpdatedAt() != null ? s.getUpdatedAt().getTime() : 0))
+                .collect(Collectors.toList());
+        return coalesce("CodeSystem?url", () -> {
+            StringBuilder hasNext = new StringBuilder();
+            List<CodeSystem> codeSystems = codeSystemConverter.convertToCodeSystem(sources, includeConcepts,
+                    getPage(page), hasNext);
+            log.info("Found " + codeSystems.size() + " CodeSystems.");
+            return OclFhirUtil.getBundle(codeSystems, bundleUrl, getPrevPage(page), getNextPage(page, hasNext));
+        }, sourceVersions, includeConcepts, page, bundleUrl);
     }
 
     /**
@@ -144,12 +182,13 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchCodeSystemByOwner(@RequiredParam(name = OWNER) StringType owner,
                                           @OptionalParam(name = PAGE) StringType page,
                                           @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                           RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByOwner(owner, publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         List<CodeSystem> codeSystems = codeSystemConverter.convertToCodeSystem(sources, false, getPage(page),
                 hasNext);
@@ -167,7 +206,7 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchCodeSystemByOwnerAndId(@RequiredParam(name = OWNER) StringType owner,
                                                @RequiredParam(name = ID) StringType id,
                                                @OptionalParam(name = VERSION) StringType version,
@@ -175,6 +214,7 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
                                                @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                                RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByOwnerAndIdAndVersion(id, owner, version, publicAccess));
+        checkSourcesNotModified(sources, details);
         boolean includeConcepts = !isVersionAll(version);
         StringBuilder hasNext = new StringBuilder();
         List<CodeSystem> codeSystems = codeSystemConverter.convertToCodeSystem(sources, includeConcepts, getPage(page)
@@ -184,6 +224,25 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
                 getPrevPage(page), getNextPage(page, hasNext));
     }
 
+    /**
+     * Writes all concepts of a single {@link CodeSystem} version as NDJSON. Returns given version if provided, otherwise
+     * most recent released version is exported.
+     * @param owner
+     * @param id
+     * @param version
+     * @param writer - the response writer, concepts are written as they are read
+     * @return the number of exported concepts
+     */
+    @Transactional(readOnly = true)
+    public long exportCodeSystem(StringType owner, StringType id, StringType version, Writer writer) {
+        if (isVersionAll(version))
+            throw new InvalidRequestException("A single version of the CodeSystem can be exported.");
+        List<Source> sources = filterSourceHead(getSourceByOwnerAndIdAndVersion(id, owner, version, publicAccess));
+        if (sources.isEmpty())
+            throw new ResourceNotFoundException(notFound(CodeSystem.class, owner, id, version));
+        return codeSystemConverter.exportConcepts(sources.get(0), writer);
+    }
+
     /**
      * CodeSystem $lookup operation.
      * GET request example:
@@ -219,7 +278,7 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
      * @return Parameters
      */
     @Operation(name = LOOKUP, idempotent = true)
-    @Transactional
+    @Transactional(readOnly = true)
     public Parameters codeSystemLookUp(@OperationParam(name = CODE, type = CodeType.class, min = 1) CodeType code,
                                        @OperationParam(name = SYSTEM, type = UriType.class, min = 1) UriType system,
                                        @OperationParam(name = VERSION, type = StringType.class) StringType version,
@@ -227,13 +286,15 @@ public class CodeSystemResourceProvider extends BaseProvider implements IResourc
                                        @OperationParam(name = OWNER, type = StringType.class) StringType owner) {
 
         validateOperation(code, system, LOOKUP);
-        Source source = isValid(owner) ? oclFhirUtil.getSourceByOwnerAndUrl(owner, newStringType(system), version, publicAccess) :
-                getSourceByUrl(newStringType(system), version, publicAccess).get(0);
-        return codeSystemConverter.getLookupParameters(source, code, displayLanguage);
+        return coalesce(LOOKUP, () -> {
+            Source source = isValid(owner) ? oclFhirUtil.getSourceByOwnerAndUrl(owner, newStringType(system), version, publicAccess) :
+                    getSourceByUrl(newStringType(system), version, publicAccess).get(0);
+            return codeSystemConverter.getLookupParameters(source, code, displayLanguage);
+        }, code, system, version, displayLanguage, owner);
     }
 
     @Operation(name = VALIDATE_CODE, idempotent = true)
-    @Transactional
+    @Transactional(readOnly = true)
     public Parameters codeSystemValidateCode(@OperationParam(name = URL, type = UriType.class, min = 1) UriType url,
                                              @OperationParam(name = CODE, type = CodeType.class, min = 1) CodeType code,
                                              @OperationParam(name = VERSION, type = StringType.class) StringType version,
@@ -4,6 +4,7 @@ import ca.uhn.fhir.rest.annotation.*;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -16,8 +17,9 @@ import org.openconceptlab.fhir.repository.CollectionRepository;
 import org.openconceptlab.fhir.repository.SourceRepository;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.io.Writer;
 import java.util.List;
 
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
@@ -49,11 +51,12 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search()
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchConceptMaps(@OptionalParam(name = PAGE) StringType page,
                                     @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                     RequestDetails details) {
         List<Source> sources = filterSourceHead(getSources(publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         List<ConceptMap> conceptMaps = conceptMapConverter.convertToConceptMap(sources, false,
                 getPage(page), hasNext);
@@ -69,13 +72,14 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchConceptMapByUrl(@RequiredParam(name = ConceptMap.SP_URL) StringType url,
                                         @OptionalParam(name = VERSION) StringType version,
                                         @OptionalParam(name = PAGE) StringType page,
                                         @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                         RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByUrl(url, version, publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         boolean includeMappings = !isValid(version) || !isVersionAll(version);
         List<ConceptMap> conceptMaps = conceptMapConverter.convertToConceptMap(sources, includeMappings,
@@ -91,12 +95,13 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchConceptMapByOwner(@RequiredParam(name = OWNER) StringType owner,
                                           @OptionalParam(name = PAGE) StringType page,
                                           @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                           RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByOwner(owner, publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         List<ConceptMap> conceptMaps = conceptMapConverter.convertToConceptMap(sources, false,
                 getPage(page), hasNext);
@@ -114,7 +119,7 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchConceptMapByOwnerAndId(@RequiredParam(name = OWNER) StringType owner,
                                                @RequiredParam(name = ID) StringType id,
                                                @OptionalParam(name = VERSION) StringType version,
@@ -122,6 +127,7 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
                                                @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                                RequestDetails details) {
         List<Source> sources = filterSourceHead(getSourceByOwnerAndIdAndVersion(id, owner, version, publicAccess));
+        checkSourcesNotModified(sources, details);
         StringBuilder hasNext = new StringBuilder();
         boolean includeMappings = !isVersionAll(version);
         List<ConceptMap> conceptMaps = conceptMapConverter.convertToConceptMap(sources, includeMappings,
@@ -131,8 +137,27 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
                 getPrevPage(page), getNextPage(page, hasNext));
     }
 
+    /**
+     * Writes all mappings of a single {@link ConceptMap} version as NDJSON. Returns given version if provided,
+     * otherwise most recent released version is exported.
+     * @param owner
+     * @param id
+     * @param version
+     * @param writer - the export file writer
+     * @return the number of exported mappings
+     */
+    @Transactional(readOnly = true)
+    public long exportConceptMap(StringType owner, StringType id, StringType version, Writer writer) {
+        if (isVersionAll(version))
+            throw new InvalidRequestException("A single version of the ConceptMap can be exported.");
+        List<Source> sources = filterSourceHead(getSourceByOwnerAndIdAndVersion(id, owner, version, publicAccess));
+        if (sources.isEmpty())
+            throw new ResourceNotFoundException(notFound(ConceptMap.class, owner, id, version));
+        return conceptMapConverter.exportMappings(sources.get(0), writer);
+    }
+
     @Operation(name = TRANSLATE, idempotent = true)
-    @Transactional
+    @Transactional(readOnly = true)
     public Parameters conceptMapTranslate(@OperationParam(name = URL, min = 1, type = UriType.class) UriType conceptMapUrl,
                                           @OperationParam(name = CONCEPT_MAP_VERSION, type = StringType.class) StringType conceptMapVersion,
                                           @OperationParam(name = SYSTEM, min = 1, type = UriType.class) UriType sourceSystem,
@@ -151,9 +176,14 @@ public class ConceptMapResourceProvider extends BaseProvider implements IResourc
             String msg = "Could not perform ConceptMap $translate operation, the url, code and system parameters are required.";
             throw new InvalidRequestException(msg);
         }
-        Source conceptMap = isValid(owner) ? oclFhirUtil.getSourceByOwnerAndUrl(owner, newStringType(conceptMapUrl), conceptMapVersion, publicAccess) :
-                getSourceByUrl(newStringType(conceptMapUrl), conceptMapVersion, publicAccess).get(0);
-        return conceptMapConverter.translate(conceptMap, sourceSystem, sourceVersion, sourceCode, targetSystem, publicAccess);
+        UriType system = sourceSystem;
+        StringType version = sourceVersion;
+        CodeType code = sourceCode;
+        return coalesce(TRANSLATE, () -> {
+            Source conceptMap = isValid(owner) ? oclFhirUtil.getSourceByOwnerAndUrl(owner, newStringType(conceptMapUrl), conceptMapVersion, publicAccess) :
+                    getSourceByUrl(newStringType(conceptMapUrl), conceptMapVersion, publicAccess).get(0);
+            return conceptMapConverter.translate(conceptMap, system, version, code, targetSystem, publicAccess);
+        }, conceptMapUrl, conceptMapVersion, system, version, code, targetSystem, owner);
     }
 
 }
@@ -20,8 +20,9 @@ import org.openconceptlab.fhir.repository.CollectionRepository;
 import org.openconceptlab.fhir.repository.SourceRepository;
 import org.openconceptlab.fhir.util.OclFhirUtil;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
-import javax.transaction.Transactional;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -74,11 +75,12 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchValueSets(@OptionalParam(name = PAGE) StringType page,
                                   @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                   RequestDetails details) {
         List<Collection> collections = filterCollectionHead(getCollections(publicAccess));
+        checkCollectionsNotModified(collections, details);
         StringBuilder hasNext = new StringBuilder();
         List<ValueSet> valueSets = valueSetConverter.convertToValueSet(collections, false, getPage(page), hasNext);
         log.info("Found " + valueSets.size() + " ValueSets.");
@@ -93,13 +95,14 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchValueSetByUrl(@RequiredParam(name = ValueSet.SP_URL) StringType url,
                                       @OptionalParam(name = VERSION) StringType version,
                                       @OptionalParam(name = PAGE) StringType page,
                                       @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                       RequestDetails details) {
         List<Collection> collections = filterCollectionHead(getCollectionByUrl(url, version, publicAccess));
+        checkCollectionsNotModified(collections, details);
         StringBuilder hasNext = new StringBuilder();
         List<ValueSet> valueSets = valueSetConverter.convertToValueSet(collections, !isVersionAll(version), getPage(page), hasNext);
         log.info("Found " + valueSets.size() + " ValueSets.");
@@ -113,12 +116,13 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchValueSetByOwner(@RequiredParam(name = OWNER) StringType owner,
                                         @OptionalParam(name = PAGE) StringType page,
                                         @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                         RequestDetails details) {
         List<Collection> collections = filterCollectionHead(getCollectionByOwner(owner, publicAccess));
+        checkCollectionsNotModified(collections, details);
         StringBuilder hasNext = new StringBuilder();
         List<ValueSet> valueSets = valueSetConverter.convertToValueSet(collections, false, getPage(page), hasNext);
         log.info("Found " + valueSets.size() + " ValueSets.");
@@ -135,7 +139,7 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
      * @return {@link Bundle}
      */
     @Search
-    @Transactional
+    @Transactional(readOnly = true)
     public Bundle searchValueSetByOwnerAndId(@RequiredParam(name = OWNER) StringType owner,
                                              @RequiredParam(name = ID) StringType id,
                                              @OptionalParam(name = VERSION) StringType version,
@@ -143,6 +147,7 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
                                              @OptionalParam(name = OWNER_URL) StringType ownerUrl,
                                              RequestDetails details) {
         List<Collection> collections = filterCollectionHead(getCollectionByOwnerAndId(id, owner, version, publicAccess));
+        checkCollectionsNotModified(collections, details);
         StringBuilder hasNext = new StringBuilder();
         List<ValueSet> valueSets = valueSetConverter.convertToValueSet(collections, !isVersionAll(version), getPage(page), hasNext);
         log.info("Found " + valueSets.size() + " ValueSets.");
@@ -150,8 +155,28 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
                 getPrevPage(page), getNextPage(page, hasNext));
     }
 
+    /**
+     * Writes the full expansion of a single {@link ValueSet} version as NDJSON. Returns given version if provided,
+     * otherwise most recent released version is expanded.
+     * @param owner
+     * @param id
+     * @param version
+     * @param writer - the export file writer
+     * @return the number of exported entries
+     */
+    @Transactional(readOnly = true)
+    public long exportValueSet(StringType owner, StringType id, StringType version, BooleanType includeDesignations,
+                               BooleanType activeOnly, CodeType displayLanguage, Writer writer) {
+        if (isVersionAll(version))
+            throw new InvalidRequestException("A single version of the ValueSet can be exported.");
+        List<Collection> collections = filterCollectionHead(getCollectionByOwnerAndId(id, owner, version, publicAccess));
+        if (collections.isEmpty())
+            throw new ResourceNotFoundException(notFound(ValueSet.class, owner, id, version));
+        return valueSetConverter.exportExpansion(collections.get(0), includeDesignations, activeOnly, displayLanguage, writer);
+    }
+
     @Operation(name = VALIDATE_CODE, idempotent = true)
-    @Transactional
+    @Transactional(readOnly = true)
     public Parameters valueSetValidateCode(@OperationParam(name = URL, type = UriType.class, min = 1) UriType url,
                                            @OperationParam(name = VALUESET_VERSION, type = StringType.class) StringType valueSetVersion,
                                            @OperationParam(name = CODE, type = CodeType.class, min = 1) CodeType code,
@@ -179,7 +204,7 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
     }
 
     @Operation(name = EXPAND, idempotent = true)
-    @Transactional
+    @Transactional(readOnly = true)
     public ValueSet valueSetExpand(@OperationParam(name = URL, type = UriType.class, min = 1) UriType url,
                                    @OperationParam(name = VALUESET_VERSION, type = StringType.class) StringType valueSetVersion,
                                    @OperationParam(name = OFFSET, type = IntegerType.class) IntegerType offset,
@@ -193,8 +218,6 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
                                    @OperationParam(name = FILTER, type = StringType.class) StringType filter,
                                    @OperationParam(name = OWNER, type = StringType.class) StringType owner) {
         validate(url, offset, count);
-        Collection collection = isValid(owner) ? getCollectionByOwnerAndUrl(owner, newStringType(url), valueSetVersion, publicAccess) :
-                getCollectionByUrl(newStringType(url), valueSetVersion, publicAccess).get(0);
         if (!isValid(offset)) offset = new IntegerType(0);
         if (!isValid(count)) count = new IntegerType(100);
         if (count.getValue() > 100) count.setValue(100);
@@ -219,8 +242,21 @@ public class ValueSetResourceProvider extends BaseProvider implements IResourceP
                     .map(String::trim)
                     .collect(Collectors.toList());
         validateSystemVersion(systemVersionsList);
-        return valueSetConverter.expand(collection, offset, count, includeDesignations, includeDefinition,
-                activeOnly, displayLanguage, excludeSystemsList, systemVersionsList, filter);
+        IntegerType expandOffset = offset;
+        IntegerType expandCount = count;
+        BooleanType expandDesignations = includeDesignations;
+        BooleanType expandDefinition = includeDefinition;
+        BooleanType expandActiveOnly = activeOnly;
+        List<String> expandExcludeSystems = excludeSystemsList;
+        List<String> expandSystemVersions = systemVersionsList;
+        // the defaults are applied first so that requests that only differ by an omitted default are identical
+        return coalesce(EXPAND, () -> {
+            Collection collection = isValid(owner) ? getCollectionByOwnerAndUrl(owner, newStringType(url), valueSetVersion, publicAccess) :
+                    getCollectionByUrl(newStringType(url), valueSetVersion, publicAccess).get(0);
+            return valueSetConverter.expand(collection, expandOffset, expandCount, expandDesignations, expandDefinition,
+                    expandActiveOnly, displayLanguage, expandExcludeSystems, expandSystemVersions, filter);
+        }, url, valueSetVersion, expandOffset, expandCount, expandDesignations, expandDefinition, expandActiveOnly,
+                displayLanguage, expandExcludeSystems, expandSystemVersions, filter, owner);
     }
 
     private List<Collection> getCollections(List<String> access) {
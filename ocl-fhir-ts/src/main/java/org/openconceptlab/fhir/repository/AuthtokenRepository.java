@@ -4,6 +4,7 @@ import org.openconceptlab.fhir.model.AuthtokenToken;
 
 public interface AuthtokenRepository extends BaseOclRepository<AuthtokenToken>{
 
+    // not cached, a token that is revoked in oclapi must be rejected at once
     AuthtokenToken findByKey(String key);
 
 }
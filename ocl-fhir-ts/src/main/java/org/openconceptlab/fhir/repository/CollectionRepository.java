@@ -2,11 +2,15 @@ package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.Collection;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
 /**
  * The CollectionRepository.
  * @author harpatel1
@@ -14,42 +18,66 @@ import java.util.List;
 @Repository
 public interface CollectionRepository extends BaseOclRepository<Collection>{
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByPublicAccessIn(List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByMnemonicAndPublicAccessIn(String mnemonic, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByMnemonicAndOrganizationMnemonicAndPublicAccessIn(String collectionId, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByMnemonicAndUserIdUsernameAndPublicAccessIn(String collectionId, String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByOrganizationMnemonicAndPublicAccessIn(String org, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByUserIdUsernameAndPublicAccessIn(String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByOrganizationMnemonicOrUserIdUsername(String org, String username);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Collection> findByCanonicalUrlAndPublicAccessIn(String canonicalUrl, List<String> publicAccess);
 
     // versioned
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndVersionAndOrganizationMnemonicAndPublicAccessIn(String collectionId, String version, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndVersionAndUserIdUsernameAndPublicAccessIn(String collectionId, String version, String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndVersionAndPublicAccessIn(String canonicalUrl, String version, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndReleasedAndPublicAccessInAndOrganizationMnemonicOrderByCreatedAtDesc(String collectionId, Boolean released, List<String> publicAccess,
                                                                                                       String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndReleasedAndPublicAccessInAndUserIdUsernameOrderByCreatedAtDesc(String collectionId, Boolean released, List<String> publicAccess,
                                                                                                 String username);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, Boolean released, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndReleasedAndOrganizationMnemonicAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, boolean released,
                                                                                                           String orgId, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndReleasedAndUserIdUsernameAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, boolean released,
                                                                                                     String username, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndVersionAndOrganizationMnemonicAndPublicAccessIn(String canonicalUrl, String version, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndVersionAndUserIdUsernameAndPublicAccessIn(String canonicalUrl, String version, String username, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndVersionAndOrganizationMnemonic(String canonicalUrl, String version, String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByCanonicalUrlAndVersionAndUserIdUsername(String canonicalUrl, String version, String username);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndVersionAndOrganizationMnemonic(String sourceId, String version, String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndVersionAndUserIdUsername(String sourceId, String version, String username);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndReleasedAndOrganizationMnemonicAndPublicAccessInOrderByCreatedAtDesc(String collectionId, boolean released,
                                                                                                       String orgId, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Collection findFirstByMnemonicAndReleasedAndUserIdUsernameAndPublicAccessInOrderByCreatedAtDesc(String collectionId, boolean released, String username, List<String> publicAccess);
 
     @Query(value =
@@ -0,0 +1,96 @@
+package org.openconceptlab.fhir.repository;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * The ConceptDisplayRepository. The preferred display of each concept per locale, computed from the concept names when
+ * the concept is written so that reads that only need a display select one column instead of loading all names.
+ * The concepts_displays table is owned by this service but not created by it, it is created once by the migration
+ * {@code db/concepts_displays.sql}. Without the table the displays are disabled. Concepts written by other clients have no
+ * rows and readers fall back to the names for them.
+ * @author harpatel1
+ */
+@Repository
+public class ConceptDisplayRepository {
+
+    private static final Log log = LogFactory.getLog(ConceptDisplayRepository.class);
+    private static final String tableExistsSql = "select to_regclass('concepts_displays') is not null";
+    private static final String upsertSql = "insert into concepts_displays (concept_id, locale, display) values (?, ?, ?) " +
+            "on conflict (concept_id, locale) do update set display = excluded.display";
+    private static final String deleteSql = "delete from concepts_displays where concept_id = any(?)";
+    private static final String findSql = "select concept_id, display from concepts_displays " +
+            "where locale = :locale and concept_id in (:ids)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final boolean enabled;
+    private volatile boolean available;
+
+    @Autowired
+    public ConceptDisplayRepository(DataSource dataSource, @Value("${ocl.display.enabled:true}") boolean enabled) {
+        this(new JdbcTemplate(dataSource), enabled);
+    }
+
+    ConceptDisplayRepository(JdbcTemplate jdbcTemplate, boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) return;
+        try {
+            available = Boolean.TRUE.equals(jdbcTemplate.queryForObject(tableExistsSql, Boolean.class));
+            if (!available)
+                log.warn("Concept displays are disabled, table concepts_displays does not exist. Apply the migration "
+                        + "db/concepts_displays.sql to enable them.");
+        } catch (DataAccessException e) {
+            log.warn("Concept displays are disabled, could not check table concepts_displays - " + e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Stores the displays of the given concepts, keyed by concept id and then by locale. The stored displays of these
+     * concepts are replaced, so that the displays of locales that the concepts no longer have are removed.
+     */
+    public void saveDisplays(Map<Long, Map<String, String>> displaysById) {
+        if (!available || displaysById.isEmpty()) return;
+        jdbcTemplate.update(deleteSql, (Object) displaysById.keySet().toArray(new Long[0]));
+        List<Object[]> rows = new ArrayList<>();
+        displaysById.forEach((id, displays) -> displays.forEach((locale, display) ->
+                rows.add(new Object[]{id, locale, display})));
+        jdbcTemplate.batchUpdate(upsertSql, rows);
+    }
+
+    /**
+     * Returns the display in the given locale of those concepts that have one stored.
+     */
+    public Map<Long, String> findDisplays(Collection<Long> conceptIds, String locale) {
+        if (!available || conceptIds.isEmpty() || locale == null) return Collections.emptyMap();
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        parameters.addValue("locale", locale);
+        parameters.addValue("ids", conceptIds);
+        Map<Long, String> displays = new HashMap<>();
+        namedParameterJdbcTemplate.query(findSql, parameters, rs -> {
+            displays.put(rs.getLong(1), rs.getString(2));
+        });
+        return displays;
+    }
+}
@@ -1,6 +1,8 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.Concept;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
@@ -19,14 +21,16 @@ public interface ConceptRepository extends BaseOclRepository<Concept>{
 
     List<Concept> findByMnemonic(String mnemonic);
 
-    @Query(nativeQuery = true, value = "select * from concepts c2 where c2.id in (" +
-            "select concept_id from (\n" +
-            "select max(cs.concept_id) as concept_id , c1.mnemonic from concepts_sources cs \n" +
-            "inner join concepts c1 on c1.id = cs.concept_id \n" +
-            "where cs.source_id = :sourceId\n" +
-            "group by c1.mnemonic) as val \n" +
-            ") order by c2.mnemonic asc")
-    Page<Concept> findConcepts(@Param("sourceId") Long sourceId, Pageable pageable);
+    /**
+     * Returns the latest version of each concept in the given source as a read-only row, ordered by code.
+     */
+    @Query(value = "select new org.openconceptlab.fhir.model.projection.ConceptRow(c.id, c.mnemonic, c.version, " +
+            "c.retired, c.conceptClass, c.datatype) from Concept c where c.id in (" +
+            "select max(c1.id) from ConceptsSource cs join cs.concept c1 where cs.source.id = :sourceId " +
+            "group by c1.mnemonic) order by c.mnemonic asc",
+            countQuery = "select count(distinct c1.mnemonic) from ConceptsSource cs join cs.concept c1 " +
+                    "where cs.source.id = :sourceId")
+    Page<ConceptRow> findConceptRows(@Param("sourceId") Long sourceId, Pageable pageable);
 
     @Query(nativeQuery = true, value = "select count(*) from (select max(cs.concept_id) as concept_id , c1.mnemonic from concepts_sources cs \n" +
             "inner join concepts c1 on c1.id = cs.concept_id \n" +
@@ -34,6 +38,22 @@ public interface ConceptRepository extends BaseOclRepository<Concept>{
             "group by c1.mnemonic) as val")
     int findConceptCountInSource(@Param("sourceId") Long sourceId);
 
+    /**
+     * Returns the names of the given concepts as read-only rows.
+     */
+    @Query("select new org.openconceptlab.fhir.model.projection.TextRow(n.concept.id, lt.name, lt.locale, " +
+            "lt.localePreferred, lt.type) from ConceptsName n join n.localizedtext lt where n.concept.id in :ids " +
+            "order by n.id asc")
+    List<TextRow> findNameRows(@Param("ids") List<Long> ids);
+
+    /**
+     * Returns the descriptions of the given concepts as read-only rows.
+     */
+    @Query("select new org.openconceptlab.fhir.model.projection.TextRow(d.concept.id, lt.name, lt.locale, " +
+            "lt.localePreferred, lt.type) from ConceptsDescription d join d.localizedtext lt where d.concept.id in :ids " +
+            "order by d.id asc")
+    List<TextRow> findDescriptionRows(@Param("ids") List<Long> ids);
+
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query(value = "update concepts set version = :id where id = :id", nativeQuery = true)
     void updateVersion(@Param("id") Long id);
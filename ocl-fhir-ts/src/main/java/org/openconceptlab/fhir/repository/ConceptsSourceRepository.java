@@ -1,12 +1,25 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.ConceptsSource;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
 public interface ConceptsSourceRepository extends BaseOclRepository<ConceptsSource>{
 
+    // the concept is always read by the callers, the source is already known to them
+    @EntityGraph(attributePaths = {"concept"})
     List<ConceptsSource> findBySourceIdAndConceptIdInOrderByConceptIdDesc(Long sourceId, List<Long> conceptIds);
+    @EntityGraph(attributePaths = {"concept"})
     List<ConceptsSource> findBySourceIdOrderByConceptMnemonicAsc(Long sourceId, Pageable pageable);
+
+    // all versions of the given codes in the source, most recent first
+    @Query("select new org.openconceptlab.fhir.model.projection.ConceptRow(c.id, c.mnemonic, c.version, c.retired, " +
+            "c.conceptClass, c.datatype) from ConceptsSource cs join cs.concept c " +
+            "where cs.source.id = :sourceId and c.mnemonic in :codes order by c.id desc")
+    List<ConceptRow> findConceptRows(@Param("sourceId") Long sourceId, @Param("codes") List<String> codes);
 }
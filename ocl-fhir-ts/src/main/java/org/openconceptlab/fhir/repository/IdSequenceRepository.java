@@ -0,0 +1,84 @@
+package org.openconceptlab.fhir.repository;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The IdSequenceRepository. Allocates blocks of ids from the sequence behind the id column of a table, so that rows
+ * can be written with their id, and values derived from it, in one batched insert instead of inserting them one by one
+ * to learn the generated key. The ids are taken with nextval, therefore rows inserted by other clients are not affected.
+ * @author harpatel1
+ */
+@Repository
+public class IdSequenceRepository {
+
+    private static final Log log = LogFactory.getLog(IdSequenceRepository.class);
+    public static final String CONCEPTS = "concepts";
+    public static final String LOCALIZED_TEXTS = "localized_texts";
+
+    private static final String sequenceSql = "select pg_get_serial_sequence(?, 'id')";
+    private static final String nextIdsSql = "select nextval(cast(? as regclass)) from generate_series(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Map<String, String> sequences = new ConcurrentHashMap<>();
+    private volatile boolean available;
+
+    @Autowired
+    public IdSequenceRepository(DataSource dataSource, @Value("${ocl.ids.preallocate:true}") boolean enabled) {
+        this(new JdbcTemplate(dataSource), enabled);
+    }
+
+    IdSequenceRepository(JdbcTemplate jdbcTemplate, boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) return;
+        try {
+            for (String table : new String[]{CONCEPTS, LOCALIZED_TEXTS}) {
+                String sequence = jdbcTemplate.queryForObject(sequenceSql, String.class, table);
+                if (sequence == null) {
+                    log.warn("Id pre-allocation is disabled, table " + table + " has no id sequence.");
+                    return;
+                }
+                sequences.put(table, sequence);
+            }
+            available = true;
+        } catch (DataAccessException e) {
+            log.warn("Id pre-allocation is disabled, could not resolve the id sequences - " + e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns count new ids of the given table, in increasing order.
+     */
+    public List<Long> nextIds(String table, int count) {
+        if (count == 0) return Collections.emptyList();
+        String sequence = sequences.get(table);
+        if (sequence == null)
+            throw new IllegalArgumentException("No id sequence is known for table " + table + ".");
+        List<Long> ids = jdbcTemplate.queryForList(nextIdsSql, Long.class, sequence, count);
+        if (ids.size() != count)
+            throw new IllegalStateException("Allocated " + ids.size() + " instead of " + count + " ids of " + table + ".");
+        return ids;
+    }
+}
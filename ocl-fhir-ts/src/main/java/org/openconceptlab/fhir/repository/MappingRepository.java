@@ -1,13 +1,19 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.Mapping;
+import org.openconceptlab.fhir.model.projection.MappingRow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 /**
  * The MappingRepository.
@@ -16,18 +22,30 @@ import java.util.List;
 @Repository
 public interface MappingRepository extends BaseOclRepository<Mapping>{
 
-    @Query(nativeQuery = true, value =
-            "select * from mappings m2 where m2.id in " +
-                    " (select mapping_id from " +
-                    " (select max(ms.mapping_id) as mapping_id , m1.from_source_url, m1.to_source_url, " +
-                    " m1.from_concept_code, m1.to_concept_code, m1.map_type from mappings_sources ms " +
-                    " inner join mappings m1 on m1.id = ms.mapping_id " +
-                    " where ms.source_id = :sourceId " +
-                    " group by m1.from_source_url, m1.to_source_url, " +
-                    " m1.from_concept_code, m1.to_concept_code, m1.map_type) as val " +
-                    " ) " +
-                    " order by m2.from_concept_code asc ")
-    Page<Mapping> findMappings(@Param("sourceId") Long sourceId, Pageable pageable);
+    String LATEST_MAPPING_IDS = "select max(m1.id) from MappingsSource ms join ms.mapping m1 where ms.source.id = :sourceId " +
+            "group by m1.fromSourceUrl, m1.toSourceUrl, m1.fromConceptCode, m1.toConceptCode, m1.mapType";
+
+    String MAPPING_ROWS = "select new org.openconceptlab.fhir.model.projection.MappingRow(m.fromSourceUrl, fs.canonicalUrl, " +
+            "m.toSourceUrl, ts.canonicalUrl, m.fromConceptCode, fc.mnemonic, m.toConceptCode, tc.mnemonic, " +
+            "m.fromConceptName, m.toConceptName, m.mapType, m.fromSourceVersion, m.toSourceVersion) " +
+            "from Mapping m left join m.fromSource fs left join m.toSource ts " +
+            "left join m.fromConcept fc left join m.toConcept tc " +
+            "where m.id in (" + LATEST_MAPPING_IDS + ") order by m.fromConceptCode asc";
+
+    /**
+     * Returns the latest version of each mapping in the given source as a read-only row, ordered by the from
+     * concept code. The referenced sources and concepts are outer joined to fill in blank urls and codes.
+     */
+    @Query(value = MAPPING_ROWS, countQuery = "select count(m) from Mapping m where m.id in (" + LATEST_MAPPING_IDS + ")")
+    Page<MappingRow> findMappingRows(@Param("sourceId") Long sourceId, Pageable pageable);
+
+    /**
+     * Same rows as {@link #findMappingRows(Long, Pageable)} for the whole source, read through a cursor. The stream
+     * must be consumed and closed within a read-only transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = MAPPING_ROWS)
+    Stream<MappingRow> streamMappingRows(@Param("sourceId") Long sourceId);
 
     @Query(nativeQuery = true, value =
             "select * from mappings m2 where m2.id in " +
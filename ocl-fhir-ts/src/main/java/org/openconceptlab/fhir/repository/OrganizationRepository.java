@@ -1,8 +1,13 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.Organization;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
 /**
  * The OrganizationRepository.
  * @author harpatel1
@@ -10,6 +15,7 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface OrganizationRepository extends BaseOclRepository<Organization>{
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Organization findByMnemonic(String mnemonic);
 
 }
@@ -0,0 +1,131 @@
+package org.openconceptlab.fhir.repository;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * The ResourceLockRepository. Transaction scoped PostgreSQL advisory locks keyed by a resource version, such as
+ * /orgs/OCL/sources/SRC/v1.0/, so that concurrent writes to the same source or collection version are serialized while
+ * writes to different ones run in parallel. The locks are taken on the connection of the current transaction and
+ * released when it ends, they are shared by all instances of the service that use the same database.
+ * <p>
+ * An import that is written in many transactions holds a session scoped import lock of its source instead, keyed by
+ * the source id, on a connection of its own that is not taken from the pools, until its last batch has finished.
+ * @author harpatel1
+ */
+@Repository
+public class ResourceLockRepository {
+
+    // the first key of the two key form keeps these locks apart from advisory locks taken by other applications
+    private static final int NAMESPACE = 0x4F434C46;
+    private static final int IMPORT_NAMESPACE = 0x4F434C49;
+    private static final String lockSql = "select pg_advisory_xact_lock(?, hashtext(?))";
+    private static final String lockSharedSql = "select pg_advisory_xact_lock_shared(?, hashtext(?))";
+    private static final String tryLockSharedSql = "select pg_try_advisory_xact_lock_shared(?, ?)";
+    private static final String sessionLockSql = "select pg_advisory_lock(?, ?)";
+    // the two keys of a lock are reported as classid and objid, with objsubid 2
+    private static final String importLockedSql = "select exists (select 1 from pg_locks where locktype = 'advisory' " +
+            "and classid = ?::int8::oid and objid = ?::int8::oid and objsubid = 2 and granted)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource sessionLockDataSource;
+
+    public ResourceLockRepository(DataSource dataSource,
+                                  @Qualifier("sessionLockDataSource") DataSource sessionLockDataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.sessionLockDataSource = sessionLockDataSource;
+    }
+
+    /**
+     * Waits for and takes the exclusive lock of the given resource until the end of the current transaction.
+     */
+    public void lock(String resourceKey) {
+        execute(lockSql, resourceKey);
+    }
+
+    /**
+     * Waits for and takes a shared lock of the given resource until the end of the current transaction, shared locks
+     * only exclude {@link #lock(String)}.
+     */
+    public void lockShared(String resourceKey) {
+        execute(lockSharedSql, resourceKey);
+    }
+
+    /**
+     * Takes the import lock of the given source until the returned lock is closed, waiting for the transactions that
+     * checked {@link #isImporting(Long)} to end.
+     */
+    public SessionLock lockImport(Long sourceId) {
+        Connection connection = null;
+        try {
+            connection = sessionLockDataSource.getConnection();
+            try (PreparedStatement statement = connection.prepareStatement(sessionLockSql)) {
+                statement.setInt(1, IMPORT_NAMESPACE);
+                statement.setInt(2, sourceId.intValue());
+                statement.executeQuery().close();
+            }
+            return new SessionLock(connection);
+        } catch (SQLException e) {
+            JdbcUtils.closeConnection(connection);
+            throw new DataAccessResourceFailureException("Could not take the import lock of source " + sourceId, e);
+        }
+    }
+
+    /**
+     * Returns true if an import holds the given source. Otherwise no import can take it until the end of the current
+     * transaction.
+     */
+    public boolean isImporting(Long sourceId) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive())
+            throw new IllegalStateException("A resource lock can only be taken within a transaction.");
+        Boolean locked = jdbcTemplate.queryForObject(tryLockSharedSql, Boolean.class, IMPORT_NAMESPACE, sourceId.intValue());
+        return !Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Returns true if an import holds the given source, without taking any lock. Must be called outside of a
+     * transaction, so that the locks of the primary are read and not those of a replica.
+     */
+    public boolean isImportPending(Long sourceId) {
+        Boolean locked = jdbcTemplate.queryForObject(importLockedSql, Boolean.class, IMPORT_NAMESPACE, sourceId.intValue());
+        return Boolean.TRUE.equals(locked);
+    }
+
+    private void execute(String sql, String resourceKey) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive())
+            throw new IllegalStateException("A resource lock can only be taken within a transaction.");
+        // hash collisions of two keys only serialize writes that could have run in parallel
+        jdbcTemplate.query(sql, rs -> {}, NAMESPACE, resourceKey);
+    }
+
+    /**
+     * A session scoped lock, held until it is closed or the service stops.
+     */
+    public static class SessionLock implements AutoCloseable {
+
+        private Connection connection;
+
+        SessionLock(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Releases the lock, may be called more than once.
+         */
+        @Override
+        public synchronized void close() {
+            // the connection is not pooled, closing it ends its session and the lock
+            JdbcUtils.closeConnection(connection);
+            connection = null;
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.SourceRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
 /**
  * The SourceRepository.
  * @author harpatel1
@@ -15,47 +21,89 @@ import java.util.List;
 @Repository
 public interface SourceRepository extends BaseOclRepository<Source> {
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByPublicAccessIn(List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByMnemonicAndPublicAccessIn(String mnemonic, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByMnemonicAndOrganizationMnemonicAndPublicAccessIn(String sourceId, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByMnemonicAndUserIdUsernameAndPublicAccessIn(String sourceId, String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByOrganizationMnemonicAndPublicAccessIn(String org, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByUserIdUsernameAndPublicAccessIn(String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByCanonicalUrlAndPublicAccessIn(String canonicalUrl, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     List<Source> findByCanonicalUrl(String canonicalUrl);
 
     // versioned
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndVersionAndOrganizationMnemonicAndPublicAccessIn(String sourceId, String version, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndVersionAndUserIdUsernameAndPublicAccessIn(String sourceId, String version, String username, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndVersionAndOrganizationMnemonic(String sourceId, String version, String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndVersionAndUserIdUsername(String sourceId, String version, String username);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndVersionAndPublicAccessIn(String canonicalUrl, String version, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndReleasedAndPublicAccessInAndOrganizationMnemonicOrderByCreatedAtDesc(String sourceId, Boolean released, List<String> publicAccess,
                                                                                                       String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndReleasedAndPublicAccessInAndUserIdUsernameOrderByCreatedAtDesc(String sourceId, Boolean released, List<String> publicAccess,
                                                                                                 String username);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, Boolean released, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndReleasedAndOrganizationMnemonicAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, boolean released,
                                                                                                               String orgId, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndReleasedAndUserIdUsernameAndPublicAccessInOrderByCreatedAtDesc(String canonicalUrl, boolean released,
                                                                                                           String username, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndVersionAndOrganizationMnemonicAndPublicAccessIn(String canonicalUrl, String version, String orgId, List<String> publicAccess);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndVersionAndUserIdUsernameAndPublicAccessIn(String canonicalUrl, String version, String username, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndVersionAndOrganizationMnemonic(String canonicalUrl, String version, String orgId);
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByCanonicalUrlAndVersionAndUserIdUsername(String canonicalUrl, String version, String username);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndReleasedAndOrganizationMnemonicAndPublicAccessInOrderByCreatedAtDesc(String sourceId, boolean released,
                                                                                                           String orgId, List<String> publicAccess);
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     Source findFirstByMnemonicAndReleasedAndUserIdUsernameAndPublicAccessInOrderByCreatedAtDesc(String sourceId, boolean released,
                                                                                                     String username, List<String> publicAccess);
 
+    String SOURCE_ROWS = "select new org.openconceptlab.fhir.model.projection.SourceRow(s.id, s.mnemonic, s.version, " +
+            "s.canonicalUrl, o.mnemonic, u.username, s.defaultLocale) from Source s left join s.organization o " +
+            "left join s.userId u where s.canonicalUrl = :canonicalUrl and s.publicAccess in :publicAccess ";
+
+    /**
+     * The versions of the given canonical url, latest first. Pass a page of one to get the latest.
+     */
+    @Query(SOURCE_ROWS + "and s.version = :version order by s.createdAt desc")
+    List<SourceRow> findSourceRows(@Param("canonicalUrl") String canonicalUrl, @Param("version") String version,
+                                   @Param("publicAccess") List<String> publicAccess, Pageable pageable);
+
+    /**
+     * The released versions of the given canonical url, latest first. Pass a page of one to get the latest.
+     */
+    @Query(SOURCE_ROWS + "and s.released = true order by s.createdAt desc")
+    List<SourceRow> findReleasedSourceRows(@Param("canonicalUrl") String canonicalUrl,
+                                           @Param("publicAccess") List<String> publicAccess, Pageable pageable);
+
     @Modifying(flushAutomatically = true, clearAutomatically = true)
     @Query(value = "update sources set mnemonic = :id where id = :id", nativeQuery = true)
     void updateMnemonic(@Param("id") Long id);
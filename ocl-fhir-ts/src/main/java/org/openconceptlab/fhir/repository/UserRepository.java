@@ -1,8 +1,13 @@
 package org.openconceptlab.fhir.repository;
 
 import org.openconceptlab.fhir.model.UserProfile;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import static org.hibernate.annotations.QueryHints.CACHEABLE;
+
 /**
  * The UserRepository.
  * @author harpatel1
@@ -10,6 +15,7 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface UserRepository extends BaseOclRepository<UserProfile> {
 
+    @QueryHints(@QueryHint(name = CACHEABLE, value = "true"))
     UserProfile findByUsername(String username);
 
 }
@@ -0,0 +1,29 @@
+package org.openconceptlab.fhir.snapshot;
+
+import org.openconceptlab.fhir.model.LocalizedText;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+
+import java.util.List;
+
+/**
+ * The SnapshotConcept. The latest version of a concept as read from a {@link SourceSnapshot}, together with its names.
+ * @author harpatel1
+ */
+public final class SnapshotConcept {
+
+    private final ConceptRow row;
+    private final List<LocalizedText> names;
+
+    SnapshotConcept(ConceptRow row, List<LocalizedText> names) {
+        this.row = row;
+        this.names = names;
+    }
+
+    public ConceptRow getRow() {
+        return row;
+    }
+
+    public List<LocalizedText> getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,216 @@
+package org.openconceptlab.fhir.snapshot;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.repository.ResourceLockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.openconceptlab.fhir.util.OclFhirConstants.HEAD;
+
+/**
+ * The SnapshotService. Keeps a {@link SourceSnapshot} per released source version on local disk. A snapshot is keyed by
+ * the source id and its last update, so an edited source gets a new snapshot and the old file is removed once the new
+ * one is in place. Snapshots are built in the background on first use, the callers keep reading from the database until
+ * the snapshot is ready. HEAD and unreleased versions are still changing and are never snapshotted, neither is a source
+ * while its concepts are being imported. Each committed import batch updates the source, and a snapshot is only written
+ * if the source read with its concepts still has the update of its key.
+ * @author harpatel1
+ */
+@Component
+public class SnapshotService {
+
+    private static final Log log = LogFactory.getLog(SnapshotService.class);
+    private static final String PREFIX = "source-";
+    private static final String SNAP = ".snap";
+    private static final int FETCH_SIZE = 1000;
+    // latest version of each concept in the source followed by its names
+    private static final String snapshotSql = "select c.id, c.mnemonic, c.version, c.retired, c.concept_class, c.datatype, " +
+            "lt.name, lt.locale, lt.locale_preferred, lt.type from concepts c " +
+            "inner join (select max(cs.concept_id) as concept_id from concepts_sources cs inner join concepts c1 on c1.id = cs.concept_id " +
+            "where cs.source_id = ? group by c1.mnemonic) latest on latest.concept_id = c.id " +
+            "left join concepts_names cn on cn.concept_id = c.id " +
+            "left join localized_texts lt on lt.id = cn.localizedtext_id " +
+            "order by c.id, lt.id";
+    private static final String updatedAtSql = "select updated_at from sources where id = ?";
+
+    private final DataSource dataSource;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path directory;
+    private final ExecutorService executor;
+    private final Map<Long, SourceSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    private ResourceLockRepository resourceLockRepository;
+
+    public SnapshotService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                           @Value("${ocl.snapshot.enabled:true}") boolean enabled,
+                           @Value("${ocl.snapshot.dir:${java.io.tmpdir}/ocl-fhir-snapshot}") String directory) {
+        this.dataSource = dataSource;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "snapshot-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Autowired(required = false)
+    public void setResourceLockRepository(ResourceLockRepository resourceLockRepository) {
+        this.resourceLockRepository = resourceLockRepository;
+    }
+
+    /**
+     * Returns the snapshot of the given source version, or empty when the source can not be snapshotted or its
+     * snapshot is not ready yet. In the latter case a build is started.
+     */
+    public Optional<SourceSnapshot> get(Source source) {
+        if (!enabled || !isSnapshotted(source)) return Optional.empty();
+        String key = key(source);
+        SourceSnapshot snapshot = snapshots.get(source.getId());
+        if (snapshot != null && snapshot.getKey().equals(key)) return Optional.of(snapshot);
+        Path file = directory.resolve(key + SNAP);
+        if (Files.exists(file)) {
+            try {
+                return Optional.of(install(source.getId(), SourceSnapshot.open(key, file)));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not open snapshot " + file + ", rebuilding - " + e.getMessage());
+                delete(file);
+            }
+        }
+        if (building.add(key)) {
+            Long sourceId = source.getId();
+            Timestamp updatedAt = source.getUpdatedAt();
+            executor.submit(() -> build(sourceId, updatedAt, key, file));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Drops the snapshot of the given source, the next request builds a new one.
+     */
+    public void invalidate(Long sourceId) {
+        if (sourceId == null) return;
+        close(snapshots.remove(sourceId));
+        deleteFiles(sourceId, null);
+    }
+
+    private boolean isSnapshotted(Source source) {
+        return source != null && source.getId() != null && Boolean.TRUE.equals(source.getReleased())
+                && !HEAD.equals(source.getVersion());
+    }
+
+    private String key(Source source) {
+        return PREFIX + source.getId() + "-" + time(source.getUpdatedAt());
+    }
+
+    private static long time(Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : 0;
+    }
+
+    private void build(Long sourceId, Timestamp updatedAt, String key, Path file) {
+        Path part = directory.resolve(key + SNAP + ".part");
+        Path data = directory.resolve(key + SNAP + ".data");
+        try {
+            // outside of the transaction below, the import locks are those of the primary
+            if (resourceLockRepository != null && resourceLockRepository.isImportPending(sourceId)) {
+                log.info("Not building the snapshot of source " + sourceId + ", its concepts are being imported.");
+                return;
+            }
+            Files.createDirectories(directory);
+            long start = System.currentTimeMillis();
+            int count;
+            try (SourceSnapshotWriter writer = new SourceSnapshotWriter(sourceId, data)) {
+                Boolean current = transactionTemplate.execute(status -> {
+                    JdbcTemplate template = new JdbcTemplate(dataSource);
+                    // the concepts are read in the same transaction, they belong to this update of the source
+                    Timestamp lastUpdate = template.queryForObject(updatedAtSql, Timestamp.class, sourceId);
+                    if (time(lastUpdate) != time(updatedAt)) return false;
+                    template.setFetchSize(FETCH_SIZE);
+                    template.query(snapshotSql, writer, sourceId);
+                    return true;
+                });
+                if (!Boolean.TRUE.equals(current)) {
+                    log.info("Not building the snapshot of source " + sourceId + ", it has been updated since.");
+                    return;
+                }
+                count = writer.finish(part);
+            }
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            install(sourceId, SourceSnapshot.open(key, file));
+            log.info("Built snapshot of source " + sourceId + " with " + count + " concepts in "
+                    + (System.currentTimeMillis() - start) + " ms.");
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not build snapshot of source " + sourceId + " - " + e.getMessage());
+            delete(part);
+        } finally {
+            building.remove(key);
+        }
+    }
+
+    private SourceSnapshot install(Long sourceId, SourceSnapshot snapshot) {
+        SourceSnapshot previous = snapshots.put(sourceId, snapshot);
+        if (previous != null && previous != snapshot) close(previous);
+        deleteFiles(sourceId, snapshot.getFile());
+        return snapshot;
+    }
+
+    private void deleteFiles(Long sourceId, Path keep) {
+        if (!Files.isDirectory(directory)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + sourceId + "-*" + SNAP)) {
+            for (Path file : files) {
+                if (!file.equals(keep)) delete(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not list snapshots of source " + sourceId + " - " + e.getMessage());
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete snapshot " + file + " - " + e.getMessage());
+        }
+    }
+
+    private void close(SourceSnapshot snapshot) {
+        if (snapshot == null) return;
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            log.warn("Could not close snapshot " + snapshot.getFile() + " - " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        snapshots.values().forEach(this::close);
+        snapshots.clear();
+    }
+}
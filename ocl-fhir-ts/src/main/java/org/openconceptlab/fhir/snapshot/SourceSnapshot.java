@@ -0,0 +1,174 @@
+package org.openconceptlab.fhir.snapshot;
+
+import org.openconceptlab.fhir.model.LocalizedText;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The SourceSnapshot. A read-only, memory-mapped image of the latest concepts of a released source version, used to
+ * answer $lookup, $validate-code and $expand without going to the database.
+ * <p>
+ * File layout, all integers big endian:
+ * <pre>
+ * header   magic, format version, concept count, entries offset, data offset, source id (long), reserved
+ * entries  one fixed size entry per concept sorted by the UTF-8 bytes of the code:
+ *          concept id (long), code, version, concept class, datatype, names, flags
+ * data     strings as length + UTF-8 bytes and name blocks as count + (name, locale, type, preferred) per name
+ * </pre>
+ * The string and name fields of an entry are offsets into the data section, {@value #NULL} stands for null. Lookups
+ * binary search the entries and only decode the strings of the matching concept. Reads use absolute positions only,
+ * so a snapshot can be shared by any number of threads.
+ * @author harpatel1
+ */
+public final class SourceSnapshot implements AutoCloseable {
+
+    static final int MAGIC = 0x4F434C53;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int ENTRY_SIZE = 32;
+    static final int NAME_SIZE = 16;
+    static final int NULL = -1;
+    static final int RETIRED = 1;
+
+    private final String key;
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int entries;
+    private final int data;
+    private final long sourceId;
+
+    private SourceSnapshot(String key, Path file, FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.key = key;
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Invalid snapshot file " + file);
+        }
+        this.count = buffer.getInt(8);
+        this.entries = buffer.getInt(12);
+        this.data = buffer.getInt(16);
+        this.sourceId = buffer.getLong(20);
+    }
+
+    /**
+     * Maps the given snapshot file, the file is kept open until the snapshot is closed.
+     */
+    public static SourceSnapshot open(String key, Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SourceSnapshot(key, file, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSourceId() {
+        return sourceId;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Finds the latest version of the concept with the given code.
+     */
+    public Optional<SnapshotConcept> find(String code) {
+        if (code == null) return Optional.empty();
+        int index = indexOf(code.getBytes(StandardCharsets.UTF_8));
+        return index < 0 ? Optional.empty() : Optional.of(read(index));
+    }
+
+    private int indexOf(byte[] code) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(buffer.getInt(entry(mid) + 8), code);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int offset, byte[] code) {
+        int position = data + offset;
+        int length = buffer.getInt(position);
+        position += 4;
+        int n = Math.min(length, code.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(position + i) & 0xFF, code[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(length, code.length);
+    }
+
+    private SnapshotConcept read(int index) {
+        int position = entry(index);
+        ConceptRow row = new ConceptRow(buffer.getLong(position), string(buffer.getInt(position + 8)),
+                string(buffer.getInt(position + 12)), (buffer.getInt(position + 28) & RETIRED) != 0,
+                string(buffer.getInt(position + 16)), string(buffer.getInt(position + 20)));
+        return new SnapshotConcept(row, names(buffer.getInt(position + 24)));
+    }
+
+    private List<LocalizedText> names(int offset) {
+        if (offset == NULL) return new ArrayList<>();
+        int position = data + offset;
+        int n = buffer.getInt(position);
+        List<LocalizedText> names = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int name = position + 4 + i * NAME_SIZE;
+            LocalizedText text = new LocalizedText();
+            text.setName(string(buffer.getInt(name)));
+            text.setLocale(string(buffer.getInt(name + 4)));
+            text.setType(string(buffer.getInt(name + 8)));
+            text.setLocalePreferred(buffer.getInt(name + 12) != 0);
+            names.add(text);
+        }
+        return names;
+    }
+
+    private String string(int offset) {
+        if (offset == NULL) return null;
+        int position = data + offset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int entry(int index) {
+        return entries + index * ENTRY_SIZE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,166 @@
+package org.openconceptlab.fhir.snapshot;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+import static org.openconceptlab.fhir.snapshot.SourceSnapshot.*;
+
+/**
+ * The SourceSnapshotWriter. Builds a {@link SourceSnapshot} file from the rows of the snapshot query, which returns the
+ * latest version of each concept of a source followed by its names. The data section is streamed to a temporary file
+ * while only the fixed size entries are kept in memory, the entries are sorted by code once all rows have been read.
+ * Concept classes, datatypes, locales and name types repeat across the whole source and are written only once.
+ * @author harpatel1
+ */
+class SourceSnapshotWriter implements RowCallbackHandler, AutoCloseable {
+
+    private final long sourceId;
+    private final Path dataFile;
+    private final DataOutputStream out;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> shared = new HashMap<>();
+    private final List<int[]> names = new ArrayList<>();
+    private Entry current;
+
+    SourceSnapshotWriter(long sourceId, Path dataFile) throws IOException {
+        this.sourceId = sourceId;
+        this.dataFile = dataFile;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile)));
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        try {
+            long id = rs.getLong("id");
+            if (current == null || current.id != id) {
+                flush();
+                current = new Entry(id, rs.getString("mnemonic"));
+                current.code = string(current.bytes);
+                current.version = string(rs.getString("version"));
+                current.conceptClass = sharedString(rs.getString("concept_class"));
+                current.datatype = sharedString(rs.getString("datatype"));
+                current.flags = rs.getBoolean("retired") ? RETIRED : 0;
+            }
+            String name = rs.getString("name");
+            if (name != null) {
+                names.add(new int[]{string(name), sharedString(rs.getString("locale")),
+                        sharedString(rs.getString("type")), Boolean.TRUE.equals(rs.getObject("locale_preferred")) ? 1 : 0});
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (current == null) return;
+        if (names.isEmpty()) {
+            current.names = NULL;
+        } else {
+            current.names = position();
+            out.writeInt(names.size());
+            for (int[] name : names) {
+                for (int field : name) {
+                    out.writeInt(field);
+                }
+            }
+            names.clear();
+        }
+        entries.add(current);
+        current = null;
+    }
+
+    /**
+     * Writes the header and the sorted entries to the given file followed by the data section.
+     * @return the number of concepts in the snapshot
+     */
+    int finish(Path file) throws IOException {
+        flush();
+        out.close();
+        if (Files.size(dataFile) >= Integer.MAX_VALUE) {
+            throw new IOException("The snapshot of source " + sourceId + " exceeds the maximum size.");
+        }
+        entries.sort((a, b) -> Arrays.compareUnsigned(a.bytes, b.bytes));
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(stream))) {
+            snapshot.writeInt(MAGIC);
+            snapshot.writeInt(FORMAT_VERSION);
+            snapshot.writeInt(entries.size());
+            snapshot.writeInt(HEADER_SIZE);
+            snapshot.writeInt(HEADER_SIZE + entries.size() * ENTRY_SIZE);
+            snapshot.writeLong(sourceId);
+            snapshot.writeInt(0);
+            for (Entry entry : entries) {
+                snapshot.writeLong(entry.id);
+                snapshot.writeInt(entry.code);
+                snapshot.writeInt(entry.version);
+                snapshot.writeInt(entry.conceptClass);
+                snapshot.writeInt(entry.datatype);
+                snapshot.writeInt(entry.names);
+                snapshot.writeInt(entry.flags);
+            }
+            Files.copy(dataFile, snapshot);
+        }
+        return entries.size();
+    }
+
+    private int sharedString(String value) throws IOException {
+        if (value == null) return NULL;
+        Integer offset = shared.get(value);
+        if (offset == null) {
+            offset = string(value);
+            shared.put(value, offset);
+        }
+        return offset;
+    }
+
+    private int string(String value) throws IOException {
+        return value == null ? NULL : string(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int string(byte[] bytes) throws IOException {
+        int offset = position();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return offset;
+    }
+
+    private int position() throws IOException {
+        if (out.size() == Integer.MAX_VALUE) {
+            throw new IOException("The snapshot of source " + sourceId + " exceeds the maximum size.");
+        }
+        return out.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        Files.deleteIfExists(dataFile);
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final byte[] bytes;
+        private int code;
+        private int version;
+        private int conceptClass;
+        private int datatype;
+        private int names;
+        private int flags;
+
+        Entry(long id, String code) {
+            this.id = id;
+            this.bytes = code.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -129,6 +129,14 @@ public final class OclFhirConstants {
 	public static final String CONCEPT_MAP_VERSION = "conceptMapVersion";
 	public static final String TARGET_SYSTEM = "targetSystem";
 	public static final String TRANSLATE = "$translate";
+	public static final String EXPORT = "$export";
+	public static final String APPLICATION_NDJSON = "application/fhir+ndjson";
+	public static final String EXPORT_POLL_STATUS = "$export-poll-status";
+	public static final String EXPORT_FILE = "$export-file";
+	public static final String JOB = "job";
+	public static final String IMPORT_POLL_STATUS = "$import-poll-status";
+	public static final String PREFER = "Prefer";
+	public static final String RESPOND_ASYNC = "respond-async";
 
 	public static final String OWNER_URL = "ownerUrl";
 }
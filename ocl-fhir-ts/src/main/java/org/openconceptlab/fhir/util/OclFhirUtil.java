@@ -13,10 +13,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
+import org.openconceptlab.fhir.index.IndexService;
+import org.openconceptlab.fhir.index.MappingIndex;
+import org.openconceptlab.fhir.index.ValueSetMembership;
 import org.openconceptlab.fhir.model.*;
 import org.openconceptlab.fhir.repository.ConceptRepository;
 import org.openconceptlab.fhir.repository.ConceptsSourceRepository;
 import org.openconceptlab.fhir.repository.SourceRepository;
+import org.openconceptlab.fhir.snapshot.SnapshotConcept;
+import org.openconceptlab.fhir.snapshot.SnapshotService;
+import org.openconceptlab.fhir.snapshot.SourceSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
@@ -62,12 +68,21 @@ public class OclFhirUtil {
     private SourceRepository sourceRepository;
     private ConceptRepository conceptRepository;
     private ConceptsSourceRepository conceptsSourceRepository;
+    private SnapshotService snapshotService;
+    private IndexService indexService;
 
     @Autowired
-    public OclFhirUtil(SourceRepository sourceRepository, ConceptRepository conceptRepository, ConceptsSourceRepository conceptsSourceRepository) {
+    public OclFhirUtil(SourceRepository sourceRepository, ConceptRepository conceptRepository, ConceptsSourceRepository conceptsSourceRepository,
+                       SnapshotService snapshotService, IndexService indexService) {
         this.sourceRepository = sourceRepository;
         this.conceptRepository = conceptRepository;
         this.conceptsSourceRepository = conceptsSourceRepository;
+        this.snapshotService = snapshotService;
+        this.indexService = indexService;
+    }
+
+    public OclFhirUtil(SourceRepository sourceRepository, ConceptRepository conceptRepository, ConceptsSourceRepository conceptsSourceRepository) {
+        this(sourceRepository, conceptRepository, conceptsSourceRepository, null, null);
     }
 
     public OclFhirUtil(){
@@ -345,9 +360,13 @@ public class OclFhirUtil {
     }
 
     public static void addConceptDesignation(Concept concept, CodeSystem.ConceptDefinitionComponent definitionComponent) {
-        concept.getConceptsNames().stream().forEach(name -> {
+        addConceptDesignation(concept.getConceptsNames().stream().map(ConceptsName::getLocalizedText)
+                .collect(Collectors.toList()), definitionComponent);
+    }
+
+    public static void addConceptDesignation(List<LocalizedText> names, CodeSystem.ConceptDefinitionComponent definitionComponent) {
+        names.forEach(lt -> {
             CodeSystem.ConceptDefinitionDesignationComponent designation = new CodeSystem.ConceptDefinitionDesignationComponent();
-            LocalizedText lt = name.getLocalizedText();
             if(lt != null) {
                 designation.setLanguage(lt.getLocale());
                 if (isValid(lt.getType()))
@@ -389,6 +408,43 @@ public class OclFhirUtil {
                 .findFirst();
     }
 
+    /**
+     * Returns the snapshot of the given source version when one is ready, see {@link SnapshotService}.
+     */
+    public Optional<SourceSnapshot> getSnapshot(Source source) {
+        return snapshotService == null ? Optional.empty() : snapshotService.get(source);
+    }
+
+    public void invalidateSnapshot(Source source) {
+        if (snapshotService != null && source != null) snapshotService.invalidate(source.getId());
+    }
+
+    /**
+     * Returns the in-memory membership index of the collection version, see {@link IndexService}.
+     */
+    public Optional<ValueSetMembership> getMembership(org.openconceptlab.fhir.model.Collection collection) {
+        return indexService == null ? Optional.empty() : indexService.getMembership(collection);
+    }
+
+    /**
+     * Returns the in-memory mapping index of the ConceptMap source version, see {@link IndexService}.
+     */
+    public Optional<MappingIndex> getMappingIndex(Source source) {
+        return indexService == null ? Optional.empty() : indexService.getMappingIndex(source);
+    }
+
+    /**
+     * Returns the names of the latest version of the concept in the source, read from the source snapshot when there
+     * is one and from the database otherwise.
+     */
+    public Optional<List<LocalizedText>> getSourceConceptNames(Source source, String conceptId) {
+        Optional<SourceSnapshot> snapshot = getSnapshot(source);
+        if (snapshot.isPresent()) {
+            return snapshot.get().find(conceptId).map(SnapshotConcept::getNames);
+        }
+        return getSourceConcept(source, conceptId, EMPTY).map(this::getNames);
+    }
+
     public List<LocalizedText> getNames(Concept concept) {
         return concept.getConceptsNames().stream().map(ConceptsName::getLocalizedText).collect(Collectors.toList());
     }
@@ -399,6 +455,19 @@ public class OclFhirUtil {
                 .anyMatch(name -> !isValid(displayLanguage) || name.getLocale().equals(displayLanguage.getCode()));
     }
 
+    /**
+     * The display per locale of the given names, the same display that {@link #getDisplayForLanguage(List, String)}
+     * returns for each locale: the first preferred name of the locale, otherwise its first name.
+     */
+    public static Map<String, String> getDisplaysByLocale(List<LocalizedText> names) {
+        Map<String, String> displays = new LinkedHashMap<>();
+        names.stream()
+                .sorted(Comparator.comparing(LocalizedText::getLocalePreferred, Comparator.nullsLast(Comparator.reverseOrder())))
+                .filter(name -> isValid(name.getLocale()) && name.getName() != null)
+                .forEach(name -> displays.putIfAbsent(name.getLocale(), name.getName()));
+        return displays;
+    }
+
     public Optional<String> getDisplayForLanguage(List<LocalizedText> names, String displayLanguage) {
         return names.stream()
                 .sorted(Comparator.comparing(LocalizedText::getLocalePreferred, Comparator.reverseOrder()))
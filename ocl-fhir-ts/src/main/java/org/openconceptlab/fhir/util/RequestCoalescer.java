@@ -0,0 +1,186 @@
+package org.openconceptlab.fhir.util;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLTimeoutException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * The RequestCoalescer. Collapses identical in-flight read requests into one computation, the first request of a key
+ * computes the result and the requests that arrive while it runs wait for it instead of repeating the same queries.
+ * Nothing is kept once the computation completes, a request that arrives afterwards computes again. Waiters receive
+ * their own copy of the result, and their own exception if the computation failed.
+ * <p>
+ * A waiter waits no longer than the deadline of its {@link QueryScope} and {@code ocl.coalescing.max-wait-ms}. When the
+ * computation was cancelled or timed out with the request that ran it, the waiters do not fail with it but start over,
+ * one of them computing the result again.
+ * @author harpatel1
+ */
+@Component
+public class RequestCoalescer {
+
+    private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+    // completes the flight of a computation that failed for reasons of its own request only
+    private static final Object RETRY = new Object();
+
+    private final boolean enabled;
+    private final long maxWaitMillis;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(@Value("${ocl.coalescing.enabled:true}") boolean enabled,
+                            @Value("${ocl.coalescing.max-wait-ms:60000}") long maxWaitMillis) {
+        this.enabled = enabled;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Returns the result of the computation, shared with the identical requests of the same key that are in flight.
+     * @param key - the operation and its normalized parameters, see {@link #key(String, Object...)}
+     * @param computation - computes the result, runs on the thread of the first request
+     * @param copy - copies the shared result for each waiting request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String key, Supplier<T> computation, UnaryOperator<T> copy) {
+        if (!enabled) return computation.get();
+        QueryScope scope = QueryScope.current();
+        long waitMillis = scope != null ? Math.min(maxWaitMillis, scope.getRemainingMillis()) : maxWaitMillis;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (true) {
+            Flight mine = new Flight();
+            Flight flight = inFlight.compute(key, (k, existing) -> {
+                if (existing == null) return mine;
+                existing.waiters++;
+                return existing;
+            });
+            if (flight == mine) return lead(key, mine, computation, copy);
+            Object result;
+            try {
+                result = await(flight, deadline - System.nanoTime());
+            } catch (TimeoutException e) {
+                if (scope != null && scope.getRemainingMillis() == 0) {
+                    scope.cancel();
+                    throw new InternalErrorException("The request did not complete within " + scope.getTimeoutMillis()
+                            + " ms while waiting for an identical request.");
+                }
+                // the identical request takes longer than a request waits, this one computes on its own
+                return computation.get();
+            }
+            if (result != RETRY) return copy.apply((T) result);
+        }
+    }
+
+    private <T> T lead(String key, Flight mine, Supplier<T> computation, UnaryOperator<T> copy) {
+        final T result;
+        try {
+            result = computation.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, mine);
+            if (isOwnFailure(e)) mine.result.complete(RETRY);
+            else mine.result.completeExceptionally(e);
+            throw e;
+        }
+        // no request can join once the flight is removed, the waiters copy from a copy that nobody else holds
+        inFlight.remove(key, mine);
+        mine.result.complete(mine.waiters > 0 ? copy.apply(result) : result);
+        return result;
+    }
+
+    /**
+     * Returns true if the failure belongs to the request that ran the computation, its statements were cancelled or
+     * timed out, rather than to the computation itself.
+     */
+    private static boolean isOwnFailure(Throwable failure) {
+        QueryScope scope = QueryScope.current();
+        if (scope != null && scope.isCancelled()) return true;
+        if (Thread.currentThread().isInterrupted()) return true;
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTimeoutException || cause instanceof QueryTimeoutException) return true;
+            if (cause instanceof BaseServerResponseException
+                    && ((BaseServerResponseException) cause).getStatusCode() == STATUS_SERVICE_UNAVAILABLE) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key of the given operation and parameters. FHIR primitives are keyed by value, collections are
+     * order insensitive and null parameters are keyed as absent.
+     */
+    public static String key(String operation, Object... parameters) {
+        StringBuilder key = new StringBuilder(operation);
+        for (Object parameter : parameters) {
+            String value = value(parameter);
+            // length prefixed so that values containing a separator cannot collide
+            key.append('|').append(value.length()).append(':').append(value);
+        }
+        return key.toString();
+    }
+
+    private static String value(Object parameter) {
+        if (parameter == null) return "";
+        if (parameter instanceof IPrimitiveType) {
+            String value = ((IPrimitiveType<?>) parameter).getValueAsString();
+            return value == null ? "" : value;
+        }
+        if (parameter instanceof Coding) {
+            Coding coding = (Coding) parameter;
+            return key("coding", coding.getSystem(), coding.getVersion(), coding.getCode(), coding.getDisplay());
+        }
+        if (parameter instanceof Collection) {
+            return ((Collection<?>) parameter).stream().map(RequestCoalescer::value)
+                    .map(value -> value.length() + ":" + value).sorted()
+                    .collect(Collectors.joining(",", "[", "]"));
+        }
+        return parameter.toString();
+    }
+
+    private static Object await(Flight flight, long timeoutNanos) throws TimeoutException {
+        try {
+            return flight.result.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while waiting for an identical request.", e);
+        } catch (ExecutionException e) {
+            throw failure(e.getCause());
+        }
+    }
+
+    /**
+     * Returns a new exception for a waiter, the exception of the computation is thrown by the request that ran it.
+     */
+    private static RuntimeException failure(Throwable cause) {
+        if (cause instanceof BaseServerResponseException) {
+            BaseServerResponseException original = (BaseServerResponseException) cause;
+            BaseServerResponseException failure = BaseServerResponseException.newInstance(original.getStatusCode(),
+                    original.getMessage());
+            failure.initCause(original);
+            if (original.getOperationOutcome() instanceof OperationOutcome)
+                failure.setOperationOutcome(((OperationOutcome) original.getOperationOutcome()).copy());
+            original.getResponseHeaders().forEach((name, values) -> values.forEach(v -> failure.addResponseHeader(name, v)));
+            return failure;
+        }
+        return new InternalErrorException(cause.getMessage(), cause);
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        // only changed within compute of the flight's key
+        private volatile int waiters;
+    }
+}
@@ -0,0 +1,10 @@
+-- Preferred display per concept and locale, written by the FHIR service when it writes concepts (see
+-- ConceptDisplayRepository). The table is not part of oclapi2 and is not created by the service, apply this script to
+-- the oclapi2 database once to enable the displays. Concepts written before, or by other clients, have no rows and are
+-- read from their names.
+create table if not exists concepts_displays (
+    concept_id bigint not null,
+    locale varchar(20) not null,
+    display text not null,
+    primary key (concept_id, locale)
+);
@@ -11,6 +11,8 @@ import org.openconceptlab.fhir.converter.ValueSetConverter;
 import org.openconceptlab.fhir.model.Collection;
 import org.openconceptlab.fhir.model.Organization;
 import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.TextRow;
 import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
 import org.openconceptlab.fhir.provider.OclCapabilityStatementProvider;
 import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
@@ -165,6 +167,9 @@ public class OclFhirTest {
     @Mock
     protected ResultSet resultSet;
 
+    @Mock
+    protected ConceptDisplayRepository conceptDisplayRepository;
+
     @Spy
     protected OclCapabilityStatementProvider capabilityStatementProvider;
 
@@ -211,6 +216,7 @@ public class OclFhirTest {
         oclFhirUtil.setBaseUrl("http://test.org");
         ValueSetConverter converter = new TestValueSetConverter(sourceRepository, conceptRepository, oclFhirUtil, oclUser, conceptsSourceRepository, dataSource,
                 authtokenRepository, userProfilesOrganizationRepository, organizationRepository, userRepository, collectionRepository);
+        converter.setConceptDisplayRepository(conceptDisplayRepository);
         return spy(new ValueSetResourceProvider(null, null, collectionRepository, converter, null, oclFhirUtil));
     }
 
@@ -267,6 +273,7 @@ public class OclFhirTest {
         CodeSystemConverter converter = new TestCodeSystemConverter(sourceRepository, conceptRepository, oclFhirUtil,
                 oclUser, conceptsSourceRepository, dataSource, authtokenRepository, userProfilesOrganizationRepository,
                 organizationRepository, userRepository);
+        converter.setConceptDisplayRepository(conceptDisplayRepository);
         return new CodeSystemResourceProvider(sourceRepository, converter, null, null, null, oclFhirUtil);
     }
 
@@ -394,6 +401,26 @@ public class OclFhirTest {
         return new ArrayList<>(Arrays.asList(concept));
     }
 
+    protected List<ConceptRow> conceptRows(Concept... concepts) {
+        List<ConceptRow> rows = new ArrayList<>();
+        for (Concept c : concepts) {
+            rows.add(new ConceptRow(c.getId(), c.getMnemonic(), c.getVersion(), c.getRetired(), c.getConceptClass(),
+                    c.getDatatype()));
+        }
+        return rows;
+    }
+
+    protected List<TextRow> nameRows(Concept... concepts) {
+        List<TextRow> rows = new ArrayList<>();
+        for (Concept c : concepts) {
+            for (ConceptsName name : c.getConceptsNames()) {
+                LocalizedText text = name.getLocalizedText();
+                rows.add(new TextRow(c.getId(), text.getName(), text.getLocale(), text.getLocalePreferred(), text.getType()));
+            }
+        }
+        return rows;
+    }
+
     protected void populateSource1(Source source1) {
         source1.setCanonicalUrl(URL_SOURCE_1);
         source1.setMnemonic(SOURCE_1);
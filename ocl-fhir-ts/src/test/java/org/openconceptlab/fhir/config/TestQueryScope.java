@@ -0,0 +1,109 @@
+package org.openconceptlab.fhir.config;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class TestQueryScope {
+
+    @After
+    public void after() {
+        QueryScope scope = QueryScope.current();
+        if (scope != null) scope.close();
+    }
+
+    @Test
+    public void testOpen_current() {
+        assertNull(QueryScope.current());
+        QueryScope scope = QueryScope.open(0);
+        assertSame(scope, QueryScope.current());
+        assertEquals(Long.MAX_VALUE, scope.getRemainingMillis());
+        scope.close();
+        assertNull(QueryScope.current());
+    }
+
+    @Test
+    public void testBind_restoresPreviousScope() throws Exception {
+        QueryScope bound = QueryScope.open(0);
+        QueryScope previous = QueryScope.open(0);
+        Callable<QueryScope> task = bound.bind(QueryScope::current);
+
+        assertSame(bound, task.call());
+        assertSame(previous, QueryScope.current());
+
+        // also when the task fails
+        try {
+            bound.bind(() -> {
+                throw new IllegalStateException("failed");
+            }).call();
+            fail("Expected IllegalStateException.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertSame(previous, QueryScope.current());
+    }
+
+    @Test
+    public void testBind_noPreviousScope() throws Exception {
+        QueryScope bound = QueryScope.open(0);
+        bound.close();
+        assertNull(QueryScope.current());
+
+        assertSame(bound, bound.bind(QueryScope::current).call());
+        assertNull(QueryScope.current());
+    }
+
+    @Test
+    public void testCancel_registeredStatements() throws Exception {
+        QueryScope scope = QueryScope.open(0);
+        Statement statement1 = mock(Statement.class);
+        Statement statement2 = mock(Statement.class);
+        scope.register(statement1);
+        scope.register(statement2);
+        scope.cancel();
+        assertTrue(scope.isCancelled());
+        verify(statement1).cancel();
+        verify(statement2).cancel();
+    }
+
+    @Test
+    public void testRegister_afterCancel() throws Exception {
+        QueryScope scope = QueryScope.open(0);
+        scope.cancel();
+        Statement statement = mock(Statement.class);
+        try {
+            scope.register(statement);
+            fail("Expected SQLTimeoutException.");
+        } catch (SQLTimeoutException e) {
+            // expected
+        }
+        verify(statement).close();
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        QueryScope scope = QueryScope.open(50);
+        Statement statement = mock(Statement.class);
+        scope.register(statement);
+        verify(statement, timeout(5000).times(1)).cancel();
+        assertTrue(scope.isCancelled());
+        assertEquals(0, scope.getRemainingMillis());
+    }
+
+    @Test
+    public void testClose_beforeDeadline() throws Exception {
+        QueryScope scope = QueryScope.open(50);
+        Statement statement = mock(Statement.class);
+        scope.register(statement);
+        scope.close();
+        Thread.sleep(150);
+        assertFalse(scope.isCancelled());
+        verify(statement, never()).cancel();
+    }
+}
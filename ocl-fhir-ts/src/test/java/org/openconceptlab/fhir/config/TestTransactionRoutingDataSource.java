@@ -0,0 +1,173 @@
+package org.openconceptlab.fhir.config;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openconceptlab.fhir.config.TransactionRoutingDataSource.Route;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TestTransactionRoutingDataSource {
+
+    private final DataSource write = mock(DataSource.class);
+    private final DataSource read = mock(DataSource.class);
+    private TransactionRoutingDataSource routing;
+
+    @After
+    public void after() throws Exception {
+        endTransaction();
+        if (routing != null) routing.close();
+    }
+
+    @Test
+    public void testRoute_noTransaction() throws Exception {
+        routing = routing(replica(0), 200);
+        awaitReplicaUsable();
+        assertEquals(Route.READ, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_readWriteTransaction() throws Exception {
+        routing = routing(replica(0), 200);
+        awaitReplicaUsable();
+        beginTransaction(false);
+        assertEquals(Route.WRITE, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_readOnlyTransaction() throws Exception {
+        routing = routing(replica(0), 200);
+        awaitReplicaUsable();
+        beginTransaction(true);
+        assertEquals(Route.REPLICA, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_readOnlyTransaction_afterWrite() throws Exception {
+        routing = routing(replica(0), 200);
+        awaitReplicaUsable();
+        beginTransaction(false);
+        routing.determineCurrentLookupKey();
+        Thread.sleep(250);
+        // the window starts again when the write completes
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        endTransaction();
+
+        // reads within max-lag of the write may not see it on the replica, whatever source they read
+        beginTransaction(true);
+        assertEquals(Route.READ, routing.determineCurrentLookupKey());
+        Thread.sleep(250);
+        assertEquals(Route.REPLICA, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_replicaLagging() throws Exception {
+        DataSource replica = replica(1000);
+        routing = routing(replica, 200);
+        verify(replica, timeout(5000).atLeast(2)).getConnection();
+        assertFalse(routing.isReplicaUsable());
+        beginTransaction(true);
+        assertEquals(Route.READ, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_replicaUnreachable() throws Exception {
+        DataSource replica = mock(DataSource.class);
+        when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+        routing = routing(replica, 200);
+        verify(replica, timeout(5000).atLeast(2)).getConnection();
+        assertFalse(routing.isReplicaUsable());
+        beginTransaction(true);
+        assertEquals(Route.READ, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testRoute_noReplica() {
+        routing = routing(null, 200);
+        beginTransaction(true);
+        assertEquals(Route.READ, routing.determineCurrentLookupKey());
+        endTransaction();
+        beginTransaction(false);
+        assertEquals(Route.WRITE, routing.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void testDataSource_connectionOfTransaction() throws Exception {
+        // the physical connection is fetched once it is used, after the transaction has been marked read-only
+        Connection writeConnection = connection();
+        Connection readConnection = connection();
+        when(write.getConnection()).thenReturn(writeConnection);
+        when(read.getConnection()).thenReturn(readConnection);
+        routing = routing(null, 200);
+        DataSource dataSource = new DataSourceConfig().dataSource(routing);
+
+        beginTransaction(false);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement();
+        }
+        verify(writeConnection, times(1)).createStatement();
+        endTransaction();
+
+        beginTransaction(true);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement();
+        }
+        verify(readConnection, times(1)).createStatement();
+    }
+
+    private TransactionRoutingDataSource routing(DataSource replica, long maxLagMillis) {
+        TransactionRoutingDataSource routing = new TransactionRoutingDataSource(write, read, replica, maxLagMillis, 10);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    private void awaitReplicaUsable() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!routing.isReplicaUsable() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(routing.isReplicaUsable());
+    }
+
+    private static DataSource replica(long lagMillis) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true);
+        when(rs.getLong(1)).thenReturn(lagMillis);
+        Statement statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        DataSource replica = mock(DataSource.class);
+        when(replica.getConnection()).thenReturn(connection);
+        return replica;
+    }
+
+    private static Connection connection() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_READ_COMMITTED);
+        return connection;
+    }
+
+    private static void beginTransaction(boolean readOnly) {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    }
+
+    private static void endTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clear();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+}
@@ -0,0 +1,112 @@
+package org.openconceptlab.fhir.controller;
+
+import ca.uhn.fhir.rest.api.Constants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor;
+import org.openconceptlab.fhir.interceptor.OclFhirQueryTimeoutInterceptor;
+import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.Writer;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.openconceptlab.fhir.util.OclFhirConstants.APPLICATION_NDJSON;
+
+public class TestBaseOclFhirController {
+
+    @Mock
+    private CodeSystemResourceProvider codeSystemResourceProvider;
+
+    private BaseOclFhirController controller;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+        controller = new BaseOclFhirController(codeSystemResourceProvider, null, null, null, null);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orgs/OCL/CodeSystem/cs1/$export");
+        request.setRemoteAddr("10.0.0.1");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @After
+    public void after() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testExportCodeSystem_streamsConcepts() throws Exception {
+        controller.setAdmissionInterceptor(admissionInterceptor(1));
+        controller.setQueryTimeoutInterceptor(queryTimeoutInterceptor(600000));
+        AtomicReference<QueryScope> scope = new AtomicReference<>();
+        when(codeSystemResourceProvider.exportCodeSystem(any(), any(), any(), any())).thenAnswer(i -> {
+            scope.set(QueryScope.current());
+            Writer writer = i.getArgument(3);
+            writer.write("{\"code\":\"A\"}\n");
+            return 1L;
+        });
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.handleExportCodeSystem("OCL", "cs1", Optional.of("v1.0"), response);
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentType().startsWith(APPLICATION_NDJSON));
+        assertEquals("{\"code\":\"A\"}\n", response.getContentAsString());
+        assertNotNull(scope.get());
+        assertEquals(600000, scope.get().getTimeoutMillis());
+        assertNull(QueryScope.current());
+
+        // the export permit has been released
+        response = new MockHttpServletResponse();
+        controller.handleExportCodeSystem("OCL", "cs1", Optional.of("v1.0"), response);
+        assertEquals(200, response.getStatus());
+        verify(codeSystemResourceProvider, times(2)).exportCodeSystem(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testExportCodeSystem_rejected() throws Exception {
+        controller.setAdmissionInterceptor(admissionInterceptor(0));
+        controller.setQueryTimeoutInterceptor(queryTimeoutInterceptor(600000));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.handleExportCodeSystem("OCL", "cs1", Optional.empty(), response);
+        assertEquals(429, response.getStatus());
+        assertEquals("2", response.getHeader(Constants.HEADER_RETRY_AFTER));
+        verify(codeSystemResourceProvider, never()).exportCodeSystem(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testExportCodeSystem_timedOut() throws Exception {
+        controller.setAdmissionInterceptor(admissionInterceptor(1));
+        controller.setQueryTimeoutInterceptor(queryTimeoutInterceptor(50));
+        when(codeSystemResourceProvider.exportCodeSystem(any(), any(), any(), any())).thenAnswer(i -> {
+            while (!QueryScope.current().isCancelled())
+                Thread.sleep(5);
+            throw new QueryTimeoutException("canceling statement due to user request");
+        });
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.handleExportCodeSystem("OCL", "cs1", Optional.empty(), response);
+        assertEquals(503, response.getStatus());
+        assertNull(QueryScope.current());
+    }
+
+    private static OclFhirAdmissionInterceptor admissionInterceptor(int exportLimit) {
+        return new OclFhirAdmissionInterceptor(true, 2, exportLimit, 8, 16, 64, 8, 0, 2);
+    }
+
+    private static OclFhirQueryTimeoutInterceptor queryTimeoutInterceptor(long exportMillis) {
+        return new OclFhirQueryTimeoutInterceptor(true, 1800000, exportMillis, 60000, 30000, 10000);
+    }
+}
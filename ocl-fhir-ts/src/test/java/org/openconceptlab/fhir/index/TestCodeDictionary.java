@@ -0,0 +1,110 @@
+package org.openconceptlab.fhir.index;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCodeDictionary {
+
+    @Test
+    public void testIntern_denseIds() {
+        CodeDictionary dictionary = new CodeDictionary();
+        assertEquals(0, dictionary.intern("A"));
+        assertEquals(1, dictionary.intern("B"));
+        assertEquals(0, dictionary.intern("A"));
+        assertEquals(2, dictionary.size());
+        assertEquals(0, dictionary.id("A"));
+        assertEquals(1, dictionary.id("B"));
+        assertEquals("A", dictionary.get(0));
+        assertEquals("B", dictionary.get(1));
+    }
+
+    @Test
+    public void testIntern_null() {
+        CodeDictionary dictionary = new CodeDictionary();
+        assertEquals(CodeDictionary.ABSENT, dictionary.intern(null));
+        assertEquals(CodeDictionary.ABSENT, dictionary.id(null));
+        assertNull(dictionary.get(CodeDictionary.ABSENT));
+        assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void testId_absent() {
+        CodeDictionary dictionary = new CodeDictionary();
+        dictionary.intern("A");
+        assertEquals(CodeDictionary.ABSENT, dictionary.id("B"));
+        assertEquals(CodeDictionary.ABSENT, dictionary.id(""));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void testIntern_emptyAndMultiByte() {
+        CodeDictionary dictionary = new CodeDictionary();
+        int empty = dictionary.intern("");
+        int accented = dictionary.intern("Trastorno alérgico");
+        int cjk = dictionary.intern("过敏性疾病");
+        assertEquals("", dictionary.get(empty));
+        assertEquals("Trastorno alérgico", dictionary.get(accented));
+        assertEquals("过敏性疾病", dictionary.get(cjk));
+        assertEquals(accented, dictionary.id("Trastorno alérgico"));
+    }
+
+    @Test
+    public void testIntern_acrossRehash() {
+        // starts with the minimum capacity, the ids, bytes and table grow and are rehashed several times
+        CodeDictionary dictionary = new CodeDictionary(1);
+        List<String> values = values(10000);
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, dictionary.intern(values.get(i)));
+        }
+        assertEquals(values.size(), dictionary.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, dictionary.id(values.get(i)));
+            assertEquals(values.get(i), dictionary.get(i));
+            assertEquals(i, dictionary.intern(values.get(i)));
+        }
+        assertEquals(values.size(), dictionary.size());
+    }
+
+    @Test
+    public void testTrim() {
+        CodeDictionary dictionary = new CodeDictionary(1000);
+        List<String> values = values(100);
+        values.forEach(dictionary::intern);
+        dictionary.trim();
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, dictionary.id(values.get(i)));
+            assertEquals(values.get(i), dictionary.get(i));
+        }
+        assertEquals(CodeDictionary.ABSENT, dictionary.id("absent"));
+
+        // a trimmed dictionary can still grow
+        List<String> more = values(200).subList(100, 200);
+        more.forEach(dictionary::intern);
+        assertEquals(200, dictionary.size());
+        assertEquals(150, dictionary.id(more.get(50)));
+        assertEquals(values.get(99), dictionary.get(99));
+    }
+
+    @Test
+    public void testTrim_empty() {
+        CodeDictionary dictionary = new CodeDictionary();
+        dictionary.trim();
+        assertEquals(0, dictionary.size());
+        assertEquals(CodeDictionary.ABSENT, dictionary.id("A"));
+        assertEquals(0, dictionary.intern("A"));
+        assertEquals("A", dictionary.get(0));
+    }
+
+    private static List<String> values(int n) {
+        List<String> values = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            // codes of varying length that share prefixes
+            values.add("C" + i + (i % 7 == 0 ? "-" + "x".repeat(i % 50) : ""));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,145 @@
+package org.openconceptlab.fhir.index;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openconceptlab.fhir.model.Collection;
+import org.openconceptlab.fhir.model.CollectionReference;
+import org.openconceptlab.fhir.model.CollectionsReference;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.model.projection.MappingRow;
+import org.openconceptlab.fhir.repository.MappingRepository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.openconceptlab.fhir.util.OclFhirConstants.HEAD;
+
+public class TestIndexService {
+
+    @Mock
+    private MappingRepository mappingRepository;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+        when(mappingRepository.streamMappingRows(anyLong())).thenAnswer(i -> Stream.of(
+                new MappingRow("/orgs/OCL/sources/SRC/", null, "/orgs/OCL/sources/TGT/", null, "A", null, "X", null,
+                        null, "Name X", "SAME-AS", "v1.0", "v2.0")));
+    }
+
+    @Test
+    public void testGetMembership() {
+        IndexService service = new IndexService(mappingRepository, true, 64);
+        Collection collection = collection(1L, "v1.0", true, 1000L, "/orgs/OCL/sources/SRC/v1.0/concepts/C1/");
+        Optional<ValueSetMembership> membership = service.getMembership(collection);
+        assertTrue(membership.isPresent());
+        assertTrue(membership.get().contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+        // cached
+        assertSame(membership.get(), service.getMembership(collection).get());
+    }
+
+    @Test
+    public void testGetMembership_updatedCollection() {
+        IndexService service = new IndexService(mappingRepository, true, 64);
+        Collection collection = collection(1L, "v1.0", true, 1000L, "/orgs/OCL/sources/SRC/v1.0/concepts/C1/");
+        ValueSetMembership membership = service.getMembership(collection).get();
+
+        Collection updated = collection(1L, "v1.0", true, 2000L, "/orgs/OCL/sources/SRC/v1.0/concepts/C2/");
+        ValueSetMembership updatedMembership = service.getMembership(updated).get();
+        assertNotSame(membership, updatedMembership);
+        assertTrue(updatedMembership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C2/"));
+        assertFalse(updatedMembership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+    }
+
+    @Test
+    public void testGetMembership_notIndexed() {
+        IndexService service = new IndexService(mappingRepository, true, 64);
+        assertFalse(service.getMembership(collection(1L, HEAD, true, 1000L)).isPresent());
+        assertFalse(service.getMembership(collection(1L, "v1.0", false, 1000L)).isPresent());
+        assertFalse(service.getMembership(null).isPresent());
+        assertFalse(new IndexService(mappingRepository, false, 64)
+                .getMembership(collection(1L, "v1.0", true, 1000L)).isPresent());
+    }
+
+    @Test
+    public void testGetMappingIndex() {
+        IndexService service = new IndexService(mappingRepository, true, 64);
+        Source source = source(1L, "v1.0", true, 1000L);
+        MappingIndex index = service.getMappingIndex(source).get();
+        assertEquals(1, index.size());
+        assertEquals("X", index.find("A").get(0).getToConceptCode());
+        // cached, the mappings are read once
+        assertSame(index, service.getMappingIndex(source).get());
+        verify(mappingRepository, times(1)).streamMappingRows(1L);
+
+        // indexed again once the source is updated
+        assertNotSame(index, service.getMappingIndex(source(1L, "v1.0", true, 2000L)).get());
+        verify(mappingRepository, times(2)).streamMappingRows(1L);
+    }
+
+    @Test
+    public void testGetMappingIndex_notIndexed() {
+        IndexService service = new IndexService(mappingRepository, true, 64);
+        assertFalse(service.getMappingIndex(source(1L, HEAD, true, 1000L)).isPresent());
+        assertFalse(service.getMappingIndex(source(1L, "v1.0", false, 1000L)).isPresent());
+        assertFalse(service.getMappingIndex(null).isPresent());
+        assertFalse(new IndexService(mappingRepository, false, 64)
+                .getMappingIndex(source(1L, "v1.0", true, 1000L)).isPresent());
+        verify(mappingRepository, never()).streamMappingRows(anyLong());
+    }
+
+    @Test
+    public void testGetMappingIndex_leastRecentlyUsedEvicted() {
+        IndexService service = new IndexService(mappingRepository, true, 2);
+        Source source1 = source(1L, "v1.0", true, 1000L);
+        Source source2 = source(2L, "v1.0", true, 1000L);
+        Source source3 = source(3L, "v1.0", true, 1000L);
+        service.getMappingIndex(source1);
+        service.getMappingIndex(source2);
+        service.getMappingIndex(source1);
+        service.getMappingIndex(source3);
+
+        // source2 was used least recently and is indexed again, source1 is still cached
+        service.getMappingIndex(source1);
+        service.getMappingIndex(source2);
+        verify(mappingRepository, times(1)).streamMappingRows(1L);
+        verify(mappingRepository, times(2)).streamMappingRows(2L);
+        verify(mappingRepository, times(1)).streamMappingRows(3L);
+    }
+
+    private static Collection collection(Long id, String version, boolean released, long updatedAt, String... expressions) {
+        Collection collection = new Collection();
+        collection.setId(id);
+        collection.setVersion(version);
+        collection.setReleased(released);
+        collection.setUpdatedAt(new Timestamp(updatedAt));
+        List<CollectionsReference> references = new ArrayList<>();
+        for (String expression : expressions) {
+            CollectionReference reference = new CollectionReference();
+            reference.setExpression(expression);
+            CollectionsReference collectionsReference = new CollectionsReference();
+            collectionsReference.setCollectionReference(reference);
+            references.add(collectionsReference);
+        }
+        collection.setCollectionsReferences(references);
+        return collection;
+    }
+
+    private static Source source(Long id, String version, boolean released, long updatedAt) {
+        Source source = new Source();
+        source.setId(id);
+        source.setMnemonic("SRC");
+        source.setVersion(version);
+        source.setReleased(released);
+        source.setUpdatedAt(new Timestamp(updatedAt));
+        return source;
+    }
+}
@@ -0,0 +1,103 @@
+package org.openconceptlab.fhir.index;
+
+import org.junit.Test;
+import org.openconceptlab.fhir.model.projection.MappingRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class TestMappingIndex {
+
+    private static final String FROM_URL = "/orgs/OCL/sources/SRC/";
+    private static final String TO_URL = "/orgs/OCL/sources/TGT/";
+
+    @Test
+    public void testFind() {
+        MappingIndex index = MappingIndex.of(Arrays.asList(
+                row(FROM_URL, "A", TO_URL, "X", "Name X", "SAME-AS", "v1.0", "v2.0"),
+                row(FROM_URL, "B", TO_URL, "Y", "Name Y", "NARROWER-THAN", null, null),
+                row(FROM_URL, "A", TO_URL, "Z", "Name Z", "BROADER-THAN", "v1.0", null)
+        ).iterator());
+        assertEquals(3, index.size());
+
+        List<MappingRow> mappings = index.find("A");
+        assertEquals(2, mappings.size());
+        MappingRow first = mappings.get(0);
+        assertEquals(FROM_URL, first.getFromSourceUrl());
+        assertEquals("A", first.getFromConceptCode());
+        assertEquals(TO_URL, first.getToSourceUrl());
+        assertEquals("X", first.getToConceptCode());
+        assertEquals("Name X", first.getToConceptName());
+        assertEquals("SAME-AS", first.getMapType());
+        assertEquals("v1.0", first.getFromSourceVersion());
+        assertEquals("v2.0", first.getToSourceVersion());
+        // not kept
+        assertNull(first.getFromSourceCanonicalUrl());
+        assertNull(first.getFromConceptName());
+        assertEquals("Z", mappings.get(1).getToConceptCode());
+        assertNull(mappings.get(1).getToSourceVersion());
+
+        assertEquals(1, index.find("B").size());
+        assertNull(index.find("B").get(0).getFromSourceVersion());
+        assertTrue(index.find("C").isEmpty());
+        assertTrue(index.find(null).isEmpty());
+    }
+
+    @Test
+    public void testOf_skipsRowsWithoutFromCode() {
+        MappingIndex index = MappingIndex.of(Arrays.asList(
+                row(FROM_URL, null, TO_URL, "X", "Name X", "SAME-AS", null, null),
+                row(FROM_URL, "A", TO_URL, "Y", "Name Y", "SAME-AS", null, null)
+        ).iterator());
+        assertEquals(1, index.size());
+        assertEquals("Y", index.find("A").get(0).getToConceptCode());
+    }
+
+    @Test
+    public void testOf_empty() {
+        MappingIndex index = MappingIndex.of(Collections.emptyIterator());
+        assertEquals(0, index.size());
+        assertTrue(index.find("A").isEmpty());
+    }
+
+    @Test
+    public void testFind_matchesFindMappingsForCode() {
+        // more rows than the initial capacity, in random code order
+        Random random = new Random(42);
+        List<MappingRow> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String code = "C" + random.nextInt(700);
+            rows.add(row(random.nextBoolean() ? FROM_URL : "http://test.org/src", code, TO_URL, "T" + i, "Name " + i,
+                    random.nextBoolean() ? "SAME-AS" : "NARROWER-THAN", random.nextBoolean() ? "v1.0" : null, "v2.0"));
+        }
+        MappingIndex index = MappingIndex.of(rows.iterator());
+        assertEquals(rows.size(), index.size());
+        for (int i = 0; i < 700; i++) {
+            String code = "C" + i;
+            // same rows as MappingRepository#findMappingsForCode on the latest mappings, in the order of the source rows
+            List<String> expected = rows.stream().filter(r -> code.equals(r.getFromConceptCode()))
+                    .map(TestMappingIndex::columns).collect(Collectors.toList());
+            assertEquals(expected, index.find(code).stream().map(TestMappingIndex::columns).collect(Collectors.toList()));
+        }
+    }
+
+    private static MappingRow row(String fromUrl, String fromCode, String toUrl, String toCode, String toName,
+                                  String mapType, String fromVersion, String toVersion) {
+        return new MappingRow(fromUrl, "http://canonical/from", toUrl, "http://canonical/to", fromCode, fromCode, toCode,
+                toCode, "From name", toName, mapType, fromVersion, toVersion);
+    }
+
+    // the columns read by $translate
+    private static String columns(MappingRow row) {
+        return Arrays.asList(row.getFromSourceUrl(), row.getFromSourceVersion(), row.getFromConceptCode(),
+                row.getToSourceUrl(), row.getToSourceVersion(), row.getToConceptCode(), row.getToConceptName(),
+                row.getMapType()).stream().map(Objects::toString).collect(Collectors.joining("|"));
+    }
+}
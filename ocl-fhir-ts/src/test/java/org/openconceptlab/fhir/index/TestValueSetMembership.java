@@ -0,0 +1,72 @@
+package org.openconceptlab.fhir.index;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TestValueSetMembership {
+
+    @Test
+    public void testContains() {
+        ValueSetMembership membership = ValueSetMembership.of(Arrays.asList(
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C1/",
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C2/",
+                "/orgs/OCL/sources/SRC2/v2.0/concepts/C1/"
+        ));
+        assertEquals(3, membership.size());
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C2/"));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC2/v2.0/concepts/C1/"));
+        // code and source are known but not as this pair
+        assertFalse(membership.contains("/orgs/OCL/sources/SRC2/v2.0/concepts/C2/"));
+        assertFalse(membership.contains("/orgs/OCL/sources/SRC/v2.0/concepts/C1/"));
+        assertFalse(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C3/"));
+    }
+
+    @Test
+    public void testContains_conceptVersion() {
+        ValueSetMembership membership = ValueSetMembership.of(Arrays.asList(
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C1/123/",
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C2/"
+        ));
+        // the concept version is ignored on both sides
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/456/"));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C2/789/"));
+    }
+
+    @Test
+    public void testContains_trailingSlash() {
+        ValueSetMembership membership = ValueSetMembership.of(Arrays.asList(
+                "orgs/OCL/sources/SRC/v1.0/concepts/C1",
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C2/"
+        ));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C2"));
+        assertTrue(membership.contains(" orgs/OCL/sources/SRC/v1.0/concepts/C2 "));
+    }
+
+    @Test
+    public void testOf_invalidExpressions() {
+        ValueSetMembership membership = ValueSetMembership.of(Arrays.asList(
+                "/orgs/OCL/sources/SRC/v1.0/",
+                "/orgs/OCL/sources/SRC/v1.0/concepts/",
+                null,
+                "/orgs/OCL/sources/SRC/v1.0/concepts/C1/"
+        ));
+        assertEquals(1, membership.size());
+        assertTrue(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+        assertFalse(membership.contains("/orgs/OCL/sources/SRC/v1.0/"));
+        assertFalse(membership.contains(null));
+    }
+
+    @Test
+    public void testOf_empty() {
+        ValueSetMembership membership = ValueSetMembership.of(Collections.emptyList());
+        assertEquals(0, membership.size());
+        assertFalse(membership.contains("/orgs/OCL/sources/SRC/v1.0/concepts/C1/"));
+    }
+}
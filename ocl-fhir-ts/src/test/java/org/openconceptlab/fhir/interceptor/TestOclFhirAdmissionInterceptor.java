@@ -0,0 +1,168 @@
+package org.openconceptlab.fhir.interceptor;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.junit.Test;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.OperationClass;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.Permit;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.openconceptlab.fhir.util.OclFhirConstants.AUTHORIZATION;
+import static org.openconceptlab.fhir.util.OclFhirConstants.EXPAND;
+
+public class TestOclFhirAdmissionInterceptor {
+
+    private static final String LOOKUP = "$lookup";
+
+    @Test
+    public void testAdmit_classSaturated() {
+        OclFhirAdmissionInterceptor interceptor = interceptor(1, 8);
+        RequestDetails first = request("Token 1", null);
+        interceptor.admit(first, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+
+        UnclassifiedServerFailureException e = rejected(interceptor, request("Token 2", null),
+                RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertTrue(e.getMessage().contains("lookup"));
+        // other classes are not affected
+        interceptor.admit(request("Token 2", null), RestOperationTypeEnum.READ);
+
+        interceptor.release(first);
+        interceptor.admit(request("Token 2", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+    }
+
+    @Test
+    public void testAdmit_perClientLimit() {
+        OclFhirAdmissionInterceptor interceptor = interceptor(64, 2);
+        RequestDetails first = request("Token 1", null);
+        interceptor.admit(first, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        interceptor.admit(request("Token 1", null), RestOperationTypeEnum.READ);
+
+        UnclassifiedServerFailureException e = rejected(interceptor, request("Token 1", null),
+                RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertTrue(e.getMessage().contains("client"));
+        // other clients are admitted
+        interceptor.admit(request("Token 2", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+
+        interceptor.release(first);
+        interceptor.admit(request("Token 1", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+    }
+
+    @Test
+    public void testAdmit_rejectionReleasesClientPermit() {
+        OclFhirAdmissionInterceptor interceptor = interceptor(1, 1);
+        RequestDetails first = request("Token 1", null);
+        interceptor.admit(first, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        rejected(interceptor, request("Token 2", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        // the client of the rejected request has no request in flight
+        RequestDetails second = request("Token 2", null);
+        interceptor.admit(second, RestOperationTypeEnum.READ);
+
+        interceptor.release(second);
+        interceptor.release(first);
+        interceptor.admit(request("Token 2", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+    }
+
+    @Test
+    public void testRelease_once() {
+        OclFhirAdmissionInterceptor interceptor = interceptor(1, 8);
+        RequestDetails first = request("Token 1", null);
+        interceptor.admit(first, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        interceptor.release(first);
+        interceptor.release(first);
+
+        Permit permit = interceptor.admit(OperationClass.LOOKUP, httpRequest("10.0.0.1", null));
+        permit.close();
+        permit.close();
+
+        interceptor.admit(request("Token 1", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        rejected(interceptor, request("Token 2", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+    }
+
+    @Test
+    public void testAdmit_notLimited() {
+        OclFhirAdmissionInterceptor interceptor = interceptor(0, 0);
+        RequestDetails details = request("Token 1", null);
+        interceptor.admit(details, RestOperationTypeEnum.METADATA);
+        assertTrue(details.getUserData().isEmpty());
+
+        OclFhirAdmissionInterceptor disabled = new OclFhirAdmissionInterceptor(false, 0, 0, 0, 0, 0, 0, 0, 2);
+        disabled.admit(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertTrue(details.getUserData().isEmpty());
+        assertNull(disabled.admit(OperationClass.EXPORT, httpRequest("10.0.0.1", null)));
+    }
+
+    @Test
+    public void testAdmit_clientOfForwardedRequest() {
+        OclFhirAdmissionInterceptor interceptor = new OclFhirAdmissionInterceptor(true, 2, 8, 8, 16, 64, 1, 0, 2);
+        // requests from the loopback address without a forwarded address are internal and not limited per client
+        interceptor.admit(OperationClass.EXPORT, httpRequest("127.0.0.1", null));
+        interceptor.admit(OperationClass.EXPORT, httpRequest("127.0.0.1", null));
+
+        // otherwise the first forwarded address is the client
+        interceptor.admit(OperationClass.EXPORT, httpRequest("127.0.0.1", "10.0.0.5, 127.0.0.1"));
+        try {
+            interceptor.admit(OperationClass.EXPORT, httpRequest("127.0.0.1", "10.0.0.5"));
+            fail("Expected UnclassifiedServerFailureException.");
+        } catch (UnclassifiedServerFailureException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+        interceptor.admit(OperationClass.EXPORT, httpRequest("10.0.0.6", null));
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(OperationClass.IMPORT, OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.CREATE, null));
+        assertEquals(OperationClass.IMPORT, OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.UPDATE, null));
+        assertEquals(OperationClass.EXPAND,
+                OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.EXTENDED_OPERATION_TYPE, EXPAND));
+        assertEquals(OperationClass.LOOKUP,
+                OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.EXTENDED_OPERATION_INSTANCE, LOOKUP));
+        assertEquals(OperationClass.SEARCH, OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.SEARCH_TYPE, null));
+        assertEquals(OperationClass.SEARCH, OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.READ, null));
+        assertNull(OclFhirAdmissionInterceptor.classify(RestOperationTypeEnum.METADATA, null));
+        assertNull(OclFhirAdmissionInterceptor.classify(null, null));
+    }
+
+    private static OclFhirAdmissionInterceptor interceptor(int lookupLimit, int perClient) {
+        return new OclFhirAdmissionInterceptor(true, 2, 2, 8, 16, lookupLimit, perClient, 0, 2);
+    }
+
+    private static UnclassifiedServerFailureException rejected(OclFhirAdmissionInterceptor interceptor,
+                                                               RequestDetails details, RestOperationTypeEnum type) {
+        try {
+            interceptor.admit(details, type);
+            fail("Expected UnclassifiedServerFailureException.");
+            return null;
+        } catch (UnclassifiedServerFailureException e) {
+            assertEquals(429, e.getStatusCode());
+            assertEquals(Collections.singletonList("2"), e.getResponseHeaders().get(Constants.HEADER_RETRY_AFTER));
+            assertTrue(details.getUserData().isEmpty());
+            return e;
+        }
+    }
+
+    private static RequestDetails request(String token, String operation) {
+        RequestDetails details = mock(RequestDetails.class);
+        Map<Object, Object> userData = new HashMap<>();
+        when(details.getUserData()).thenReturn(userData);
+        when(details.getHeader(AUTHORIZATION)).thenReturn(token);
+        when(details.getOperation()).thenReturn(operation != null ? operation : LOOKUP);
+        when(details.getCompleteUrl()).thenReturn("http://test.org/fhir/CodeSystem/$lookup");
+        return details;
+    }
+
+    private static MockHttpServletRequest httpRequest(String address, String forwarded) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/orgs/OCL/CodeSystem/cs1/$export");
+        request.setRemoteAddr(address);
+        if (forwarded != null) request.addHeader(OclFhirAdmissionInterceptor.X_FORWARDED_FOR, forwarded);
+        return request;
+    }
+}
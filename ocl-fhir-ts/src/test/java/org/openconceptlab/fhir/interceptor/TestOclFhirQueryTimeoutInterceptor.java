@@ -0,0 +1,141 @@
+package org.openconceptlab.fhir.interceptor;
+
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import org.junit.After;
+import org.junit.Test;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.config.QueryScopeDataSource;
+import org.openconceptlab.fhir.interceptor.OclFhirAdmissionInterceptor.OperationClass;
+import org.springframework.dao.QueryTimeoutException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.openconceptlab.fhir.util.OclFhirConstants.EXPAND;
+import static org.openconceptlab.fhir.util.OclFhirConstants.PREFER;
+
+public class TestOclFhirQueryTimeoutInterceptor {
+
+    @After
+    public void after() {
+        QueryScope scope = QueryScope.current();
+        if (scope != null) scope.close();
+    }
+
+    @Test
+    public void testGetPreferredWaitMillis() {
+        assertEquals(0, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis(null));
+        assertEquals(0, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis(""));
+        assertEquals(0, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("respond-async"));
+        assertEquals(5000, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("wait=5"));
+        assertEquals(5000, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("Wait= 5 "));
+        assertEquals(10000, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("respond-async, wait=10"));
+        assertEquals(2000, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("handling=lenient; wait=2"));
+        assertEquals(0, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("wait=soon"));
+        assertEquals(0, OclFhirQueryTimeoutInterceptor.getPreferredWaitMillis("wait=-1"));
+    }
+
+    @Test
+    public void testOpen_timeoutOfClass() {
+        OclFhirQueryTimeoutInterceptor interceptor = interceptor(10000);
+        RequestDetails details = request("$lookup", null);
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertEquals(10000, QueryScope.current().getTimeoutMillis());
+        interceptor.close(details);
+        assertNull(QueryScope.current());
+
+        details = request(EXPAND, null);
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertEquals(60000, QueryScope.current().getTimeoutMillis());
+        interceptor.close(details);
+    }
+
+    @Test
+    public void testOpen_preferredWait() {
+        OclFhirQueryTimeoutInterceptor interceptor = interceptor(10000);
+        RequestDetails details = request("$lookup", "wait=2");
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertEquals(2000, QueryScope.current().getTimeoutMillis());
+        interceptor.close(details);
+
+        // a wait longer than the timeout of the class does not extend it
+        details = request("$lookup", "wait=60");
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertEquals(10000, QueryScope.current().getTimeoutMillis());
+        interceptor.close(details);
+
+        // writes are not shortened
+        details = request(null, "wait=2");
+        interceptor.open(details, RestOperationTypeEnum.CREATE);
+        assertEquals(1800000, QueryScope.current().getTimeoutMillis());
+        interceptor.close(details);
+    }
+
+    @Test
+    public void testOpen_notLimited() {
+        RequestDetails details = request(null, null);
+        interceptor(10000).open(details, RestOperationTypeEnum.METADATA);
+        assertNull(QueryScope.current());
+
+        OclFhirQueryTimeoutInterceptor disabled = new OclFhirQueryTimeoutInterceptor(false, 1, 1, 1, 1, 1);
+        disabled.open(request("$lookup", null), RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        assertNull(QueryScope.current());
+        assertNull(disabled.open(OperationClass.EXPORT));
+    }
+
+    @Test
+    public void testTimedOut_statementCancelled() throws Exception {
+        Statement statement = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+        DataSource dataSource = new QueryScopeDataSource(target);
+
+        OclFhirQueryTimeoutInterceptor interceptor = interceptor(50);
+        RequestDetails details = request("$lookup", null);
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        dataSource.getConnection().createStatement();
+
+        verify(statement, timeout(5000).times(1)).cancel();
+        BaseServerResponseException response = interceptor.timedOut(details,
+                new QueryTimeoutException("canceling statement due to user request"));
+        assertNotNull(response);
+        assertEquals(503, response.getStatusCode());
+        assertTrue(response.getMessage().contains("50 ms"));
+        interceptor.close(details);
+        assertNull(QueryScope.current());
+    }
+
+    @Test
+    public void testTimedOut_notCancelled() {
+        OclFhirQueryTimeoutInterceptor interceptor = interceptor(10000);
+        RequestDetails details = request("$lookup", null);
+        interceptor.open(details, RestOperationTypeEnum.EXTENDED_OPERATION_TYPE);
+        // other failures are left to the server
+        assertNull(interceptor.timedOut(details, new IllegalStateException("failed")));
+        interceptor.close(details);
+        assertNull(interceptor.timedOut(request("$lookup", null), new IllegalStateException("failed")));
+    }
+
+    private static OclFhirQueryTimeoutInterceptor interceptor(long lookupMillis) {
+        return new OclFhirQueryTimeoutInterceptor(true, 1800000, 600000, 60000, 30000, lookupMillis);
+    }
+
+    private static RequestDetails request(String operation, String prefer) {
+        RequestDetails details = mock(RequestDetails.class);
+        Map<Object, Object> userData = new HashMap<>();
+        when(details.getUserData()).thenReturn(userData);
+        when(details.getOperation()).thenReturn(operation);
+        when(details.getHeader(PREFER)).thenReturn(prefer);
+        when(details.getCompleteUrl()).thenReturn("http://test.org/fhir/CodeSystem/$lookup");
+        return details;
+    }
+}
@@ -0,0 +1,139 @@
+package org.openconceptlab.fhir.job;
+
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openconceptlab.fhir.config.QueryScope;
+import org.openconceptlab.fhir.provider.ConceptMapResourceProvider;
+import org.openconceptlab.fhir.provider.ValueSetResourceProvider;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestExportJobService {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private ValueSetResourceProvider valueSetResourceProvider;
+
+    @Mock
+    private ConceptMapResourceProvider conceptMapResourceProvider;
+
+    private ExportJobService service;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After
+    public void after() {
+        if (service != null) service.close();
+    }
+
+    @Test
+    public void testValueSetExport_completed() throws Exception {
+        AtomicReference<QueryScope> scope = new AtomicReference<>();
+        when(valueSetResourceProvider.exportValueSet(any(), any(), any(), any(), any(), any(), any())).thenAnswer(i -> {
+            scope.set(QueryScope.current());
+            Writer writer = i.getArgument(6);
+            writer.write("{\"code\":\"A\"}\n");
+            writer.write("{\"code\":\"B\"}\n");
+            return 2L;
+        });
+        service = service(2, 8, 600000);
+        ExportJob job = service.submitValueSetExport("OCL", "vs1", Optional.of("v1.0"), true, true, null, "/ValueSet/vs1/$export");
+        awaitDone(job);
+
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(2, job.getCount());
+        assertEquals(Arrays.asList("{\"code\":\"A\"}", "{\"code\":\"B\"}"), Files.readAllLines(job.getFile(), StandardCharsets.UTF_8));
+        assertNotNull(scope.get());
+        assertEquals(600000, scope.get().getTimeoutMillis());
+        assertTrue(service.getJob(job.getId()).isPresent());
+    }
+
+    @Test
+    public void testConceptMapExport_completed() throws Exception {
+        when(conceptMapResourceProvider.exportConceptMap(any(), any(), any(), any())).thenAnswer(i -> {
+            Writer writer = i.getArgument(3);
+            writer.write("{\"source\":\"A\",\"target\":\"B\"}\n");
+            return 1L;
+        });
+        service = service(2, 8, 600000);
+        ExportJob job = service.submitConceptMapExport("OCL", "cm1", Optional.empty(), "/ConceptMap/cm1/$export");
+        awaitDone(job);
+
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(1, job.getCount());
+        assertEquals(1, Files.readAllLines(job.getFile(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testExport_timedOut() throws Exception {
+        when(conceptMapResourceProvider.exportConceptMap(any(), any(), any(), any())).thenAnswer(i -> {
+            // a cancelled statement fails the export
+            while (!QueryScope.current().isCancelled())
+                Thread.sleep(5);
+            throw new IllegalStateException("canceling statement due to user request");
+        });
+        service = service(2, 8, 50);
+        ExportJob job = service.submitConceptMapExport("OCL", "cm1", Optional.empty(), "/ConceptMap/cm1/$export");
+        awaitDone(job);
+
+        assertEquals(ExportJob.Status.FAILED, job.getStatus());
+        assertTrue(job.getError().getMessage().contains("50 ms"));
+        assertFalse(Files.exists(job.getFile()));
+    }
+
+    @Test
+    public void testSubmit_tooManyPending() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(conceptMapResourceProvider.exportConceptMap(any(), any(), any(), any())).thenAnswer(i -> {
+            release.await();
+            return 0L;
+        });
+        service = service(1, 1, 600000);
+        ExportJob first = service.submitConceptMapExport("OCL", "cm1", Optional.empty(), "/ConceptMap/cm1/$export");
+        try {
+            service.submitConceptMapExport("OCL", "cm1", Optional.empty(), "/ConceptMap/cm1/$export");
+            fail("Expected UnclassifiedServerFailureException.");
+        } catch (UnclassifiedServerFailureException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+
+        release.countDown();
+        awaitDone(first);
+        ExportJob second = service.submitConceptMapExport("OCL", "cm1", Optional.empty(), "/ConceptMap/cm1/$export");
+        awaitDone(second);
+        assertEquals(ExportJob.Status.COMPLETED, second.getStatus());
+    }
+
+    private ExportJobService service(int threads, int maxPending, long timeoutMillis) {
+        return new ExportJobService(valueSetResourceProvider, conceptMapResourceProvider, folder.getRoot().getPath(),
+                threads, 24, maxPending, timeoutMillis);
+    }
+
+    private static void awaitDone(ExportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.isDone() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(job.isDone());
+    }
+}
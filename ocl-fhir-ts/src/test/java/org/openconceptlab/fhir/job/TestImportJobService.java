@@ -0,0 +1,163 @@
+package org.openconceptlab.fhir.job;
+
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openconceptlab.fhir.converter.CodeSystemConverter.ConceptImport;
+import org.openconceptlab.fhir.model.Concept;
+import org.openconceptlab.fhir.provider.CodeSystemResourceProvider;
+import org.openconceptlab.fhir.repository.ResourceLockRepository.SessionLock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestImportJobService {
+
+    private static final String SOURCE_KEY = "CodeSystem/orgs/OCL/source1/v1.0";
+
+    @Mock
+    private CodeSystemResourceProvider codeSystemResourceProvider;
+
+    @Mock
+    private SessionLock importLock;
+
+    private ImportJobService service;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+        when(codeSystemResourceProvider.prepareCodeSystemImport(any(), any(), anyInt()))
+                .thenAnswer(i -> conceptImport());
+        when(codeSystemResourceProvider.importConceptBatch(any(), anyInt())).thenReturn(1);
+    }
+
+    @After
+    public void after() {
+        if (service != null) service.close();
+    }
+
+    @Test
+    public void testDelete_completedJob() throws Exception {
+        service = new ImportJobService(codeSystemResourceProvider, 1, 1, 24, 1, 1);
+        ImportJob job = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        awaitDone(job);
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(2, job.getConceptsWritten());
+        assertEquals(SOURCE_KEY, job.getSourceKey());
+
+        verify(importLock, timeout(5000).times(1)).close();
+
+        assertTrue(service.delete(job.getId()));
+        assertFalse(service.getJob(job.getId()).isPresent());
+        assertFalse(service.delete(job.getId()));
+    }
+
+    @Test
+    public void testFailedJob_keepsImportLockUntilDeleted() throws Exception {
+        when(codeSystemResourceProvider.importConceptBatch(any(), anyInt())).thenThrow(new IllegalStateException("failed"));
+        service = new ImportJobService(codeSystemResourceProvider, 1, 1, 24, 1, 1);
+        ImportJob job = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        awaitDone(job);
+        assertEquals(ImportJob.Status.FAILED, job.getStatus());
+        verify(importLock, never()).close();
+
+        assertTrue(service.delete(job.getId()));
+        verify(importLock, times(1)).close();
+    }
+
+    @Test
+    public void testFailedBatch_resumeWritesOnlyThatBatch() throws Exception {
+        when(codeSystemResourceProvider.prepareCodeSystemImport(any(), any(), anyInt())).thenAnswer(i -> conceptImport(3));
+        AtomicInteger attempts = new AtomicInteger();
+        when(codeSystemResourceProvider.importConceptBatch(any(), eq(1))).thenAnswer(i -> {
+            if (attempts.incrementAndGet() == 1) throw new IllegalStateException("failed");
+            return 1;
+        });
+        service = new ImportJobService(codeSystemResourceProvider, 1, 1, 24, 2, 3);
+        ImportJob job = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        awaitDone(job);
+
+        // the other batches are committed, only the failed one is missing
+        assertEquals(ImportJob.Status.FAILED, job.getStatus());
+        assertEquals(2, job.getBatchesDone());
+        assertEquals(2, job.getConceptsWritten());
+        verify(codeSystemResourceProvider, never()).completeCodeSystemImport(any());
+
+        assertTrue(service.resume(job.getId()).isPresent());
+        awaitDone(job);
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getBatchesDone());
+        assertEquals(3, job.getConceptsWritten());
+        verify(codeSystemResourceProvider, times(1)).importConceptBatch(any(), eq(0));
+        verify(codeSystemResourceProvider, times(2)).importConceptBatch(any(), eq(1));
+        verify(codeSystemResourceProvider, times(1)).importConceptBatch(any(), eq(2));
+        verify(codeSystemResourceProvider, times(1)).completeCodeSystemImport(any());
+    }
+
+    @Test
+    public void testDelete_runningJob_releasesImportLockAfterBatch() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(codeSystemResourceProvider.importConceptBatch(any(), anyInt())).thenAnswer(i -> {
+            started.countDown();
+            proceed.await();
+            return 1;
+        });
+        service = new ImportJobService(codeSystemResourceProvider, 1, 1, 24, 1, 1);
+        ImportJob job = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(service.delete(job.getId()));
+        Thread.sleep(50);
+        verify(importLock, never()).close();
+
+        proceed.countDown();
+        verify(importLock, timeout(5000).times(1)).close();
+        // the remaining batch of the deleted job is not written
+        verify(codeSystemResourceProvider, times(1)).importConceptBatch(any(), anyInt());
+    }
+
+    @Test
+    public void testSubmit_purgesExpiredCompletedJob() throws Exception {
+        service = new ImportJobService(codeSystemResourceProvider, 1, 1, 0, 1, 1);
+        ImportJob first = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        awaitDone(first);
+        Thread.sleep(5);
+
+        ImportJob second = service.submitCodeSystemImport(new CodeSystem(), "Token 123", "/CodeSystem");
+        assertFalse(service.getJob(first.getId()).isPresent());
+        assertTrue(service.getJob(second.getId()).isPresent());
+        awaitDone(second);
+        assertEquals(ImportJob.Status.COMPLETED, second.getStatus());
+    }
+
+    private ConceptImport conceptImport() {
+        return conceptImport(2);
+    }
+
+    private ConceptImport conceptImport(int batchCount) {
+        List<List<Concept>> batches = new ArrayList<>();
+        for (int i = 0; i < batchCount; i++) {
+            batches.add(Collections.singletonList(new Concept()));
+        }
+        return new ConceptImport(1L, "source1", SOURCE_KEY, batches, batchCount, importLock);
+    }
+
+    private static void awaitDone(ImportJob job) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!job.isDone() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(job.isDone());
+    }
+}
@@ -1,7 +1,10 @@
 package org.openconceptlab.fhir.provider;
 
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.IRestfulResponse;
 import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
 import ca.uhn.fhir.rest.server.exceptions.ResourceVersionConflictException;
 import com.openpojo.reflection.impl.PojoClassFactory;
@@ -14,27 +17,49 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.openconceptlab.fhir.base.OclFhirTest;
+import org.openconceptlab.fhir.converter.CodeSystemConverter;
+import org.openconceptlab.fhir.converter.CodeSystemConverter.ConceptImport;
 import org.openconceptlab.fhir.model.Organization;
 import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.repository.IdSequenceRepository;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 import static org.openconceptlab.fhir.util.OclFhirConstants.*;
 
 public class TestCodeSystemResourceProvider extends OclFhirTest {
 
+    @Mock
+    private IdSequenceRepository idSequenceRepository;
+
     @Before
     public void setUpBefore() {
         MockitoAnnotations.initMocks(this);
@@ -132,6 +157,174 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
                 "Jon Doe 1", "jondoe1@gmail.com", "USA", TEST_SOURCE, SOURCE_1_COPYRIGHT_TEXT, null);
     }
 
+    @Test
+    public void testSearchCodeSystem_ifNoneMatch_notModified() {
+        source1.setReleased(true);
+        when(sourceRepository.findAllMostRecentReleased(anyList())).thenReturn(Collections.singletonList(source1));
+        when(conceptRepository.findConceptCountInSource(anyLong())).thenReturn(1);
+        when(requestDetails.getCompleteUrl()).thenReturn("http://test.org/CodeSystem");
+        IRestfulResponse response = mock(IRestfulResponse.class);
+        when(requestDetails.getResponse()).thenReturn(response);
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        provider.searchCodeSystems(null, null, requestDetails);
+        ArgumentCaptor<String> etag = ArgumentCaptor.forClass(String.class);
+        verify(response).addHeader(eq(Constants.HEADER_ETAG), etag.capture());
+        verify(response).addHeader(eq(Constants.HEADER_LAST_MODIFIED), anyString());
+
+        when(requestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH)).thenReturn(etag.getValue());
+        try {
+            provider.searchCodeSystems(null, null, requestDetails);
+            Assert.fail("Expected NotModifiedException.");
+        } catch (NotModifiedException e) {
+            assertEquals(304, e.getStatusCode());
+        }
+        verify(conceptRepository, times(1)).findConceptCountInSource(anyLong());
+
+        source1.setUpdatedAt(new Timestamp(source1.getUpdatedAt().getTime() + 1000));
+        Bundle bundle = provider.searchCodeSystems(null, null, requestDetails);
+        assertEquals(1, bundle.getTotal());
+    }
+
+    @Test
+    public void testSearchCodeSystem_ifModifiedSince_notModified() {
+        source1.setReleased(true);
+        source1.setUpdatedAt(Timestamp.from(Instant.parse("2020-10-01T10:15:30.500Z")));
+        when(sourceRepository.findAllMostRecentReleased(anyList())).thenReturn(Collections.singletonList(source1));
+        when(requestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE)).thenReturn("Thu, 01 Oct 2020 10:15:30 GMT");
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        try {
+            provider.searchCodeSystems(null, null, requestDetails);
+            Assert.fail("Expected NotModifiedException.");
+        } catch (NotModifiedException e) {
+            assertEquals(304, e.getStatusCode());
+        }
+        verify(conceptRepository, never()).findConceptCountInSource(anyLong());
+    }
+
+    @Test
+    public void testCompleteCodeSystemImport_updatesSource() {
+        Timestamp updatedAt = Timestamp.from(Instant.now().minusSeconds(60));
+        source1.setUpdatedAt(updatedAt);
+        when(sourceRepository.findById(123)).thenReturn(Optional.of(source1));
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        provider.completeCodeSystemImport(new ConceptImport(123L, "source1", "CodeSystem/orgs/OCL/source1/v1.0",
+                Collections.emptyList(), 0, null));
+        verify(sourceRepository, times(1)).save(source1);
+        Assert.assertNotEquals(updatedAt, source1.getUpdatedAt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportConceptBatch_preallocatedIds() throws Exception {
+        CodeSystemResourceProvider provider = preallocatingProvider();
+        when(idSequenceRepository.nextIds(IdSequenceRepository.CONCEPTS, 2)).thenReturn(Arrays.asList(101L, 102L));
+        when(idSequenceRepository.nextIds(IdSequenceRepository.LOCALIZED_TEXTS, 5))
+                .thenReturn(Arrays.asList(201L, 202L, 203L, 204L, 205L));
+
+        assertEquals(2, provider.importConceptBatch(importedConcepts(), 0));
+        // no row is inserted one by one to learn its key
+        verify(insertConcept, never()).executeAndReturnKeyHolder(anyMap());
+        verify(insertLocalizedText, never()).executeAndReturnKeyHolder(anyMap());
+
+        // the concepts are inserted with their ids, each is its own version and versioned object
+        ArgumentCaptor<List<Object[]>> concepts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into concepts (id"), concepts.capture());
+        assertEquals(2, concepts.getValue().size());
+        assertArrayEquals(new Object[]{101L, 101L, "101"}, Arrays.copyOf(concepts.getValue().get(0), 3));
+        assertEquals(AD, concepts.getValue().get(0)[7]);
+        assertArrayEquals(new Object[]{102L, 102L, "102"}, Arrays.copyOf(concepts.getValue().get(1), 3));
+        assertEquals(TM, concepts.getValue().get(1)[7]);
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("update concepts set version"),
+                any(BatchPreparedStatementSetter.class));
+
+        ArgumentCaptor<List<Object[]>> texts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into localized_texts"), texts.capture());
+        assertEquals(Arrays.asList(201L, 202L, 203L, 204L, 205L),
+                texts.getValue().stream().map(r -> r[0]).collect(Collectors.toList()));
+        assertEquals(ALLERGIC_DISORDER, texts.getValue().get(0)[1]);
+        assertEquals("Tumor definition", texts.getValue().get(4)[1]);
+
+        // the join rows link each text to its concept
+        ArgumentCaptor<List<Object[]>> names = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into concepts_names"), names.capture());
+        assertEquals(4, names.getValue().size());
+        assertArrayEquals(new Object[]{201L, 101L}, names.getValue().get(0));
+        assertArrayEquals(new Object[]{202L, 101L}, names.getValue().get(1));
+        assertArrayEquals(new Object[]{203L, 102L}, names.getValue().get(2));
+        assertArrayEquals(new Object[]{204L, 102L}, names.getValue().get(3));
+        ArgumentCaptor<List<Object[]>> descriptions = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into concepts_descriptions"), descriptions.capture());
+        assertEquals(1, descriptions.getValue().size());
+        assertArrayEquals(new Object[]{205L, 102L}, descriptions.getValue().get(0));
+
+        // and the concepts to the source
+        ArgumentCaptor<BatchPreparedStatementSetter> sources = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into concepts_sources"), sources.capture());
+        assertEquals(2, sources.getValue().getBatchSize());
+        java.sql.PreparedStatement ps = mock(java.sql.PreparedStatement.class);
+        sources.getValue().setValues(ps, 1);
+        verify(ps).setInt(1, 102);
+        verify(ps).setLong(2, 123L);
+        verify(sourceRepository, times(1)).save(source1);
+    }
+
+    @Test
+    public void testImportConceptBatch_failedBatch() {
+        CodeSystemResourceProvider provider = preallocatingProvider();
+        when(idSequenceRepository.nextIds(eq(IdSequenceRepository.CONCEPTS), anyInt())).thenReturn(Arrays.asList(101L, 102L));
+        when(idSequenceRepository.nextIds(eq(IdSequenceRepository.LOCALIZED_TEXTS), anyInt()))
+                .thenReturn(Arrays.asList(201L, 202L, 203L, 204L, 205L));
+        when(jdbcTemplate.batchUpdate(startsWith("insert into localized_texts"), anyList()))
+                .thenThrow(new DataIntegrityViolationException("value too long"));
+        try {
+            provider.importConceptBatch(importedConcepts(), 0);
+            fail("Expected DataIntegrityViolationException.");
+        } catch (DataIntegrityViolationException e) {
+            // raised to the transaction of the batch, which rolls back the concepts it inserted
+        }
+        // nothing of the batch is written after the failure and the source is not touched
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("insert into concepts_names"), anyList());
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("insert into concepts_sources"),
+                any(BatchPreparedStatementSetter.class));
+        verify(sourceRepository, never()).save(any(Source.class));
+        verify(conceptDisplayRepository, never()).saveDisplays(anyMap());
+    }
+
+    private CodeSystemResourceProvider preallocatingProvider() {
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        when(idSequenceRepository.isAvailable()).thenReturn(true);
+        ((CodeSystemConverter) ReflectionTestUtils.getField(provider, "codeSystemConverter"))
+                .setIdSequenceRepository(idSequenceRepository);
+        when(sourceRepository.findById(123)).thenReturn(Optional.of(source1));
+        return provider;
+    }
+
+    private ConceptImport importedConcepts() {
+        Concept concept1 = concept1();
+        Concept concept2 = concept2();
+        LocalizedText definition = new LocalizedText();
+        definition.setName("Tumor definition");
+        definition.setType(DEFINITION);
+        definition.setLocale(EN);
+        ConceptsDescription description = new ConceptsDescription();
+        description.setConcept(concept2);
+        description.setLocalizedText(definition);
+        concept2.getConceptsDescriptions().add(description);
+        for (Concept concept : Arrays.asList(concept1, concept2)) {
+            concept.setParent(source1);
+            concept.setCreatedBy(newUser(test_user));
+            concept.setUpdatedBy(newUser(test_user));
+        }
+        return new ConceptImport(123L, "source1", "CodeSystem/orgs/OCL/source1/v1.0",
+                Collections.singletonList(Arrays.asList(concept1, concept2)), 2, null);
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void testExportCodeSystem_all_versions() {
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        provider.exportCodeSystem(newString("org:OCL"), newString("123"), newString("*"), new StringWriter());
+    }
+
     @Test
     public void testSearchCodeSystem_contentType_null() {
         source1.setIsLatestVersion(true);
@@ -174,8 +367,8 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setDefaultLocale(EN);
         when(sourceRepository.findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(anyString(), anyBoolean(), anyList()))
                 .thenReturn(source1);
-        Page page = new PageImpl(Collections.singletonList(cs11.getConcept()));
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(page);
+        Page<ConceptRow> page = new PageImpl<>(conceptRows(cs11.getConcept()));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(page);
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByUrl(newString(URL_SOURCE_1), null, null, null, requestDetails);
         assertEquals(1, bundle.getTotal());
@@ -192,7 +385,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setVersion(V_1_0);
         when(sourceRepository.findFirstByCanonicalUrlAndVersionAndPublicAccessIn(anyString(), anyString(), anyList()))
                 .thenReturn(source1);
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByUrl(newString(URL_SOURCE_1), newString(V_1_0), null, null, requestDetails);
         assertEquals(1, bundle.getTotal());
@@ -217,7 +410,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setVersion("HEAD");
         when(sourceRepository.findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(anyString(), anyBoolean(), anyList()))
                 .thenReturn(source1);
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByUrl(newString(URL_SOURCE_1), null, null, null, requestDetails);
         assertEquals(0, bundle.getTotal());
@@ -300,7 +493,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setIsLatestVersion(true);
         when(sourceRepository.findFirstByMnemonicAndReleasedAndPublicAccessInAndOrganizationMnemonicOrderByCreatedAtDesc(
                 anyString(), anyBoolean(), anyList(), anyString())).thenReturn(source1);
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByOwnerAndId(newString("org:OCL"), newString("123"), null, null, null, requestDetails);
         assertEquals(1, bundle.getTotal());
@@ -317,7 +510,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setVersion("HEAD");
         when(sourceRepository.findFirstByMnemonicAndReleasedAndPublicAccessInAndOrganizationMnemonicOrderByCreatedAtDesc(
                 anyString(), anyBoolean(), anyList(), anyString())).thenReturn(source1);
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByOwnerAndId(newString("org:OCL"), newString("123"), null, null, null, requestDetails);
         assertEquals(0, bundle.getTotal());
@@ -328,7 +521,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setIsLatestVersion(true);
         when(sourceRepository.findByMnemonicAndOrganizationMnemonicAndPublicAccessIn(
                 anyString(), anyString(), anyList())).thenReturn(Collections.singletonList(source1));
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByOwnerAndId(newString("org:OCL"), newString("123"), newString("*"), null, null, requestDetails);
         assertEquals(1, bundle.getTotal());
@@ -343,7 +536,7 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         source1.setIsLatestVersion(true);
         when(sourceRepository.findByMnemonicAndUserIdUsernameAndPublicAccessIn(
                 anyString(), anyString(), anyList())).thenReturn(Collections.singletonList(source1));
-        when(conceptRepository.findConcepts(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl(Collections.singletonList(cs11.getConcept())));
+        when(conceptRepository.findConceptRows(anyLong(), any(PageRequest.class))).thenReturn(new PageImpl<>(conceptRows(cs11.getConcept())));
         CodeSystemResourceProvider provider = codeSystemProvider();
         Bundle bundle = provider.searchCodeSystemByOwnerAndId(newString("user:test"), newString("123"), newString("*"), null, null, requestDetails);
         assertEquals(1, bundle.getTotal());
@@ -705,6 +898,135 @@ public class TestCodeSystemResourceProvider extends OclFhirTest {
         verify(insertLocalizedText, times(2)).executeAndReturnKeyHolder(anyMap());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateCodeSystem_savesDisplays() {
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        when(requestDetails.getHeader(anyString())).thenReturn("Token  12345");
+        when(organizationRepository.findByMnemonic(anyString())).thenReturn(newOrganization());
+        when(authtokenRepository.findByKey(anyString())).thenReturn(newToken(test_user));
+        when(userProfilesOrganizationRepository.findByOrganizationMnemonic(anyString()))
+                .thenReturn(Collections.singletonList(newUserOrg(test_user)));
+        doAnswer(i -> {
+            ((Source) i.getArgument(0)).setId(123L);
+            return i.getArgument(0);
+        }).when(sourceRepository).saveAndFlush(any(Source.class));
+        when(insertConcept.executeAndReturnKeyHolder(anyMap())).thenReturn(newKey());
+        when(insertLocalizedText.executeAndReturnKeyHolder(anyMap())).thenReturn(newKey(), newKey());
+
+        provider.createCodeSystem(codeSystem(), requestDetails);
+        ArgumentCaptor<Map<Long, Map<String, String>>> displays = ArgumentCaptor.forClass(Map.class);
+        verify(conceptDisplayRepository, times(1)).saveDisplays(displays.capture());
+        assertEquals(Collections.singleton(45L), displays.getValue().keySet());
+        // the display of a locale is the preferred name in that locale
+        assertEquals("designation display", displays.getValue().get(45L).get(EN));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUpdateCodeSystem_newConcepts() {
+        CodeSystemResourceProvider provider = updateProvider(false);
+        provider.updateCodeSystem(new IdType(CODESYSTEM, "testsource", "2.0"), updatedCodeSystem(), requestDetails);
+
+        // the codes are staged with the fingerprint of their names
+        ArgumentCaptor<List<Object[]>> staged = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("insert into staged_concepts"), staged.capture());
+        assertEquals(Arrays.asList("A", "B", "C"), staged.getValue().stream().map(r -> r[0]).collect(Collectors.toList()));
+        // only the code that is new to the version is written, the names are not compared without update-changed-names
+        assertEquals(Collections.singletonList("B"), insertedCodes());
+        verify(jdbcTemplate, never()).query(startsWith("select latest.concept_id"), any(RowCallbackHandler.class), any());
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("update concepts c set versioned_object_id"), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUpdateCodeSystem_changedNames() {
+        CodeSystemResourceProvider provider = updateProvider(true);
+        provider.updateCodeSystem(new IdType(CODESYSTEM, "testsource", "2.0"), updatedCodeSystem(), requestDetails);
+
+        // B is new to the version and written once as a new concept although HEAD has it with other names, C is
+        // written once as a new version of the concept in HEAD, the unchanged A is not written
+        assertEquals(Arrays.asList("B", "C"), insertedCodes());
+        ArgumentCaptor<List<Object[]>> links = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("update concepts c set versioned_object_id"), links.capture());
+        assertEquals(1, links.getValue().size());
+        assertArrayEquals(new Object[]{11L, 45}, links.getValue().get(0));
+        verify(jdbcTemplate, times(1)).update(startsWith("update concepts set is_latest_version = false"),
+                (Object) AdditionalMatchers.aryEq(new Long[]{11L}));
+    }
+
+    @Test
+    public void testUpdateCodeSystem_unchanged() {
+        CodeSystemResourceProvider provider = updateProvider(true);
+        when(jdbcTemplate.queryForList(startsWith("select t.mnemonic"), eq(String.class), any())).thenReturn(Collections.emptyList());
+        doNothing().when(jdbcTemplate).query(startsWith("select latest.concept_id"), any(RowCallbackHandler.class), any());
+        provider.updateCodeSystem(new IdType(CODESYSTEM, "testsource", "2.0"), updatedCodeSystem(), requestDetails);
+
+        verify(insertConcept, never()).executeAndReturnKeyHolder(anyMap());
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("update concepts c set versioned_object_id"), anyList());
+    }
+
+    private CodeSystemResourceProvider updateProvider(boolean updateChangedNames) {
+        CodeSystemResourceProvider provider = codeSystemProvider();
+        ReflectionTestUtils.setField(ReflectionTestUtils.getField(provider, "codeSystemConverter"), "updateChangedNames",
+                updateChangedNames);
+        Source source = updatedSource(123L, "2.0");
+        Source head = updatedSource(1L, HEAD);
+        when(requestDetails.getHeader(OWNER)).thenReturn(OWNER_VAL);
+        when(requestDetails.getHeader(AUTHORIZATION)).thenReturn("Token  12345");
+        when(organizationRepository.findByMnemonic(anyString())).thenReturn(newOrganization());
+        when(authtokenRepository.findByKey(anyString())).thenReturn(newToken(test_user));
+        when(userProfilesOrganizationRepository.findByOrganizationMnemonic(anyString()))
+                .thenReturn(Collections.singletonList(newUserOrg(test_user)));
+        when(sourceRepository.findFirstByMnemonicAndVersionAndOrganizationMnemonicAndPublicAccessIn(eq("testsource"), eq("2.0"),
+                eq("OCL"), anyList())).thenReturn(source);
+        when(sourceRepository.findFirstByMnemonicAndVersionAndOrganizationMnemonic("testsource", HEAD, "OCL")).thenReturn(head);
+        when(insertConcept.executeAndReturnKeyHolder(anyMap())).thenReturn(newKey());
+        when(insertLocalizedText.executeAndReturnKeyHolder(anyMap())).thenAnswer(i -> newKey());
+        // B is new to version 2.0, HEAD has B and C with other names
+        when(jdbcTemplate.queryForList(startsWith("select t.mnemonic"), eq(String.class), eq(123L)))
+                .thenReturn(Collections.singletonList("B"));
+        doAnswer(i -> {
+            RowCallbackHandler handler = i.getArgument(1);
+            java.sql.ResultSet rs = mock(java.sql.ResultSet.class);
+            when(rs.getLong(1)).thenReturn(10L, 11L);
+            when(rs.getString(2)).thenReturn("B", "C");
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("select latest.concept_id"), any(RowCallbackHandler.class), eq(1L));
+        return provider;
+    }
+
+    private Source updatedSource(Long id, String version) {
+        Source source = new Source();
+        source.setId(id);
+        source.setMnemonic("testsource");
+        source.setVersion(version);
+        source.setOrganization(newOrganization());
+        source.setPublicAccess("View");
+        source.setDefaultLocale(EN);
+        source.setUri("/orgs/OCL/sources/testsource/" + version + "/");
+        return source;
+    }
+
+    private CodeSystem updatedCodeSystem() {
+        CodeSystem system = new CodeSystem();
+        for (String code : Arrays.asList("A", "B", "C")) {
+            CodeSystem.ConceptDefinitionComponent component = system.addConcept();
+            component.setCode(code);
+            component.addDesignation().setLanguage(EN).setValue(code + " display");
+        }
+        return system;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> insertedCodes() {
+        ArgumentCaptor<Map<String, Object>> concepts = ArgumentCaptor.forClass(Map.class);
+        verify(insertConcept, atLeast(0)).executeAndReturnKeyHolder(concepts.capture());
+        return concepts.getAllValues().stream().map(m -> (String) m.get(MNEMONIC)).collect(Collectors.toList());
+    }
+
     private CodeSystem codeSystem() {
         CodeSystem system = new CodeSystem();
         system.setUrl(URL_SOURCE_1);
@@ -13,19 +13,26 @@ import org.junit.Test;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
-import org.mockito.stubbing.OngoingStubbing;
 import org.openconceptlab.fhir.base.OclFhirTest;
 import org.openconceptlab.fhir.model.*;
+import org.openconceptlab.fhir.model.projection.ConceptRow;
+import org.openconceptlab.fhir.model.projection.SourceRow;
 import org.openconceptlab.fhir.util.OclFhirUtil;
+import org.springframework.data.domain.Pageable;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
 
+import java.io.StringWriter;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
@@ -424,6 +431,13 @@ public class TestValueSetResourceProvider extends OclFhirTest {
         assertEquals(copyright, valueSet.getCopyright());
     }
 
+    @Test(expected = InvalidRequestException.class)
+    public void testExportValueSet_all_versions() {
+        ValueSetResourceProvider provider = valueSetProvider();
+        provider.exportValueSet(newString("org:OCL"), newString("123"), newString("*"), new BooleanType(true),
+                new BooleanType(true), null, new StringWriter());
+    }
+
     @Test(expected = InvalidRequestException.class)
     public void testValidateCode_url_null() {
         validateCode(null, V_11_1, CS_URL, V_21_1, AD, null, null, null, OWNER_VAL);
@@ -513,6 +527,25 @@ public class TestValueSetResourceProvider extends OclFhirTest {
         assertContains(vs, 4, CS_URL, "v1.0", AD, ALLERGIC_DISORDER);
     }
 
+    @Test
+    public void testExpand_storedDisplays() {
+        List<CollectionsReference> references = newReferences(
+                "/orgs/OCL/sources/"+CS+"/v2.0/concepts/"+AD+"/123/",
+                "/orgs/OCL/sources/"+CS+"/v2.0/concepts/"+TM+"/123/"
+        );
+        source2.setCanonicalUrl(CS_URL);
+        source2.setMnemonic(CS);
+        source2.setDefaultLocale(EN);
+        when(conceptDisplayRepository.findDisplays(anyList(), eq(EN))).thenReturn(Collections.singletonMap(1L, "Stored display"));
+        ValueSet vs = runExpand(references, Collections.emptyList(), Arrays.asList(cs21, cs22), null, 0, 50, "",
+                new BooleanType(false));
+        assertEquals(2, vs.getExpansion().getContains().size());
+        assertContains(vs, 0, CS_URL, "v2.0", AD, "Stored display");
+        assertContains(vs, 1, CS_URL, "v2.0", TM, TUMOR_DISORDER);
+        // the names are only loaded for the concept without a stored display
+        verify(conceptRepository, times(1)).findNameRows(Collections.singletonList(2L));
+    }
+
     @Test
     public void testExpand_partial() {
         List<CollectionsReference> references = newReferences(
@@ -750,7 +783,8 @@ public class TestValueSetResourceProvider extends OclFhirTest {
             }
         }).when(collectionRepository).saveAndFlush(any(Collection.class));
 
-        when(insertCollectionReference.executeAndReturnKeyHolder(anyMap())).thenReturn(newKey());
+        when(jdbcTemplate.query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class)))
+                .thenReturn(Collections.singletonList(45L));
 
         doAnswer(new Answer() {
             @Override
@@ -760,8 +794,9 @@ public class TestValueSetResourceProvider extends OclFhirTest {
         }).when(jdbcTemplate).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
         populateSource1(source1);
         source1.setOrganization(newOrganization());
-        when(sourceRepository.findFirstByCanonicalUrlAndReleasedAndPublicAccessInOrderByCreatedAtDesc(anyString(), anyBoolean(), anyList()))
-                .thenReturn(source1);
+        when(sourceRepository.findReleasedSourceRows(anyString(), anyList(), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(new SourceRow(source1.getId(), source1.getMnemonic(), source1.getVersion(),
+                        source1.getCanonicalUrl(), source1.getOrganization().getMnemonic(), null, source1.getDefaultLocale())));
 
         provider.createValueSet(valueSet, requestDetails);
 
@@ -770,7 +805,10 @@ public class TestValueSetResourceProvider extends OclFhirTest {
         verify(authtokenRepository, times(1)).findByKey(anyString());
         verify(userProfilesOrganizationRepository, times(1)).findByOrganizationMnemonic(anyString());
         verify(collectionRepository, times(1)).saveAndFlush(any(Collection.class));
-        verify(insertCollectionReference, times(1)).executeAndReturnKeyHolder(anyMap());
+        verify(sourceRepository, times(1)).findReleasedSourceRows(anyString(), anyList(), any(Pageable.class));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(PreparedStatementSetter.class), any(RowMapper.class));
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+        verify(insertCollectionReference, never()).executeAndReturnKeyHolder(anyMap());
     }
 
     private ValueSet valueSet() {
@@ -810,35 +848,44 @@ public class TestValueSetResourceProvider extends OclFhirTest {
         assertEquals(display, valueSet.getExpansion().getContains().get(index).getDisplay());
     }
 
+    private List<ConceptRow> conceptRows(List<ConceptsSource> conceptsSources, Map<Long, Concept> concepts) {
+        Concept[] arr = conceptsSources.stream().map(ConceptsSource::getConcept).toArray(Concept[]::new);
+        for (Concept c : arr) {
+            concepts.putIfAbsent(c.getId(), c);
+        }
+        return conceptRows(arr);
+    }
+
     public ValueSet runExpand(List<CollectionsReference> references, List<ConceptsSource> list1, List<ConceptsSource> list2,
                               List<ConceptsSource> list3, Integer offset, Integer count, String systemVersion) {
+        return runExpand(references, list1, list2, list3, offset, count, systemVersion, null);
+    }
+
+    public ValueSet runExpand(List<CollectionsReference> references, List<ConceptsSource> list1, List<ConceptsSource> list2,
+                              List<ConceptsSource> list3, Integer offset, Integer count, String systemVersion,
+                              BooleanType includeDesignations) {
         // set up
         ValueSetResourceProvider provider = valueSetProvider();
         Collection collection = collection(references);
         when(sourceRepository.findFirstByMnemonicAndVersionAndOrganizationMnemonicAndPublicAccessIn(anyString(), anyString(), anyString(), anyList()))
                 .thenReturn(source2).thenReturn(source1);
-        OngoingStubbing<List<ConceptsSource>> stub1 = when(conceptsSourceRepository.findBySourceIdAndConceptIdInOrderByConceptIdDesc(eq(123L), anyList()));
-        for (ConceptsSource cs1 : list1) {
-            stub1 = stub1.thenReturn(Collections.singletonList(cs1));
-        }
-        OngoingStubbing<List<ConceptsSource>> stub2 = when(conceptsSourceRepository.findBySourceIdAndConceptIdInOrderByConceptIdDesc(eq(234L), anyList()));
-        for (ConceptsSource cs2 : list2) {
-            stub2 = stub2.thenReturn(Collections.singletonList(cs2));
-        }
+        Map<Long, Concept> concepts = new HashMap<>();
+        when(conceptsSourceRepository.findConceptRows(eq(123L), anyList())).thenReturn(conceptRows(list1, concepts));
+        when(conceptsSourceRepository.findConceptRows(eq(234L), anyList())).thenReturn(conceptRows(list2, concepts));
         if (isValid(systemVersion) & !systemVersion.contains("unk")) {
             when(sourceRepository.findFirstByCanonicalUrlAndVersionAndPublicAccessIn(anyString(), anyString(), anyList())).thenReturn(source3);
-            OngoingStubbing<List<ConceptsSource>> stub3 = when(conceptsSourceRepository.findBySourceIdAndConceptIdInOrderByConceptIdDesc(eq(345L), anyList()));
             if (list3 != null) {
-                for (ConceptsSource cs3 : list3) {
-                    stub3 = stub3.thenReturn(Collections.singletonList(cs3));
-                }
+                when(conceptsSourceRepository.findConceptRows(eq(345L), anyList())).thenReturn(conceptRows(list3, concepts));
             }
         }
+        when(conceptRepository.findNameRows(anyList())).thenAnswer(i -> nameRows(((List<Long>) i.getArgument(0)).stream()
+                .map(concepts::get).toArray(Concept[]::new)));
         when(collectionRepository.findFirstByCanonicalUrlAndReleasedAndOrganizationMnemonicAndPublicAccessInOrderByCreatedAtDesc(
                 anyString(), anyBoolean(), anyString(), anyList())).thenReturn(collection);
 
         return provider.valueSetExpand(newUrl(VS_URL), null, new IntegerType(offset), new IntegerType(count),
-                null, null, null, null, null, Sets.newHashSet(new CanonicalType(systemVersion)), null, newString(OWNER_VAL));
+                includeDesignations, null, null, null, null, Sets.newHashSet(new CanonicalType(systemVersion)), null,
+                newString(OWNER_VAL));
     }
 
 
@@ -0,0 +1,145 @@
+package org.openconceptlab.fhir.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestConceptDisplayRepository {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testInit_tableExists() {
+        when(jdbcTemplate.queryForObject(startsWith("select to_regclass"), eq(Boolean.class))).thenReturn(true);
+        ConceptDisplayRepository repository = repository(true);
+        assertTrue(repository.isAvailable());
+        verify(jdbcTemplate, never()).execute(anyString());
+    }
+
+    @Test
+    public void testInit_tableMissing() {
+        when(jdbcTemplate.queryForObject(startsWith("select to_regclass"), eq(Boolean.class))).thenReturn(false);
+        ConceptDisplayRepository repository = repository(true);
+        assertFalse(repository.isAvailable());
+        // the table is created by the migration, never by the service
+        verify(jdbcTemplate, never()).execute(anyString());
+
+        repository.saveDisplays(displays(1L, "en", "Allergic disorder"));
+        assertTrue(repository.findDisplays(Collections.singletonList(1L), "en").isEmpty());
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    public void testInit_checkFailed() {
+        when(jdbcTemplate.queryForObject(startsWith("select to_regclass"), eq(Boolean.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        assertFalse(repository(true).isAvailable());
+    }
+
+    @Test
+    public void testInit_disabled() {
+        assertFalse(repository(false).isAvailable());
+        verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveDisplays_replacesDisplays() {
+        ConceptDisplayRepository repository = availableRepository();
+        Map<Long, Map<String, String>> displays = new LinkedHashMap<>();
+        displays.put(1L, new LinkedHashMap<>());
+        displays.get(1L).put("en", "Allergic disorder");
+        displays.get(1L).put("es", "Trastorno alérgico");
+        displays.put(2L, Collections.singletonMap("en", "Tumor disorder"));
+
+        repository.saveDisplays(displays);
+        InOrder inOrder = inOrder(jdbcTemplate);
+        ArgumentCaptor<Object[]> deleted = ArgumentCaptor.forClass(Object[].class);
+        inOrder.verify(jdbcTemplate).update(startsWith("delete from concepts_displays"), deleted.capture());
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(jdbcTemplate).batchUpdate(startsWith("insert into concepts_displays"), rows.capture());
+
+        // the displays of the saved concepts are deleted first, so that dropped locales do not remain
+        assertArrayEquals(new Long[]{1L, 2L}, deleted.getValue());
+        assertEquals(3, rows.getValue().size());
+        assertArrayEquals(new Object[]{1L, "en", "Allergic disorder"}, rows.getValue().get(0));
+        assertArrayEquals(new Object[]{1L, "es", "Trastorno alérgico"}, rows.getValue().get(1));
+        assertArrayEquals(new Object[]{2L, "en", "Tumor disorder"}, rows.getValue().get(2));
+    }
+
+    @Test
+    public void testSaveDisplays_empty() {
+        ConceptDisplayRepository repository = availableRepository();
+        repository.saveDisplays(Collections.emptyMap());
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    public void testFindDisplays() throws Exception {
+        ConceptDisplayRepository repository = availableRepository();
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(1L, 2L);
+        when(rs.getString(2)).thenReturn("Allergic disorder", "Tumor disorder");
+        doAnswer(i -> {
+            RowCallbackHandler handler = i.getArgument(1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        Map<Long, String> displays = repository.findDisplays(Arrays.asList(1L, 2L, 3L), "en");
+        Map<Long, String> expected = new HashMap<>();
+        expected.put(1L, "Allergic disorder");
+        expected.put(2L, "Tumor disorder");
+        assertEquals(expected, displays);
+    }
+
+    @Test
+    public void testFindDisplays_noLocale() {
+        ConceptDisplayRepository repository = availableRepository();
+        assertTrue(repository.findDisplays(Collections.singletonList(1L), null).isEmpty());
+        assertTrue(repository.findDisplays(Collections.emptyList(), "en").isEmpty());
+        verify(jdbcTemplate, never()).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    private ConceptDisplayRepository availableRepository() {
+        when(jdbcTemplate.queryForObject(startsWith("select to_regclass"), eq(Boolean.class))).thenReturn(true);
+        return repository(true);
+    }
+
+    private ConceptDisplayRepository repository(boolean enabled) {
+        ConceptDisplayRepository repository = new ConceptDisplayRepository(jdbcTemplate, enabled);
+        repository.init();
+        return repository;
+    }
+
+    private static Map<Long, Map<String, String>> displays(Long id, String locale, String display) {
+        return Collections.singletonMap(id, Collections.singletonMap(locale, display));
+    }
+}
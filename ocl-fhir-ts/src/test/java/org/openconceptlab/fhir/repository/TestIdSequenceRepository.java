@@ -0,0 +1,100 @@
+package org.openconceptlab.fhir.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestIdSequenceRepository {
+
+    private static final String CONCEPTS_SEQUENCE = "public.concepts_id_seq";
+    private static final String TEXTS_SEQUENCE = "public.localized_texts_id_seq";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUpBefore() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testInit_sequencesResolved() {
+        assertTrue(availableRepository().isAvailable());
+    }
+
+    @Test
+    public void testInit_noSequence() {
+        when(jdbcTemplate.queryForObject(startsWith("select pg_get_serial_sequence"), eq(String.class),
+                eq(IdSequenceRepository.CONCEPTS))).thenReturn(CONCEPTS_SEQUENCE);
+        IdSequenceRepository repository = repository(true);
+        assertFalse(repository.isAvailable());
+    }
+
+    @Test
+    public void testInit_checkFailed() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class), any()))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"));
+        assertFalse(repository(true).isAvailable());
+    }
+
+    @Test
+    public void testInit_disabled() {
+        assertFalse(repository(false).isAvailable());
+        verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void testNextIds() {
+        IdSequenceRepository repository = availableRepository();
+        when(jdbcTemplate.queryForList(startsWith("select nextval"), eq(Long.class), eq(CONCEPTS_SEQUENCE), eq(3)))
+                .thenReturn(Arrays.asList(101L, 102L, 103L));
+        when(jdbcTemplate.queryForList(startsWith("select nextval"), eq(Long.class), eq(TEXTS_SEQUENCE), eq(2)))
+                .thenReturn(Arrays.asList(201L, 202L));
+        assertEquals(Arrays.asList(101L, 102L, 103L), repository.nextIds(IdSequenceRepository.CONCEPTS, 3));
+        assertEquals(Arrays.asList(201L, 202L), repository.nextIds(IdSequenceRepository.LOCALIZED_TEXTS, 2));
+    }
+
+    @Test
+    public void testNextIds_none() {
+        IdSequenceRepository repository = availableRepository();
+        assertTrue(repository.nextIds(IdSequenceRepository.CONCEPTS, 0).isEmpty());
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Long.class), any(), any());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNextIds_unknownTable() {
+        availableRepository().nextIds("mappings", 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNextIds_fewerIds() {
+        IdSequenceRepository repository = availableRepository();
+        when(jdbcTemplate.queryForList(startsWith("select nextval"), eq(Long.class), eq(CONCEPTS_SEQUENCE), eq(2)))
+                .thenReturn(Collections.singletonList(101L));
+        repository.nextIds(IdSequenceRepository.CONCEPTS, 2);
+    }
+
+    private IdSequenceRepository availableRepository() {
+        when(jdbcTemplate.queryForObject(startsWith("select pg_get_serial_sequence"), eq(String.class),
+                eq(IdSequenceRepository.CONCEPTS))).thenReturn(CONCEPTS_SEQUENCE);
+        when(jdbcTemplate.queryForObject(startsWith("select pg_get_serial_sequence"), eq(String.class),
+                eq(IdSequenceRepository.LOCALIZED_TEXTS))).thenReturn(TEXTS_SEQUENCE);
+        return repository(true);
+    }
+
+    private IdSequenceRepository repository(boolean enabled) {
+        IdSequenceRepository repository = new IdSequenceRepository(jdbcTemplate, enabled);
+        repository.init();
+        return repository;
+    }
+}
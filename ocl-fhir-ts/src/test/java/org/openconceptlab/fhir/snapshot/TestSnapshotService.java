@@ -0,0 +1,137 @@
+package org.openconceptlab.fhir.snapshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.openconceptlab.fhir.model.Source;
+import org.openconceptlab.fhir.repository.ResourceLockRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestSnapshotService {
+
+    private static final Timestamp UPDATED_AT = new Timestamp(1600000000000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ResourceLockRepository resourceLockRepository;
+
+    private SnapshotService service;
+
+    @Before
+    public void setUpBefore() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(dataSource.getConnection()).thenReturn(connection);
+        service = new SnapshotService(dataSource, transactionManager, true, folder.getRoot().getPath());
+        service.setResourceLockRepository(resourceLockRepository);
+    }
+
+    @After
+    public void after() {
+        service.shutdown();
+    }
+
+    @Test
+    public void testGet_importPending() throws Exception {
+        when(resourceLockRepository.isImportPending(1L)).thenReturn(true);
+
+        assertFalse(service.get(source()).isPresent());
+        verify(resourceLockRepository, timeout(5000)).isImportPending(1L);
+        Thread.sleep(100);
+
+        verifyZeroInteractions(dataSource, transactionManager);
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testGet_sourceUpdatedSince() throws Exception {
+        mockUpdatedAt(new Timestamp(UPDATED_AT.getTime() + 1000));
+        PreparedStatement concepts = mockConcepts();
+
+        assertFalse(service.get(source()).isPresent());
+        verify(connection, timeout(5000)).close();
+        Thread.sleep(100);
+
+        verify(connection, never()).prepareStatement(startsWith("select c.id"));
+        verify(concepts, never()).executeQuery();
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testGet_buildsSnapshot() throws Exception {
+        mockUpdatedAt(UPDATED_AT);
+        PreparedStatement concepts = mockConcepts();
+
+        assertFalse(service.get(source()).isPresent());
+        Optional<SourceSnapshot> snapshot = awaitSnapshot(source());
+        assertTrue(snapshot.isPresent());
+        verify(concepts, times(1)).executeQuery();
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private void mockUpdatedAt(Timestamp updatedAt) throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(connection.prepareStatement(startsWith("select updated_at"))).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rs);
+        when(rs.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getTimestamp(1)).thenReturn(updatedAt);
+    }
+
+    private PreparedStatement mockConcepts() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(connection.prepareStatement(startsWith("select c.id"))).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+        return statement;
+    }
+
+    private Optional<SourceSnapshot> awaitSnapshot(Source source) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        Optional<SourceSnapshot> snapshot = service.get(source);
+        while (!snapshot.isPresent() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            snapshot = service.get(source);
+        }
+        return snapshot;
+    }
+
+    private static Source source() {
+        Source source = new Source();
+        source.setId(1L);
+        source.setVersion("v1.0");
+        source.setReleased(true);
+        source.setUpdatedAt(UPDATED_AT);
+        return source;
+    }
+}
@@ -0,0 +1,242 @@
+package org.openconceptlab.fhir.util;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import ca.uhn.fhir.rest.server.exceptions.UnclassifiedServerFailureException;
+import org.hl7.fhir.r4.model.CodeType;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.UriType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openconceptlab.fhir.config.QueryScope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class TestRequestCoalescer {
+
+    private static final String KEY = RequestCoalescer.key("$lookup", new UriType("http://test.org"), new CodeType("A"));
+
+    private ExecutorService executor;
+    private CountDownLatch started;
+    private CountDownLatch release;
+    private AtomicInteger computations;
+
+    @Before
+    public void setUpBefore() {
+        executor = Executors.newCachedThreadPool();
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        computations = new AtomicInteger();
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCoalesce_waiterJoinsComputation() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 60000);
+        Future<List<String>> leader = executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> result()), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<String>> waiter = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(result(), leader.get(5, TimeUnit.SECONDS));
+        assertEquals(result(), waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void testCoalesce_waiterReceivesCopy() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 60000);
+        Future<List<String>> leader = executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> result()), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<String>> waiter1 = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Future<List<String>> waiter2 = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Thread.sleep(100);
+        release.countDown();
+
+        List<String> result = leader.get(5, TimeUnit.SECONDS);
+        List<String> result1 = waiter1.get(5, TimeUnit.SECONDS);
+        List<String> result2 = waiter2.get(5, TimeUnit.SECONDS);
+        assertNotSame(result, result1);
+        assertNotSame(result, result2);
+        assertNotSame(result1, result2);
+        result1.add("C");
+        assertEquals(result(), result);
+        assertEquals(result(), result2);
+    }
+
+    @Test
+    public void testCoalesce_failurePropagatedAsNewException() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 60000);
+        ResourceNotFoundException failure = new ResourceNotFoundException("Code A not found.");
+        Future<List<String>> leader = executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> {
+            throw failure;
+        }), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<String>> waiter1 = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Future<List<String>> waiter2 = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertSame(failure, cause(leader));
+        Throwable failure1 = cause(waiter1);
+        Throwable failure2 = cause(waiter2);
+        assertTrue(failure1 instanceof ResourceNotFoundException);
+        assertTrue(failure2 instanceof ResourceNotFoundException);
+        assertNotSame(failure, failure1);
+        assertNotSame(failure1, failure2);
+        assertEquals(failure.getMessage(), failure1.getMessage());
+        assertSame(failure, failure1.getCause());
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void testCoalesce_leaderTimedOut_waiterComputes() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 60000);
+        Future<List<String>> leader = executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> {
+            throw new UnclassifiedServerFailureException(503, "The request did not complete within 10 ms.");
+        }), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<String>> waiter = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertTrue(cause(leader) instanceof UnclassifiedServerFailureException);
+        assertEquals(result(), waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void testCoalesce_waitBoundedByQueryScope() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 60000);
+        executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> result()), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<QueryScope> waiter = executor.submit(() -> {
+            try (QueryScope scope = QueryScope.open(100)) {
+                try {
+                    coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new);
+                    fail("Expected InternalErrorException.");
+                } catch (InternalErrorException e) {
+                    // expected
+                }
+                return scope;
+            }
+        });
+
+        QueryScope scope = waiter.get(5, TimeUnit.SECONDS);
+        assertTrue(scope.isCancelled());
+        assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void testCoalesce_maxWait_waiterComputes() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer(true, 50);
+        executor.submit(() -> coalescer.coalesce(KEY, blocking(() -> result()), ArrayList::new));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<String>> waiter = executor.submit(() -> coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new));
+
+        assertEquals(result(), waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void testCoalesce_disabled() {
+        RequestCoalescer coalescer = new RequestCoalescer(false, 60000);
+        coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new);
+        coalescer.coalesce(KEY, counting(() -> result()), ArrayList::new);
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void testKey_primitivesByValue() {
+        assertEquals(RequestCoalescer.key("$lookup", new UriType("http://test.org"), new CodeType("A")),
+                RequestCoalescer.key("$lookup", new StringType("http://test.org"), "A"));
+        assertNotEquals(RequestCoalescer.key("$lookup", new CodeType("A")), RequestCoalescer.key("$lookup", new CodeType("B")));
+        assertNotEquals(RequestCoalescer.key("$lookup", new CodeType("A")), RequestCoalescer.key("$validate-code", new CodeType("A")));
+    }
+
+    @Test
+    public void testKey_nullIsAbsent() {
+        assertEquals(RequestCoalescer.key("$expand", (Object) null), RequestCoalescer.key("$expand", new StringType()));
+        assertEquals(RequestCoalescer.key("$expand", null, new CodeType("A")),
+                RequestCoalescer.key("$expand", new UriType(), new CodeType("A")));
+    }
+
+    @Test
+    public void testKey_collectionsOrderInsensitive() {
+        assertEquals(RequestCoalescer.key("$expand", Arrays.asList("A", "B", "C")),
+                RequestCoalescer.key("$expand", Arrays.asList("C", "A", "B")));
+        assertNotEquals(RequestCoalescer.key("$expand", Arrays.asList("A", "B")),
+                RequestCoalescer.key("$expand", Collections.singletonList("A,B")));
+        assertNotEquals(RequestCoalescer.key("$expand", Arrays.asList("A", "B")), RequestCoalescer.key("$expand", "A", "B"));
+    }
+
+    @Test
+    public void testKey_separatorsDoNotCollide() {
+        assertNotEquals(RequestCoalescer.key("$lookup", "A|1:B"), RequestCoalescer.key("$lookup", "A", "B"));
+        assertNotEquals(RequestCoalescer.key("$lookup", "A", ""), RequestCoalescer.key("$lookup", "A"));
+    }
+
+    @Test
+    public void testKey_coding() {
+        assertEquals(RequestCoalescer.key("$translate", new Coding("http://test.org", "A", "Display")),
+                RequestCoalescer.key("$translate", new Coding("http://test.org", "A", "Display")));
+        assertNotEquals(RequestCoalescer.key("$translate", new Coding("http://test.org", "A", "Display")),
+                RequestCoalescer.key("$translate", new Coding("http://test.org", "A", null)));
+        assertNotEquals(RequestCoalescer.key("$translate", new Coding("http://test.org", "A", null).setVersion("v1.0")),
+                RequestCoalescer.key("$translate", new Coding("http://test.org", "A", null)));
+    }
+
+    private <T> Supplier<T> blocking(Supplier<T> computation) {
+        return counting(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return computation.get();
+        });
+    }
+
+    private <T> Supplier<T> counting(Supplier<T> computation) {
+        return () -> {
+            computations.incrementAndGet();
+            return computation.get();
+        };
+    }
+
+    private static List<String> result() {
+        return new ArrayList<>(Arrays.asList("A", "B"));
+    }
+
+    private static Throwable cause(Future<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected an exception.");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+}